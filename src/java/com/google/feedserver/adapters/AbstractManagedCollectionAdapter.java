@@ -25,7 +25,8 @@ import com.google.feedserver.config.PerNamespaceServerConfiguration;
 import com.google.feedserver.config.UserInfo;
 import com.google.feedserver.metadata.FeedInfo;
 import com.google.feedserver.metadata.SimpleFeedInfo;
-import com.google.feedserver.util.FeedServerUtil;
+import com.google.feedserver.server.FlagConfig;
+import com.google.feedserver.util.EntityXmlWriter;
 import com.google.feedserver.util.XmlUtil;
 
 import org.apache.abdera.Abdera;
@@ -34,11 +35,13 @@ import org.apache.abdera.model.Content;
 import org.apache.abdera.model.Document;
 import org.apache.abdera.model.Entry;
 import org.apache.abdera.model.Feed;
+import org.apache.abdera.model.Link;
 import org.apache.abdera.parser.Parser;
 import org.apache.abdera.protocol.server.ProviderHelper;
 import org.apache.abdera.protocol.server.RequestContext;
 import org.apache.abdera.protocol.server.ResponseContext;
 import org.apache.abdera.protocol.server.Target;
+import org.apache.abdera.protocol.server.TargetType;
 import org.apache.abdera.protocol.server.provider.managed.CollectionAdapterConfiguration;
 import org.apache.abdera.protocol.server.provider.managed.FeedConfiguration;
 import org.apache.abdera.protocol.server.provider.managed.ManagedCollectionAdapter;
@@ -54,7 +57,6 @@ import java.util.List;
 import java.util.Map;
 
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.TransformerException;
 
 /**
  * This class tries to aggregate common functions that will be used in most of
@@ -78,6 +80,14 @@ public abstract class AbstractManagedCollectionAdapter extends ManagedCollection
   public static final String ENCODING_UTF_8 = "UTF-8";
   public static final String CATEGORY_PARAMETER = "category";
 
+  /**
+   * Entry segment of the batch target: {@code POST /{namespace}/{feed}/batch}
+   * runs the operations of a feed of entries, see {@link AtomBatch}
+   */
+  public static final String BATCH_ENTRY = "batch";
+
+  private static final FeedReadCoalescer feedReadCoalescer = new FeedReadCoalescer();
+
   protected final XmlUtil xmlUtil;
 
   protected AbstractManagedCollectionAdapter(Abdera abdera, FeedConfiguration config) {
@@ -99,11 +109,21 @@ public abstract class AbstractManagedCollectionAdapter extends ManagedCollection
     String entryId = getEntryId(request);
 
     try {
+      ResourceVersion version = forRequest(request, getEntryVersion(request, entryId));
+      if (version != null && version.isNotModified(request)) {
+        return version.notModified();
+      }
       Entry entry = retrieveEntry(request, entryId);
       if (null == entry) {
         return sendNotFoundResponse(request);
       } else {
-        return sendResponse(request, entry.getDocument(), 200);
+        if (version == null) {
+          version = ResourceVersion.of(entry);
+          if (version.isNotModified(request)) {
+            return version.notModified();
+          }
+        }
+        return version.setHeaders(sendResponse(request, entry.getDocument(), 200));
       }
     } catch (FeedServerAdapterException e) {
       return sendErrorResponse(request, e);
@@ -112,9 +132,30 @@ public abstract class AbstractManagedCollectionAdapter extends ManagedCollection
 
   public ResponseContext getFeed(RequestContext request) {
     try {
-      Feed feed = retrieveFeed(request);
-      return feed != null ? sendResponse(request, feed.getDocument(), 200)
-          : sendNotFoundResponse(request);
+      PagingParameters paging = PagingParameters.fromRequest(request);
+      ResourceVersion version = forRequest(request, getFeedVersion(request));
+      if (version != null && version.isNotModified(request)) {
+        return version.notModified();
+      }
+      if (paging == null && isFeedStreamable(request)) {
+        ResponseContext response =
+            new StreamingFeedResponseContext(abdera, openFeedStream(request));
+        return version != null ? version.setHeaders(response) : response;
+      }
+      Feed feed = coalesceRetrieveFeed(request, paging);
+      if (feed == null) {
+        return sendNotFoundResponse(request);
+      }
+      if (paging != null) {
+        addPagingLinks(request, feed, paging);
+      }
+      if (version == null) {
+        version = ResourceVersion.of(feed);
+        if (version.isNotModified(request)) {
+          return version.notModified();
+        }
+      }
+      return version.setHeaders(sendResponse(request, feed.getDocument(), 200));
     } catch (FeedServerAdapterException e) {
       return sendErrorResponse(request, e);
     }
@@ -158,22 +199,38 @@ public abstract class AbstractManagedCollectionAdapter extends ManagedCollection
   }
 
   protected ResponseContext sendErrorResponse(RequestContext request, FeedServerAdapterException e) {
+    int status = getErrorStatus(e);
+    if (status == 500) {
+      return ProviderHelper.servererror(request, e.getMessage(), e);
+    }
+    return ProviderHelper.createErrorResponse(request.getAbdera(), status, e.getMessage());
+  }
+
+  /**
+   * Gets the HTTP status an exception is answered with, by
+   * {@link #sendErrorResponse(RequestContext, FeedServerAdapterException)} and
+   * in batch results
+   */
+  protected int getErrorStatus(FeedServerAdapterException e) {
     switch(e.getReason()) {
       case NOT_AUTHORIZED:
-        return ProviderHelper.forbidden(request, e.getMessage());
+        return 403;
 
       case ENTRY_DOES_NOT_EXIST:
-        return ProviderHelper.notfound(request, e.getMessage());
+        return 404;
 
       case ENTITY_DATA_INVALID:
       case INVALID_INPUT:
-        return ProviderHelper.badrequest(request, e.getMessage());
+        return 400;
 
       case ENTRY_ALREADY_EXISTS:
-        return ProviderHelper.conflict(request, e.getMessage());
+        return 409;
+
+      case SERVICE_UNAVAILABLE:
+        return 503;
 
       default:
-        return ProviderHelper.servererror(request, e.getMessage(), e);
+        return 500;
     }
   }
 
@@ -265,9 +322,177 @@ public abstract class AbstractManagedCollectionAdapter extends ManagedCollection
 
   @Override
   public ResponseContext extensionRequest(RequestContext request) {
+    if ("POST".equalsIgnoreCase(request.getMethod())
+        && request.getTarget().getType() == TargetType.TYPE_ENTRY
+        && BATCH_ENTRY.equals(getEntryId(request))) {
+      return postBatch(request);
+    }
     return ProviderHelper.notallowed(request, ProviderHelper.getDefaultMethods(request));
   }
 
+  /**
+   * Runs the operations of a batch request one after the other through this
+   * adapter, so that wrappers apply to each of them, between
+   * {@link #startBatch(RequestContext)} and
+   * {@link #endBatch(RequestContext, boolean)}. Failed operations do not stop
+   * the others unless the batch runs in one transaction; then the first
+   * failure rolls the batch back and all other operations are reported as
+   * not applied. The response has an entry with the status of each
+   * operation.
+   */
+  public ResponseContext postBatch(RequestContext request) {
+    List<Entry> inputEntries;
+    try {
+      Base input = request.getDocument(request.getAbdera().getParser()).getRoot();
+      if (!(input instanceof Feed)) {
+        return ProviderHelper.badrequest(request, "Batch request must be a feed");
+      }
+      inputEntries = ((Feed) input).getEntries();
+    } catch (IOException e) {
+      return sendErrorResponse(request, e);
+    }
+    int maxEntries = Integer.parseInt(FlagConfig.maxBatchEntries_FLAG);
+    if (inputEntries.size() > maxEntries) {
+      return ProviderHelper.badrequest(request, "Batch request has more than " + maxEntries
+          + " entries");
+    }
+
+    boolean atomic;
+    try {
+      atomic = startBatch(request);
+    } catch (FeedServerAdapterException e) {
+      return sendErrorResponse(request, e);
+    }
+    List<Entry> results = new ArrayList<Entry>();
+    int failedIndex = -1;
+    boolean completed = false;
+    try {
+      for (Entry inputEntry : inputEntries) {
+        try {
+          results.add(executeBatchEntry(request, inputEntry));
+        } catch (FeedServerAdapterException e) {
+          results.add(createBatchStatusEntry(inputEntry, null, getErrorStatus(e),
+              e.getMessage()));
+          if (atomic) {
+            failedIndex = results.size() - 1;
+            break;
+          }
+        }
+      }
+      completed = failedIndex < 0;
+    } finally {
+      if (!completed) {
+        try {
+          endBatch(request, false);
+        } catch (FeedServerAdapterException e) {
+          // the original failure is the one to report
+        }
+      }
+    }
+    if (completed) {
+      try {
+        endBatch(request, true);
+      } catch (FeedServerAdapterException e) {
+        return sendErrorResponse(request, e);
+      }
+    }
+
+    Feed feed = createFeed();
+    feed.declareNS(AtomBatch.NAMESPACE, AtomBatch.PREFIX);
+    for (int i = 0; i < inputEntries.size(); i++) {
+      if (failedIndex < 0 || i == failedIndex) {
+        feed.addEntry(results.get(i));
+      } else {
+        feed.addEntry(createBatchStatusEntry(inputEntries.get(i), null, 409,
+            "Not applied; the batch was rolled back after operation "
+            + AtomBatch.getId(inputEntries.get(failedIndex)) + " failed"));
+      }
+    }
+    return sendResponse(request, feed.getDocument(), 200);
+  }
+
+  /**
+   * Runs a single operation of a batch request
+   *
+   * @return The entry reporting the status of the operation
+   * @throws FeedServerAdapterException If the operation failed
+   */
+  private Entry executeBatchEntry(RequestContext request, Entry inputEntry)
+      throws FeedServerAdapterException {
+    String operation = AtomBatch.getOperation(inputEntry);
+    String entryId = AtomBatch.getEntryId(inputEntry);
+    Entry result;
+    if (AtomBatch.INSERT.equals(operation)) {
+      return createBatchStatusEntry(inputEntry, createEntry(request, inputEntry), 201,
+          "Created");
+    } else if (entryId == null) {
+      throw new FeedServerAdapterException(Reason.INVALID_INPUT,
+          "Entry has neither an edit link nor an id");
+    } else if (AtomBatch.UPDATE.equals(operation)) {
+      result = updateEntry(request, entryId, inputEntry);
+    } else if (AtomBatch.DELETE.equals(operation)) {
+      deleteEntry(request, entryId);
+      return createBatchStatusEntry(inputEntry, null, 200, "Success");
+    } else if (AtomBatch.QUERY.equals(operation)) {
+      result = retrieveEntry(request, entryId);
+    } else {
+      throw new FeedServerAdapterException(Reason.INVALID_INPUT,
+          "Unknown batch operation " + operation);
+    }
+    if (result == null) {
+      return createBatchStatusEntry(inputEntry, null, 404, "Not Found");
+    }
+    return createBatchStatusEntry(inputEntry, result, 200, "Success");
+  }
+
+  /**
+   * Creates the response entry of a batch operation
+   *
+   * @param result The entry the operation returned; null if none
+   */
+  private Entry createBatchStatusEntry(Entry inputEntry, Entry result, int code,
+      String reason) {
+    String entryId = AtomBatch.getEntryId(inputEntry);
+    Entry entry;
+    if (result != null) {
+      entry = (Entry) result.clone();
+    } else {
+      entry = abdera.newEntry();
+      if (entryId != null) {
+        entry.setId(createEntryIdUri(entryId));
+      }
+    }
+    AtomBatch.setStatus(entry, AtomBatch.getId(inputEntry), AtomBatch.getOperation(inputEntry),
+        code, reason);
+    return entry;
+  }
+
+  /**
+   * Called before the operations of a batch request run. Adapters that can
+   * run them together, e.g. in one transaction, start doing so here. Does
+   * nothing by default.
+   *
+   * @return True if the operations run in one transaction that
+   *         {@code endBatch(request, false)} rolls back
+   */
+  public boolean startBatch(RequestContext request) throws FeedServerAdapterException {
+    return false;
+  }
+
+  /**
+   * Called after the operations of a batch request have run, or after one
+   * failed in a batch that runs in one transaction, or after an unexpected
+   * exception
+   *
+   * @param completed Whether all operations have run and their results should
+   *        be kept
+   * @throws FeedServerAdapterException If the results cannot be kept; the
+   *         whole batch request fails then
+   */
+  public void endBatch(RequestContext request, boolean completed)
+      throws FeedServerAdapterException {
+  }
+
   @Override
   public ResponseContext getCategories(RequestContext request) {
     return ProviderHelper.notfound(request);
@@ -275,6 +500,146 @@ public abstract class AbstractManagedCollectionAdapter extends ManagedCollection
 
   public abstract Feed retrieveFeed(RequestContext request) throws FeedServerAdapterException;
 
+  /**
+   * Retrieves one page of the feed: the entries from
+   * {@link PagingParameters#getStartIndex()} on, at most
+   * {@link PagingParameters#getMaxResults()} of them. Adapters that can page
+   * in their backend override this; the default implementation retrieves the
+   * whole feed and drops the entries outside the page.
+   */
+  public Feed retrieveFeed(RequestContext request, PagingParameters paging)
+      throws FeedServerAdapterException {
+    Feed feed = retrieveFeed(request);
+    if (feed != null) {
+      List<Entry> entries = new ArrayList<Entry>(feed.getEntries());
+      long end = (long) paging.getSkip() + paging.getMaxResults();
+      for (int i = 0; i < entries.size(); i++) {
+        if (i < paging.getSkip() || i >= end) {
+          entries.get(i).discard();
+        }
+      }
+    }
+    return feed;
+  }
+
+  /**
+   * Retrieves the feed or page, sharing the retrieval with concurrent
+   * identical reads when {@link FlagConfig#coalesceFeedReadsMaxWaitMillis_FLAG}
+   * is set
+   */
+  private Feed coalesceRetrieveFeed(final RequestContext request, final PagingParameters paging)
+      throws FeedServerAdapterException {
+    FeedReadCoalescer.FeedRetrieval retrieval = new FeedReadCoalescer.FeedRetrieval() {
+      @Override
+      public Feed retrieveFeed() throws FeedServerAdapterException {
+        return paging == null ? AbstractManagedCollectionAdapter.this.retrieveFeed(request)
+            : AbstractManagedCollectionAdapter.this.retrieveFeed(request, paging);
+      }
+    };
+    long maxWaitMillis = Long.parseLong(FlagConfig.coalesceFeedReadsMaxWaitMillis_FLAG);
+    if (maxWaitMillis <= 0) {
+      return retrieval.retrieveFeed();
+    }
+    return feedReadCoalescer.retrieveFeed(getReadKey(request), maxWaitMillis,
+        abdera.getParser(), retrieval);
+  }
+
+  /**
+   * Gets the key under which identical feed reads are coalesced: the feed, the
+   * user and the request URI with its query
+   */
+  protected String getReadKey(RequestContext request) {
+    String user = getUserEmailForRequest(request);
+    return config.getFeedUri() + "\n" + (user == null ? "" : user) + "\n" + request.getUri();
+  }
+
+  public static FeedReadCoalescer getFeedReadCoalescer() {
+    return feedReadCoalescer;
+  }
+
+  /**
+   * Adds the {@code previous} and {@code next} links of a page. A next link is
+   * added when the page is full.
+   */
+  protected void addPagingLinks(RequestContext request, Feed feed, PagingParameters paging) {
+    PagingParameters previous = paging.previous();
+    if (previous != null) {
+      feed.addLink(previous.toUri(request), Link.REL_PREVIOUS);
+    }
+    if (paging.getMaxResults() > 0 && feed.getEntries().size() >= paging.getMaxResults()) {
+      feed.addLink(paging.next().toUri(request), Link.REL_NEXT);
+    }
+  }
+
+  /**
+   * Tells whether {@link #getFeed(RequestContext)} should stream the feed
+   * through {@link #openFeedStream(RequestContext)} instead of building it with
+   * {@link #retrieveFeed(RequestContext)}. Adapters that implement
+   * {@link #openFeedStream(RequestContext)} opt in by overriding this.
+   *
+   * @return false by default
+   */
+  public boolean isFeedStreamable(RequestContext request) {
+    return false;
+  }
+
+  /**
+   * Prepares a streamed retrieval of the feed. Everything that should fail the
+   * request with a proper status, such as access checks, has to happen here;
+   * the returned stream runs after the response status has been sent.
+   * <p>
+   * The default implementation retrieves the whole feed with
+   * {@link #retrieveFeed(RequestContext)} and replays its entries.
+   * </p>
+   */
+  public FeedStream openFeedStream(final RequestContext request)
+      throws FeedServerAdapterException {
+    final Feed feed = retrieveFeed(request);
+    if (feed == null) {
+      throw new FeedServerAdapterException(Reason.ENTRY_DOES_NOT_EXIST, "Feed not found");
+    }
+    return new FeedStream() {
+      @Override
+      public void writeTo(EntrySink sink) throws FeedServerAdapterException {
+        sink.startFeed(feed);
+        for (Entry entry : feed.getEntries()) {
+          sink.addEntry(entry);
+        }
+        sink.endFeed();
+      }
+    };
+  }
+
+  /**
+   * Probes the version of the feed without retrieving it, so that conditional
+   * GETs of an unchanged feed are answered before the backend is queried. The
+   * version must change whenever entries are added, changed or removed.
+   *
+   * @return null by default, in which case the version is computed from the
+   *         retrieved feed
+   */
+  public ResourceVersion getFeedVersion(RequestContext request)
+      throws FeedServerAdapterException {
+    return null;
+  }
+
+  /**
+   * Probes the version of an entry without retrieving it
+   *
+   * @return null by default, in which case the version is computed from the
+   *         retrieved entry
+   * @see #getFeedVersion(RequestContext)
+   */
+  public ResourceVersion getEntryVersion(RequestContext request, Object entryId)
+      throws FeedServerAdapterException {
+    return null;
+  }
+
+  private ResourceVersion forRequest(RequestContext request, ResourceVersion probedVersion) {
+    return probedVersion == null ? null
+        : probedVersion.forRequest(request, getUserEmailForRequest(request));
+  }
+
   public abstract Entry retrieveEntry(RequestContext request, Object entryId)
       throws FeedServerAdapterException;
 
@@ -339,11 +704,8 @@ public abstract class AbstractManagedCollectionAdapter extends ManagedCollection
       entry.setTitle("");
     }
     try {
-      entry.setContent(FeedServerUtil.getConfigurationAsXML(contentData), Content.Type.XML);
-    } catch (TransformerException e) {
-      throw new FeedServerAdapterException(
-          FeedServerAdapterException.Reason.BAD_RESPONSE_FROM_REMOTE_SERVER, e.getMessage());
-    } catch (ParserConfigurationException e) {
+      entry.setContent(EntityXmlWriter.toXml(contentData), Content.Type.XML);
+    } catch (IllegalArgumentException e) {
       throw new FeedServerAdapterException(
           FeedServerAdapterException.Reason.BAD_RESPONSE_FROM_REMOTE_SERVER, e.getMessage());
     }
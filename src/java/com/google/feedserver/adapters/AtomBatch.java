@@ -0,0 +1,129 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.google.feedserver.adapters;
+
+import org.apache.abdera.model.Element;
+import org.apache.abdera.model.Entry;
+import org.apache.abdera.model.Link;
+
+import javax.xml.namespace.QName;
+
+/**
+ * Elements of the GData batch extension. In a batch request each entry names
+ * its operation, and in the response each entry reports its status:
+ * <pre>
+ * &lt;entry&gt;
+ *   &lt;batch:id&gt;1&lt;/batch:id&gt;
+ *   &lt;batch:operation type="update"/&gt;
+ *   &lt;batch:status code="200" reason="Success"/&gt;
+ *   ...
+ * &lt;/entry&gt;
+ * </pre>
+ * Entries without an operation are inserted. Updates, deletes and queries
+ * identify the entry by the last segment of its edit link or, without one,
+ * of its id.
+ */
+public class AtomBatch {
+
+  public static final String NAMESPACE = "http://schemas.google.com/gdata/batch";
+  public static final String PREFIX = "batch";
+
+  public static final QName ID = new QName(NAMESPACE, "id", PREFIX);
+  public static final QName OPERATION = new QName(NAMESPACE, "operation", PREFIX);
+  public static final QName STATUS = new QName(NAMESPACE, "status", PREFIX);
+
+  public static final String ATTRIBUTE_TYPE = "type";
+  public static final String ATTRIBUTE_CODE = "code";
+  public static final String ATTRIBUTE_REASON = "reason";
+
+  public static final String INSERT = "insert";
+  public static final String UPDATE = "update";
+  public static final String DELETE = "delete";
+  public static final String QUERY = "query";
+
+  private AtomBatch() {
+  }
+
+  /**
+   * Gets the operation of a request entry
+   *
+   * @return The operation; {@link #INSERT} if the entry has none
+   */
+  public static String getOperation(Entry entry) {
+    Element operation = entry.getExtension(OPERATION);
+    String type = operation == null ? null : operation.getAttributeValue(ATTRIBUTE_TYPE);
+    return type == null ? INSERT : type;
+  }
+
+  /**
+   * Gets the client's id of a request entry, echoed in the response
+   *
+   * @return The id; null if the entry has none
+   */
+  public static String getId(Entry entry) {
+    return entry.getSimpleExtension(ID);
+  }
+
+  /**
+   * Gets the id of the entry an update, delete or query is for
+   *
+   * @return The entry id; null if the entry has neither an edit link nor an id
+   */
+  public static String getEntryId(Entry entry) {
+    Link editLink = entry.getEditLink();
+    String uri = null;
+    if (editLink != null && editLink.getHref() != null) {
+      uri = editLink.getHref().toString();
+    } else if (entry.getId() != null) {
+      uri = entry.getId().toString();
+    }
+    if (uri == null) {
+      return null;
+    }
+    String id = uri.substring(uri.lastIndexOf('/') + 1);
+    return id.length() == 0 ? null : id;
+  }
+
+  /**
+   * Marks a response entry with the client's id, the operation and its
+   * status
+   */
+  public static void setStatus(Entry entry, String id, String operation, int code,
+      String reason) {
+    if (id != null) {
+      entry.addSimpleExtension(ID, id);
+    }
+    entry.addExtension(OPERATION).setAttributeValue(ATTRIBUTE_TYPE, operation);
+    Element status = entry.addExtension(STATUS);
+    status.setAttributeValue(ATTRIBUTE_CODE, Integer.toString(code));
+    if (reason != null) {
+      status.setAttributeValue(ATTRIBUTE_REASON, reason);
+    }
+  }
+
+  /**
+   * Gets the status code of a response entry
+   *
+   * @return The code; -1 if the entry has no status
+   */
+  public static int getStatusCode(Entry entry) {
+    Element status = entry.getExtension(STATUS);
+    String code = status == null ? null : status.getAttributeValue(ATTRIBUTE_CODE);
+    return code == null ? -1 : Integer.parseInt(code);
+  }
+}
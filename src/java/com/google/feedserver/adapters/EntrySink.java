@@ -0,0 +1,46 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.feedserver.adapters;
+
+import org.apache.abdera.model.Entry;
+import org.apache.abdera.model.Feed;
+
+/**
+ * Receives the entries of a streamed feed one at a time. Calls are made in the
+ * order {@link #startFeed(Feed)}, any number of {@link #addEntry(Entry)} and
+ * {@link #endFeed()}.
+ */
+public interface EntrySink {
+
+  /**
+   * Starts the feed
+   *
+   * @param feed The feed holding the feed level elements such as id, title and
+   *        author; entries it holds are ignored
+   */
+  void startFeed(Feed feed) throws FeedServerAdapterException;
+
+  /**
+   * Adds an entry to the feed. The entry is not used after this call returns.
+   */
+  void addEntry(Entry entry) throws FeedServerAdapterException;
+
+  /**
+   * Ends the feed
+   */
+  void endFeed() throws FeedServerAdapterException;
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.feedserver.adapters;
+
+import org.apache.abdera.model.Feed;
+import org.apache.abdera.parser.Parser;
+
+import java.io.StringReader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lets concurrent identical feed reads share a single retrieval. The first
+ * request for a key retrieves the feed; requests for the same key arriving
+ * while it is in flight wait for it and get their own copy of its result, or
+ * of its error.
+ * <p>
+ * Waiting is bounded so that a slow backend does not hold every request
+ * thread; requests that time out fail with
+ * {@link FeedServerAdapterException.Reason#SERVICE_UNAVAILABLE}.
+ * </p>
+ */
+public class FeedReadCoalescer {
+
+  /**
+   * Retrieves the feed for the request that leads a read
+   */
+  public interface FeedRetrieval {
+    Feed retrieveFeed() throws FeedServerAdapterException;
+  }
+
+  private static class Flight {
+    final CountDownLatch done = new CountDownLatch(1);
+    private int followers;
+    private boolean closed;
+
+    // written before done is counted down
+    boolean found;
+    String serializedFeed;
+    FeedServerAdapterException error;
+    RuntimeException runtimeError;
+
+    /**
+     * @return false if the result is no longer shared
+     */
+    synchronized boolean join() {
+      if (closed) {
+        return false;
+      }
+      followers++;
+      return true;
+    }
+
+    /**
+     * @return The number of requests waiting for the result
+     */
+    synchronized int close() {
+      closed = true;
+      return followers;
+    }
+  }
+
+  private final ConcurrentMap<String, Flight> flights = new ConcurrentHashMap<String, Flight>();
+
+  private final AtomicLong leaderCount = new AtomicLong();
+  private final AtomicLong followerCount = new AtomicLong();
+  private final AtomicLong timeoutCount = new AtomicLong();
+
+  /**
+   * Retrieves a feed, sharing the retrieval with concurrent requests for the
+   * same key
+   *
+   * @param key Identifies the read: the feed, the query and everything that
+   *        decides what the requester may see
+   * @param maxWaitMillis How long to wait for a retrieval in flight
+   * @param parser Parser for the copies of a shared result
+   * @param retrieval Retrieves the feed if no retrieval is in flight
+   * @return The feed; null if it does not exist
+   */
+  public Feed retrieveFeed(String key, long maxWaitMillis, Parser parser,
+      FeedRetrieval retrieval) throws FeedServerAdapterException {
+    Flight flight = new Flight();
+    Flight inFlight = flights.putIfAbsent(key, flight);
+    if (inFlight != null && inFlight.join()) {
+      followerCount.incrementAndGet();
+      return awaitResult(inFlight, maxWaitMillis, parser);
+    }
+    if (inFlight != null) {
+      // the flight is ending; lead a new one
+      flights.remove(key, inFlight);
+      flights.putIfAbsent(key, flight);
+    }
+    leaderCount.incrementAndGet();
+    return lead(key, flight, retrieval);
+  }
+
+  private Feed lead(String key, Flight flight, FeedRetrieval retrieval)
+      throws FeedServerAdapterException {
+    Feed feed = null;
+    try {
+      feed = retrieval.retrieveFeed();
+      return feed;
+    } catch (FeedServerAdapterException e) {
+      flight.error = e;
+      throw e;
+    } catch (RuntimeException e) {
+      flight.runtimeError = e;
+      throw e;
+    } finally {
+      flights.remove(key, flight);
+      if (flight.close() > 0 && feed != null) {
+        // serialized before the leader's request gets to modify the feed
+        flight.found = true;
+        flight.serializedFeed = feed.toString();
+      }
+      flight.done.countDown();
+    }
+  }
+
+  private Feed awaitResult(Flight flight, long maxWaitMillis, Parser parser)
+      throws FeedServerAdapterException {
+    try {
+      if (!flight.done.await(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+        timeoutCount.incrementAndGet();
+        throw new FeedServerAdapterException(
+            FeedServerAdapterException.Reason.SERVICE_UNAVAILABLE,
+            "Timed out waiting for the feed to be retrieved");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new FeedServerAdapterException(
+          FeedServerAdapterException.Reason.SERVICE_UNAVAILABLE, "Interrupted");
+    }
+    if (flight.error != null) {
+      throw flight.error;
+    }
+    if (flight.runtimeError != null) {
+      throw flight.runtimeError;
+    }
+    if (!flight.found) {
+      return null;
+    }
+    return parser.<Feed>parse(new StringReader(flight.serializedFeed)).getRoot();
+  }
+
+  /**
+   * Gets the number of retrievals in flight
+   */
+  public int size() {
+    return flights.size();
+  }
+
+  public long getLeaderCount() {
+    return leaderCount.get();
+  }
+
+  public long getFollowerCount() {
+    return followerCount.get();
+  }
+
+  public long getTimeoutCount() {
+    return timeoutCount.get();
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "[inFlight=" + size() + ", leaders="
+        + getLeaderCount() + ", followers=" + getFollowerCount() + ", timeouts="
+        + getTimeoutCount() + "]";
+  }
+}
@@ -34,7 +34,7 @@ public class FeedServerAdapterException extends Exception {
    */
   public enum Reason {
     OK(0), OPERATION_NOT_SUPPORTED(50),
-    COMMUNICATION_FAILURE(100), IO_ERROR(101),
+    COMMUNICATION_FAILURE(100), IO_ERROR(101), SERVICE_UNAVAILABLE(102),
     REMOTE_SERVER_ERROR(200), BAD_RESPONSE_FROM_REMOTE_SERVER(201),
     ENTRY_ALREADY_EXISTS(300), ENTRY_DOES_NOT_EXIST(301),
     INVALID_INPUT(400), NOT_AUTHORIZED(402),
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.feedserver.adapters;
+
+/**
+ * A feed retrieval that has been checked and is ready to push its entries to
+ * an {@link EntrySink}.
+ *
+ * @see AbstractManagedCollectionAdapter#openFeedStream(org.apache.abdera.protocol.server.RequestContext)
+ */
+public interface FeedStream {
+
+  /**
+   * Retrieves the feed and pushes it to {@code sink}. Called at most once,
+   * while the response is being written.
+   */
+  void writeTo(EntrySink sink) throws FeedServerAdapterException;
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.feedserver.adapters;
+
+import org.apache.abdera.model.Entry;
+import org.apache.abdera.model.Feed;
+
+/**
+ * An {@link EntrySink} that passes everything on to another sink. Wrappers
+ * extend it to filter or transform entries of a streamed feed, for example by
+ * not calling {@code super.addEntry} for entries the user may not see.
+ */
+public class ForwardingEntrySink implements EntrySink {
+  protected final EntrySink delegate;
+
+  public ForwardingEntrySink(EntrySink delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public void startFeed(Feed feed) throws FeedServerAdapterException {
+    delegate.startFeed(feed);
+  }
+
+  @Override
+  public void addEntry(Entry entry) throws FeedServerAdapterException {
+    delegate.addEntry(entry);
+  }
+
+  @Override
+  public void endFeed() throws FeedServerAdapterException {
+    delegate.endFeed();
+  }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.feedserver.adapters;
+
+import org.apache.abdera.protocol.server.RequestContext;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.List;
+
+/**
+ * The page of a feed asked for with the {@code start-index} and
+ * {@code max-results} query parameters. Indexes are 1-based, as in GData.
+ */
+public class PagingParameters {
+
+  public static final String PARAM_START_INDEX = "start-index";
+  public static final String PARAM_MAX_RESULTS = "max-results";
+
+  /**
+   * Page size used when only {@code start-index} is given, matching the step
+   * of the command line directory listings
+   */
+  public static final int DEFAULT_MAX_RESULTS = 20;
+
+  private final int startIndex;
+  private final int maxResults;
+
+  public PagingParameters(int startIndex, int maxResults) {
+    if (startIndex < 1) {
+      throw new IllegalArgumentException(PARAM_START_INDEX + " must be at least 1");
+    }
+    if (maxResults < 0) {
+      throw new IllegalArgumentException(PARAM_MAX_RESULTS + " must not be negative");
+    }
+    this.startIndex = startIndex;
+    this.maxResults = maxResults;
+  }
+
+  /**
+   * Gets the paging parameters of a request
+   *
+   * @return The paging parameters; null if the request has neither
+   *         {@code start-index} nor {@code max-results}
+   * @throws FeedServerAdapterException If a parameter is not a valid number
+   */
+  public static PagingParameters fromRequest(RequestContext request)
+      throws FeedServerAdapterException {
+    String startIndex = request.getParameter(PARAM_START_INDEX);
+    String maxResults = request.getParameter(PARAM_MAX_RESULTS);
+    if (startIndex == null && maxResults == null) {
+      return null;
+    }
+    try {
+      return new PagingParameters(startIndex == null ? 1 : Integer.parseInt(startIndex.trim()),
+          maxResults == null ? DEFAULT_MAX_RESULTS : Integer.parseInt(maxResults.trim()));
+    } catch (NumberFormatException e) {
+      throw new FeedServerAdapterException(FeedServerAdapterException.Reason.INVALID_INPUT,
+          "Invalid paging parameter: " + e.getMessage());
+    } catch (IllegalArgumentException e) {
+      throw new FeedServerAdapterException(FeedServerAdapterException.Reason.INVALID_INPUT,
+          e.getMessage());
+    }
+  }
+
+  /**
+   * Gets the 1-based index of the first entry of the page
+   */
+  public int getStartIndex() {
+    return startIndex;
+  }
+
+  /**
+   * Gets the number of entries to skip before the page
+   */
+  public int getSkip() {
+    return startIndex - 1;
+  }
+
+  public int getMaxResults() {
+    return maxResults;
+  }
+
+  /**
+   * Gets the parameters of the page after this one
+   */
+  public PagingParameters next() {
+    return new PagingParameters(
+        (int) Math.min((long) startIndex + maxResults, Integer.MAX_VALUE), maxResults);
+  }
+
+  /**
+   * Gets the parameters of the page before this one
+   *
+   * @return The previous page; null if this is the first page
+   */
+  public PagingParameters previous() {
+    if (startIndex == 1) {
+      return null;
+    }
+    return new PagingParameters(Math.max(1, startIndex - maxResults), maxResults);
+  }
+
+  /**
+   * Keeps the entries of this page out of all entries of the feed
+   *
+   * @return The entries of the page, backed by {@code all}
+   */
+  public <T> List<T> slice(List<T> all) {
+    int from = Math.min(getSkip(), all.size());
+    int to = (int) Math.min((long) from + maxResults, all.size());
+    return all.subList(from, to);
+  }
+
+  /**
+   * Gets the URI of this page of the requested feed, keeping the other query
+   * parameters of the request
+   */
+  public String toUri(RequestContext request) {
+    String uri = request.getResolvedUri().toString();
+    int queryStart = uri.indexOf('?');
+    StringBuilder builder =
+        new StringBuilder(queryStart < 0 ? uri : uri.substring(0, queryStart));
+    char separator = '?';
+    for (String name : request.getParameterNames()) {
+      if (PARAM_START_INDEX.equals(name) || PARAM_MAX_RESULTS.equals(name)) {
+        continue;
+      }
+      for (String value : request.getParameters(name)) {
+        builder.append(separator).append(encode(name)).append('=').append(encode(value));
+        separator = '&';
+      }
+    }
+    return builder.append(separator).append(this).toString();
+  }
+
+  private static String encode(String value) {
+    try {
+      return URLEncoder.encode(value, AbstractManagedCollectionAdapter.ENCODING_UTF_8);
+    } catch (UnsupportedEncodingException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return PARAM_START_INDEX + "=" + startIndex + "&" + PARAM_MAX_RESULTS + "=" + maxResults;
+  }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.feedserver.adapters;
+
+import org.apache.abdera.model.Entry;
+import org.apache.abdera.model.Feed;
+import org.apache.abdera.protocol.server.RequestContext;
+import org.apache.abdera.protocol.server.ResponseContext;
+import org.apache.abdera.protocol.server.context.EmptyResponseContext;
+import org.apache.abdera.util.EntityTag;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+
+/**
+ * The validators of a feed or entry: an entity tag and/or a last modification
+ * date. They answer conditional GETs ({@code If-None-Match} and
+ * {@code If-Modified-Since}) with 304 Not Modified.
+ * <p>
+ * Versions either come from a cheap adapter probe before the backend is
+ * queried, or are computed from the retrieved feed or entry before it is
+ * serialized.
+ * </p>
+ */
+public class ResourceVersion {
+
+  public static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+
+  private final EntityTag entityTag;
+  private final Date lastModified;
+
+  /**
+   * @param entityTag The entity tag, strong or weak; may be null
+   * @param lastModified The last modification date; may be null
+   */
+  public ResourceVersion(EntityTag entityTag, Date lastModified) {
+    this.entityTag = entityTag;
+    // HTTP dates have a resolution of seconds
+    this.lastModified =
+        lastModified == null ? null : new Date(lastModified.getTime() / 1000 * 1000);
+  }
+
+  /**
+   * Creates a version with a weak entity tag computed from the given parts
+   */
+  public static ResourceVersion weak(Date lastModified, Object... parts) {
+    Digest digest = new Digest();
+    for (Object part : parts) {
+      digest.update(part);
+    }
+    return new ResourceVersion(new EntityTag(digest.toString(), true), lastModified);
+  }
+
+  /**
+   * Computes the version of a retrieved feed from its id, title and
+   * {@code updated} date and from the ids, titles, contents and
+   * {@code updated} dates of its entries, so that a change to any entry shows
+   * even if its content does not. The tag is weak because it is computed from
+   * these parts rather than from the serialized feed. No last modification
+   * date is given since removed entries would not show in it.
+   */
+  public static ResourceVersion of(Feed feed) {
+    Digest digest = new Digest();
+    digest.update(feed.getId());
+    digest.update(feed.getTitle());
+    update(digest, feed.getUpdated());
+    for (Entry entry : feed.getEntries()) {
+      update(digest, entry);
+      update(digest, entry.getUpdated());
+    }
+    return new ResourceVersion(new EntityTag(digest.toString(), true), null);
+  }
+
+  /**
+   * Computes the version of a retrieved entry from its id, title and content,
+   * with the entry's {@code updated} date as last modification date
+   */
+  public static ResourceVersion of(Entry entry) {
+    Digest digest = new Digest();
+    update(digest, entry);
+    return new ResourceVersion(new EntityTag(digest.toString(), true), entry.getUpdated());
+  }
+
+  private static void update(Digest digest, Entry entry) {
+    digest.update(entry.getId());
+    digest.update(entry.getTitle());
+    digest.update(entry.getContent());
+  }
+
+  private static void update(Digest digest, Date date) {
+    digest.update(date == null ? null : Long.valueOf(date.getTime()));
+  }
+
+  public EntityTag getEntityTag() {
+    return entityTag;
+  }
+
+  public Date getLastModified() {
+    return lastModified;
+  }
+
+  /**
+   * Narrows a version probed for a whole feed or entry to the requested
+   * representation, which also depends on the query parameters and, through
+   * access control, on the user
+   */
+  public ResourceVersion forRequest(RequestContext request, String user) {
+    if (entityTag == null) {
+      return this;
+    }
+    Digest digest = new Digest();
+    digest.update(entityTag.getTag());
+    digest.update(request.getUri());
+    digest.update(user);
+    return new ResourceVersion(new EntityTag(digest.toString(), entityTag.isWeak()),
+        lastModified);
+  }
+
+  /**
+   * Tells whether the client already has this version. {@code If-None-Match}
+   * takes precedence over {@code If-Modified-Since}; tags are compared weakly.
+   */
+  public boolean isNotModified(RequestContext request) {
+    String ifNoneMatch = request.getHeader(HEADER_IF_NONE_MATCH);
+    if (ifNoneMatch != null) {
+      if (entityTag == null) {
+        return false;
+      }
+      for (EntityTag tag : EntityTag.parseTags(ifNoneMatch)) {
+        if (tag.isWild() || entityTag.getTag().equals(tag.getTag())) {
+          return true;
+        }
+      }
+      return false;
+    }
+    Date ifModifiedSince = request.getIfModifiedSince();
+    return lastModified != null && ifModifiedSince != null
+        && !lastModified.after(ifModifiedSince);
+  }
+
+  /**
+   * Adds the validators to a response
+   */
+  public ResponseContext setHeaders(ResponseContext response) {
+    if (entityTag != null) {
+      response.setEntityTag(entityTag);
+    }
+    if (lastModified != null) {
+      response.setLastModified(lastModified);
+    }
+    return response;
+  }
+
+  /**
+   * Creates the 304 Not Modified response for this version
+   */
+  public ResponseContext notModified() {
+    return setHeaders(new EmptyResponseContext(304));
+  }
+
+  @Override
+  public String toString() {
+    return "[entityTag=" + entityTag + ", lastModified=" + lastModified + "]";
+  }
+
+  /**
+   * MD5 over a sequence of values, each terminated so that ("ab", "c") and
+   * ("a", "bc") differ
+   */
+  private static class Digest {
+    private final MessageDigest md5;
+
+    Digest() {
+      try {
+        md5 = MessageDigest.getInstance("MD5");
+      } catch (NoSuchAlgorithmException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    void update(Object value) {
+      if (value != null) {
+        try {
+          md5.update(value.toString().getBytes(AbstractManagedCollectionAdapter.ENCODING_UTF_8));
+        } catch (UnsupportedEncodingException e) {
+          throw new RuntimeException(e);
+        }
+      }
+      md5.update((byte) 0);
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder hex = new StringBuilder();
+      for (byte b : md5.digest()) {
+        hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+      }
+      return hex.toString();
+    }
+  }
+}
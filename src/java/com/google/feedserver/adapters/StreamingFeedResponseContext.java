@@ -0,0 +1,174 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.feedserver.adapters;
+
+import org.apache.abdera.Abdera;
+import org.apache.abdera.model.Entry;
+import org.apache.abdera.model.Feed;
+import org.apache.abdera.protocol.server.context.SimpleResponseContext;
+import org.apache.abdera.util.Constants;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes a {@link FeedStream} to the response as it is being produced. The feed
+ * level elements are serialized by Abdera like those of any other feed, and
+ * each entry is serialized as soon as the adapter hands it over, so neither
+ * the rows nor the entries of the whole feed are held in memory.
+ * <p>
+ * The feed is produced while the response body is written, after the status
+ * has been sent. Errors at that point can only abort the response.
+ * </p>
+ */
+public class StreamingFeedResponseContext extends SimpleResponseContext {
+
+  private static final Logger logger =
+      Logger.getLogger(StreamingFeedResponseContext.class.getName());
+
+  private final FeedStream feedStream;
+
+  private final List<Runnable> afterWriting = new CopyOnWriteArrayList<Runnable>();
+
+  private final AtomicBoolean released = new AtomicBoolean();
+
+  public StreamingFeedResponseContext(Abdera abdera, FeedStream feedStream) {
+    super(AbstractManagedCollectionAdapter.ENCODING_UTF_8);
+    this.feedStream = feedStream;
+    setStatus(200);
+    setContentType(Constants.FEED_MEDIA_TYPE);
+  }
+
+  /**
+   * Runs {@code task} once the body has been written or writing it failed, or
+   * on {@link #release()} if the body is never written. Resources the feed
+   * retrieval needs, such as the admission of the request, are released this
+   * way since the retrieval only runs while the body is written.
+   */
+  public void runAfterWriting(Runnable task) {
+    afterWriting.add(task);
+  }
+
+  /**
+   * Runs the tasks registered with {@link #runAfterWriting(Runnable)} unless
+   * they have run already. Whoever hands this response to the client calls it
+   * once done with the response, so that a body that is never written, for
+   * example because the client went away first, still releases them.
+   */
+  public void release() {
+    if (released.compareAndSet(false, true)) {
+      for (Runnable task : afterWriting) {
+        task.run();
+      }
+    }
+  }
+
+  @Override
+  public boolean hasEntity() {
+    return true;
+  }
+
+  @Override
+  protected void writeEntity(Writer writer) throws IOException {
+    try {
+      feedStream.writeTo(new WriterSink(writer));
+    } catch (FeedServerAdapterException e) {
+      logger.log(Level.WARNING, "Aborting streamed feed: " + e.getMessage(), e);
+      IOException ioException = new IOException(e.getMessage());
+      ioException.initCause(e);
+      throw ioException;
+    } finally {
+      release();
+    }
+  }
+
+  /**
+   * Writes the feed without entries up to its end tag, then each entry, then
+   * the end tag
+   */
+  private static class WriterSink implements EntrySink {
+    private final Writer writer;
+    private String feedEndTag;
+
+    WriterSink(Writer writer) {
+      this.writer = writer;
+    }
+
+    @Override
+    public void startFeed(Feed feed) throws FeedServerAdapterException {
+      if (!feed.getEntries().isEmpty()) {
+        feed = (Feed) feed.clone();
+        for (Entry entry : feed.getEntries()) {
+          entry.discard();
+        }
+      }
+      if (feed.getUpdated() == null) {
+        // a feed element with no children would be serialized as an empty
+        // element, which has no end tag to split at
+        feed.setUpdated(new Date());
+      }
+      StringWriter header = new StringWriter();
+      try {
+        feed.writeTo(header);
+      } catch (IOException e) {
+        throw new FeedServerAdapterException(FeedServerAdapterException.Reason.IO_ERROR,
+            e.getMessage());
+      }
+      String serialized = header.toString();
+      int endTagStart = serialized.lastIndexOf("</");
+      feedEndTag = serialized.substring(endTagStart);
+      write(serialized.substring(0, endTagStart));
+    }
+
+    @Override
+    public void addEntry(Entry entry) throws FeedServerAdapterException {
+      try {
+        entry.writeTo(writer);
+      } catch (IOException e) {
+        throw new FeedServerAdapterException(FeedServerAdapterException.Reason.IO_ERROR,
+            e.getMessage());
+      }
+    }
+
+    @Override
+    public void endFeed() throws FeedServerAdapterException {
+      write(feedEndTag);
+      try {
+        writer.flush();
+      } catch (IOException e) {
+        throw new FeedServerAdapterException(FeedServerAdapterException.Reason.IO_ERROR,
+            e.getMessage());
+      }
+    }
+
+    private void write(String text) throws FeedServerAdapterException {
+      try {
+        writer.write(text);
+      } catch (IOException e) {
+        throw new FeedServerAdapterException(FeedServerAdapterException.Reason.IO_ERROR,
+            e.getMessage());
+      }
+    }
+  }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.google.feedserver.authentication;
+
+import com.google.feedserver.authentication.TokenManagerException.Reason;
+import com.google.feedserver.server.FlagConfig;
+import com.google.inject.Singleton;
+
+import org.apache.commons.codec.DecoderException;
+import org.apache.commons.codec.binary.Hex;
+
+import java.io.UnsupportedEncodingException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * A {@link TokenManager} issuing self-validating tokens: the user email,
+ * service name and expiry time, signed with HMAC-SHA256. Validation needs no
+ * state besides the key, so tokens issued by one server are accepted by every
+ * server sharing the key and nothing is kept per issued token.
+ * <p>
+ * Tokens have the form {@code hex(email:service:expiresAtMillis).hex(hmac)}.
+ * {@link Mac} instances are pooled rather than created per request. Tokens
+ * can be revoked before they expire; the revocation set is bounded and
+ * forgets tokens once they have expired.
+ * </p>
+ */
+@Singleton
+public class HmacTokenManager implements TokenManager {
+
+  private static final Logger logger = Logger.getLogger(HmacTokenManager.class.getName());
+
+  public static final String ALGORITHM = "HmacSHA256";
+  public static final int RANDOM_KEY_LENGTH = 32;
+  private static final String ENCODING = "UTF-8";
+  private static final char SEPARATOR = '.';
+
+  private final SecretKeySpec key;
+  private final long lifetimeMillis;
+  private final int maxRevoked;
+
+  /**
+   * Initialized {@link Mac}s not in use; a {@code Mac} is not thread safe
+   * but can be reused once {@code doFinal} has returned
+   */
+  private final Queue<Mac> macs = new ConcurrentLinkedQueue<Mac>();
+
+  /**
+   * Signature of revoked token -> its expiry time
+   */
+  private final ConcurrentMap<String, Long> revoked = new ConcurrentHashMap<String, Long>();
+
+  /**
+   * Creates a token manager configured with the {@code authTokenKey},
+   * {@code authTokenLifetimeSeconds} and {@code authTokenMaxRevoked} flags
+   */
+  public HmacTokenManager() {
+    this(getKeyFromFlag(), Long.parseLong(FlagConfig.authTokenLifetimeSeconds_FLAG) * 1000,
+        Integer.parseInt(FlagConfig.authTokenMaxRevoked_FLAG));
+  }
+
+  /**
+   * @param key The signing key, shared by all servers accepting the tokens
+   * @param lifetimeMillis How long issued tokens are valid
+   * @param maxRevoked Maximum number of unexpired revoked tokens; 0 disables
+   *        revocation
+   */
+  public HmacTokenManager(byte[] key, long lifetimeMillis, int maxRevoked) {
+    this.key = new SecretKeySpec(key, ALGORITHM);
+    this.lifetimeMillis = lifetimeMillis;
+    this.maxRevoked = maxRevoked;
+  }
+
+  private static byte[] getKeyFromFlag() {
+    if (FlagConfig.authTokenKey_FLAG.length() == 0) {
+      logger.warning("No authTokenKey given; using a random key, so auth tokens are only " +
+          "accepted by this server until it restarts");
+      byte[] key = new byte[RANDOM_KEY_LENGTH];
+      new SecureRandom().nextBytes(key);
+      return key;
+    }
+    return getBytes(FlagConfig.authTokenKey_FLAG);
+  }
+
+  @Override
+  public String generateAuthzToken(HttpServletRequest request) throws TokenManagerException {
+    String email = request.getParameter("Email");
+    String service = request.getParameter("service");
+    if (email == null || service == null) {
+      throw new TokenManagerException("Email and service are required", Reason.UN_AUTHORIZED,
+          null);
+    }
+    return generateAuthzToken(email, service, System.currentTimeMillis() + lifetimeMillis);
+  }
+
+  /**
+   * Generates a token for the user and service that expires at the given time
+   */
+  public String generateAuthzToken(String email, String service, long expiresAt)
+      throws TokenManagerException {
+    byte[] payload = getBytes(email + ":" + service + ":" + expiresAt);
+    return new StringBuilder().append(Hex.encodeHex(payload)).append(SEPARATOR)
+        .append(Hex.encodeHex(sign(payload))).toString();
+  }
+
+  @Override
+  public boolean validateAuthzToken(HttpServletRequest request) throws TokenManagerException {
+    String authZHeader = request.getHeader("Authorization");
+    if (authZHeader == null) {
+      return false;
+    }
+    int authIndex = authZHeader.indexOf("auth");
+    if (authIndex < 0) {
+      return false;
+    }
+    String authTokenString = authZHeader.substring(authIndex);
+    return validateAuthzToken(authTokenString.substring(authTokenString.indexOf('=') + 1).trim());
+  }
+
+  /**
+   * Validates a token
+   *
+   * @return True if the token was signed with this manager's key, has not
+   *         expired and has not been revoked
+   */
+  public boolean validateAuthzToken(String token) throws TokenManagerException {
+    int separator = token.indexOf(SEPARATOR);
+    if (separator < 0) {
+      return false;
+    }
+    byte[] payload;
+    byte[] signatureBytes;
+    try {
+      payload = Hex.decodeHex(token.substring(0, separator).toCharArray());
+      signatureBytes = Hex.decodeHex(token.substring(separator + 1).toCharArray());
+    } catch (DecoderException e) {
+      return false;
+    }
+    if (!MessageDigest.isEqual(sign(payload), signatureBytes)) {
+      return false;
+    }
+    long expiresAt = getExpiresAt(payload);
+    if (expiresAt < System.currentTimeMillis()) {
+      return false;
+    }
+    return revoked.isEmpty() || !revoked.containsKey(getRevocationKey(signatureBytes));
+  }
+
+  /**
+   * Revokes a valid token until it expires
+   *
+   * @return False if the token is not valid or the revocation set is full
+   */
+  public boolean revoke(String token) throws TokenManagerException {
+    if (maxRevoked <= 0 || !validateAuthzToken(token)) {
+      return false;
+    }
+    if (revoked.size() >= maxRevoked) {
+      removeExpiredRevocations();
+      if (revoked.size() >= maxRevoked) {
+        logger.warning("Cannot revoke auth token; " + maxRevoked + " tokens already revoked");
+        return false;
+      }
+    }
+    int separator = token.indexOf(SEPARATOR);
+    try {
+      revoked.put(getRevocationKey(Hex.decodeHex(token.substring(separator + 1).toCharArray())),
+          getExpiresAt(Hex.decodeHex(token.substring(0, separator).toCharArray())));
+    } catch (DecoderException e) {
+      return false;
+    }
+    return true;
+  }
+
+  public int getRevokedCount() {
+    return revoked.size();
+  }
+
+  private void removeExpiredRevocations() {
+    long now = System.currentTimeMillis();
+    for (Iterator<Map.Entry<String, Long>> i = revoked.entrySet().iterator(); i.hasNext();) {
+      if (i.next().getValue() < now) {
+        i.remove();
+      }
+    }
+  }
+
+  /**
+   * Gets the key of a token in the revocation set. The hex text of a token
+   * can be written in several ways, so the key is derived from the decoded
+   * signature.
+   */
+  private static String getRevocationKey(byte[] signatureBytes) {
+    return new String(Hex.encodeHex(signatureBytes));
+  }
+
+  private static long getExpiresAt(byte[] payload) {
+    try {
+      String value = new String(payload, ENCODING);
+      return Long.parseLong(value.substring(value.lastIndexOf(':') + 1));
+    } catch (UnsupportedEncodingException e) {
+      throw new RuntimeException(e);
+    } catch (NumberFormatException e) {
+      return Long.MIN_VALUE;
+    }
+  }
+
+  private byte[] sign(byte[] payload) throws TokenManagerException {
+    Mac mac = macs.poll();
+    if (mac == null) {
+      try {
+        mac = Mac.getInstance(ALGORITHM);
+        mac.init(key);
+      } catch (GeneralSecurityException e) {
+        throw new TokenManagerException("Problem encountered while signing the token",
+            Reason.UNEXPECTED_ERROR, e);
+      }
+    }
+    try {
+      return mac.doFinal(payload);
+    } finally {
+      macs.offer(mac);
+    }
+  }
+
+  private static byte[] getBytes(String value) {
+    try {
+      return value.getBytes(ENCODING);
+    } catch (UnsupportedEncodingException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
@@ -16,6 +16,7 @@
 
 package com.google.feedserver.authentication;
 
+import com.google.feedserver.server.FlagConfig;
 import com.google.inject.Binder;
 import com.google.inject.Module;
 import com.google.inject.Scopes;
@@ -25,7 +26,8 @@ import com.google.inject.Scopes;
  * instance.
  * <p>
  * By default {@link SampleTokenManager} is configured as the concrete
- * {@link TokenManager} instance.
+ * {@link TokenManager} instance; {@link HmacTokenManager} when the
+ * {@code hmacAuthTokens} flag is true.
  * </p>
  * 
  * @author rakeshs101981@gmail.com (Rakesh Shete)
@@ -34,6 +36,10 @@ public class TokenManagerModule implements Module {
 
   @Override
   public void configure(Binder binder) {
-    binder.bind(TokenManager.class).to(SampleTokenManager.class).in(Scopes.SINGLETON);
+    if (FlagConfig.hmacAuthTokens_FLAG.equalsIgnoreCase("true")) {
+      binder.bind(TokenManager.class).to(HmacTokenManager.class).in(Scopes.SINGLETON);
+    } else {
+      binder.bind(TokenManager.class).to(SampleTokenManager.class).in(Scopes.SINGLETON);
+    }
   }
 }
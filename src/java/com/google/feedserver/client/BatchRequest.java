@@ -0,0 +1,138 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.google.feedserver.client;
+
+import com.google.feedserver.util.FeedServerClientException;
+import com.google.gdata.client.GoogleService;
+import com.google.gdata.data.Content;
+import com.google.gdata.data.ILink;
+import com.google.gdata.data.batch.BatchOperationType;
+import com.google.gdata.data.batch.BatchStatus;
+import com.google.gdata.data.batch.BatchUtils;
+import com.google.gdata.util.ServiceException;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * A batch request to a feed: entries with their operations, sent in one
+ * request to the feed's batch target and matched to the response entries by
+ * their batch ids.
+ */
+class BatchRequest {
+
+  private static final Logger LOG = Logger.getLogger(BatchRequest.class.getName());
+
+  /**
+   * Path segment of the batch target below the feed URL
+   */
+  static final String BATCH_SEGMENT = "batch";
+
+  private final GoogleService service;
+  private final URL feedUrl;
+  private final FeedServerFeed feed = new FeedServerFeed();
+
+  BatchRequest(GoogleService service, URL feedUrl) {
+    this.service = service;
+    this.feedUrl = feedUrl;
+  }
+
+  /**
+   * Adds an entry to the batch
+   *
+   * @param content the content of the entry; null for deletes and queries.
+   * @param operation the operation to run on the entry.
+   * @param entryUrl the URL of the entry for updates, deletes and queries;
+   *        null for inserts.
+   */
+  void add(Content content, BatchOperationType operation, String entryUrl) {
+    FeedServerEntry entry = new FeedServerEntry();
+    if (content != null) {
+      entry.setContent(content);
+    }
+    BatchUtils.setBatchId(entry, Integer.toString(feed.getEntries().size()));
+    BatchUtils.setBatchOperationType(entry, operation);
+    if (entryUrl != null) {
+      entry.addLink(ILink.Rel.ENTRY_EDIT, ILink.Type.ATOM, entryUrl);
+    }
+    feed.getEntries().add(entry);
+  }
+
+  /**
+   * Sends the batch
+   *
+   * @return the response entry of each added entry, in order; null where the
+   *         response has none.
+   * @throws FeedServerClientException if the batch request as a whole fails.
+   */
+  List<FeedServerEntry> execute() throws FeedServerClientException {
+    FeedServerEntry[] results = new FeedServerEntry[feed.getEntries().size()];
+    if (results.length == 0) {
+      return Arrays.asList(results);
+    }
+    FeedServerFeed response;
+    try {
+      URL batchUrl = new URL(feedUrl + "/" + BATCH_SEGMENT);
+      LOG.info("sending batch of " + results.length + " entries to " + batchUrl);
+      response = service.batch(batchUrl, feed);
+    } catch (MalformedURLException e) {
+      throw new FeedServerClientException("invalid base URL", e);
+    } catch (IOException e) {
+      throw new FeedServerClientException(e);
+    } catch (ServiceException e) {
+      throw new FeedServerClientException(e);
+    }
+    for (FeedServerEntry entry : response.getEntries()) {
+      String batchId = BatchUtils.getBatchId(entry);
+      try {
+        int index = batchId == null ? -1 : Integer.parseInt(batchId);
+        if (index >= 0 && index < results.length) {
+          results[index] = entry;
+        }
+      } catch (NumberFormatException e) {
+        // not one of ours
+      }
+    }
+    return Arrays.asList(results);
+  }
+
+  /**
+   * Gets the error the server reported for an entry of the batch
+   *
+   * @param response the response entry; null if the response has none.
+   * @return the error; null if the operation succeeded.
+   */
+  static FeedServerClientException getError(FeedServerEntry response) {
+    if (response == null) {
+      return new FeedServerClientException("entry missing from batch response");
+    }
+    BatchStatus status = BatchUtils.getBatchStatus(response);
+    if (status == null) {
+      return new FeedServerClientException("entry without status in batch response");
+    }
+    if (BatchUtils.isSuccess(response)) {
+      return null;
+    }
+    return new FeedServerClientException("batch operation failed: " + status.getCode() + " "
+        + status.getReason());
+  }
+}
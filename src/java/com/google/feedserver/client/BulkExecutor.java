@@ -0,0 +1,239 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.feedserver.client;
+
+import com.google.feedserver.util.FeedServerClientException;
+import com.google.gdata.util.ServiceException;
+import com.google.gdata.util.ServiceUnavailableException;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Runs an operation over a list of items with the parallelism, retries and
+ * rate limit of {@link BulkOptions}. A failed item does not stop the others;
+ * its error is part of the {@link BulkResult}.
+ * <p>
+ * Failures are retried with exponential backoff when the server refused the
+ * request (503, or a {@code Retry-After} header) or could not be connected
+ * to. Other I/O errors are retried only for idempotent operations, since the
+ * server may have carried out the request.
+ * </p>
+ */
+public class BulkExecutor {
+
+  private static final Logger LOG = Logger.getLogger(BulkExecutor.class.getName());
+
+  /**
+   * The request made for each item
+   */
+  public interface Operation<I, R> {
+    R execute(I item) throws FeedServerClientException;
+  }
+
+  private static final ThreadFactory THREAD_FACTORY = new ThreadFactory() {
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "feedserver-bulk-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  };
+
+  private final BulkOptions options;
+  private final Random random = new Random();
+
+  public BulkExecutor(BulkOptions options) {
+    this.options = options;
+  }
+
+  /**
+   * Runs the operation for each item
+   *
+   * @param idempotent Whether repeating a request that may have been carried
+   *        out is harmless, as for updates and deletes
+   * @return The outcome of each item, in the order of {@code items}
+   */
+  public <I, R> BulkResult<I, R> execute(final List<I> items, final Operation<I, R> operation,
+      final boolean idempotent) {
+    final List<BulkResult.ItemResult<I, R>> itemResults =
+        new ArrayList<BulkResult.ItemResult<I, R>>(items.size());
+    for (int i = 0; i < items.size(); i++) {
+      itemResults.add(null);
+    }
+    final RateLimiter rateLimiter = options.getMaxRequestsPerSecond() > 0
+        ? new RateLimiter(options.getMaxRequestsPerSecond()) : null;
+    final AtomicInteger next = new AtomicInteger();
+    int workers = Math.min(options.getParallelism(), items.size());
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(workers, 1), THREAD_FACTORY);
+    try {
+      // each worker takes the next item until none is left, so at most
+      // parallelism requests are in flight and no item waits in a queue
+      for (int w = 0; w < workers; w++) {
+        executor.execute(new Runnable() {
+          @Override
+          public void run() {
+            for (int i = next.getAndIncrement(); i < items.size(); i = next.getAndIncrement()) {
+              BulkResult.ItemResult<I, R> itemResult =
+                  executeItem(items.get(i), operation, idempotent, rateLimiter);
+              synchronized (itemResults) {
+                itemResults.set(i, itemResult);
+              }
+            }
+          }
+        });
+      }
+      executor.shutdown();
+      executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      executor.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+    synchronized (itemResults) {
+      for (int i = 0; i < itemResults.size(); i++) {
+        if (itemResults.get(i) == null) {
+          itemResults.set(i, new BulkResult.ItemResult<I, R>(items.get(i), null,
+              new FeedServerClientException("interrupted"), 0));
+        }
+      }
+      return new BulkResult<I, R>(itemResults);
+    }
+  }
+
+  private <I, R> BulkResult.ItemResult<I, R> executeItem(I item, Operation<I, R> operation,
+      boolean idempotent, RateLimiter rateLimiter) {
+    FeedServerClientException error = null;
+    int attempt = 0;
+    try {
+      while (true) {
+        attempt++;
+        if (rateLimiter != null) {
+          rateLimiter.acquire();
+        }
+        try {
+          return new BulkResult.ItemResult<I, R>(item, operation.execute(item), null, attempt);
+        } catch (FeedServerClientException e) {
+          error = e;
+        }
+        if (attempt >= options.getMaxAttempts() || !isRetryable(error, idempotent)) {
+          break;
+        }
+        long backoff = getBackoffMillis(attempt, error);
+        LOG.fine("retrying in " + backoff + "ms after: " + error.getMessage());
+        Thread.sleep(backoff);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      if (error == null) {
+        error = new FeedServerClientException("interrupted", e);
+      }
+    } catch (RuntimeException e) {
+      error = new FeedServerClientException(e);
+    }
+    return new BulkResult.ItemResult<I, R>(item, null, error, attempt);
+  }
+
+  /**
+   * Tells whether a failed request may succeed when repeated
+   */
+  protected boolean isRetryable(FeedServerClientException error, boolean idempotent) {
+    Throwable cause = error.getCause();
+    if (cause instanceof ServiceUnavailableException || getRetryAfterSeconds(cause) >= 0) {
+      return true;
+    }
+    if (cause instanceof ConnectException) {
+      return true;
+    }
+    return idempotent && cause instanceof IOException;
+  }
+
+  /**
+   * Gets the wait before the given retry: exponential backoff with jitter,
+   * but no less than the server's {@code Retry-After}
+   */
+  long getBackoffMillis(int attempt, FeedServerClientException error) {
+    long backoff = options.getInitialBackoffMillis() << Math.min(attempt - 1, 30);
+    backoff = Math.min(backoff, options.getMaxBackoffMillis());
+    // spread retries of items that failed together
+    backoff = backoff / 2 + (long) (random.nextDouble() * (backoff / 2 + 1));
+    long retryAfterSeconds = getRetryAfterSeconds(error.getCause());
+    if (retryAfterSeconds > 0) {
+      backoff = Math.max(backoff,
+          Math.min(retryAfterSeconds * 1000, options.getMaxBackoffMillis()));
+    }
+    return backoff;
+  }
+
+  /**
+   * @return The {@code Retry-After} seconds of a service error; -1 if none
+   */
+  private static long getRetryAfterSeconds(Throwable cause) {
+    if (!(cause instanceof ServiceException)) {
+      return -1;
+    }
+    ServiceException serviceException = (ServiceException) cause;
+    if (serviceException.getHttpHeaders() == null) {
+      return -1;
+    }
+    List<String> retryAfter = serviceException.getHttpHeader("Retry-After");
+    if (retryAfter == null || retryAfter.isEmpty()) {
+      return -1;
+    }
+    try {
+      return Long.parseLong(retryAfter.get(0).trim());
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+
+  /**
+   * Spaces requests evenly at the given rate
+   */
+  private static class RateLimiter {
+    private final long intervalNanos;
+    private long nextFreeNanos;
+
+    RateLimiter(double permitsPerSecond) {
+      intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+      nextFreeNanos = System.nanoTime();
+    }
+
+    void acquire() throws InterruptedException {
+      long waitNanos;
+      synchronized (this) {
+        long now = System.nanoTime();
+        long at = Math.max(now, nextFreeNanos);
+        nextFreeNanos = at + intervalNanos;
+        waitNanos = at - now;
+      }
+      if (waitNanos > 0) {
+        TimeUnit.NANOSECONDS.sleep(waitNanos);
+      }
+    }
+  }
+}
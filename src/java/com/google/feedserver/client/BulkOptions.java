@@ -0,0 +1,97 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.feedserver.client;
+
+/**
+ * Settings of the bulk operations of {@link FeedServerClient} and
+ * {@link TypelessFeedServerClient}: how many requests run at once, how failed
+ * requests are retried and how many requests are sent per second.
+ */
+public class BulkOptions {
+
+  public static final int DEFAULT_PARALLELISM = 4;
+  public static final int DEFAULT_MAX_ATTEMPTS = 3;
+  public static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 200;
+  public static final long DEFAULT_MAX_BACKOFF_MILLIS = 10000;
+
+  private int parallelism = DEFAULT_PARALLELISM;
+  private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+  private long initialBackoffMillis = DEFAULT_INITIAL_BACKOFF_MILLIS;
+  private long maxBackoffMillis = DEFAULT_MAX_BACKOFF_MILLIS;
+  private double maxRequestsPerSecond;
+
+  public int getParallelism() {
+    return parallelism;
+  }
+
+  /**
+   * Sets the maximum number of requests in flight at once
+   */
+  public void setParallelism(int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism must be at least 1");
+    }
+    this.parallelism = parallelism;
+  }
+
+  public int getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  /**
+   * Sets how many times an item is tried, including the first attempt; 1
+   * disables retries
+   */
+  public void setMaxAttempts(int maxAttempts) {
+    if (maxAttempts < 1) {
+      throw new IllegalArgumentException("maxAttempts must be at least 1");
+    }
+    this.maxAttempts = maxAttempts;
+  }
+
+  public long getInitialBackoffMillis() {
+    return initialBackoffMillis;
+  }
+
+  /**
+   * Sets the wait before the first retry; each further retry waits up to
+   * twice as long
+   */
+  public void setInitialBackoffMillis(long initialBackoffMillis) {
+    this.initialBackoffMillis = initialBackoffMillis;
+  }
+
+  public long getMaxBackoffMillis() {
+    return maxBackoffMillis;
+  }
+
+  public void setMaxBackoffMillis(long maxBackoffMillis) {
+    this.maxBackoffMillis = maxBackoffMillis;
+  }
+
+  public double getMaxRequestsPerSecond() {
+    return maxRequestsPerSecond;
+  }
+
+  /**
+   * Sets the maximum number of requests sent per second, retries included;
+   * 0 for no limit
+   */
+  public void setMaxRequestsPerSecond(double maxRequestsPerSecond) {
+    this.maxRequestsPerSecond = maxRequestsPerSecond;
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.feedserver.client;
+
+import com.google.feedserver.util.FeedServerClientException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of a bulk operation: the result or failure of each item, in
+ * the order of the items given.
+ *
+ * @param <I> Type of the items
+ * @param <R> Type of the results of the items
+ */
+public class BulkResult<I, R> {
+
+  /**
+   * The outcome of one item
+   */
+  public static class ItemResult<I, R> {
+    private final I item;
+    private final R result;
+    private final FeedServerClientException error;
+    private final int attempts;
+
+    ItemResult(I item, R result, FeedServerClientException error, int attempts) {
+      this.item = item;
+      this.result = result;
+      this.error = error;
+      this.attempts = attempts;
+    }
+
+    public I getItem() {
+      return item;
+    }
+
+    /**
+     * Gets the result of the item; null if the item failed or the operation
+     * has no result
+     */
+    public R getResult() {
+      return result;
+    }
+
+    /**
+     * Gets the error of the last attempt; null if the item succeeded
+     */
+    public FeedServerClientException getError() {
+      return error;
+    }
+
+    public int getAttempts() {
+      return attempts;
+    }
+
+    public boolean isSuccessful() {
+      return error == null;
+    }
+  }
+
+  private final List<ItemResult<I, R>> itemResults;
+
+  BulkResult(List<ItemResult<I, R>> itemResults) {
+    this.itemResults = Collections.unmodifiableList(itemResults);
+  }
+
+  public List<ItemResult<I, R>> getItemResults() {
+    return itemResults;
+  }
+
+  /**
+   * Gets the results of the successful items
+   */
+  public List<R> getResults() {
+    List<R> results = new ArrayList<R>();
+    for (ItemResult<I, R> itemResult : itemResults) {
+      if (itemResult.isSuccessful()) {
+        results.add(itemResult.getResult());
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Gets the outcomes of the failed items
+   */
+  public List<ItemResult<I, R>> getFailures() {
+    List<ItemResult<I, R>> failures = new ArrayList<ItemResult<I, R>>();
+    for (ItemResult<I, R> itemResult : itemResults) {
+      if (!itemResult.isSuccessful()) {
+        failures.add(itemResult);
+      }
+    }
+    return failures;
+  }
+
+  public int getFailureCount() {
+    int count = 0;
+    for (ItemResult<I, R> itemResult : itemResults) {
+      if (!itemResult.isSuccessful()) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Tells whether all items succeeded
+   */
+  public boolean isSuccessful() {
+    return getFailureCount() == 0;
+  }
+}
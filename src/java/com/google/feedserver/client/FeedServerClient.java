@@ -15,6 +15,7 @@
 package com.google.feedserver.client;
 
 import com.google.gdata.client.GoogleService;
+import com.google.gdata.data.batch.BatchOperationType;
 import com.google.gdata.util.ServiceException;
 import com.google.inject.Inject;
 import com.google.feedserver.util.FeedServerClientException;
@@ -398,6 +399,214 @@ public class FeedServerClient<T> {
     }
   }
   
+  /**
+   * Creates an entry for each provided entity and inserts it, running up to
+   * {@link BulkOptions#getParallelism()} requests at once.  Entities that fail
+   * do not stop the others.
+   * 
+   * @param baseUrl feed URL without an ID.
+   * @param entities a list of entity beans each representing a feed entry.
+   * @param options parallelism, retry and rate limit settings.
+   * @return the inserted entity or the error of each given entity.
+   */
+  public BulkResult<T, T> insertEntities(final URL baseUrl, List<T> entities,
+      BulkOptions options) {
+    return new BulkExecutor(options).execute(entities, new BulkExecutor.Operation<T, T>() {
+      @Override
+      public T execute(T entity) throws FeedServerClientException {
+        return insertEntity(baseUrl, entity);
+      }
+    }, false);
+  }
+
+  /**
+   * Inserts the entries provided, running up to
+   * {@link BulkOptions#getParallelism()} requests at once.  Entries that fail
+   * do not stop the others.
+   * 
+   * @param baseUrl feed URL without an ID.
+   * @param entries a list of feed entries.
+   * @param options parallelism, retry and rate limit settings.
+   * @return the error, if any, of each given entry.
+   */
+  public BulkResult<FeedServerEntry, Void> insertEntries(final URL baseUrl,
+      List<FeedServerEntry> entries, BulkOptions options) {
+    return new BulkExecutor(options).execute(entries,
+        new BulkExecutor.Operation<FeedServerEntry, Void>() {
+          @Override
+          public Void execute(FeedServerEntry entry) throws FeedServerClientException {
+            insertEntry(baseUrl, entry);
+            return null;
+          }
+        }, false);
+  }
+
+  /**
+   * Updates the entities using the baseUrl plus the ID contained in each
+   * entity, running up to {@link BulkOptions#getParallelism()} requests at
+   * once.  Entities that fail do not stop the others.
+   * 
+   * @param baseUrl feed URL without an ID.
+   * @param entities a list of beans representing feed entries.
+   * @param options parallelism, retry and rate limit settings.
+   * @return the error, if any, of each given entity.
+   */
+  public BulkResult<T, Void> updateEntities(final URL baseUrl, List<T> entities,
+      BulkOptions options) {
+    return new BulkExecutor(options).execute(entities, new BulkExecutor.Operation<T, Void>() {
+      @Override
+      public Void execute(T entity) throws FeedServerClientException {
+        updateEntity(baseUrl, entity);
+        return null;
+      }
+    }, true);
+  }
+
+  /**
+   * Updates the entries using the baseUrl plus the ID contained in each
+   * entry's entity, running up to {@link BulkOptions#getParallelism()}
+   * requests at once.  Entries that fail do not stop the others.
+   * 
+   * @param baseUrl feed URL without an ID.
+   * @param entries a list of entries.
+   * @param options parallelism, retry and rate limit settings.
+   * @return the error, if any, of each given entry.
+   */
+  public BulkResult<FeedServerEntry, Void> updateEntries(final URL baseUrl,
+      List<FeedServerEntry> entries, BulkOptions options) {
+    return new BulkExecutor(options).execute(entries,
+        new BulkExecutor.Operation<FeedServerEntry, Void>() {
+          @Override
+          public Void execute(FeedServerEntry entry) throws FeedServerClientException {
+            updateEntry(baseUrl, entry);
+            return null;
+          }
+        }, true);
+  }
+
+  /**
+   * Deletes the entities using the "name" property contained in each entity
+   * bean, running up to {@link BulkOptions#getParallelism()} requests at
+   * once.  Entities that fail do not stop the others.
+   * 
+   * @param baseUrl Feed url not including ID
+   * @param entities list of valid entity beans.
+   * @param options parallelism, retry and rate limit settings.
+   * @return the error, if any, of each given entity.
+   */
+  public BulkResult<T, Void> deleteEntities(final URL baseUrl, List<T> entities,
+      BulkOptions options) {
+    return new BulkExecutor(options).execute(entities, new BulkExecutor.Operation<T, Void>() {
+      @Override
+      public Void execute(T entity) throws FeedServerClientException {
+        deleteEntity(baseUrl, entity);
+        return null;
+      }
+    }, true);
+  }
+
+  /**
+   * Deletes the entries using the "name" property contained in each entry's
+   * entity, running up to {@link BulkOptions#getParallelism()} requests at
+   * once.  Entries that fail do not stop the others.
+   * 
+   * @param baseUrl Feed url not including ID
+   * @param entries list of valid populated entries.
+   * @param options parallelism, retry and rate limit settings.
+   * @return the error, if any, of each given entry.
+   */
+  public BulkResult<FeedServerEntry, Void> deleteEntries(final URL baseUrl,
+      List<FeedServerEntry> entries, BulkOptions options) {
+    return new BulkExecutor(options).execute(entries,
+        new BulkExecutor.Operation<FeedServerEntry, Void>() {
+          @Override
+          public Void execute(FeedServerEntry entry) throws FeedServerClientException {
+            deleteEntry(baseUrl, entry);
+            return null;
+          }
+        }, true);
+  }
+
+  /**
+   * Runs an operation on each given entry in one batch request to the feed.
+   * Updates, deletes and queries find the entry by the "name" or "id"
+   * property contained in the entry's entity.  Entries that fail do not stop
+   * the others.
+   * 
+   * @param baseUrl feed URL without an ID.
+   * @param entries a list of populated feed entries.
+   * @param operation the operation to run on each entry.
+   * @return the response entry or the error of each given entry.
+   * @throws FeedServerClientException if the batch request fails as a whole or an entry to
+   * update, delete or query has neither a name nor an id.
+   */
+  public BulkResult<FeedServerEntry, FeedServerEntry> batch(URL baseUrl,
+      List<FeedServerEntry> entries, BatchOperationType operation)
+      throws FeedServerClientException {
+    BatchRequest request = new BatchRequest(service, baseUrl);
+    for (FeedServerEntry entry : entries) {
+      String entryUrl = operation == BatchOperationType.INSERT ? null
+          : getEntryUrl(baseUrl, entry.getEntity(entityClass));
+      request.add(entry.getContent(), operation, entryUrl);
+    }
+    List<FeedServerEntry> responses = request.execute();
+    List<BulkResult.ItemResult<FeedServerEntry, FeedServerEntry>> itemResults =
+        new ArrayList<BulkResult.ItemResult<FeedServerEntry, FeedServerEntry>>(entries.size());
+    for (int i = 0; i < entries.size(); i++) {
+      FeedServerClientException error = BatchRequest.getError(responses.get(i));
+      itemResults.add(new BulkResult.ItemResult<FeedServerEntry, FeedServerEntry>(
+          entries.get(i), error == null ? responses.get(i) : null, error, 1));
+    }
+    return new BulkResult<FeedServerEntry, FeedServerEntry>(itemResults);
+  }
+
+  /**
+   * Runs an operation on an entry for each given entity in one batch request
+   * to the feed.  Updates, deletes and queries find the entry by the "name"
+   * or "id" property of the entity.  Entities that fail do not stop the
+   * others.
+   * 
+   * @param baseUrl feed URL without an ID.
+   * @param entities a list of entity beans each representing a feed entry.
+   * @param operation the operation to run on each entity.
+   * @return the resulting entity, null for deletes, or the error of each given entity.
+   * @throws FeedServerClientException if the batch request fails as a whole or an entity to
+   * update, delete or query has neither a name nor an id.
+   */
+  public BulkResult<T, T> batchEntities(URL baseUrl, List<T> entities,
+      BatchOperationType operation) throws FeedServerClientException {
+    List<FeedServerEntry> entries = new ArrayList<FeedServerEntry>(entities.size());
+    for (T entity : entities) {
+      entries.add(new FeedServerEntry(entity));
+    }
+    List<BulkResult.ItemResult<T, T>> itemResults =
+        new ArrayList<BulkResult.ItemResult<T, T>>(entities.size());
+    int i = 0;
+    for (BulkResult.ItemResult<FeedServerEntry, FeedServerEntry> entryResult
+        : batch(baseUrl, entries, operation).getItemResults()) {
+      FeedServerEntry response = entryResult.getResult();
+      T result = response == null || response.getContent() == null ? null
+          : response.getEntity(entityClass);
+      itemResults.add(new BulkResult.ItemResult<T, T>(entities.get(i++), result,
+          entryResult.getError(), 1));
+    }
+    return new BulkResult<T, T>(itemResults);
+  }
+
+  /**
+   * Gets the URL of the entry of an entity from its "name" or "id" property.
+   */
+  private String getEntryUrl(URL baseUrl, T entity) throws FeedServerClientException {
+    Object id = getBeanProperty(NAME_ELEMENT, entity);
+    if (id == null) {
+      id = getBeanProperty(ID_ELEMENT, entity);
+    }
+    if (id == null) {
+      throw new FeedServerClientException("name or id is required in the entry");
+    }
+    return baseUrl + "/" + id;
+  }
+
   /**
    * Helper method to retrieve a property from the provided bean.
    * 
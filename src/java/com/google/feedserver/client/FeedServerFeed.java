@@ -16,6 +16,7 @@ package com.google.feedserver.client;
 
 import com.google.gdata.data.BaseFeed;
 import com.google.gdata.data.ExtensionProfile;
+import com.google.gdata.data.batch.BatchUtils;
 
 /**
  * Feed class representing a "payload-in-content" feed.
@@ -36,6 +37,8 @@ public class FeedServerFeed extends BaseFeed<FeedServerFeed, FeedServerEntry> {
     // Declare arbitrary XML support for the feed instances, so any
     // extensions not explicitly declared in the profile will be captured.
     extProfile.declareArbitraryXmlExtension(BaseFeed.class);
+    // Batch ids, operations and statuses of batch requests and responses
+    BatchUtils.declareExtensions(extProfile);
     super.declareExtensions(extProfile);
   }
 }
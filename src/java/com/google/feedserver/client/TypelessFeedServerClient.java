@@ -26,6 +26,7 @@ import com.google.gdata.data.PlainTextConstruct;
 import com.google.gdata.data.TextConstruct;
 import com.google.gdata.data.TextContent;
 import com.google.gdata.data.XhtmlTextConstruct;
+import com.google.gdata.data.batch.BatchOperationType;
 import com.google.gdata.util.AuthenticationException;
 import com.google.gdata.util.ResourceNotFoundException;
 import com.google.gdata.util.ServiceException;
@@ -297,6 +298,119 @@ public class TypelessFeedServerClient {
     }
   }
 
+  /**
+   * Inserts entries into a feed, running up to
+   * {@link BulkOptions#getParallelism()} requests at once.  Entries that fail
+   * do not stop the others.
+   * 
+   * @param feedUrl URL of feed to insert into.
+   * @param entries a list of "typeless" maps each representing a feed entry.
+   * @param options parallelism, retry and rate limit settings.
+   * @return the inserted entry or the error of each given entry.
+   */
+  public BulkResult<Map<String, Object>, Map<String, Object>> insertEntries(final URL feedUrl,
+      List<Map<String, Object>> entries, BulkOptions options) {
+    return new BulkExecutor(options).execute(entries,
+        new BulkExecutor.Operation<Map<String, Object>, Map<String, Object>>() {
+          @Override
+          public Map<String, Object> execute(Map<String, Object> entry)
+              throws FeedServerClientException {
+            return insertEntry(feedUrl, entry);
+          }
+        }, false);
+  }
+
+  /**
+   * Updates each entry in the supplied list of entries, running up to
+   * {@link BulkOptions#getParallelism()} requests at once.  Entries that fail
+   * do not stop the others.
+   * 
+   * @param entries a list of valid entries.
+   * @param options parallelism, retry and rate limit settings.
+   * @return the updated entry or the error of each given entry.
+   */
+  public BulkResult<Map<String, Object>, Map<String, Object>> updateEntries(
+      List<Map<String, Object>> entries, BulkOptions options) {
+    return new BulkExecutor(options).execute(entries,
+        new BulkExecutor.Operation<Map<String, Object>, Map<String, Object>>() {
+          @Override
+          public Map<String, Object> execute(Map<String, Object> entry)
+              throws FeedServerClientException {
+            return updateEntry(getEntryUrl(entry), entry);
+          }
+        }, true);
+  }
+
+  /**
+   * Deletes each entry in the supplied list of entries, running up to
+   * {@link BulkOptions#getParallelism()} requests at once.  Entries that fail
+   * do not stop the others.
+   * 
+   * @param entries a list of valid entries.
+   * @param options parallelism, retry and rate limit settings.
+   * @return the error, if any, of each given entry.
+   */
+  public BulkResult<Map<String, Object>, Void> deleteEntries(List<Map<String, Object>> entries,
+      BulkOptions options) {
+    return new BulkExecutor(options).execute(entries,
+        new BulkExecutor.Operation<Map<String, Object>, Void>() {
+          @Override
+          public Void execute(Map<String, Object> entry) throws FeedServerClientException {
+            deleteEntry(getEntryUrl(entry));
+            return null;
+          }
+        }, true);
+  }
+
+  /**
+   * Runs an operation on each given entry in one batch request to the feed.
+   * Updates, deletes and queries find the entry by its "id".  Entries that
+   * fail do not stop the others.
+   * 
+   * @param feedUrl URL of the feed.
+   * @param entries a list of "typeless" maps each representing a feed entry.
+   * @param operation the operation to run on each entry.
+   * @return the resulting entry, null for deletes, or the error of each given entry.
+   * @throws FeedServerClientException if the batch request fails as a whole
+   *         or an entry to update, delete or query has no id.
+   */
+  public BulkResult<Map<String, Object>, Map<String, Object>> batch(URL feedUrl,
+      List<Map<String, Object>> entries, BatchOperationType operation)
+      throws FeedServerClientException {
+    BatchRequest request = new BatchRequest(service, feedUrl);
+    for (Map<String, Object> entry : entries) {
+      String entryUrl = null;
+      if (operation != BatchOperationType.INSERT) {
+        entryUrl = getEntryId(entry);
+        if (entryUrl == null) {
+          throw new FeedServerClientException("id is required in the entry");
+        }
+      }
+      request.add(getEntryFromMap(entry).getContent(), operation, entryUrl);
+    }
+    List<FeedServerEntry> responses = request.execute();
+    List<BulkResult.ItemResult<Map<String, Object>, Map<String, Object>>> itemResults =
+        new ArrayList<BulkResult.ItemResult<Map<String, Object>, Map<String, Object>>>(
+            entries.size());
+    for (int i = 0; i < entries.size(); i++) {
+      FeedServerEntry response = responses.get(i);
+      FeedServerClientException error = BatchRequest.getError(response);
+      Map<String, Object> result = error == null && response.getContent() != null
+          ? getMapFromEntry(response) : null;
+      itemResults.add(new BulkResult.ItemResult<Map<String, Object>, Map<String, Object>>(
+          entries.get(i), result, error, 1));
+    }
+    return new BulkResult<Map<String, Object>, Map<String, Object>>(itemResults);
+  }
+
+  private URL getEntryUrl(Map<String, Object> entry) throws FeedServerClientException {
+    try {
+      return new URL(getEntryId(entry));
+    } catch (MalformedURLException e) {
+      throw new FeedServerClientException(e);
+    }
+  }
+
   /**
    * Converts raw XML representation of a feed entry into a "typeless" map.
    * 
@@ -1,12 +1,12 @@
 /*
  * Copyright 2008 Google Inc.
- * 
+ *
  * Licensed under the Apache License, Version 2.0 (the "License"); you may not
  * use this file except in compliance with the License. You may obtain a copy of
  * the License at
- * 
+ *
  * http://www.apache.org/licenses/LICENSE-2.0
- * 
+ *
  * Unless required by applicable law or agreed to in writing, software
  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
@@ -16,33 +16,339 @@
 
 package com.google.feedserver.config;
 
-import java.util.HashMap;
+import com.google.feedserver.adapters.FeedServerAdapterException;
+
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * A pool to store the backed server connectores. So that they can be re-used in
  * different adapter instances.
- * 
+ * <p>
+ * Each client is stored under an id together with a fingerprint of the
+ * configuration it was built from. Asking for an id with a different
+ * fingerprint builds a new client and retires the old one, so clients follow
+ * configuration changes. The pool is safe for concurrent use; a client is
+ * built at most once per id and fingerprint.
+ * </p>
+ * <p>
+ * Clients handed out with {@link #acquireClient} are counted until their
+ * {@link Lease} is released. A retired client is closed once its last lease
+ * is released, so that replacing or removing a client does not close it under
+ * requests still using it.
+ * </p>
+ *
  * @author abhinavk@gmail.com (Abhinav Khandelwal)
- * 
+ *
  */
 public class AdapterBackendPool<T> {
 
-  private Map<String, T> clientMap;
+  /**
+   * Builds the client for an id when the pool does not have a current one
+   */
+  public interface ClientFactory<T> {
+    T createClient(String id) throws FeedServerAdapterException;
+  }
+
+  /**
+   * A use of a pooled client. The client stays open at least until the lease
+   * is released.
+   */
+  public static class Lease<T> {
+    private final AdapterBackendPool<T> pool;
+    private final PooledClient<T> pooled;
+    private boolean released;
+
+    private Lease(AdapterBackendPool<T> pool, PooledClient<T> pooled) {
+      this.pool = pool;
+      this.pooled = pooled;
+    }
+
+    public T getClient() {
+      return pooled.client;
+    }
+
+    /**
+     * Gets another lease on the same client, to be released separately
+     */
+    public Lease<T> share() {
+      pooled.share();
+      return new Lease<T>(pool, pooled);
+    }
+
+    /**
+     * Ends this use of the client; closes the client if it has been retired
+     * and this was its last use. Releasing a lease again does nothing.
+     */
+    public void release() {
+      synchronized (this) {
+        if (released) {
+          return;
+        }
+        released = true;
+      }
+      if (pooled.release()) {
+        pool.close(pooled.id, pooled.client);
+      }
+    }
+  }
+
+  private static class PooledClient<T> {
+    final String id;
+    final String fingerprint;
+    final T client;
+    private int users;
+    private boolean retired;
+
+    PooledClient(String id, String fingerprint, T client) {
+      this.id = id;
+      this.fingerprint = fingerprint;
+      this.client = client;
+    }
+
+    boolean matches(String otherFingerprint) {
+      return fingerprint == null ? otherFingerprint == null : fingerprint.equals(otherFingerprint);
+    }
+
+    /**
+     * Starts a use of the client unless it has been retired
+     */
+    synchronized boolean acquire() {
+      if (retired) {
+        return false;
+      }
+      users++;
+      return true;
+    }
+
+    /**
+     * Starts another use of a client that is in use
+     */
+    synchronized void share() {
+      users++;
+    }
+
+    /**
+     * Ends a use of the client
+     *
+     * @return True if the client is to be closed now
+     */
+    synchronized boolean release() {
+      users--;
+      return retired && users == 0;
+    }
+
+    /**
+     * Keeps the client from being handed out again
+     *
+     * @return True if the client is to be closed now
+     */
+    synchronized boolean retire() {
+      if (retired) {
+        return false;
+      }
+      retired = true;
+      return users == 0;
+    }
+  }
+
+  private final ConcurrentMap<String, PooledClient<T>> clientMap;
+
+  /**
+   * Per id locks that make concurrent requests for a missing client wait for
+   * the one being built instead of building their own. Explicit locks rather
+   * than monitors, so that a virtual thread waiting on a slow backend does not
+   * pin its carrier thread. A lock is removed once its client is built.
+   */
+  private final ConcurrentMap<String, Lock> creationLocks;
+
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong createCount = new AtomicLong();
+  private final AtomicLong closeCount = new AtomicLong();
 
   public AdapterBackendPool() {
-    clientMap = new HashMap<String, T>();
+    clientMap = new ConcurrentHashMap<String, PooledClient<T>>();
+    creationLocks = new ConcurrentHashMap<String, Lock>();
   }
 
   public void addClient(String id, T client) {
-    clientMap.put(id, client);
+    replace(id, new PooledClient<T>(id, null, client));
   }
 
   public T getClient(String id) {
-    return clientMap.get(id);
+    PooledClient<T> pooled = clientMap.get(id);
+    return pooled == null ? null : pooled.client;
+  }
+
+  /**
+   * Gets the client for {@code id} built from the configuration identified by
+   * {@code fingerprint}, building it with {@code factory} if the pool has no
+   * client for the id or only one built from a different configuration. The
+   * replaced client is retired. The client is not counted as in use, so a
+   * caller that keeps using it while it may be replaced should use
+   * {@link #acquireClient} instead.
+   */
+  public T getClient(String id, String fingerprint, ClientFactory<T> factory)
+      throws FeedServerAdapterException {
+    Lease<T> lease = acquireClient(id, fingerprint, factory);
+    lease.release();
+    return lease.getClient();
+  }
+
+  /**
+   * Like {@link #getClient(String, String, ClientFactory)}, but counts the
+   * client as in use until the returned lease is released. Retired clients
+   * are only closed when no lease on them is left.
+   */
+  public Lease<T> acquireClient(String id, String fingerprint, ClientFactory<T> factory)
+      throws FeedServerAdapterException {
+    PooledClient<T> pooled = clientMap.get(id);
+    if (pooled != null && pooled.matches(fingerprint) && pooled.acquire()) {
+      hitCount.incrementAndGet();
+      return new Lease<T>(this, pooled);
+    }
+    while (true) {
+      Lock lock = getCreationLock(id);
+      lock.lock();
+      try {
+        if (creationLocks.get(id) != lock) {
+          // removed by the thread that held it; wait on the current one
+          continue;
+        }
+        try {
+          pooled = clientMap.get(id);
+          if (pooled != null && pooled.matches(fingerprint) && pooled.acquire()) {
+            hitCount.incrementAndGet();
+            return new Lease<T>(this, pooled);
+          }
+          T client = factory.createClient(id);
+          createCount.incrementAndGet();
+          pooled = new PooledClient<T>(id, fingerprint, client);
+          pooled.acquire();
+          replace(id, pooled);
+          return new Lease<T>(this, pooled);
+        } finally {
+          creationLocks.remove(id, lock);
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Removes the client for the given id and closes it once it is no longer
+   * in use
+   */
+  public void removeClient(String id) {
+    PooledClient<T> removed = clientMap.remove(id);
+    if (removed != null) {
+      retire(removed);
+    }
+  }
+
+  /**
+   * Removes all clients and closes them once they are no longer in use
+   */
+  public void close() {
+    for (String id : clientMap.keySet()) {
+      removeClient(id);
+    }
+  }
+
+  public int size() {
+    return clientMap.size();
+  }
+
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  public long getCreateCount() {
+    return createCount.get();
+  }
+
+  public long getCloseCount() {
+    return closeCount.get();
+  }
+
+  /**
+   * Gets usage statistics of the pooled clients, such as connection counts,
+   * keyed by client id. Clients without statistics are left out.
+   */
+  public Map<String, String> getClientStats() {
+    Map<String, String> stats = new TreeMap<String, String>();
+    for (Map.Entry<String, PooledClient<T>> entry : clientMap.entrySet()) {
+      String clientStats = getClientStats(entry.getValue().client);
+      if (clientStats != null) {
+        stats.put(entry.getKey(), clientStats);
+      }
+    }
+    return stats;
+  }
+
+  /**
+   * Releases the resources held by a client that has been removed from the
+   * pool, once no lease on it is left. Does nothing by default.
+   */
+  protected void closeClient(String id, T client) {
+  }
+
+  /**
+   * Describes the resource usage of a client.
+   *
+   * @return null by default
+   */
+  protected String getClientStats(T client) {
+    return null;
   }
 
   protected Map<String, T> getClientMap() {
-    return clientMap;
+    Map<String, T> clients = new TreeMap<String, T>();
+    for (Map.Entry<String, PooledClient<T>> entry : clientMap.entrySet()) {
+      clients.put(entry.getKey(), entry.getValue().client);
+    }
+    return clients;
+  }
+
+  private void replace(String id, PooledClient<T> pooled) {
+    PooledClient<T> replaced = clientMap.put(id, pooled);
+    if (replaced != null && replaced.client != pooled.client) {
+      retire(replaced);
+    }
+  }
+
+  private void retire(PooledClient<T> pooled) {
+    if (pooled.retire()) {
+      close(pooled.id, pooled.client);
+    }
+  }
+
+  private void close(String id, T client) {
+    closeCount.incrementAndGet();
+    closeClient(id, client);
+  }
+
+  private Lock getCreationLock(String id) {
+    Lock lock = creationLocks.get(id);
+    if (lock == null) {
+      Lock newLock = new ReentrantLock();
+      lock = creationLocks.putIfAbsent(id, newLock);
+      if (lock == null) {
+        lock = newLock;
+      }
+    }
+    return lock;
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "[size=" + size() + ", hits=" + getHitCount()
+        + ", creates=" + getCreateCount() + ", closes=" + getCloseCount() + "]";
   }
 }
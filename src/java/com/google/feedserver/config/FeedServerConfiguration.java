@@ -16,14 +16,16 @@
 
 package com.google.feedserver.config;
 
+import com.google.feedserver.configstore.CachingFeedConfigStore;
 import com.google.feedserver.configstore.FeedConfigStore;
 import com.google.feedserver.configstore.FeedConfigStoreException;
+import com.google.feedserver.manager.AdapterChainCache;
 import com.google.feedserver.util.SimpleCommandLineParser;
 
 import org.apache.abdera.protocol.server.provider.managed.FeedConfiguration;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Configuration file for FeedServer
@@ -123,15 +125,20 @@ public class FeedServerConfiguration implements GlobalServerConfiguration {
 
   protected FeedConfigStore feedConfigStore;
 
-  @SuppressWarnings("unchecked")
-  private final Map<String, AdapterBackendPool> adapterPool;
+  private final ConcurrentMap<String, AdapterBackendPool<?>> adapterPool;
 
   private AclValidator aclValidator;
 
-  @SuppressWarnings("unchecked")
+  private AdapterChainCache adapterChainCache;
+
   public FeedServerConfiguration(FeedConfigStore feedConfigStore) {
     this.feedConfigStore = feedConfigStore;
-    this.adapterPool = new HashMap<String, AdapterBackendPool>();
+    this.adapterPool = new ConcurrentHashMap<String, AdapterBackendPool<?>>();
+    // Cached adapter chains are only dropped when the store reports a change
+    if (feedConfigStore instanceof CachingFeedConfigStore) {
+      this.adapterChainCache = new AdapterChainCache();
+      ((CachingFeedConfigStore) feedConfigStore).addListener(adapterChainCache);
+    }
   }
 
   /**
@@ -222,18 +229,23 @@ public class FeedServerConfiguration implements GlobalServerConfiguration {
     return null;
   }
 
-  @SuppressWarnings("unchecked")
   @Override
-  public AdapterBackendPool getAdapterBackendPool(String poolId) {
+  public AdapterBackendPool<?> getAdapterBackendPool(String poolId) {
     return adapterPool.get(poolId);
   }
 
-  @SuppressWarnings("unchecked")
   @Override
-  public void setAdapterBackendPool(String poolId, AdapterBackendPool pool) {
+  public void setAdapterBackendPool(String poolId, AdapterBackendPool<?> pool) {
     adapterPool.put(poolId, pool);
   }
 
+  @Override
+  public AdapterBackendPool<?> addAdapterBackendPoolIfAbsent(String poolId,
+      AdapterBackendPool<?> pool) {
+    AdapterBackendPool<?> existing = adapterPool.putIfAbsent(poolId, pool);
+    return existing == null ? pool : existing;
+  }
+
   @Override
   public AclValidator getAclValidator() {
     return aclValidator;
@@ -244,6 +256,23 @@ public class FeedServerConfiguration implements GlobalServerConfiguration {
     this.aclValidator = aclValidator;
   }
 
+  @Override
+  public AdapterChainCache getAdapterChainCache() {
+    return adapterChainCache;
+  }
+
+  /**
+   * Sets the adapter chain cache. By default adapter chains are only cached if
+   * the feed config store is a {@link CachingFeedConfigStore}; a cache set
+   * here must be invalidated by the caller when configurations change.
+   * 
+   * @param adapterChainCache The cache to use; null disables caching of adapter
+   *        chains
+   */
+  public void setAdapterChainCache(AdapterChainCache adapterChainCache) {
+    this.adapterChainCache = adapterChainCache;
+  }
+
 
   /**
    * Initialize the configuration with command line arguments
@@ -18,6 +18,7 @@ package com.google.feedserver.config;
 
 import com.google.feedserver.configstore.FeedConfigStore;
 import com.google.feedserver.configstore.FeedConfigStoreException;
+import com.google.feedserver.manager.AdapterChainCache;
 
 import org.apache.abdera.protocol.server.provider.managed.FeedConfiguration;
 
@@ -99,14 +100,27 @@ public interface GlobalServerConfiguration {
    */
   public String getProviderClassName();
 
-  @SuppressWarnings("unchecked")
-  public AdapterBackendPool getAdapterBackendPool(String poolId);
+  public AdapterBackendPool<?> getAdapterBackendPool(String poolId);
 
-  @SuppressWarnings("unchecked")
-  public void setAdapterBackendPool(String poolId, AdapterBackendPool pool);
+  public void setAdapterBackendPool(String poolId, AdapterBackendPool<?> pool);
+
+  /**
+   * Registers the pool unless a pool with the same id is already registered
+   * 
+   * @return The pool registered under the id
+   */
+  public AdapterBackendPool<?> addAdapterBackendPoolIfAbsent(String poolId,
+      AdapterBackendPool<?> pool);
 
   public AclValidator getAclValidator();
 
   public void setAclValidator(AclValidator aclValidator);
 
+  /**
+   * Gets the cache of fully wrapped adapter chains shared by all requests
+   * 
+   * @return The adapter chain cache; null if adapter chains are not cached
+   */
+  public AdapterChainCache getAdapterChainCache();
+
 }
@@ -57,6 +57,16 @@ public class NamespacedAdapterConfiguration extends CollectionAdapterConfigurati
     this.configData = getStringProperty(FeedServerConfiguration.CONFIG_VALUE_KEY);
   }
 
+  /**
+   * Creates a copy of {@code other} that can be modified without affecting
+   * {@code other}
+   * 
+   * @param other The configuration to copy
+   */
+  public NamespacedAdapterConfiguration(NamespacedAdapterConfiguration other) {
+    this(other.properties, other.getServerConfiguration());
+  }
+
   /**
    * Gets the adapter name for this configuration
    */
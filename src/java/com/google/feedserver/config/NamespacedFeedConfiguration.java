@@ -71,6 +71,17 @@ public class NamespacedFeedConfiguration extends FeedConfiguration {
     setAdapterConfig(adapterConfiguration);
   }
 
+  /**
+   * Creates a copy of {@code other}, including a copy of its adapter
+   * configuration, that can be modified without affecting {@code other}
+   * 
+   * @param other The configuration to copy
+   */
+  public NamespacedFeedConfiguration(NamespacedFeedConfiguration other) {
+    this(other.properties, new NamespacedAdapterConfiguration(other.adapterConfiguration),
+        other.getServerConfiguration());
+  }
+
   /**
    * Gets the Feed author for the {@link FeedConfiguration}
    */
@@ -0,0 +1,677 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.feedserver.configstore;
+
+import com.google.feedserver.config.NamespacedAdapterConfiguration;
+import com.google.feedserver.config.NamespacedFeedConfiguration;
+
+import org.apache.abdera.protocol.server.provider.managed.CollectionAdapterConfiguration;
+import org.apache.abdera.protocol.server.provider.managed.FeedConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A {@link FeedConfigStore} decorator that keeps the parsed feed and adapter
+ * configurations of the underlying store in memory.
+ * <p>
+ * Configurations are handed out as copies since adapters and wrappers modify
+ * the configuration they are created with. Cached configurations of a
+ * namespace are dropped when a change is written through this store and,
+ * after {@link #watch(File)} has been called, when a file below
+ * {@code <baseDirectory>/<namespace>} changes. Registered
+ * {@link FeedConfigStoreListener}s are notified in both cases. The number of
+ * cached feed configurations, adapter configurations and referenced values is
+ * bounded; once a cache is full, further values are read from the underlying
+ * store every time until an invalidation makes room.
+ * </p>
+ * <p>
+ * Lookups of feeds and adapter configurations that do not exist are
+ * remembered for a short time as well, so that a burst of requests for a
+ * missing feed does not hit the underlying store every time. The negative
+ * cache is bounded and is cleared for a feed or namespace as soon as a feed or
+ * adapter configuration is added through this store.
+ * </p>
+ */
+public class CachingFeedConfigStore implements FeedConfigStore {
+
+  private static final Logger logger = Logger.getLogger(CachingFeedConfigStore.class.getName());
+
+  private static final char KEY_SEPARATOR = '\0';
+
+  /**
+   * Default maximum number of cached feed configurations, adapter
+   * configurations and referenced values each
+   */
+  public static final int DEFAULT_MAX_SIZE = 10000;
+
+  /**
+   * Default time in milliseconds a missing feed or adapter configuration is
+   * remembered
+   */
+  public static final long DEFAULT_NEGATIVE_CACHE_TTL = 5000;
+
+  /**
+   * Default maximum number of remembered missing feeds and adapter
+   * configurations
+   */
+  public static final int DEFAULT_NEGATIVE_CACHE_MAX_SIZE = 10000;
+
+  protected final FeedConfigStore delegate;
+
+  private final ConcurrentMap<String, NamespacedFeedConfiguration> feedConfigurations =
+      new ConcurrentHashMap<String, NamespacedFeedConfiguration>();
+
+  private final ConcurrentMap<String, NamespacedAdapterConfiguration> adapterConfigurations =
+      new ConcurrentHashMap<String, NamespacedAdapterConfiguration>();
+
+  private final ConcurrentMap<String, String> referencedValues =
+      new ConcurrentHashMap<String, String>();
+
+  private final ConcurrentMap<String, Miss> missingFeeds = new ConcurrentHashMap<String, Miss>();
+
+  private final ConcurrentMap<String, Miss> missingAdapterConfigurations =
+      new ConcurrentHashMap<String, Miss>();
+
+  private final int maxSize;
+
+  private final long negativeCacheTtl;
+
+  private final int negativeCacheMaxSize;
+
+  private final AtomicLong negativeHitCount = new AtomicLong();
+
+  /**
+   * Incremented on every invalidation. A value loaded from the underlying
+   * store is only cached if no invalidation happened while it was loaded.
+   */
+  private final AtomicLong generation = new AtomicLong();
+
+  private final List<FeedConfigStoreListener> listeners =
+      new CopyOnWriteArrayList<FeedConfigStoreListener>();
+
+  private File watchedBaseDirectory;
+  private volatile WatchService watchService;
+  private final ConcurrentMap<WatchKey, String> watchKeys =
+      new ConcurrentHashMap<WatchKey, String>();
+  private final ConcurrentMap<String, Boolean> watchedNamespaces =
+      new ConcurrentHashMap<String, Boolean>();
+
+  /**
+   * Creates a caching store on top of {@code delegate}
+   *
+   * @param delegate The store to read configurations from and to write
+   *        changes to
+   */
+  public CachingFeedConfigStore(FeedConfigStore delegate) {
+    this(delegate, DEFAULT_MAX_SIZE, DEFAULT_NEGATIVE_CACHE_TTL, DEFAULT_NEGATIVE_CACHE_MAX_SIZE);
+  }
+
+  /**
+   * Creates a caching store on top of {@code delegate}
+   *
+   * @param delegate The store to read configurations from and to write
+   *        changes to
+   * @param negativeCacheTtl Time in milliseconds a missing feed or adapter
+   *        configuration is remembered; 0 disables negative caching
+   * @param negativeCacheMaxSize Maximum number of remembered missing feeds
+   *        and adapter configurations each
+   */
+  public CachingFeedConfigStore(FeedConfigStore delegate, long negativeCacheTtl,
+      int negativeCacheMaxSize) {
+    this(delegate, DEFAULT_MAX_SIZE, negativeCacheTtl, negativeCacheMaxSize);
+  }
+
+  /**
+   * Creates a caching store on top of {@code delegate}
+   *
+   * @param delegate The store to read configurations from and to write
+   *        changes to
+   * @param maxSize Maximum number of cached feed configurations, adapter
+   *        configurations and referenced values each
+   * @param negativeCacheTtl Time in milliseconds a missing feed or adapter
+   *        configuration is remembered; 0 disables negative caching
+   * @param negativeCacheMaxSize Maximum number of remembered missing feeds
+   *        and adapter configurations each
+   */
+  public CachingFeedConfigStore(FeedConfigStore delegate, int maxSize, long negativeCacheTtl,
+      int negativeCacheMaxSize) {
+    this.delegate = delegate;
+    this.maxSize = maxSize;
+    this.negativeCacheTtl = negativeCacheTtl;
+    this.negativeCacheMaxSize = negativeCacheMaxSize;
+  }
+
+  /**
+   * Gets the underlying store
+   */
+  public FeedConfigStore getDelegate() {
+    return delegate;
+  }
+
+  /**
+   * Registers a listener to be notified about configuration changes
+   *
+   * @param listener The listener
+   */
+  public void addListener(FeedConfigStoreListener listener) {
+    listeners.add(listener);
+  }
+
+  /**
+   * Unregisters a listener
+   *
+   * @param listener The listener
+   */
+  public void removeListener(FeedConfigStoreListener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Starts watching {@code <baseDirectory>/<namespace>} and its sub directories
+   * for every namespace read through this store. Any change invalidates the
+   * cached configurations of the namespace.
+   *
+   * @param baseDirectory The directory holding one directory per namespace
+   * @throws IOException If the file system does not support watching
+   */
+  public synchronized void watch(File baseDirectory) throws IOException {
+    if (watchService != null) {
+      throw new IllegalStateException("Already watching " + watchedBaseDirectory);
+    }
+    watchedBaseDirectory = baseDirectory;
+    watchService = FileSystems.getDefault().newWatchService();
+    Thread watcher = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        processWatchEvents();
+      }
+    }, "FeedConfigStoreWatcher");
+    watcher.setDaemon(true);
+    watcher.start();
+  }
+
+  /**
+   * Stops watching the file system
+   */
+  public synchronized void close() throws IOException {
+    if (watchService != null) {
+      watchService.close();
+      watchService = null;
+      watchKeys.clear();
+      watchedNamespaces.clear();
+    }
+  }
+
+  @Override
+  public FeedConfiguration getFeedConfiguration(String namespace, String feedId, String userId)
+      throws FeedConfigStoreException {
+    watchNamespace(namespace);
+    String key = getKey(namespace, feedId, userId);
+    NamespacedFeedConfiguration cached = feedConfigurations.get(key);
+    if (cached != null) {
+      return new NamespacedFeedConfiguration(cached);
+    }
+
+    checkMiss(missingFeeds, key);
+    long loadGeneration = generation.get();
+    FeedConfiguration config;
+    try {
+      config = delegate.getFeedConfiguration(namespace, feedId, userId);
+    } catch (FeedConfigStoreException e) {
+      cacheMissIfCurrent(missingFeeds, key, e, loadGeneration);
+      throw e;
+    }
+    if (config == null || config.getClass() != NamespacedFeedConfiguration.class) {
+      // Only configurations that can be copied are cached
+      return config;
+    }
+    NamespacedFeedConfiguration feedConfig = (NamespacedFeedConfiguration) config;
+    if (feedConfig.getAdapterConfiguration() == null
+        || feedConfig.getAdapterConfiguration().getClass() != NamespacedAdapterConfiguration.class) {
+      return config;
+    }
+    if (feedConfigurations.size() < maxSize) {
+      cacheIfCurrent(feedConfigurations, key, new NamespacedFeedConfiguration(feedConfig),
+          loadGeneration);
+    }
+    return feedConfig;
+  }
+
+  @Override
+  public CollectionAdapterConfiguration getAdapterConfiguration(String namespace,
+      String adapterName) throws FeedConfigStoreException {
+    watchNamespace(namespace);
+    String key = getKey(namespace, adapterName, null);
+    NamespacedAdapterConfiguration cached = adapterConfigurations.get(key);
+    if (cached != null) {
+      return new NamespacedAdapterConfiguration(cached);
+    }
+
+    checkMiss(missingAdapterConfigurations, key);
+    long loadGeneration = generation.get();
+    CollectionAdapterConfiguration config;
+    try {
+      config = delegate.getAdapterConfiguration(namespace, adapterName);
+    } catch (FeedConfigStoreException e) {
+      cacheMissIfCurrent(missingAdapterConfigurations, key, e, loadGeneration);
+      throw e;
+    }
+    if (config == null || config.getClass() != NamespacedAdapterConfiguration.class) {
+      return config;
+    }
+    if (adapterConfigurations.size() < maxSize) {
+      cacheIfCurrent(adapterConfigurations, key, new NamespacedAdapterConfiguration(
+          (NamespacedAdapterConfiguration) config), loadGeneration);
+    }
+    return config;
+  }
+
+  @Override
+  public String resolveFeedConfigReferencedValue(String namespace, String valueReference) {
+    watchNamespace(namespace);
+    String key = getKey(namespace, valueReference, null);
+    String value = referencedValues.get(key);
+    if (value == null) {
+      long loadGeneration = generation.get();
+      value = delegate.resolveFeedConfigReferencedValue(namespace, valueReference);
+      if (value != null && referencedValues.size() < maxSize) {
+        cacheIfCurrent(referencedValues, key, value, loadGeneration);
+      }
+    }
+    return value;
+  }
+
+  @Override
+  public Collection<String> getFeedIds(String namespace) throws FeedConfigStoreException {
+    return delegate.getFeedIds(namespace);
+  }
+
+  @Override
+  public Map<String, FeedConfiguration> getFeedConfigurations(String namespace)
+      throws FeedConfigStoreException {
+    return delegate.getFeedConfigurations(namespace);
+  }
+
+  @Override
+  public boolean hasFeed(String namespace, String feedId, String userId)
+      throws FeedConfigStoreException {
+    return feedConfigurations.containsKey(getKey(namespace, feedId, userId))
+        || delegate.hasFeed(namespace, feedId, userId);
+  }
+
+  @Override
+  public boolean hasAdapterConfiguration(String namespace, String adapterName)
+      throws FeedConfigStoreException {
+    return adapterConfigurations.containsKey(getKey(namespace, adapterName, null))
+        || delegate.hasAdapterConfiguration(namespace, adapterName);
+  }
+
+  @Override
+  public Collection<String> getAllowedAdapters(String namespace) throws FeedConfigStoreException {
+    return delegate.getAllowedAdapters(namespace);
+  }
+
+  @Override
+  public Map<String, CollectionAdapterConfiguration> getAdapterConfigurations(String namespace)
+      throws FeedConfigStoreException {
+    return delegate.getAdapterConfigurations(namespace);
+  }
+
+  @Override
+  public void addFeed(String namespace, FeedConfiguration config)
+      throws FeedConfigStoreException {
+    try {
+      delegate.addFeed(namespace, config);
+    } finally {
+      invalidateFeed(namespace, config.getFeedId(), null);
+    }
+  }
+
+  @Override
+  public void updateFeed(String namespace, String userId, FeedConfiguration config)
+      throws FeedConfigStoreException {
+    try {
+      delegate.updateFeed(namespace, userId, config);
+    } finally {
+      invalidateFeed(namespace, config.getFeedId(), userId);
+    }
+  }
+
+  @Override
+  public void deleteFeed(String namespace, String feedId, String userId)
+      throws FeedConfigStoreException {
+    try {
+      delegate.deleteFeed(namespace, feedId, userId);
+    } finally {
+      invalidateFeed(namespace, feedId, userId);
+    }
+  }
+
+  @Override
+  public void addAdapterConfiguration(String namespace, CollectionAdapterConfiguration config)
+      throws FeedConfigStoreException {
+    try {
+      delegate.addAdapterConfiguration(namespace, config);
+    } finally {
+      invalidateAdapterConfiguration(namespace, getAdapterName(config));
+    }
+  }
+
+  @Override
+  public void updateAdapterConfiguration(String namespace, CollectionAdapterConfiguration config)
+      throws FeedConfigStoreException {
+    try {
+      delegate.updateAdapterConfiguration(namespace, config);
+    } finally {
+      invalidateAdapterConfiguration(namespace, getAdapterName(config));
+    }
+  }
+
+  @Override
+  public void deleteAdapterConfiguration(String namespace, String adapterId)
+      throws FeedConfigStoreException {
+    try {
+      delegate.deleteAdapterConfiguration(namespace, adapterId);
+    } finally {
+      invalidateAdapterConfiguration(namespace, adapterId);
+    }
+  }
+
+  @Override
+  public void allowAdapter(String namespace, String adapterId) throws FeedConfigStoreException {
+    try {
+      delegate.allowAdapter(namespace, adapterId);
+    } finally {
+      invalidateAdapterConfiguration(namespace, adapterId);
+    }
+  }
+
+  @Override
+  public void disallowAdapter(String namespace, String adapterId)
+      throws FeedConfigStoreException {
+    try {
+      delegate.disallowAdapter(namespace, adapterId);
+    } finally {
+      invalidateAdapterConfiguration(namespace, adapterId);
+    }
+  }
+
+  /**
+   * Drops the cached configuration of a feed and notifies the listeners
+   *
+   * @param namespace The namespace of the feed
+   * @param feedId The feed id
+   * @param userId User email of per user feed; null to drop the feed for all
+   *        users
+   */
+  public void invalidateFeed(String namespace, String feedId, String userId) {
+    generation.incrementAndGet();
+    if (userId == null) {
+      removeKeysWithPrefix(feedConfigurations, getKey(namespace, feedId, null));
+      removeKeysWithPrefix(missingFeeds, getKey(namespace, feedId, null));
+    } else {
+      feedConfigurations.remove(getKey(namespace, feedId, userId));
+      missingFeeds.remove(getKey(namespace, feedId, userId));
+    }
+    for (FeedConfigStoreListener listener : listeners) {
+      listener.feedChanged(namespace, feedId, userId);
+    }
+  }
+
+  /**
+   * Drops the cached adapter configuration together with all cached feed
+   * configurations of the namespace, since feeds and mixins embed the adapter
+   * configurations they refer to, and notifies the listeners
+   *
+   * @param namespace The namespace of the adapter configuration
+   * @param adapterName The adapter configuration name
+   */
+  public void invalidateAdapterConfiguration(String namespace, String adapterName) {
+    removeNamespace(namespace);
+    for (FeedConfigStoreListener listener : listeners) {
+      listener.adapterConfigurationChanged(namespace, adapterName);
+    }
+  }
+
+  /**
+   * Drops all cached configurations of the namespace and notifies the
+   * listeners
+   *
+   * @param namespace The namespace
+   */
+  public void invalidateNamespace(String namespace) {
+    removeNamespace(namespace);
+    for (FeedConfigStoreListener listener : listeners) {
+      listener.namespaceChanged(namespace);
+    }
+  }
+
+  /**
+   * Gets the number of cached feed and adapter configurations
+   */
+  public int size() {
+    return feedConfigurations.size() + adapterConfigurations.size();
+  }
+
+  private void removeNamespace(String namespace) {
+    generation.incrementAndGet();
+    String prefix = namespace + KEY_SEPARATOR;
+    removeKeysWithPrefix(feedConfigurations, prefix);
+    removeKeysWithPrefix(adapterConfigurations, prefix);
+    removeKeysWithPrefix(referencedValues, prefix);
+    removeKeysWithPrefix(missingFeeds, prefix);
+    removeKeysWithPrefix(missingAdapterConfigurations, prefix);
+  }
+
+  /**
+   * Throws the remembered exception if the feed or adapter configuration is
+   * known to be missing
+   */
+  private void checkMiss(ConcurrentMap<String, Miss> misses, String key)
+      throws FeedConfigStoreException {
+    Miss miss = misses.get(key);
+    if (miss != null) {
+      if (miss.expires > System.currentTimeMillis()) {
+        negativeHitCount.incrementAndGet();
+        throw new FeedConfigStoreException(miss.reason, miss.message);
+      }
+      misses.remove(key, miss);
+    }
+  }
+
+  private void cacheMissIfCurrent(ConcurrentMap<String, Miss> misses, String key,
+      FeedConfigStoreException e, long loadGeneration) {
+    if (negativeCacheTtl <= 0
+        || (e.getReason() != FeedConfigStoreException.Reason.FEED_DOES_NOT_EXIST
+        && e.getReason() != FeedConfigStoreException.Reason.ADAPTER_CONFIG_DOES_NOT_EXIST)) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    if (misses.size() >= negativeCacheMaxSize) {
+      for (Iterator<Miss> i = misses.values().iterator(); i.hasNext();) {
+        if (i.next().expires <= now) {
+          i.remove();
+        }
+      }
+      if (misses.size() >= negativeCacheMaxSize) {
+        return;
+      }
+    }
+    cacheIfCurrent(misses, key, new Miss(e.getReason(), e.getMessage(), now + negativeCacheTtl),
+        loadGeneration);
+  }
+
+  /**
+   * Gets the number of lookups answered from the negative cache
+   */
+  public long getNegativeHitCount() {
+    return negativeHitCount.get();
+  }
+
+  private <T> void cacheIfCurrent(ConcurrentMap<String, T> cache, String key, T value,
+      long loadGeneration) {
+    cache.putIfAbsent(key, value);
+    if (generation.get() != loadGeneration) {
+      // Invalidated while loading; the value may be stale
+      cache.remove(key, value);
+    }
+  }
+
+  private static void removeKeysWithPrefix(Map<String, ?> cache, String prefix) {
+    for (Iterator<String> i = cache.keySet().iterator(); i.hasNext();) {
+      if (i.next().startsWith(prefix)) {
+        i.remove();
+      }
+    }
+  }
+
+  private static String getKey(String namespace, String id, String userId) {
+    StringBuilder key = new StringBuilder();
+    key.append(namespace).append(KEY_SEPARATOR).append(id).append(KEY_SEPARATOR);
+    if (userId != null) {
+      key.append(userId);
+    }
+    return key.toString();
+  }
+
+  private static String getAdapterName(CollectionAdapterConfiguration config) {
+    if (config instanceof NamespacedAdapterConfiguration) {
+      return ((NamespacedAdapterConfiguration) config).getAdapterName();
+    }
+    return null;
+  }
+
+  /**
+   * A remembered lookup of a missing feed or adapter configuration
+   */
+  private static class Miss {
+    private final FeedConfigStoreException.Reason reason;
+    private final String message;
+    private final long expires;
+
+    Miss(FeedConfigStoreException.Reason reason, String message, long expires) {
+      this.reason = reason;
+      this.message = message;
+      this.expires = expires;
+    }
+  }
+
+  /**
+   * Registers the directory of the namespace and its sub directories with the
+   * watch service, the first time the namespace is seen with a directory.
+   * Namespaces are only remembered once registered, so names without a
+   * directory are not kept and are tried again once their directory exists.
+   * Registering a directory twice is harmless, so concurrent first requests
+   * may both register it.
+   */
+  private void watchNamespace(String namespace) {
+    WatchService service = watchService;
+    if (service == null || namespace == null || watchedNamespaces.containsKey(namespace)) {
+      return;
+    }
+    File namespaceDir = new File(watchedBaseDirectory, namespace);
+    if (!namespaceDir.isDirectory()) {
+      logger.log(Level.FINE, "Not watching " + namespaceDir + ": not a directory");
+      return;
+    }
+    try {
+      registerDirectory(service, namespace, namespaceDir);
+      watchedNamespaces.put(namespace, Boolean.TRUE);
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Unable to watch " + namespaceDir
+          + " for configuration changes: " + e.getMessage());
+    } catch (ClosedWatchServiceException e) {
+      // closed concurrently
+    }
+  }
+
+  private void registerDirectory(WatchService service, String namespace, File dir)
+      throws IOException {
+    WatchKey key =
+        dir.toPath().register(service, StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+    watchKeys.put(key, namespace);
+    File[] children = dir.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        if (child.isDirectory()) {
+          registerDirectory(service, namespace, child);
+        }
+      }
+    }
+  }
+
+  private void processWatchEvents() {
+    WatchService service = watchService;
+    while (true) {
+      WatchKey key;
+      try {
+        key = service.take();
+      } catch (InterruptedException e) {
+        return;
+      } catch (ClosedWatchServiceException e) {
+        return;
+      }
+      String namespace = watchKeys.get(key);
+      for (WatchEvent<?> event : key.pollEvents()) {
+        if (namespace != null && event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+          File created = ((Path) key.watchable()).resolve((Path) event.context()).toFile();
+          if (created.isDirectory()) {
+            try {
+              registerDirectory(service, namespace, created);
+            } catch (IOException e) {
+              logger.log(Level.WARNING, "Unable to watch " + created + ": " + e.getMessage());
+            } catch (ClosedWatchServiceException e) {
+              return;
+            }
+          }
+        }
+      }
+      if (namespace != null) {
+        logger.log(Level.FINE, "Configuration of namespace " + namespace + " changed");
+        invalidateNamespace(namespace);
+      }
+      if (!key.reset()) {
+        watchKeys.remove(key);
+        if (namespace != null
+            && ((Path) key.watchable()).toFile().equals(
+                new File(watchedBaseDirectory, namespace))) {
+          // the namespace directory is gone; watch it again once recreated
+          watchedNamespaces.remove(namespace);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.feedserver.configstore;
+
+/**
+ * Receives notifications about changes to the configurations held by a
+ * {@link FeedConfigStore}, so that state derived from them can be discarded.
+ */
+public interface FeedConfigStoreListener {
+
+  /**
+   * Called when a feed configuration has been added, updated or deleted
+   *
+   * @param namespace The namespace of the feed
+   * @param feedId The feed id
+   * @param userId User email of per user feed; null if not per user feed or
+   *        if all users of the feed are affected
+   */
+  public void feedChanged(String namespace, String feedId, String userId);
+
+  /**
+   * Called when an adapter configuration has been added, updated, deleted,
+   * allowed or disallowed
+   *
+   * @param namespace The namespace of the adapter configuration
+   * @param adapterName The adapter configuration name
+   */
+  public void adapterConfigurationChanged(String namespace, String adapterName);
+
+  /**
+   * Called when the store cannot tell which configurations of the namespace
+   * changed, e.g. after a file system change notification
+   *
+   * @param namespace The namespace
+   */
+  public void namespaceChanged(String namespace);
+}
@@ -77,11 +77,18 @@ public abstract class AbstractOAuthFilter implements Filter {
   private void initializeFilter(KeyManager keyManager) {
     this.keyManager = keyManager;
     provider = new OAuthServiceProvider(null, null, null);
-    validator = new SimpleOAuthValidator();
+    validator = createValidator();
     logger.info("Initialized OAuth filter with key manager: "
         + keyManager.getClass().getName());
   }
 
+  /**
+   * Creates the validator checking the OAuth messages
+   */
+  protected OAuthValidator createValidator() {
+    return new SimpleOAuthValidator();
+  }
+
   public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
       throws IOException, ServletException {
     try {
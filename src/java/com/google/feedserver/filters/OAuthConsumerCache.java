@@ -0,0 +1,148 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.google.feedserver.filters;
+
+import net.oauth.OAuthConsumer;
+import net.oauth.OAuthServiceProvider;
+import net.oauth.signature.OAuthSignatureMethod;
+import net.oauth.signature.RSA_SHA1;
+
+import java.io.ByteArrayInputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.cert.CertificateFactory;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Cache of the {@link OAuthConsumer}s returned by a {@link KeyManager}, per
+ * consumer key and signature method. RSA public keys and certificates given
+ * as text are parsed once, when the consumer is cached, instead of by
+ * {@link RSA_SHA1} for every verified request.
+ * <p>
+ * Cached consumers are shared by concurrent requests and must not be changed
+ * after being cached. They are fetched again from the key manager after the
+ * time to live, so that key changes are picked up.
+ * </p>
+ */
+public class OAuthConsumerCache {
+
+  private static final Logger logger = Logger.getLogger(OAuthConsumerCache.class.getName());
+
+  public static final int DEFAULT_MAX_SIZE = 1000;
+
+  private static class CachedConsumer {
+    final OAuthConsumer consumer;
+    final long expiresAt;
+
+    CachedConsumer(OAuthConsumer consumer, long expiresAt) {
+      this.consumer = consumer;
+      this.expiresAt = expiresAt;
+    }
+  }
+
+  private final ConcurrentMap<String, CachedConsumer> consumers =
+      new ConcurrentHashMap<String, CachedConsumer>();
+  private final long timeToLiveMillis;
+  private final int maxSize;
+
+  /**
+   * @param timeToLiveMillis How long a consumer is cached; 0 disables caching
+   */
+  public OAuthConsumerCache(long timeToLiveMillis) {
+    this(timeToLiveMillis, DEFAULT_MAX_SIZE);
+  }
+
+  public OAuthConsumerCache(long timeToLiveMillis, int maxSize) {
+    this.timeToLiveMillis = timeToLiveMillis;
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Gets the consumer for a consumer key and signature method
+   *
+   * @return The consumer; null if the key manager has none
+   */
+  public OAuthConsumer getOAuthConsumer(KeyManager keyManager, OAuthServiceProvider provider,
+      String consumerKey, String signatureMethod) {
+    if (timeToLiveMillis <= 0) {
+      return keyManager.getOAuthConsumer(provider, consumerKey, signatureMethod);
+    }
+    String key = consumerKey + "\n" + signatureMethod;
+    long now = System.currentTimeMillis();
+    CachedConsumer cached = consumers.get(key);
+    if (cached != null && cached.expiresAt > now) {
+      return cached.consumer;
+    }
+    OAuthConsumer consumer = keyManager.getOAuthConsumer(provider, consumerKey, signatureMethod);
+    if (consumer != null) {
+      parseKeys(consumer);
+      if (consumers.size() >= maxSize) {
+        consumers.clear();
+      }
+      consumers.put(key, new CachedConsumer(consumer, now + timeToLiveMillis));
+    }
+    return consumer;
+  }
+
+  public void clear() {
+    consumers.clear();
+  }
+
+  public int size() {
+    return consumers.size();
+  }
+
+  /**
+   * Replaces an RSA public key or certificate given as text with the parsed
+   * key or certificate, which {@link RSA_SHA1} uses as is. Keys that cannot
+   * be parsed are left for {@code RSA_SHA1} to report.
+   */
+  static void parseKeys(OAuthConsumer consumer) {
+    Object publicKey = consumer.getProperty(RSA_SHA1.PUBLIC_KEY);
+    if (publicKey instanceof String) {
+      try {
+        byte[] der = OAuthSignatureMethod.decodeBase64(stripPemHeaders((String) publicKey));
+        consumer.setProperty(RSA_SHA1.PUBLIC_KEY,
+            KeyFactory.getInstance("RSA").generatePublic(new X509EncodedKeySpec(der)));
+      } catch (GeneralSecurityException e) {
+        logger.log(Level.WARNING, "Invalid public key for consumer " + consumer.consumerKey, e);
+      }
+    }
+    Object certificate = consumer.getProperty(RSA_SHA1.X509_CERTIFICATE);
+    if (certificate instanceof String) {
+      try {
+        consumer.setProperty(RSA_SHA1.X509_CERTIFICATE,
+            CertificateFactory.getInstance("X.509").generateCertificate(
+                new ByteArrayInputStream(((String) certificate).getBytes("UTF-8"))));
+      } catch (GeneralSecurityException e) {
+        logger.log(Level.WARNING, "Invalid certificate for consumer " + consumer.consumerKey, e);
+      } catch (UnsupportedEncodingException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+  private static String stripPemHeaders(String pem) {
+    return pem.replaceAll("-----[A-Z ]+-----", "").replaceAll("\\s", "");
+  }
+}
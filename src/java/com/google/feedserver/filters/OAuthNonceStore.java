@@ -0,0 +1,174 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.google.feedserver.filters;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The nonces of the OAuth requests accepted within the timestamp window, so
+ * that replayed requests can be refused.
+ * <p>
+ * Nonces are kept in buckets by request timestamp. A bucket is dropped as a
+ * whole once all its timestamps are outside the window, since requests with
+ * those timestamps are refused anyway. The number of nonces kept is bounded
+ * per consumer key; when a consumer's quota is used up, its new nonces are
+ * refused until buckets expire, while other consumers are unaffected. Nonces
+ * are recorded only for requests with a verified signature, so the consumer
+ * keys are those of registered consumers.
+ * </p>
+ */
+public class OAuthNonceStore {
+
+  public static final long DEFAULT_BUCKET_MILLIS = 10000;
+
+  private final long windowMillis;
+  private final long bucketMillis;
+  private final int maxSizePerConsumer;
+
+  /**
+   * Bucket (timestamp / bucketMillis) -> nonces of the bucket -> consumer key
+   */
+  private final ConcurrentMap<Long, ConcurrentMap<String, String>> buckets =
+      new ConcurrentHashMap<Long, ConcurrentMap<String, String>>();
+  /**
+   * Consumer key -> number of nonces kept for the consumer
+   */
+  private final ConcurrentMap<String, AtomicInteger> consumerSizes =
+      new ConcurrentHashMap<String, AtomicInteger>();
+  private final AtomicInteger size = new AtomicInteger();
+  private final AtomicLong purgedAt = new AtomicLong();
+
+  /**
+   * @param windowMillis How far request timestamps may be from the current
+   *        time
+   * @param maxSizePerConsumer Maximum number of nonces kept per consumer key
+   */
+  public OAuthNonceStore(long windowMillis, int maxSizePerConsumer) {
+    this(windowMillis, DEFAULT_BUCKET_MILLIS, maxSizePerConsumer);
+  }
+
+  public OAuthNonceStore(long windowMillis, long bucketMillis, int maxSizePerConsumer) {
+    this.windowMillis = windowMillis;
+    this.bucketMillis = bucketMillis;
+    this.maxSizePerConsumer = maxSizePerConsumer;
+  }
+
+  /**
+   * Records the nonce of a request
+   *
+   * @param consumerKey The consumer key of the request
+   * @param timestampMillis The request timestamp
+   * @param nonce The request nonce
+   * @return False if the nonce has been used with the same consumer key and
+   *         timestamp, or if the quota of the consumer key is used up
+   */
+  public boolean add(String consumerKey, long timestampMillis, String nonce) {
+    removeExpiredBuckets(currentTimeMillis());
+    AtomicInteger consumerSize = getConsumerSize(consumerKey);
+    if (consumerSize.incrementAndGet() > maxSizePerConsumer) {
+      consumerSize.decrementAndGet();
+      return false;
+    }
+    Long bucketKey = timestampMillis / bucketMillis;
+    ConcurrentMap<String, String> bucket = buckets.get(bucketKey);
+    if (bucket == null) {
+      ConcurrentMap<String, String> newBucket = new ConcurrentHashMap<String, String>();
+      bucket = buckets.putIfAbsent(bucketKey, newBucket);
+      if (bucket == null) {
+        bucket = newBucket;
+      }
+    }
+    String nonceKey = consumerKey + "&" + timestampMillis + "&" + nonce;
+    size.incrementAndGet();
+    if (bucket.putIfAbsent(nonceKey, consumerKey) != null) {
+      consumerSize.decrementAndGet();
+      size.decrementAndGet();
+      return false;
+    }
+    if (buckets.get(bucketKey) != bucket) {
+      // the bucket expired meanwhile; the nonce is counted by whoever
+      // removes it from the bucket
+      removeNonce(bucket, nonceKey, consumerKey);
+    }
+    return true;
+  }
+
+  /**
+   * Tells whether new nonces of a consumer key are refused because its quota
+   * is used up
+   */
+  public boolean isFull(String consumerKey) {
+    AtomicInteger consumerSize = consumerSizes.get(consumerKey);
+    return consumerSize != null && consumerSize.get() >= maxSizePerConsumer;
+  }
+
+  public int size() {
+    return size.get();
+  }
+
+  protected long currentTimeMillis() {
+    return System.currentTimeMillis();
+  }
+
+  private AtomicInteger getConsumerSize(String consumerKey) {
+    AtomicInteger consumerSize = consumerSizes.get(consumerKey);
+    if (consumerSize == null) {
+      AtomicInteger newConsumerSize = new AtomicInteger();
+      consumerSize = consumerSizes.putIfAbsent(consumerKey, newConsumerSize);
+      if (consumerSize == null) {
+        consumerSize = newConsumerSize;
+      }
+    }
+    return consumerSize;
+  }
+
+  /**
+   * Drops the expired buckets, at most once per bucket period. The thread
+   * that claims the purge removes the buckets, and a nonce is only
+   * uncounted by the thread that removes it from its bucket, so that the
+   * counts stay exact under concurrent purges and adds.
+   */
+  private void removeExpiredBuckets(long now) {
+    long last = purgedAt.get();
+    if (now - last < bucketMillis || !purgedAt.compareAndSet(last, now)) {
+      return;
+    }
+    // the last bucket all of whose timestamps are outside the window
+    long expiredBucket = (now - windowMillis) / bucketMillis - 1;
+    for (Map.Entry<Long, ConcurrentMap<String, String>> entry : buckets.entrySet()) {
+      ConcurrentMap<String, String> bucket = entry.getValue();
+      if (entry.getKey() <= expiredBucket && buckets.remove(entry.getKey(), bucket)) {
+        for (Map.Entry<String, String> nonce : bucket.entrySet()) {
+          removeNonce(bucket, nonce.getKey(), nonce.getValue());
+        }
+      }
+    }
+  }
+
+  private void removeNonce(ConcurrentMap<String, String> bucket, String nonceKey,
+      String consumerKey) {
+    if (bucket.remove(nonceKey, consumerKey)) {
+      consumerSizes.get(consumerKey).decrementAndGet();
+      size.decrementAndGet();
+    }
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.google.feedserver.filters;
+
+import net.oauth.OAuth;
+import net.oauth.OAuthAccessor;
+import net.oauth.OAuthException;
+import net.oauth.OAuthMessage;
+import net.oauth.OAuthProblemException;
+import net.oauth.SimpleOAuthValidator;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+
+/**
+ * An OAuth validator that, in addition to the version, timestamp and
+ * signature checks of {@link SimpleOAuthValidator}, refuses requests whose
+ * nonce has already been used within the timestamp window.
+ * <p>
+ * Nonces are recorded after the signature has been verified, so that forged
+ * requests cannot use up the nonces of genuine ones.
+ * </p>
+ */
+public class ReplayProtectingOAuthValidator extends SimpleOAuthValidator {
+
+  public static final String PROBLEM_NONCE_USED = "nonce_used";
+  public static final String PROBLEM_TEMPORARILY_UNAVAILABLE = "temporarily_unavailable";
+
+  private final OAuthNonceStore nonceStore;
+
+  /**
+   * @param maxNoncesPerConsumer Maximum number of nonces kept per consumer key
+   */
+  public ReplayProtectingOAuthValidator(int maxNoncesPerConsumer) {
+    this(new OAuthNonceStore(DEFAULT_TIMESTAMP_WINDOW, maxNoncesPerConsumer));
+  }
+
+  public ReplayProtectingOAuthValidator(OAuthNonceStore nonceStore) {
+    this.nonceStore = nonceStore;
+  }
+
+  @Override
+  public void validateMessage(OAuthMessage message, OAuthAccessor accessor)
+      throws OAuthException, IOException, URISyntaxException {
+    super.validateMessage(message, accessor);
+    long timestamp = Long.parseLong(message.getParameter(OAuth.OAUTH_TIMESTAMP)) * 1000;
+    if (!nonceStore.add(message.getConsumerKey(), timestamp,
+        message.getParameter(OAuth.OAUTH_NONCE))) {
+      throw new OAuthProblemException(nonceStore.isFull(message.getConsumerKey())
+          ? PROBLEM_TEMPORARILY_UNAVAILABLE : PROBLEM_NONCE_USED);
+    }
+  }
+
+  public OAuthNonceStore getNonceStore() {
+    return nonceStore;
+  }
+}
@@ -20,11 +20,13 @@ import com.google.feedserver.adapters.AbstractManagedCollectionAdapter;
 import com.google.feedserver.config.UserInfo;
 import com.google.feedserver.config.UserInfo.UserInfoProperties;
 import com.google.feedserver.samples.config.HashMapBasedUserInfo;
+import com.google.feedserver.server.FlagConfig;
 
 import net.oauth.OAuthAccessor;
 import net.oauth.OAuthConsumer;
 import net.oauth.OAuthException;
 import net.oauth.OAuthMessage;
+import net.oauth.OAuthValidator;
 import net.oauth.server.OAuthServlet;
 
 import java.io.IOException;
@@ -38,6 +40,11 @@ import javax.servlet.http.HttpServletRequest;
 /**
  * OAuth filter for FeedServer. It uses {@link KeyManager} to store the public
  * consumer keys.
+ * <p>
+ * Consumers are cached with their keys parsed, see {@link OAuthConsumerCache},
+ * and replayed requests are refused, see
+ * {@link ReplayProtectingOAuthValidator}.
+ * </p>
  * 
  * @author abhinavk@gmail.com (Abhinav Khandelwal)
  * 
@@ -46,10 +53,19 @@ public class SimpleOAuthFilter extends AbstractOAuthFilter {
 
   private static final Logger logger = Logger.getLogger(SimpleOAuthFilter.class.getName());
 
+  private final OAuthConsumerCache consumerCache =
+      new OAuthConsumerCache(Long.parseLong(FlagConfig.oauthConsumerCacheSeconds_FLAG) * 1000);
+
   public SimpleOAuthFilter(KeyManager keyManager) {
     super(keyManager);
   }
 
+  @Override
+  protected OAuthValidator createValidator() {
+    return new ReplayProtectingOAuthValidator(
+        Integer.parseInt(FlagConfig.oauthMaxNonces_FLAG));
+  }
+
   @Override
   public String authenticate(HttpServletRequest request) throws IOException, OAuthException,
       URISyntaxException {
@@ -57,7 +73,8 @@ public class SimpleOAuthFilter extends AbstractOAuthFilter {
     OAuthMessage message = OAuthServlet.getMessage(request, null);
     String consumerKey = message.getConsumerKey();
     String signatureMethod = message.getSignatureMethod();
-    OAuthConsumer consumer = keyManager.getOAuthConsumer(provider, consumerKey, signatureMethod);
+    OAuthConsumer consumer =
+        consumerCache.getOAuthConsumer(keyManager, provider, consumerKey, signatureMethod);
     if (null == consumer) {
       logger.info("signed fetch verification failed: consumer is null");
       throw new OAuthException("Unauthorized");
@@ -84,7 +101,7 @@ public class SimpleOAuthFilter extends AbstractOAuthFilter {
     UserInfo userInfo = new HashMapBasedUserInfo(oauthParams);
     request.setAttribute(AbstractManagedCollectionAdapter.USER_INFO, userInfo);
 
-    logger.info("signed fetch verified: " + viewerEmail);
+    logger.fine("signed fetch verified: " + viewerEmail);
     return message.getParameter("opensocial_viewer_id");
   }
 }
@@ -18,11 +18,16 @@ package com.google.feedserver.manager;
 
 import com.google.feedserver.adapters.AbstractManagedCollectionAdapter;
 import com.google.feedserver.adapters.FeedServerAdapterException;
+import com.google.feedserver.adapters.FeedStream;
+import com.google.feedserver.adapters.PagingParameters;
+import com.google.feedserver.adapters.ResourceVersion;
 import com.google.feedserver.config.AclValidator;
 import com.google.feedserver.config.MixinConfiguration;
 import com.google.feedserver.config.NamespacedAdapterConfiguration;
 import com.google.feedserver.config.AclValidator.AclResult;
 import com.google.feedserver.configstore.FeedConfigStoreException;
+import com.google.feedserver.resource.AuthorizedEntity;
+import com.google.feedserver.wrappers.AdapterInterceptor;
 import com.google.feedserver.wrappers.ManagedCollectionAdapterWrapper;
 
 import org.apache.abdera.model.Entry;
@@ -32,19 +37,35 @@ import org.apache.abdera.protocol.server.RequestContext;
 import org.apache.abdera.protocol.server.provider.managed.CollectionAdapterConfiguration;
 
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Wrapper manager helps to manage wrappers over adapters.
+ * <p>
+ * Wrappers that only work around operations provide an
+ * {@link AdapterInterceptor}. The manager takes them out of the chain and
+ * runs their interceptors from a single array, so that their cost does not
+ * grow with the depth of the chain.
+ * </p>
  * 
  * @author abhinavk@gmail.com (Abhinav Khandelwal)
  * 
  */
 public abstract class AbstractWrapperManager extends ManagedCollectionAdapterWrapper {
 
+  /**
+   * Run in order before each operation, starting with the ACL validator
+   * check, followed by the interceptors of the wrappers taken out of the
+   * chain
+   */
+  private AdapterInterceptor[] interceptors;
+
   public AbstractWrapperManager(AbstractManagedCollectionAdapter targetAdapter)
       throws FeedServerAdapterException {
     super(targetAdapter, "");
     configureWrappers();
+    compileInterceptors();
   }
 
   protected void configureWrappers() throws FeedServerAdapterException {
@@ -64,6 +85,39 @@ public abstract class AbstractWrapperManager extends ManagedCollectionAdapterWra
     wrapper.setWrapperConfig(config.getWrapperConfig());
   }
 
+  /**
+   * Takes the wrappers that provide an interceptor out of the chain below
+   * this manager, up to the adapter or the next wrapper manager, and
+   * collects their interceptors, outermost first. Run again after the chain
+   * has been replaced with {@link #setTargetAdapter}.
+   */
+  public void compileInterceptors() {
+    List<AdapterInterceptor> compiled = new ArrayList<AdapterInterceptor>();
+    compiled.add(new AclValidatorInterceptor());
+    ManagedCollectionAdapterWrapper layer = this;
+    AbstractManagedCollectionAdapter adapter = getTargetAdapter();
+    while (adapter instanceof ManagedCollectionAdapterWrapper
+        && !(adapter instanceof AbstractWrapperManager)) {
+      ManagedCollectionAdapterWrapper wrapper = (ManagedCollectionAdapterWrapper) adapter;
+      AdapterInterceptor interceptor = wrapper.getInterceptor();
+      if (interceptor != null) {
+        compiled.add(interceptor);
+        layer.setTargetAdapter(wrapper.getTargetAdapter());
+      } else {
+        layer = wrapper;
+      }
+      adapter = wrapper.getTargetAdapter();
+    }
+    interceptors = compiled.toArray(new AdapterInterceptor[compiled.size()]);
+  }
+
+  /**
+   * Gets the interceptors run before each operation, in order
+   */
+  public AdapterInterceptor[] getInterceptors() {
+    return interceptors.clone();
+  }
+
   protected abstract MixinConfiguration getMixinConfiguration(String configData)
       throws FeedServerAdapterException;
 
@@ -178,48 +232,166 @@ public abstract class AbstractWrapperManager extends ManagedCollectionAdapterWra
   @Override
   public Entry retrieveEntry(RequestContext request, Object entryId)
       throws FeedServerAdapterException {
-    if (AclResult.ACCESS_GRANTED != getAclValidator().canRetrieveEntry(request, entryId)) {
-      throw new FeedServerAdapterException(FeedServerAdapterException.Reason.NOT_AUTHORIZED,
-          "Access Denied");
+    before(AuthorizedEntity.OPERATION_RETRIEVE, request, entryId);
+    boolean succeeded = false;
+    try {
+      Entry result = super.retrieveEntry(request, entryId);
+      succeeded = true;
+      return result;
+    } finally {
+      after(AuthorizedEntity.OPERATION_RETRIEVE, request, entryId, succeeded);
     }
-    return super.retrieveEntry(request, entryId);
   }
 
   @Override
   public Feed retrieveFeed(RequestContext request) throws FeedServerAdapterException {
-    if (AclResult.ACCESS_GRANTED != getAclValidator().canRetrieveFeed(request)) {
-      throw new FeedServerAdapterException(FeedServerAdapterException.Reason.NOT_AUTHORIZED,
-          "Access Denied");
+    before(AuthorizedEntity.OPERATION_RETRIEVE, request, null);
+    boolean succeeded = false;
+    try {
+      Feed result = super.retrieveFeed(request);
+      succeeded = true;
+      return result;
+    } finally {
+      after(AuthorizedEntity.OPERATION_RETRIEVE, request, null, succeeded);
+    }
+  }
+
+  @Override
+  public Feed retrieveFeed(RequestContext request, PagingParameters paging)
+      throws FeedServerAdapterException {
+    before(AuthorizedEntity.OPERATION_RETRIEVE, request, null);
+    boolean succeeded = false;
+    try {
+      Feed result = super.retrieveFeed(request, paging);
+      succeeded = true;
+      return result;
+    } finally {
+      after(AuthorizedEntity.OPERATION_RETRIEVE, request, null, succeeded);
+    }
+  }
+
+  @Override
+  public FeedStream openFeedStream(RequestContext request) throws FeedServerAdapterException {
+    before(AuthorizedEntity.OPERATION_RETRIEVE, request, null);
+    boolean succeeded = false;
+    try {
+      FeedStream result = super.openFeedStream(request);
+      succeeded = true;
+      return result;
+    } finally {
+      after(AuthorizedEntity.OPERATION_RETRIEVE, request, null, succeeded);
+    }
+  }
+
+  @Override
+  public ResourceVersion getFeedVersion(RequestContext request) throws FeedServerAdapterException {
+    before(AuthorizedEntity.OPERATION_RETRIEVE, request, null);
+    boolean succeeded = false;
+    try {
+      ResourceVersion result = super.getFeedVersion(request);
+      succeeded = true;
+      return result;
+    } finally {
+      after(AuthorizedEntity.OPERATION_RETRIEVE, request, null, succeeded);
+    }
+  }
+
+  @Override
+  public ResourceVersion getEntryVersion(RequestContext request, Object entryId)
+      throws FeedServerAdapterException {
+    before(AuthorizedEntity.OPERATION_RETRIEVE, request, entryId);
+    boolean succeeded = false;
+    try {
+      ResourceVersion result = super.getEntryVersion(request, entryId);
+      succeeded = true;
+      return result;
+    } finally {
+      after(AuthorizedEntity.OPERATION_RETRIEVE, request, entryId, succeeded);
     }
-    return super.retrieveFeed(request);
   }
 
   @Override
   public Entry updateEntry(RequestContext request, Object entryId, Entry entry)
       throws FeedServerAdapterException {
-    if (AclResult.ACCESS_GRANTED != getAclValidator().canUpdateEntry(request, entryId)) {
-      throw new FeedServerAdapterException(FeedServerAdapterException.Reason.NOT_AUTHORIZED,
-          "Access Denied");
+    before(AuthorizedEntity.OPERATION_UPDATE, request, entryId);
+    boolean succeeded = false;
+    try {
+      Entry result = super.updateEntry(request, entryId, entry);
+      succeeded = true;
+      return result;
+    } finally {
+      after(AuthorizedEntity.OPERATION_UPDATE, request, entryId, succeeded);
     }
-    return super.updateEntry(request, entryId, entry);
   }
 
   @Override
   public Entry createEntry(RequestContext request, Entry entry) throws FeedServerAdapterException {
-    if (AclResult.ACCESS_GRANTED != getAclValidator().canCreateEntry(request)) {
-      throw new FeedServerAdapterException(FeedServerAdapterException.Reason.NOT_AUTHORIZED,
-          "Access Denied");
+    before(AuthorizedEntity.OPERATION_CREATE, request, null);
+    boolean succeeded = false;
+    try {
+      Entry result = super.createEntry(request, entry);
+      succeeded = true;
+      return result;
+    } finally {
+      after(AuthorizedEntity.OPERATION_CREATE, request, null, succeeded);
     }
-    return super.createEntry(request, entry);
   }
 
   @Override
   public void deleteEntry(RequestContext request, Object entryId) throws FeedServerAdapterException {
-    if (AclResult.ACCESS_GRANTED != getAclValidator().canDeleteEntry(request, entryId)) {
-      throw new FeedServerAdapterException(FeedServerAdapterException.Reason.NOT_AUTHORIZED,
-          "Access Denied");
+    before(AuthorizedEntity.OPERATION_DELETE, request, entryId);
+    boolean succeeded = false;
+    try {
+      super.deleteEntry(request, entryId);
+      succeeded = true;
+    } finally {
+      after(AuthorizedEntity.OPERATION_DELETE, request, entryId, succeeded);
+    }
+  }
+
+  private void before(String operation, RequestContext request, Object entryId)
+      throws FeedServerAdapterException {
+    for (AdapterInterceptor interceptor : interceptors) {
+      interceptor.before(operation, request, entryId);
+    }
+  }
+
+  private void after(String operation, RequestContext request, Object entryId,
+      boolean succeeded) {
+    for (int i = interceptors.length - 1; i >= 0; i--) {
+      interceptors[i].after(operation, request, entryId, succeeded);
+    }
+  }
+
+  /**
+   * Checks the operations against the server's {@link AclValidator}
+   */
+  private class AclValidatorInterceptor implements AdapterInterceptor {
+    @Override
+    public void before(String operation, RequestContext request, Object entryId)
+        throws FeedServerAdapterException {
+      AclValidator aclValidator = getAclValidator();
+      AclResult result;
+      if (AuthorizedEntity.OPERATION_RETRIEVE.equals(operation)) {
+        result = entryId == null ? aclValidator.canRetrieveFeed(request)
+            : aclValidator.canRetrieveEntry(request, entryId);
+      } else if (AuthorizedEntity.OPERATION_CREATE.equals(operation)) {
+        result = aclValidator.canCreateEntry(request);
+      } else if (AuthorizedEntity.OPERATION_UPDATE.equals(operation)) {
+        result = aclValidator.canUpdateEntry(request, entryId);
+      } else {
+        result = aclValidator.canDeleteEntry(request, entryId);
+      }
+      if (AclResult.ACCESS_GRANTED != result) {
+        throw new FeedServerAdapterException(FeedServerAdapterException.Reason.NOT_AUTHORIZED,
+            "Access Denied");
+      }
+    }
+
+    @Override
+    public void after(String operation, RequestContext request, Object entryId,
+        boolean succeeded) {
     }
-    super.deleteEntry(request, entryId);
   }
 
   private AclValidator getAclValidator() {
@@ -0,0 +1,308 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.feedserver.manager;
+
+import com.google.feedserver.adapters.AbstractManagedCollectionAdapter;
+import com.google.feedserver.configstore.FeedConfigStoreListener;
+
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, thread-safe cache of fully wrapped adapter chains keyed by
+ * namespace, feed and user. Building a chain means loading the feed and
+ * adapter configurations from the config store and instantiating the adapter
+ * plus all of its mixins by reflection, so reusing the chain across requests
+ * saves most of the per-request set up cost.
+ * <p>
+ * Entries are evicted oldest first once {@link #getMaxSize()} is exceeded.
+ * Callers that modify feed or adapter configurations are expected to call one
+ * of the {@code invalidate} methods so that the next request rebuilds the
+ * chain. Registered as a {@link FeedConfigStoreListener} the cache does so on
+ * its own. The cache must only be used where such notifications arrive, since
+ * it has no other way to notice configuration changes.
+ * </p>
+ * <p>
+ * A chain is only cached if no invalidation happened since the caller read
+ * {@link #getGeneration()} before building it, so that a chain built from a
+ * configuration that changed meanwhile is not kept.
+ * </p>
+ */
+public class AdapterChainCache implements FeedConfigStoreListener {
+
+  /**
+   * Default maximum number of adapter chains kept in the cache
+   */
+  public static final int DEFAULT_MAX_SIZE = 1000;
+
+  private final int maxSize;
+
+  private final ConcurrentMap<Key, AbstractManagedCollectionAdapter> adapters;
+
+  /**
+   * Keys in insertion order; used to pick eviction candidates
+   */
+  private final Queue<Key> insertionOrder;
+
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+  private final AtomicLong evictionCount = new AtomicLong();
+
+  /**
+   * Incremented on every invalidation
+   */
+  private final AtomicLong generation = new AtomicLong();
+
+  public AdapterChainCache() {
+    this(DEFAULT_MAX_SIZE);
+  }
+
+  /**
+   * Creates a cache holding at most {@code maxSize} adapter chains
+   *
+   * @param maxSize The maximum number of chains; 0 disables caching
+   */
+  public AdapterChainCache(int maxSize) {
+    if (maxSize < 0) {
+      throw new IllegalArgumentException("maxSize must not be negative: " + maxSize);
+    }
+    this.maxSize = maxSize;
+    this.adapters = new ConcurrentHashMap<Key, AbstractManagedCollectionAdapter>();
+    this.insertionOrder = new ConcurrentLinkedQueue<Key>();
+  }
+
+  /**
+   * Gets the cached adapter chain for the feed
+   *
+   * @param namespace The namespace of the feed
+   * @param feedId The feed id
+   * @param userId User email of per user feed; null if not per user feed
+   * @return The cached adapter chain or null if there is none
+   */
+  public AbstractManagedCollectionAdapter get(String namespace, String feedId, String userId) {
+    AbstractManagedCollectionAdapter adapter = adapters.get(new Key(namespace, feedId, userId));
+    if (adapter == null) {
+      missCount.incrementAndGet();
+    } else {
+      hitCount.incrementAndGet();
+    }
+    return adapter;
+  }
+
+  /**
+   * Gets the current generation of the cache, to be passed to
+   * {@link #put(String, String, String, AbstractManagedCollectionAdapter, long)}
+   * once the adapter chain has been built
+   */
+  public long getGeneration() {
+    return generation.get();
+  }
+
+  /**
+   * Adds the adapter chain for the feed to the cache. If another thread has
+   * cached a chain for the same feed in the meantime, that chain is kept and
+   * returned so that all callers share a single instance. The chain is not
+   * cached if the cache has been invalidated since {@code buildGeneration}.
+   *
+   * @param namespace The namespace of the feed
+   * @param feedId The feed id
+   * @param userId User email of per user feed; null if not per user feed
+   * @param adapter The fully wrapped adapter chain
+   * @param buildGeneration The value of {@link #getGeneration()} read before
+   *        the chain was built
+   * @return The adapter chain now associated with the feed
+   */
+  public AbstractManagedCollectionAdapter put(String namespace, String feedId, String userId,
+      AbstractManagedCollectionAdapter adapter, long buildGeneration) {
+    if (maxSize == 0 || generation.get() != buildGeneration) {
+      return adapter;
+    }
+    Key key = new Key(namespace, feedId, userId);
+    AbstractManagedCollectionAdapter existing = adapters.putIfAbsent(key, adapter);
+    if (existing != null) {
+      return existing;
+    }
+    if (generation.get() != buildGeneration) {
+      // Invalidated while adding; the chain may be stale
+      adapters.remove(key, adapter);
+      return adapter;
+    }
+    insertionOrder.add(key);
+    evictIfNeeded();
+    return adapter;
+  }
+
+  /**
+   * Removes the cached adapter chains of the feed, for all users
+   *
+   * @param namespace The namespace of the feed
+   * @param feedId The feed id
+   */
+  public void invalidate(String namespace, String feedId) {
+    generation.incrementAndGet();
+    for (Iterator<Key> i = adapters.keySet().iterator(); i.hasNext();) {
+      Key key = i.next();
+      if (key.namespace.equals(namespace) && key.feedId.equals(feedId)) {
+        i.remove();
+        insertionOrder.remove(key);
+      }
+    }
+  }
+
+  /**
+   * Removes the cached adapter chain of a single (per user) feed
+   *
+   * @param namespace The namespace of the feed
+   * @param feedId The feed id
+   * @param userId User email of per user feed; null if not per user feed
+   */
+  public void invalidate(String namespace, String feedId, String userId) {
+    generation.incrementAndGet();
+    Key key = new Key(namespace, feedId, userId);
+    if (adapters.remove(key) != null) {
+      insertionOrder.remove(key);
+    }
+  }
+
+  /**
+   * Removes all cached adapter chains of the namespace. Used when an adapter
+   * configuration changes since any feed of the namespace may depend on it.
+   *
+   * @param namespace The namespace
+   */
+  public void invalidateNamespace(String namespace) {
+    generation.incrementAndGet();
+    for (Iterator<Key> i = adapters.keySet().iterator(); i.hasNext();) {
+      Key key = i.next();
+      if (key.namespace.equals(namespace)) {
+        i.remove();
+        insertionOrder.remove(key);
+      }
+    }
+  }
+
+  /**
+   * Removes all cached adapter chains
+   */
+  public void invalidateAll() {
+    generation.incrementAndGet();
+    adapters.clear();
+    insertionOrder.clear();
+  }
+
+  @Override
+  public void feedChanged(String namespace, String feedId, String userId) {
+    if (userId == null) {
+      invalidate(namespace, feedId);
+    } else {
+      invalidate(namespace, feedId, userId);
+    }
+  }
+
+  /**
+   * Any feed of the namespace may use the adapter, either directly or as a
+   * mixin, so all chains of the namespace are dropped
+   */
+  @Override
+  public void adapterConfigurationChanged(String namespace, String adapterName) {
+    invalidateNamespace(namespace);
+  }
+
+  @Override
+  public void namespaceChanged(String namespace) {
+    invalidateNamespace(namespace);
+  }
+
+  private void evictIfNeeded() {
+    while (adapters.size() > maxSize) {
+      Key eldest = insertionOrder.poll();
+      if (eldest == null) {
+        return;
+      }
+      if (adapters.remove(eldest) != null) {
+        evictionCount.incrementAndGet();
+      }
+    }
+  }
+
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  public int size() {
+    return adapters.size();
+  }
+
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  public long getEvictionCount() {
+    return evictionCount.get();
+  }
+
+  @Override
+  public String toString() {
+    return "AdapterChainCache[size=" + size() + ", maxSize=" + maxSize + ", hits="
+        + getHitCount() + ", misses=" + getMissCount() + ", evictions=" + getEvictionCount()
+        + "]";
+  }
+
+  /**
+   * Cache key: (namespace, feedId, userId)
+   */
+  private static class Key {
+    private final String namespace;
+    private final String feedId;
+    private final String userId;
+
+    Key(String namespace, String feedId, String userId) {
+      this.namespace = namespace == null ? "" : namespace;
+      this.feedId = feedId == null ? "" : feedId;
+      this.userId = userId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return namespace.equals(other.namespace) && feedId.equals(other.feedId)
+          && (userId == null ? other.userId == null : userId.equals(other.userId));
+    }
+
+    @Override
+    public int hashCode() {
+      int result = namespace.hashCode();
+      result = 31 * result + feedId.hashCode();
+      result = 31 * result + (userId == null ? 0 : userId.hashCode());
+      return result;
+    }
+  }
+}
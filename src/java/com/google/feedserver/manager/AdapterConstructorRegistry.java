@@ -0,0 +1,106 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.feedserver.manager;
+
+import java.lang.reflect.Constructor;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Registry of resolved adapter and wrapper constructors keyed by class name
+ * and constructor signature. A constructor is looked up by reflection the
+ * first time it is requested and served from the registry afterwards, so
+ * reads do not take a lock and do not touch the class loader.
+ * <p>
+ * Classes are loaded through the context class loader of the thread that
+ * first requests them.
+ * </p>
+ */
+public class AdapterConstructorRegistry {
+
+  private static final Logger logger =
+      Logger.getLogger(AdapterConstructorRegistry.class.getName());
+
+  private final ConcurrentMap<String, Constructor<?>> constructors =
+      new ConcurrentHashMap<String, Constructor<?>>();
+
+  /**
+   * Gets the public constructor of {@code className} taking
+   * {@code paramClasses}, resolving it if this is the first request for it.
+   *
+   * @param className fully qualified class name
+   * @param paramClasses the constructor parameter types (in order)
+   * @return the accessible constructor
+   * @throws ClassNotFoundException If the class cannot be loaded
+   * @throws NoSuchMethodException If there is no matching public constructor
+   */
+  public Constructor<?> getConstructor(String className, Class<?>[] paramClasses)
+      throws ClassNotFoundException, NoSuchMethodException {
+    String key = getKey(className, paramClasses);
+    Constructor<?> constructor = constructors.get(key);
+    if (constructor == null) {
+      constructor = resolveConstructor(className, paramClasses);
+      Constructor<?> existing = constructors.putIfAbsent(key, constructor);
+      if (existing != null) {
+        constructor = existing;
+      }
+    }
+    return constructor;
+  }
+
+  /**
+   * Removes all resolved constructors, e.g. after the adapter classes have
+   * been reloaded
+   */
+  public void clear() {
+    constructors.clear();
+  }
+
+  /**
+   * Gets the number of resolved constructors
+   */
+  public int size() {
+    return constructors.size();
+  }
+
+  private Constructor<?> resolveConstructor(String className, Class<?>[] paramClasses)
+      throws ClassNotFoundException, NoSuchMethodException {
+    ClassLoader cl = Thread.currentThread().getContextClassLoader();
+    Class<?> adapterClass = cl.loadClass(className);
+    if (logger.isLoggable(Level.FINEST)) {
+      for (Constructor<?> element : adapterClass.getConstructors()) {
+        logger.finest("Public constructor found: " + element);
+      }
+    }
+    Constructor<?> c = adapterClass.getConstructor(paramClasses);
+    c.setAccessible(true);
+    return c;
+  }
+
+  private static String getKey(String className, Class<?>[] paramClasses) {
+    StringBuilder key = new StringBuilder(className).append('(');
+    for (int i = 0; i < paramClasses.length; i++) {
+      if (i > 0) {
+        key.append(',');
+      }
+      key.append(paramClasses[i].getName());
+    }
+    return key.append(')').toString();
+  }
+}
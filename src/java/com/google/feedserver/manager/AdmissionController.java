@@ -0,0 +1,364 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.feedserver.manager;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the requests processed at once for each namespace and for each feed,
+ * so that one tenant cannot take every request thread. A request beyond the
+ * limit waits in a bounded queue. It is rejected with 429 when the queue is
+ * full and with 503 when it waits too long; both carry a retry delay
+ * estimated from the recent latency of the namespace or feed.
+ * <p>
+ * A limit of 0 turns off the corresponding check. Namespaces and feeds are
+ * taken from the request path before they are resolved, so the number of
+ * them tracked at once is bounded; idle ones are dropped to make room, along
+ * with their counters. A request holds on to the limiters it uses from the
+ * time it looks them up until it is released, so a limiter is only dropped
+ * while no request uses it.
+ * </p>
+ */
+public class AdmissionController {
+
+  public static final int STATUS_TOO_MANY_REQUESTS = 429;
+  public static final int STATUS_SERVICE_UNAVAILABLE = 503;
+
+  /**
+   * Default maximum number of namespaces and feeds tracked at once
+   */
+  public static final int DEFAULT_MAX_LIMITERS = 10000;
+
+  /**
+   * Thrown when a request is not admitted
+   */
+  public static class RejectedException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    private final int status;
+    private final int retryAfterSeconds;
+
+    RejectedException(int status, String message, int retryAfterSeconds) {
+      super(message);
+      this.status = status;
+      this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * Gets the HTTP status to answer the request with
+     */
+    public int getStatus() {
+      return status;
+    }
+
+    /**
+     * Gets the number of seconds after which the request may be retried
+     */
+    public int getRetryAfterSeconds() {
+      return retryAfterSeconds;
+    }
+  }
+
+  /**
+   * The permits held by an admitted request. {@link #release()} must be
+   * called once the request has been processed.
+   */
+  public static class Admission {
+    private final Limiter[] limiters;
+    private final long startNanos = System.nanoTime();
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    Admission(Limiter... limiters) {
+      this.limiters = limiters;
+    }
+
+    public void release() {
+      if (!released.compareAndSet(false, true)) {
+        return;
+      }
+      long latencyNanos = System.nanoTime() - startNanos;
+      for (Limiter limiter : limiters) {
+        if (limiter != null) {
+          limiter.recordLatency(latencyNanos);
+          limiter.permits.release();
+          limiter.leave();
+        }
+      }
+    }
+  }
+
+  /**
+   * Concurrency and queue limits and counters of one namespace or feed
+   */
+  static class Limiter {
+    final int maxConcurrent;
+    final int maxQueued;
+    final Semaphore permits;
+    final AtomicInteger queued = new AtomicInteger();
+    final AtomicLong admitted = new AtomicLong();
+    final AtomicLong rejected = new AtomicLong();
+    final AtomicLong timedOut = new AtomicLong();
+    final AtomicLong averageLatencyMicros = new AtomicLong();
+    private int users;
+    private boolean retired;
+
+    Limiter(int maxConcurrent, int maxQueued) {
+      this.maxConcurrent = maxConcurrent;
+      this.maxQueued = maxQueued;
+      permits = new Semaphore(maxConcurrent, true);
+    }
+
+    /**
+     * Folds a latency into the moving average, weighing it 1/8
+     */
+    void recordLatency(long latencyNanos) {
+      long latencyMicros = latencyNanos / 1000;
+      while (true) {
+        long average = averageLatencyMicros.get();
+        long updated = average == 0 ? latencyMicros : average + (latencyMicros - average) / 8;
+        if (averageLatencyMicros.compareAndSet(average, updated)) {
+          return;
+        }
+      }
+    }
+
+    int getInFlight() {
+      return maxConcurrent - permits.availablePermits();
+    }
+
+    /**
+     * Registers a request that uses this limiter
+     *
+     * @return false if the limiter has been dropped and must not be used
+     */
+    synchronized boolean enter() {
+      if (retired) {
+        return false;
+      }
+      users++;
+      return true;
+    }
+
+    synchronized void leave() {
+      users--;
+    }
+
+    /**
+     * Marks the limiter as dropped if no request uses it
+     *
+     * @return true if the limiter has been marked
+     */
+    synchronized boolean retireIfIdle() {
+      if (users == 0) {
+        retired = true;
+      }
+      return retired;
+    }
+
+    /**
+     * Estimates when the requests ahead of a new one will have been processed
+     */
+    int getRetryAfterSeconds() {
+      long waitMicros =
+          averageLatencyMicros.get() * (queued.get() + getInFlight() + 1) / maxConcurrent;
+      return (int) Math.max(1, (waitMicros + 999999) / 1000000);
+    }
+
+    @Override
+    public String toString() {
+      return "inFlight=" + getInFlight() + ", queued=" + queued.get() + ", admitted="
+          + admitted.get() + ", rejected=" + rejected.get() + ", timedOut=" + timedOut.get()
+          + ", averageLatencyMillis=" + averageLatencyMicros.get() / 1000;
+    }
+  }
+
+  private final int maxConcurrentPerNamespace;
+  private final int maxQueuedPerNamespace;
+  private final int maxConcurrentPerFeed;
+  private final int maxQueuedPerFeed;
+  private final long maxWaitMillis;
+  private final int maxLimiters;
+  private final ConcurrentMap<String, Limiter> limiters = new ConcurrentHashMap<String, Limiter>();
+
+  /**
+   * @param maxConcurrentPerNamespace Requests processed at once per
+   *        namespace; 0 for no limit
+   * @param maxQueuedPerNamespace Requests waiting per namespace
+   * @param maxConcurrentPerFeed Requests processed at once per feed; 0 for
+   *        no limit
+   * @param maxQueuedPerFeed Requests waiting per feed
+   * @param maxWaitMillis Time a request may wait for admission
+   */
+  public AdmissionController(int maxConcurrentPerNamespace, int maxQueuedPerNamespace,
+      int maxConcurrentPerFeed, int maxQueuedPerFeed, long maxWaitMillis) {
+    this(maxConcurrentPerNamespace, maxQueuedPerNamespace, maxConcurrentPerFeed,
+        maxQueuedPerFeed, maxWaitMillis, DEFAULT_MAX_LIMITERS);
+  }
+
+  /**
+   * @param maxLimiters Maximum number of namespaces and feeds tracked at
+   *        once. Requests for further ones are rejected with 503 while all
+   *        tracked ones are busy.
+   */
+  public AdmissionController(int maxConcurrentPerNamespace, int maxQueuedPerNamespace,
+      int maxConcurrentPerFeed, int maxQueuedPerFeed, long maxWaitMillis, int maxLimiters) {
+    this.maxConcurrentPerNamespace = maxConcurrentPerNamespace;
+    this.maxQueuedPerNamespace = maxQueuedPerNamespace;
+    this.maxConcurrentPerFeed = maxConcurrentPerFeed;
+    this.maxQueuedPerFeed = maxQueuedPerFeed;
+    this.maxWaitMillis = maxWaitMillis;
+    this.maxLimiters = maxLimiters;
+  }
+
+  public boolean isEnabled() {
+    return maxConcurrentPerNamespace > 0 || maxConcurrentPerFeed > 0;
+  }
+
+  /**
+   * Admits a request for a namespace and feed, waiting for the requests
+   * ahead of it if needed
+   *
+   * @param namespace The namespace of the request
+   * @param feedId The feed of the request; null if it is not for a feed
+   * @return The permits to release once the request has been processed
+   * @throws RejectedException If the namespace or feed is over its limits
+   */
+  public Admission admit(String namespace, String feedId) throws RejectedException {
+    Limiter namespaceLimiter = null;
+    Limiter feedLimiter = null;
+    boolean admitted = false;
+    try {
+      if (maxConcurrentPerNamespace > 0 && namespace != null) {
+        namespaceLimiter =
+            getLimiter(namespace, maxConcurrentPerNamespace, maxQueuedPerNamespace);
+      }
+      if (maxConcurrentPerFeed > 0 && namespace != null && feedId != null) {
+        feedLimiter =
+            getLimiter(namespace + "/" + feedId, maxConcurrentPerFeed, maxQueuedPerFeed);
+      }
+      long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+      acquire(namespace, namespaceLimiter, deadlineNanos);
+      try {
+        acquire(namespace + "/" + feedId, feedLimiter, deadlineNanos);
+      } catch (RejectedException e) {
+        if (namespaceLimiter != null) {
+          namespaceLimiter.permits.release();
+        }
+        throw e;
+      }
+      admitted = true;
+      return new Admission(namespaceLimiter, feedLimiter);
+    } finally {
+      if (!admitted) {
+        if (namespaceLimiter != null) {
+          namespaceLimiter.leave();
+        }
+        if (feedLimiter != null) {
+          feedLimiter.leave();
+        }
+      }
+    }
+  }
+
+  private void acquire(String key, Limiter limiter, long deadlineNanos)
+      throws RejectedException {
+    if (limiter == null) {
+      return;
+    }
+    if (!limiter.permits.tryAcquire()) {
+      if (limiter.queued.incrementAndGet() > limiter.maxQueued) {
+        limiter.queued.decrementAndGet();
+        limiter.rejected.incrementAndGet();
+        throw new RejectedException(STATUS_TOO_MANY_REQUESTS, "Too many requests for " + key,
+            limiter.getRetryAfterSeconds());
+      }
+      boolean acquired = false;
+      try {
+        acquired = limiter.permits.tryAcquire(deadlineNanos - System.nanoTime(),
+            TimeUnit.NANOSECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        limiter.queued.decrementAndGet();
+      }
+      if (!acquired) {
+        limiter.timedOut.incrementAndGet();
+        throw new RejectedException(STATUS_SERVICE_UNAVAILABLE, "Timed out waiting for " + key,
+            limiter.getRetryAfterSeconds());
+      }
+    }
+    limiter.admitted.incrementAndGet();
+  }
+
+  /**
+   * Gets the limiter of a namespace or feed and registers the request with
+   * it. The caller must {@link Limiter#leave()} it once done.
+   */
+  private Limiter getLimiter(String key, int maxConcurrent, int maxQueued)
+      throws RejectedException {
+    while (true) {
+      Limiter limiter = limiters.get(key);
+      if (limiter == null) {
+        if (limiters.size() >= maxLimiters) {
+          removeIdleLimiters();
+          if (limiters.size() >= maxLimiters) {
+            throw new RejectedException(STATUS_SERVICE_UNAVAILABLE,
+                "Too many namespaces and feeds in use for " + key, 1);
+          }
+        }
+        Limiter newLimiter = new Limiter(maxConcurrent, maxQueued);
+        limiter = limiters.putIfAbsent(key, newLimiter);
+        if (limiter == null) {
+          limiter = newLimiter;
+        }
+      }
+      if (limiter.enter()) {
+        return limiter;
+      }
+      // dropped since it was looked up; make sure it is gone and start over
+      limiters.remove(key, limiter);
+    }
+  }
+
+  private void removeIdleLimiters() {
+    for (Map.Entry<String, Limiter> entry : limiters.entrySet()) {
+      if (entry.getValue().retireIfIdle()) {
+        limiters.remove(entry.getKey(), entry.getValue());
+      }
+    }
+  }
+
+  /**
+   * Gets the admission counters of each namespace and of each feed, keyed by
+   * namespace or by namespace/feed
+   */
+  public Map<String, String> getStats() {
+    Map<String, String> stats = new TreeMap<String, String>();
+    for (Map.Entry<String, Limiter> entry : limiters.entrySet()) {
+      stats.put(entry.getKey(), entry.getValue().toString());
+    }
+    return stats;
+  }
+}
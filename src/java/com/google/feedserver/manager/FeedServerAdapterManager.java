@@ -35,6 +35,9 @@ import java.lang.reflect.InvocationTargetException;
  */
 public class FeedServerAdapterManager extends CollectionAdapterManager {
 
+  private static final AdapterConstructorRegistry constructorRegistry =
+      new AdapterConstructorRegistry();
+
   public FeedServerAdapterManager(Abdera abdera, ServerConfiguration config) {
     super(abdera, config);
   }
@@ -156,19 +159,20 @@ public class FeedServerAdapterManager extends CollectionAdapterManager {
    * @throws InvocationTargetException
    */
   @SuppressWarnings("unchecked")
-  public static synchronized CollectionAdapter createAdapter(String adapterType,
+  public static CollectionAdapter createAdapter(String adapterType,
       Class[] paramClasses, Object... objects) throws ClassNotFoundException, SecurityException,
       NoSuchMethodException, IllegalArgumentException, InstantiationException,
       IllegalAccessException, InvocationTargetException {
-    ClassLoader cl = Thread.currentThread().getContextClassLoader();
-    Class<?> adapterClass = cl.loadClass(adapterType);
-    Constructor<?>[] ctors = adapterClass.getConstructors();
-    for (Constructor<?> element : ctors) {
-      logger.finest("Public constructor found: " + element);
-    }
-    Constructor<?> c = adapterClass.getConstructor(paramClasses);
-    c.setAccessible(true);
+    Constructor<?> c = constructorRegistry.getConstructor(adapterType, paramClasses);
     CollectionAdapter adapterInstance = (CollectionAdapter) c.newInstance(objects);
     return adapterInstance;
   }
+
+  /**
+   * Gets the registry of resolved adapter and wrapper constructors used by
+   * {@link #createAdapter(String, Class[], Object...)}
+   */
+  public static AdapterConstructorRegistry getConstructorRegistry() {
+    return constructorRegistry;
+  }
 }
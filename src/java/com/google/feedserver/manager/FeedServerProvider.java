@@ -17,20 +17,24 @@
 package com.google.feedserver.manager;
 
 import com.google.feedserver.adapters.AbstractManagedCollectionAdapter;
+import com.google.feedserver.adapters.StreamingFeedResponseContext;
 import com.google.feedserver.config.FeedServerConfiguration;
 import com.google.feedserver.config.GlobalServerConfiguration;
 import com.google.feedserver.config.PerNamespaceServerConfiguration;
+import com.google.feedserver.server.FlagConfig;
 
 import org.apache.abdera.Abdera;
+import org.apache.abdera.protocol.server.ProviderHelper;
 import org.apache.abdera.protocol.server.RequestContext;
 import org.apache.abdera.protocol.server.ResponseContext;
-import org.apache.abdera.protocol.server.TargetType;
-import org.apache.abdera.protocol.server.impl.RegexTargetResolver;
+import org.apache.abdera.protocol.server.Target;
 import org.apache.abdera.protocol.server.provider.managed.ManagedProvider;
 
 import java.util.Map;
 import java.util.logging.Logger;
 
+import javax.servlet.http.HttpServletRequest;
+
 /**
  * {@link FeedServerProvider} extends {@link ManagedProvider} so that we can use
  * Abdera for different namespaces. Unlike workspace, the namespaces are
@@ -44,35 +48,29 @@ public class FeedServerProvider extends ManagedProvider {
 
   private static final Logger logger = Logger.getLogger(FeedServerProvider.class.getName());
 
+  private static final String STREAMED_RESPONSE_ATTRIBUTE =
+      FeedServerProvider.class.getName() + ".streamedResponse";
+
+  private static class AdmissionControllerHolder {
+    static final AdmissionController admissionController = new AdmissionController(
+        Integer.parseInt(FlagConfig.maxConcurrentRequestsPerNamespace_FLAG),
+        Integer.parseInt(FlagConfig.maxQueuedRequestsPerNamespace_FLAG),
+        Integer.parseInt(FlagConfig.maxConcurrentRequestsPerFeed_FLAG),
+        Integer.parseInt(FlagConfig.maxQueuedRequestsPerFeed_FLAG),
+        Long.parseLong(FlagConfig.admissionMaxWaitMillis_FLAG));
+  }
+
+  /**
+   * Gets the admission controller shared by all providers
+   */
+  public static AdmissionController getAdmissionController() {
+    return AdmissionControllerHolder.admissionController;
+  }
+
   public FeedServerProvider() {
     this(FeedServerConfiguration.getIntance());
     // The target resolver provides the URL path mappings
-    RegexTargetResolver targetResolver = new RegexTargetResolver();
-    // service
-    targetResolver.setPattern("/([^/#?]+)/(\\?[^#]*)?", TargetType.TYPE_SERVICE,
-        AbstractManagedCollectionAdapter.PARAM_NAMESPACE);
-    // categories
-    targetResolver.setPattern("/([^/#?]+)/([^/#?]+);categories", TargetType.TYPE_CATEGORIES,
-        AbstractManagedCollectionAdapter.PARAM_NAMESPACE,
-        AbstractManagedCollectionAdapter.CATEGORY_PARAMETER);
-    // feed
-    targetResolver.setPattern("/([^/#?]+)/([^/#?;]+)(\\?[^#]*)?",
-        TargetType.TYPE_COLLECTION, AbstractManagedCollectionAdapter.PARAM_NAMESPACE,
-        AbstractManagedCollectionAdapter.PARAM_FEED);
-    // entry
-    targetResolver.setPattern("/([^/#?]+)/([^/#?]+)/([^/#?]+)(\\?[^#]*)?", TargetType.TYPE_ENTRY,
-        AbstractManagedCollectionAdapter.PARAM_NAMESPACE, 
-        AbstractManagedCollectionAdapter.PARAM_FEED, AbstractManagedCollectionAdapter.PARAM_ENTRY);
-    // user feed
-    targetResolver.setPattern("/([^/#?]+)/user/([^/#?]+)/([^/#?;]+)(\\?[^#]*)?",
-        TargetType.TYPE_COLLECTION, AbstractManagedCollectionAdapter.PARAM_NAMESPACE,
-        AbstractManagedCollectionAdapter.PARAM_USER, AbstractManagedCollectionAdapter.PARAM_FEED);
-    // user entry
-    targetResolver.setPattern("/([^/#?]+)/user/([^/#?]+)/([^/#?]+)/([^/#?]+)(\\?[^#]*)?",
-        TargetType.TYPE_ENTRY, AbstractManagedCollectionAdapter.PARAM_NAMESPACE,
-        AbstractManagedCollectionAdapter.PARAM_USER, AbstractManagedCollectionAdapter.PARAM_FEED,
-        AbstractManagedCollectionAdapter.PARAM_ENTRY);
-	super.setTargetResolver(targetResolver);
+    super.setTargetResolver(new FeedServerTargetResolver());
   }
 
   public FeedServerProvider(GlobalServerConfiguration configuration) {
@@ -89,21 +87,121 @@ public class FeedServerProvider extends ManagedProvider {
     return globalServerConfiguration;
   }
 
+  /**
+   * Processes the request once the namespace and feed it is for admit it
+   */
+  @Override
+  public ResponseContext process(RequestContext request) {
+    AdmissionController admissionController = getAdmissionController();
+    Target target = request.getTarget();
+    if (target == null || !admissionController.isEnabled()) {
+      return super.process(request);
+    }
+    AdmissionController.Admission admission;
+    try {
+      admission = admissionController.admit(
+          target.getParameter(AbstractManagedCollectionAdapter.PARAM_NAMESPACE),
+          target.getParameter(AbstractManagedCollectionAdapter.PARAM_FEED));
+    } catch (AdmissionController.RejectedException e) {
+      logger.info(e.getMessage());
+      ResponseContext response =
+          ProviderHelper.createErrorResponse(abdera, e.getStatus(), e.getMessage());
+      response.setHeader("Retry-After", Integer.toString(e.getRetryAfterSeconds()));
+      return response;
+    }
+    boolean handedOff = false;
+    try {
+      ResponseContext response = super.process(request);
+      if (response instanceof StreamingFeedResponseContext
+          && !"HEAD".equalsIgnoreCase(request.getMethod())) {
+        // the feed is only retrieved while the body is written, so the
+        // response releases the admission; HEAD responses have no body
+        final AdmissionController.Admission streamAdmission = admission;
+        StreamingFeedResponseContext streamingResponse = (StreamingFeedResponseContext) response;
+        streamingResponse.runAfterWriting(new Runnable() {
+          @Override
+          public void run() {
+            streamAdmission.release();
+          }
+        });
+        request.setAttribute(RequestContext.Scope.REQUEST, STREAMED_RESPONSE_ATTRIBUTE,
+            streamingResponse);
+        handedOff = true;
+      }
+      return response;
+    } finally {
+      if (!handedOff) {
+        admission.release();
+      }
+    }
+  }
+
+  /**
+   * Releases what the streamed response of {@code request}, if any, still
+   * holds in case its body was not written. Servlets call this once they are
+   * done with a request, whether or not writing the response succeeded.
+   */
+  public static void releaseStreamedResponse(HttpServletRequest request) {
+    Object response = request.getAttribute(STREAMED_RESPONSE_ATTRIBUTE);
+    if (response instanceof StreamingFeedResponseContext) {
+      request.removeAttribute(STREAMED_RESPONSE_ATTRIBUTE);
+      ((StreamingFeedResponseContext) response).release();
+    }
+  }
+
   /**
    * Gets a {@link AbstractManagedCollectionAdapter} for the feed specified in
    * the request.
    */
   public AbstractManagedCollectionAdapter getCollectionAdapter(RequestContext request) {
+    String namespace =
+        request.getTarget().getParameter(AbstractManagedCollectionAdapter.PARAM_NAMESPACE);
+    String feedId = request.getTarget().getParameter(AbstractManagedCollectionAdapter.PARAM_FEED);
+    String userId = request.getTarget().getParameter(AbstractManagedCollectionAdapter.PARAM_USER);
     try {
-      return getCollectionAdapterManager(request).getAdapter(
-          request.getTarget().getParameter(AbstractManagedCollectionAdapter.PARAM_FEED),
-          request.getTarget().getParameter(AbstractManagedCollectionAdapter.PARAM_USER));
+      AdapterChainCache cache = getAdapterChainCache();
+      if (cache == null) {
+        return getCollectionAdapterManager(request).getAdapter(feedId, userId);
+      }
+      AbstractManagedCollectionAdapter adapter = cache.get(namespace, feedId, userId);
+      if (adapter == null) {
+        long generation = cache.getGeneration();
+        adapter = cache.put(namespace, feedId, userId,
+            getCollectionAdapterManager(request).getAdapter(feedId, userId), generation);
+      }
+      return adapter;
     } catch (Exception e) {
       logger.severe(e.getMessage());
       return null;
     }
   }
 
+  /**
+   * Gets the type of the adapter serving the feed specified in the request
+   *
+   * @return The adapter type; null if the request is not for a feed or the
+   *         adapter cannot be created
+   */
+  public String getAdapterType(RequestContext request) {
+    Target target = request.getTarget();
+    if (target == null
+        || target.getParameter(AbstractManagedCollectionAdapter.PARAM_FEED) == null) {
+      return null;
+    }
+    AbstractManagedCollectionAdapter adapter = getCollectionAdapter(request);
+    return adapter == null ? null : adapter.getConfiguration().getAdapterClassName();
+  }
+
+  /**
+   * Gets the cache of adapter chains from the global server configuration
+   * 
+   * @return The adapter chain cache; null if adapter chains are not cached
+   */
+  public AdapterChainCache getAdapterChainCache() {
+    return globalServerConfiguration == null ? null : globalServerConfiguration
+        .getAdapterChainCache();
+  }
+
   /**
    * Gets a new {@link FeedServerAdapterManager}
    */
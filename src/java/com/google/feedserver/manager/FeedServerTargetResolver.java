@@ -0,0 +1,204 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.feedserver.manager;
+
+import com.google.feedserver.adapters.AbstractManagedCollectionAdapter;
+
+import org.apache.abdera.protocol.Request;
+import org.apache.abdera.protocol.Resolver;
+import org.apache.abdera.protocol.server.RequestContext;
+import org.apache.abdera.protocol.server.Target;
+import org.apache.abdera.protocol.server.TargetType;
+import org.apache.abdera.protocol.server.impl.SimpleTarget;
+
+/**
+ * Resolves request paths of the FeedServer URL grammar by splitting them into
+ * segments:
+ * <pre>
+ * /{namespace}/                               service
+ * /{namespace}/{category};categories          categories
+ * /{namespace}/{feed}                         collection
+ * /{namespace}/{feed}/{entry}                 entry
+ * /{namespace}/user/{user}/{feed}             collection
+ * /{namespace}/user/{user}/{feed}/{entry}     entry
+ * </pre>
+ * All but the categories path may have a query. Segments are taken as is,
+ * without decoding. Feed segments of collections may not contain {@code ;}.
+ * The targets have the same parameters as the regular expressions this
+ * resolver replaces; other parameter names are looked up in the request.
+ */
+public class FeedServerTargetResolver implements Resolver<Target> {
+
+  public static final String CATEGORIES_SUFFIX = ";categories";
+  public static final String USER_SEGMENT = "user";
+
+  private static final int MAX_SEGMENTS = 5;
+
+  private static final String[] SERVICE_FIELDS = {
+      AbstractManagedCollectionAdapter.PARAM_NAMESPACE};
+  private static final String[] CATEGORIES_FIELDS = {
+      AbstractManagedCollectionAdapter.PARAM_NAMESPACE,
+      AbstractManagedCollectionAdapter.CATEGORY_PARAMETER};
+  private static final String[] FEED_FIELDS = {
+      AbstractManagedCollectionAdapter.PARAM_NAMESPACE,
+      AbstractManagedCollectionAdapter.PARAM_FEED};
+  private static final String[] ENTRY_FIELDS = {
+      AbstractManagedCollectionAdapter.PARAM_NAMESPACE,
+      AbstractManagedCollectionAdapter.PARAM_FEED,
+      AbstractManagedCollectionAdapter.PARAM_ENTRY};
+  private static final String[] USER_FEED_FIELDS = {
+      AbstractManagedCollectionAdapter.PARAM_NAMESPACE,
+      AbstractManagedCollectionAdapter.PARAM_USER,
+      AbstractManagedCollectionAdapter.PARAM_FEED};
+  private static final String[] USER_ENTRY_FIELDS = {
+      AbstractManagedCollectionAdapter.PARAM_NAMESPACE,
+      AbstractManagedCollectionAdapter.PARAM_USER,
+      AbstractManagedCollectionAdapter.PARAM_FEED,
+      AbstractManagedCollectionAdapter.PARAM_ENTRY};
+
+  @Override
+  public Target resolve(Request request) {
+    RequestContext context = (RequestContext) request;
+    return resolve(context, context.getTargetPath());
+  }
+
+  /**
+   * Resolves a target path
+   *
+   * @return The target; null if the path is not part of the grammar
+   */
+  public Target resolve(RequestContext context, String path) {
+    // no part of the grammar, the query included, may contain '#'
+    if (path == null || path.length() == 0 || path.charAt(0) != '/' || path.indexOf('#') >= 0) {
+      return null;
+    }
+    int end = path.indexOf('?');
+    boolean hasQuery = end >= 0;
+    if (!hasQuery) {
+      end = path.length();
+    }
+
+    String[] segments = new String[MAX_SEGMENTS];
+    int count = 0;
+    int start = 1;
+    while (true) {
+      if (count == MAX_SEGMENTS) {
+        return null;
+      }
+      int slash = path.indexOf('/', start);
+      if (slash < 0 || slash > end) {
+        slash = end;
+      }
+      segments[count++] = path.substring(start, slash);
+      if (slash == end) {
+        break;
+      }
+      if (slash == start) {
+        // only the last segment, after the trailing slash of the service
+        // path, may be empty
+        return null;
+      }
+      start = slash + 1;
+    }
+
+    switch (count) {
+      case 2:
+        String second = segments[1];
+        if (second.length() == 0) {
+          return new PathTarget(TargetType.TYPE_SERVICE, context, SERVICE_FIELDS,
+              new String[] {segments[0]});
+        }
+        if (second.indexOf(';') < 0) {
+          return new PathTarget(TargetType.TYPE_COLLECTION, context, FEED_FIELDS,
+              new String[] {segments[0], segments[1]});
+        }
+        if (!hasQuery && second.endsWith(CATEGORIES_SUFFIX)
+            && second.length() > CATEGORIES_SUFFIX.length()) {
+          return new PathTarget(TargetType.TYPE_CATEGORIES, context, CATEGORIES_FIELDS,
+              new String[] {segments[0],
+                  second.substring(0, second.length() - CATEGORIES_SUFFIX.length())});
+        }
+        return null;
+      case 3:
+        if (segments[2].length() == 0) {
+          return null;
+        }
+        return new PathTarget(TargetType.TYPE_ENTRY, context, ENTRY_FIELDS,
+            new String[] {segments[0], segments[1], segments[2]});
+      case 4:
+        if (!USER_SEGMENT.equals(segments[1]) || segments[3].length() == 0
+            || segments[3].indexOf(';') >= 0) {
+          return null;
+        }
+        return new PathTarget(TargetType.TYPE_COLLECTION, context, USER_FEED_FIELDS,
+            new String[] {segments[0], segments[2], segments[3]});
+      case 5:
+        if (!USER_SEGMENT.equals(segments[1]) || segments[4].length() == 0) {
+          return null;
+        }
+        return new PathTarget(TargetType.TYPE_ENTRY, context, USER_ENTRY_FIELDS,
+            new String[] {segments[0], segments[2], segments[3], segments[4]});
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * A target with the parameters taken from the path
+   */
+  public static class PathTarget extends SimpleTarget {
+    private final String[] fields;
+    private final String[] values;
+
+    public PathTarget(TargetType type, RequestContext context, String[] fields, String[] values) {
+      super(type, context);
+      this.fields = fields;
+      this.values = values;
+    }
+
+    @Override
+    public String getParameter(String name) {
+      for (int i = 0; i < fields.length; i++) {
+        if (fields[i].equals(name)) {
+          return values[i];
+        }
+      }
+      return super.getParameter(name);
+    }
+
+    @Override
+    public String[] getParameterNames() {
+      String[] requestNames = super.getParameterNames();
+      int requestCount = requestNames == null ? 0 : requestNames.length;
+      String[] names = new String[requestCount + fields.length];
+      if (requestCount > 0) {
+        System.arraycopy(requestNames, 0, names, 0, requestCount);
+      }
+      System.arraycopy(fields, 0, names, requestCount, fields.length);
+      return names;
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder builder = new StringBuilder(getType().toString());
+      for (int i = 0; i < fields.length; i++) {
+        builder.append(i == 0 ? " " : ", ").append(fields[i]).append('=').append(values[i]);
+      }
+      return builder.toString();
+    }
+  }
+}
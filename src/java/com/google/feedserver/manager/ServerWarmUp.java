@@ -0,0 +1,253 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.feedserver.manager;
+
+import com.google.feedserver.adapters.AbstractManagedCollectionAdapter;
+import com.google.feedserver.config.GlobalServerConfiguration;
+import com.google.feedserver.config.PerNamespaceServerConfiguration;
+import com.google.feedserver.configstore.FeedConfigStore;
+
+import org.apache.abdera.Abdera;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Loads the feed and adapter configurations of namespaces and builds each
+ * feed's adapter chain ahead of the first requests, so that they do not pay
+ * for config parsing, class loading and wrapper construction. Optionally
+ * replays a sample of requests against the running server to reach the
+ * backends and warm up the JIT.
+ * <p>
+ * The server reports itself ready, see {@link #isReady()}, once the warm-up
+ * has finished.
+ * </p>
+ */
+public class ServerWarmUp {
+
+  private static final Logger logger = Logger.getLogger(ServerWarmUp.class.getName());
+
+  /**
+   * Directory of a namespace holding its feed configurations
+   */
+  public static final String FEED_CONFIG_DIRECTORY = "FeedConfig";
+
+  private static volatile boolean ready = true;
+
+  private final GlobalServerConfiguration configuration;
+  private final Abdera abdera;
+  private final int threads;
+  private final AtomicInteger failureCount = new AtomicInteger();
+
+  /**
+   * @param threads Number of namespaces and feeds loaded at once
+   */
+  public ServerWarmUp(GlobalServerConfiguration configuration, Abdera abdera, int threads) {
+    this.configuration = configuration;
+    this.abdera = abdera;
+    this.threads = Math.max(1, threads);
+  }
+
+  /**
+   * Whether the server has finished warming up. True unless a warm-up is
+   * pending or running.
+   */
+  public static boolean isReady() {
+    return ready;
+  }
+
+  /**
+   * Marks the server as not ready until {@link #markReady()}
+   */
+  public static void markWarmingUp() {
+    ready = false;
+  }
+
+  public static void markReady() {
+    ready = true;
+  }
+
+  /**
+   * Lists the namespaces configured below a base directory: its
+   * subdirectories with a {@link #FEED_CONFIG_DIRECTORY}
+   */
+  public static List<String> findNamespaces(File baseDirectory) {
+    List<String> namespaces = new ArrayList<String>();
+    File[] files = baseDirectory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        if (file.isDirectory() && !file.isHidden()
+            && new File(file, FEED_CONFIG_DIRECTORY).isDirectory()) {
+          namespaces.add(file.getName());
+        }
+      }
+    }
+    Collections.sort(namespaces);
+    return namespaces;
+  }
+
+  public int getFailureCount() {
+    return failureCount.get();
+  }
+
+  /**
+   * Loads the adapter configurations and feed ids of the namespaces, then
+   * builds the adapter chain of every feed, each step in parallel. Chains
+   * are added to the adapter chain cache when there is one. Failures are
+   * logged and counted but do not stop the warm-up.
+   *
+   * @return The number of adapter chains built
+   */
+  public int warmUp(Collection<String> namespaces) throws InterruptedException {
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      final FeedConfigStore store = configuration.getFeedConfigStore();
+      List<Callable<List<String[]>>> namespaceLoads = new ArrayList<Callable<List<String[]>>>();
+      for (final String namespace : namespaces) {
+        namespaceLoads.add(new Callable<List<String[]>>() {
+          @Override
+          public List<String[]> call() throws Exception {
+            store.getAdapterConfigurations(namespace);
+            List<String[]> feeds = new ArrayList<String[]>();
+            for (String feedId : store.getFeedIds(namespace)) {
+              feeds.add(new String[] {namespace, feedId});
+            }
+            return feeds;
+          }
+        });
+      }
+      List<Callable<Boolean>> chainBuilds = new ArrayList<Callable<Boolean>>();
+      for (Future<List<String[]>> feeds : executor.invokeAll(namespaceLoads)) {
+        List<String[]> loaded = get(feeds);
+        if (loaded == null) {
+          continue;
+        }
+        for (final String[] feed : loaded) {
+          chainBuilds.add(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+              buildAdapterChain(feed[0], feed[1]);
+              return Boolean.TRUE;
+            }
+          });
+        }
+      }
+      int built = 0;
+      for (Future<Boolean> chain : executor.invokeAll(chainBuilds)) {
+        if (get(chain) != null) {
+          built++;
+        }
+      }
+      logger.info("Warmed up " + built + " adapter chains of " + namespaces.size()
+          + " namespaces; " + getFailureCount() + " failures");
+      return built;
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private void buildAdapterChain(String namespace, String feedId) throws Exception {
+    AdapterChainCache cache = configuration.getAdapterChainCache();
+    long generation = cache == null ? 0 : cache.getGeneration();
+    AbstractManagedCollectionAdapter adapter = new FeedServerAdapterManager(abdera,
+        new PerNamespaceServerConfiguration(configuration, namespace)).getAdapter(feedId, null);
+    if (cache != null && adapter != null) {
+      cache.put(namespace, feedId, null, adapter, generation);
+    }
+  }
+
+  /**
+   * Gets the result of a warm-up step, counting and logging its failure
+   *
+   * @return The result; null if the step failed
+   */
+  private <T> T get(Future<T> future) throws InterruptedException {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      failureCount.incrementAndGet();
+      logger.log(Level.WARNING, "Warm-up step failed: " + e.getCause(), e.getCause());
+      return null;
+    }
+  }
+
+  /**
+   * Sends GET requests for the paths listed in a file, one per line, to a
+   * running server. Blank lines and lines starting with '#' are skipped.
+   *
+   * @param baseUrl URL of the server, such as {@code http://localhost:8080}
+   * @return The number of requests answered with a status below 400
+   */
+  public int replay(String baseUrl, File requestSample) throws IOException {
+    BufferedReader reader = new BufferedReader(new FileReader(requestSample));
+    int succeeded = 0;
+    try {
+      String path;
+      while ((path = reader.readLine()) != null) {
+        path = path.trim();
+        if (path.length() == 0 || path.startsWith("#")) {
+          continue;
+        }
+        if (replay(new URL(baseUrl + path))) {
+          succeeded++;
+        } else {
+          failureCount.incrementAndGet();
+        }
+      }
+    } finally {
+      reader.close();
+    }
+    logger.info("Replayed " + succeeded + " sample requests");
+    return succeeded;
+  }
+
+  private boolean replay(URL url) {
+    try {
+      HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+      int status = connection.getResponseCode();
+      InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+      if (in != null) {
+        byte[] buffer = new byte[4096];
+        while (in.read(buffer) != -1) {
+          // drain the response so that the connection can be reused
+        }
+        in.close();
+      }
+      return status < 400;
+    } catch (IOException e) {
+      logger.warning("Replaying " + url + " failed: " + e.getMessage());
+      return false;
+    }
+  }
+}
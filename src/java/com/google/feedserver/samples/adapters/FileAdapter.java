@@ -19,6 +19,8 @@ package com.google.feedserver.samples.adapters;
 
 import com.google.feedserver.adapters.AbstractManagedCollectionAdapter;
 import com.google.feedserver.adapters.FeedServerAdapterException;
+import com.google.feedserver.adapters.PagingParameters;
+import com.google.feedserver.adapters.ResourceVersion;
 import com.google.feedserver.config.FeedServerConfiguration;
 import com.google.feedserver.config.NamespacedAdapterConfiguration;
 import com.google.feedserver.metadata.FeedInfo;
@@ -38,6 +40,11 @@ import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
 import java.util.Map;
 
 import javax.xml.parsers.ParserConfigurationException;
@@ -167,18 +174,82 @@ public class FileAdapter extends AbstractManagedCollectionAdapter {
 
   @Override
   public Feed retrieveFeed(RequestContext request) throws FeedServerAdapterException {
+    return createFeedFromFiles(listEntityFiles());
+  }
+
+  /**
+   * Pages over the entity files; only the files of the page are read.
+   */
+  @Override
+  public Feed retrieveFeed(RequestContext request, PagingParameters paging)
+      throws FeedServerAdapterException {
+    return createFeedFromFiles(paging.slice(listEntityFiles()));
+  }
+
+  /**
+   * Versions the feed by the names, sizes and modification times of its entity
+   * files. The directory's own modification time covers removed files.
+   */
+  @Override
+  public ResourceVersion getFeedVersion(RequestContext request) {
+    File feedDir = getFeedDir();
+    if (!feedDir.isDirectory()) {
+      return null;
+    }
+    List<Object> parts = new ArrayList<Object>();
+    long lastModified = feedDir.lastModified();
+    parts.add(lastModified);
+    for (File entityFile : listEntityFiles()) {
+      parts.add(entityFile.getName());
+      parts.add(entityFile.length());
+      parts.add(entityFile.lastModified());
+      lastModified = Math.max(lastModified, entityFile.lastModified());
+    }
+    return ResourceVersion.weak(new Date(lastModified), parts.toArray());
+  }
+
+  @Override
+  public ResourceVersion getEntryVersion(RequestContext request, Object entryId) {
+    File entityFile = new File(getEntityFilePath(entryId));
+    if (!entityFile.isFile()) {
+      return null;
+    }
+    return ResourceVersion.weak(new Date(entityFile.lastModified()), entityFile.getName(),
+        entityFile.length(), entityFile.lastModified());
+  }
+
+  /**
+   * Lists the entity files sorted by name, so that entries come in the same
+   * order whether or not the feed is paged
+   */
+  protected List<File> listEntityFiles() {
+    List<File> entityFiles = new ArrayList<File>();
+    for (File entityFile: getFeedDir().listFiles()) {
+      if (entityFile.isFile() && !entityFile.isHidden()) {
+        entityFiles.add(entityFile);
+      }
+    }
+    Collections.sort(entityFiles, new Comparator<File>() {
+      @Override
+      public int compare(File file1, File file2) {
+        return file1.getName().compareTo(file2.getName());
+      }
+    });
+    return entityFiles;
+  }
+
+  protected File getFeedDir() {
+    return new File(fileAdapterConfig.getRoot() + File.separator + config.getFeedId());
+  }
+
+  protected Feed createFeedFromFiles(List<File> entityFiles) throws FeedServerAdapterException {
     try {
-      String feedId = config.getFeedId();
-      String feedDirPath = fileAdapterConfig.getRoot() + File.separator + feedId;
-      File feedDir = new File(feedDirPath);
       Feed feed = createFeed();
-      for (File entityFile: feedDir.listFiles()) {
-        if (entityFile.isFile() && !entityFile.isHidden()) {
-          String entityFileContent = fileUtil.readFileContents(entityFile);
-          Map<String, Object> entityProperties = xmlUtil.convertXmlToProperties(entityFileContent);
-          entityProperties.put(ContentUtil.ID, entityFile.getName());
-          createEntryFromProperties(feed, entityProperties);
-        }
+      for (File entityFile: entityFiles) {
+        String entityFileContent = fileUtil.readFileContents(entityFile);
+        Map<String, Object> entityProperties = xmlUtil.convertXmlToProperties(entityFileContent);
+        entityProperties.put(ContentUtil.ID, entityFile.getName());
+        createEntryFromProperties(feed, entityProperties);
       }
       return feed;
     } catch (IOException e) {
@@ -16,25 +16,43 @@
 package com.google.feedserver.samples.adapters;
 
 import com.google.feedserver.adapters.AbstractManagedCollectionAdapter;
+import com.google.feedserver.adapters.EntrySink;
 import com.google.feedserver.adapters.FeedServerAdapterException;
+import com.google.feedserver.adapters.FeedStream;
+import com.google.feedserver.adapters.PagingParameters;
+import com.google.feedserver.adapters.ResourceVersion;
+import com.google.feedserver.config.AdapterBackendPool;
+import com.google.feedserver.config.GlobalServerConfiguration;
+import com.google.feedserver.config.NamespacedAdapterConfiguration;
+import com.google.feedserver.config.NamespacedFeedConfiguration;
 import com.google.feedserver.metadata.FeedInfo;
+import com.google.feedserver.server.FlagConfig;
 
 import com.ibatis.sqlmap.client.SqlMapClient;
 import com.ibatis.sqlmap.client.SqlMapClientBuilder;
+import com.ibatis.sqlmap.client.SqlMapException;
+import com.ibatis.sqlmap.client.event.RowHandler;
+import com.ibatis.sqlmap.engine.impl.SqlMapClientImpl;
 
 import org.apache.abdera.Abdera;
 import org.apache.abdera.model.Entry;
 import org.apache.abdera.model.Feed;
 import org.apache.abdera.protocol.server.RequestContext;
 import org.apache.abdera.protocol.server.Target;
+import org.apache.abdera.protocol.server.provider.managed.CollectionAdapterConfiguration;
 import org.apache.abdera.protocol.server.provider.managed.FeedConfiguration;
 import org.apache.abdera.protocol.server.provider.managed.ServerConfiguration;
 
 import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
 import java.sql.SQLException;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Adapter that uses IBatis and a database to store Atompub collection entries.
@@ -42,45 +60,168 @@ import java.util.Map;
  * BasicProvider and is configured using /abdera/adapter/*.properties files.
  */
 public class IBatisCollectionAdapter extends AbstractManagedCollectionAdapter {
+  private static final Logger logger = Logger.getLogger(IBatisCollectionAdapter.class.getName());
+
   // this class needs to be public - so that Adapter Manager can invoke it
   // to create an instance of this adapter
   public IBatisCollectionAdapter(Abdera abdera, FeedConfiguration config) {
     super(abdera, config);
   }
 
-  protected Map<String, SqlMapClient> sqlMapClients = new HashMap<String, SqlMapClient>();
+  /**
+   * Pool used when the adapter is not configured through a namespaced feed
+   * configuration
+   */
+  private static final SqlMapClientPool defaultSqlMapClientPool = new SqlMapClientPool();
+
+  /**
+   * Request attribute holding the lease on the client whose transaction a
+   * batch request runs in
+   */
+  private static final String BATCH_CLIENT_ATTRIBUTE =
+      IBatisCollectionAdapter.class.getName() + ".batchClient";
 
+  /**
+   * Gets the shared client for this feed. Clients are pooled per namespace
+   * and feed and rebuilt when the effective adapter configuration changes.
+   * The client is not counted as in use; operations use
+   * {@link #acquireSqlMapClient(RequestContext)} instead.
+   */
   protected SqlMapClient getSqlMapClient() throws FeedServerAdapterException {
-    String dataSourceId = config.getFeedConfigLocation();
-    if (sqlMapClients.containsKey(dataSourceId)) {
-      return sqlMapClients.get(dataSourceId);
-    } else {
-      SqlMapClient client;
-      try {
-        client =
-            SqlMapClientBuilder.buildSqlMapClient(config.getAdapterConfiguration()
-                .getAdapterConfigAsReader());
-      } catch (IOException e) {
-        throw new FeedServerAdapterException(
-            FeedServerAdapterException.Reason.ADAPTER_CONFIGURATION_NOT_CORRECT, dataSourceId);
+    String configData = getEffectiveAdapterConfigData();
+    return getSqlMapClientPool().getClient(getSqlMapClientId(), configData,
+        createSqlMapClientFactory(configData));
+  }
+
+  /**
+   * Gets a lease on the shared client for this feed, so that the client is
+   * not closed while it is used if the configuration changes meanwhile. Within
+   * a batch request, the lease is on the client whose transaction the batch
+   * runs in.
+   */
+  @SuppressWarnings("unchecked")
+  protected AdapterBackendPool.Lease<SqlMapClient> acquireSqlMapClient(RequestContext request)
+      throws FeedServerAdapterException {
+    AdapterBackendPool.Lease<SqlMapClient> batchLease = request == null ? null
+        : (AdapterBackendPool.Lease<SqlMapClient>) request.getAttribute(
+            RequestContext.Scope.REQUEST, BATCH_CLIENT_ATTRIBUTE);
+    if (batchLease != null) {
+      return batchLease.share();
+    }
+    String configData = getEffectiveAdapterConfigData();
+    return getSqlMapClientPool().acquireClient(getSqlMapClientId(), configData,
+        createSqlMapClientFactory(configData));
+  }
+
+  private AdapterBackendPool.ClientFactory<SqlMapClient> createSqlMapClientFactory(
+      final String configData) {
+    return new AdapterBackendPool.ClientFactory<SqlMapClient>() {
+      @Override
+      public SqlMapClient createClient(String id) throws FeedServerAdapterException {
+        try {
+          Reader reader = configData != null ? new StringReader(configData)
+              : config.getAdapterConfiguration().getAdapterConfigAsReader();
+          return SqlMapClientBuilder.buildSqlMapClient(reader);
+        } catch (IOException e) {
+          throw new FeedServerAdapterException(
+              FeedServerAdapterException.Reason.ADAPTER_CONFIGURATION_NOT_CORRECT, id);
+        }
       }
-      sqlMapClients.put(dataSourceId, client);
-      return client;
+    };
+  }
+
+  /**
+   * sqlMapConfig composed by a wrapper such as IBatisAdapterWrapper; null to
+   * use the adapter configuration as is
+   */
+  private volatile String sqlMapConfig;
+
+  /**
+   * Sets the sqlMapConfig to build the client from instead of the adapter
+   * configuration
+   */
+  public void setSqlMapConfig(String sqlMapConfig) {
+    this.sqlMapConfig = sqlMapConfig;
+  }
+
+  /**
+   * Gets the adapter configuration the client is built from, after wrappers
+   * have added the feed's sqlMap resources
+   *
+   * @return The configuration; null if it is only available as a reader
+   */
+  protected String getEffectiveAdapterConfigData() {
+    if (sqlMapConfig != null) {
+      return sqlMapConfig;
+    }
+    CollectionAdapterConfiguration adapterConfig = config.getAdapterConfiguration();
+    if (adapterConfig instanceof NamespacedAdapterConfiguration) {
+      return ((NamespacedAdapterConfiguration) adapterConfig).getConfigData();
+    }
+    return null;
+  }
+
+  protected String getSqlMapClientId() {
+    String namespace = config instanceof NamespacedFeedConfiguration ? getNameSpace() : null;
+    return (namespace == null ? "" : namespace) + "/" + config.getFeedId();
+  }
+
+  protected SqlMapClientPool getSqlMapClientPool() {
+    if (!(config instanceof NamespacedFeedConfiguration)) {
+      return defaultSqlMapClientPool;
+    }
+    GlobalServerConfiguration globalConfig = getGolbalServerConfiguration();
+    SqlMapClientPool pool = (SqlMapClientPool) globalConfig.getAdapterBackendPool(
+        SqlMapClientPool.POOL_ID);
+    if (pool == null) {
+      pool = (SqlMapClientPool) globalConfig.addAdapterBackendPoolIfAbsent(
+          SqlMapClientPool.POOL_ID, new SqlMapClientPool());
     }
+    return pool;
   }
 
   @Override
   @SuppressWarnings("unchecked")
   public Feed retrieveFeed(RequestContext request) throws FeedServerAdapterException {
-    SqlMapClient client = getSqlMapClient();
     String queryId = config.getFeedId() + "-get-feed";
     List<Map<String, Object>> rows;
+    AdapterBackendPool.Lease<SqlMapClient> lease = acquireSqlMapClient(request);
     try {
-      rows = client.queryForList(queryId, getRequestParams(request));
+      rows = lease.getClient().queryForList(queryId, getRequestParams(request));
     } catch (SQLException e) {
       throw new FeedServerAdapterException(
           FeedServerAdapterException.Reason.ERROR_EXECUTING_ADAPTER_REQUEST, e.getMessage());
+    } finally {
+      lease.release();
     }
+    return createFeedFromRows(rows);
+  }
+
+  /**
+   * Pages with iBatis' skip and max results, so that the get-feed statement
+   * is the same for paged and unpaged requests
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public Feed retrieveFeed(RequestContext request, PagingParameters paging)
+      throws FeedServerAdapterException {
+    String queryId = config.getFeedId() + "-get-feed";
+    List<Map<String, Object>> rows;
+    AdapterBackendPool.Lease<SqlMapClient> lease = acquireSqlMapClient(request);
+    try {
+      rows = lease.getClient().queryForList(queryId, getRequestParams(request),
+          paging.getSkip(), paging.getMaxResults());
+    } catch (SQLException e) {
+      throw new FeedServerAdapterException(
+          FeedServerAdapterException.Reason.ERROR_EXECUTING_ADAPTER_REQUEST, e.getMessage());
+    } finally {
+      lease.release();
+    }
+    return createFeedFromRows(rows);
+  }
+
+  protected Feed createFeedFromRows(List<Map<String, Object>> rows)
+      throws FeedServerAdapterException {
     Feed feed = createFeed();
     ServerConfiguration serverConfig = config.getServerConfiguration();
     if (serverConfig.getFeedNamespacePrefix() != null
@@ -93,18 +234,135 @@ public class IBatisCollectionAdapter extends AbstractManagedCollectionAdapter {
     return feed;
   }
 
+  @Override
+  public boolean isFeedStreamable(RequestContext request) {
+    return Boolean.parseBoolean(FlagConfig.streamFeeds_FLAG);
+  }
+
+  /**
+   * Streams the rows of the feed query with a {@link RowHandler}, turning each
+   * row into an entry as it is read.
+   */
+  @Override
+  public FeedStream openFeedStream(final RequestContext request)
+      throws FeedServerAdapterException {
+    final String queryId = config.getFeedId() + "-get-feed";
+    final Map<String, Object> params = getRequestParams(request);
+    return new FeedStream() {
+      @Override
+      public void writeTo(final EntrySink sink) throws FeedServerAdapterException {
+        Feed feed = createFeed();
+        ServerConfiguration serverConfig = config.getServerConfiguration();
+        if (serverConfig.getFeedNamespacePrefix() != null
+            && serverConfig.getFeedNamespacePrefix().length() > 0) {
+          feed.declareNS(serverConfig.getFeedNamespace(), serverConfig.getFeedNamespacePrefix());
+        }
+        sink.startFeed(feed);
+        final FeedServerAdapterException[] failure = new FeedServerAdapterException[1];
+        AdapterBackendPool.Lease<SqlMapClient> lease = acquireSqlMapClient(request);
+        try {
+          lease.getClient().queryWithRowHandler(queryId, params, new RowHandler() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public void handleRow(Object row) {
+              if (failure[0] != null) {
+                return;
+              }
+              try {
+                sink.addEntry(createEntryFromProperties(null, (Map<String, Object>) row));
+              } catch (FeedServerAdapterException e) {
+                // RowHandler cannot throw; the remaining rows are skipped
+                failure[0] = e;
+              }
+            }
+          });
+        } catch (SQLException e) {
+          throw new FeedServerAdapterException(
+              FeedServerAdapterException.Reason.ERROR_EXECUTING_ADAPTER_REQUEST, e.getMessage());
+        } finally {
+          lease.release();
+        }
+        if (failure[0] != null) {
+          throw failure[0];
+        }
+        sink.endFeed();
+      }
+    };
+  }
+
+  /**
+   * Versions the feed with the optional {@code <feedId>-get-feed-version}
+   * statement, e.g. a max over a version or timestamp column combined with a
+   * row count so that deletes show. A {@link Date} result also serves as last
+   * modification date.
+   */
+  @Override
+  public ResourceVersion getFeedVersion(RequestContext request)
+      throws FeedServerAdapterException {
+    return queryVersion(request, config.getFeedId() + "-get-feed-version",
+        getRequestParams(request));
+  }
+
+  /**
+   * Versions an entry with the optional {@code <feedId>-get-entry-version}
+   * statement
+   */
+  @Override
+  public ResourceVersion getEntryVersion(RequestContext request, Object entryId)
+      throws FeedServerAdapterException {
+    Map<String, Object> params = getRequestParams(request);
+    params.put("id", entryId);
+    return queryVersion(request, config.getFeedId() + "-get-entry-version", params);
+  }
+
+  private ResourceVersion queryVersion(RequestContext request, String queryId,
+      Map<String, Object> params) throws FeedServerAdapterException {
+    Object version;
+    AdapterBackendPool.Lease<SqlMapClient> lease = acquireSqlMapClient(request);
+    try {
+      SqlMapClient client = lease.getClient();
+      if (!hasStatement(client, queryId)) {
+        return null;
+      }
+      version = client.queryForObject(queryId, params);
+    } catch (SQLException e) {
+      throw new FeedServerAdapterException(
+          FeedServerAdapterException.Reason.ERROR_EXECUTING_ADAPTER_REQUEST, e.getMessage());
+    } finally {
+      lease.release();
+    }
+    if (version == null) {
+      return null;
+    }
+    return ResourceVersion.weak(version instanceof Date ? (Date) version : null, version);
+  }
+
+  private static boolean hasStatement(SqlMapClient client, String queryId) {
+    if (!(client instanceof SqlMapClientImpl)) {
+      return false;
+    }
+    try {
+      return ((SqlMapClientImpl) client).getMappedStatement(queryId) != null;
+    } catch (SqlMapException e) {
+      return false;
+    }
+  }
+
   @Override
   @SuppressWarnings("unchecked")
   public Entry retrieveEntry(RequestContext request, Object entryId)
       throws FeedServerAdapterException {
     String queryId = config.getFeedId() + "-get-entry";
-    SqlMapClient client = getSqlMapClient();
     Map<String, Object> row;
+    AdapterBackendPool.Lease<SqlMapClient> lease = acquireSqlMapClient(request);
     try {
-      row = (Map<String, Object>) client.queryForObject(queryId, entryId,  getRequestParams(request));
+      row = (Map<String, Object>) lease.getClient().queryForObject(queryId, entryId,
+          getRequestParams(request));
     } catch (SQLException e) {
       throw new FeedServerAdapterException(
           FeedServerAdapterException.Reason.ERROR_EXECUTING_ADAPTER_REQUEST, e.getMessage());
+    } finally {
+      lease.release();
     }
     if (row == null) {
       // didn't find the entry.
@@ -115,16 +373,18 @@ public class IBatisCollectionAdapter extends AbstractManagedCollectionAdapter {
 
   @Override
   public Entry createEntry(RequestContext request, Entry entry) throws FeedServerAdapterException {
-    SqlMapClient client = getSqlMapClient();
     String queryId = config.getFeedId() + "-insert-entry";
     Object newEntryId;
+    AdapterBackendPool.Lease<SqlMapClient> lease = acquireSqlMapClient(request);
     try {
       Map<String, Object> params = getRequestParams(request);
       params.putAll(getPropertyMapForEntry(entry));
-      newEntryId = client.insert(queryId, params);
+      newEntryId = lease.getClient().insert(queryId, params);
     } catch (SQLException e) {
       throw new FeedServerAdapterException(
           FeedServerAdapterException.Reason.ERROR_EXECUTING_ADAPTER_REQUEST, e.getMessage());
+    } finally {
+      lease.release();
     }
     return retrieveEntry(request, newEntryId);
   }
@@ -132,33 +392,92 @@ public class IBatisCollectionAdapter extends AbstractManagedCollectionAdapter {
   @Override
   public Entry updateEntry(RequestContext request, Object entryId, Entry entry)
       throws FeedServerAdapterException {
-    SqlMapClient client = getSqlMapClient();
     String queryId = config.getFeedId() + "-update-entry";
+    AdapterBackendPool.Lease<SqlMapClient> lease = acquireSqlMapClient(request);
     try {
         Map<String, Object> params = getRequestParams(request);
         params.putAll(getPropertyMapForEntry(entry));
-      return client.update(queryId, params) > 0 ? retrieveEntry(request,
+      return lease.getClient().update(queryId, params) > 0 ? retrieveEntry(request,
           entryId) : null;
     } catch (SQLException e) {
       throw new FeedServerAdapterException(
           FeedServerAdapterException.Reason.ERROR_EXECUTING_ADAPTER_REQUEST, e.getMessage());
+    } finally {
+      lease.release();
     }
   }
 
   @Override
   public void deleteEntry(RequestContext request, Object entryId) throws FeedServerAdapterException {
     String queryId = config.getFeedId() + "-delete-entry";
-    SqlMapClient client = getSqlMapClient();
+    AdapterBackendPool.Lease<SqlMapClient> lease = acquireSqlMapClient(request);
     try {
       Map<String, Object> params = getRequestParams(request);
       params.put("id", entryId);
-      if (!(client.delete(queryId, params) > 0)) {
+      if (!(lease.getClient().delete(queryId, params) > 0)) {
         throw new FeedServerAdapterException(
             FeedServerAdapterException.Reason.ERROR_EXECUTING_ADAPTER_REQUEST, "could not delete");
       }
     } catch (SQLException e) {
       throw new FeedServerAdapterException(
           FeedServerAdapterException.Reason.ERROR_EXECUTING_ADAPTER_REQUEST, e.getMessage());
+    } finally {
+      lease.release();
+    }
+  }
+
+  /**
+   * Runs the operations of a batch request in one transaction, so that they
+   * share a connection and are committed once. Statements are not sent as a
+   * JDBC batch because each operation needs its own update count and
+   * generated key to report its status. A failed statement may abort the
+   * transaction, e.g. on PostgreSQL, so the whole batch is rolled back then.
+   * The batch keeps a lease on the client it started the transaction on, and
+   * its operations and {@link #endBatch} use that client even if the pool
+   * replaces it meanwhile.
+   */
+  @Override
+  public boolean startBatch(RequestContext request) throws FeedServerAdapterException {
+    AdapterBackendPool.Lease<SqlMapClient> lease = acquireSqlMapClient(request);
+    try {
+      lease.getClient().startTransaction();
+    } catch (SQLException e) {
+      lease.release();
+      throw new FeedServerAdapterException(
+          FeedServerAdapterException.Reason.ERROR_EXECUTING_ADAPTER_REQUEST, e.getMessage());
+    }
+    request.setAttribute(RequestContext.Scope.REQUEST, BATCH_CLIENT_ATTRIBUTE, lease);
+    return true;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public void endBatch(RequestContext request, boolean completed)
+      throws FeedServerAdapterException {
+    AdapterBackendPool.Lease<SqlMapClient> lease =
+        (AdapterBackendPool.Lease<SqlMapClient>) request.getAttribute(
+            RequestContext.Scope.REQUEST, BATCH_CLIENT_ATTRIBUTE);
+    if (lease == null) {
+      return;
+    }
+    request.setAttribute(RequestContext.Scope.REQUEST, BATCH_CLIENT_ATTRIBUTE, null);
+    SqlMapClient client = lease.getClient();
+    try {
+      if (completed) {
+        client.commitTransaction();
+      }
+    } catch (SQLException e) {
+      throw new FeedServerAdapterException(
+          FeedServerAdapterException.Reason.ERROR_EXECUTING_ADAPTER_REQUEST, e.getMessage());
+    } finally {
+      try {
+        // rolls back unless committed
+        client.endTransaction();
+      } catch (SQLException e) {
+        logger.log(Level.WARNING, "Could not end batch transaction: " + e.getMessage(), e);
+      } finally {
+        lease.release();
+      }
     }
   }
 
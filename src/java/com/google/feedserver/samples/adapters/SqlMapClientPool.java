@@ -0,0 +1,64 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.feedserver.samples.adapters;
+
+import com.google.feedserver.config.AdapterBackendPool;
+
+import com.ibatis.common.jdbc.SimpleDataSource;
+import com.ibatis.sqlmap.client.SqlMapClient;
+
+import javax.sql.DataSource;
+
+/**
+ * Pool of the {@link SqlMapClient}s used by {@link IBatisCollectionAdapter}.
+ * Closing a client closes the connections of its iBatis SIMPLE data source;
+ * data sources managed elsewhere are left alone. Replaced clients are only
+ * closed once no request holds a lease on them, so their connections are not
+ * closed under running statements or transactions.
+ */
+public class SqlMapClientPool extends AdapterBackendPool<SqlMapClient> {
+
+  /**
+   * Id under which the pool is registered with the global server configuration
+   */
+  public static final String POOL_ID = "ibatis";
+
+  @Override
+  protected void closeClient(String id, SqlMapClient client) {
+    DataSource dataSource = client.getDataSource();
+    if (dataSource instanceof SimpleDataSource) {
+      ((SimpleDataSource) dataSource).forceCloseAll();
+    }
+  }
+
+  @Override
+  protected String getClientStats(SqlMapClient client) {
+    DataSource dataSource = client.getDataSource();
+    if (!(dataSource instanceof SimpleDataSource)) {
+      return null;
+    }
+    SimpleDataSource simpleDataSource = (SimpleDataSource) dataSource;
+    return "requests=" + simpleDataSource.getRequestCount()
+        + ", averageRequestTime=" + simpleDataSource.getAverageRequestTime() + "ms"
+        + ", averageCheckoutTime=" + simpleDataSource.getAverageCheckoutTime() + "ms"
+        + ", hadToWait=" + simpleDataSource.getHadToWaitCount()
+        + ", averageWaitTime=" + simpleDataSource.getAverageWaitTime() + "ms"
+        + ", badConnections=" + simpleDataSource.getBadConnectionCount()
+        + ", claimedOverdue=" + simpleDataSource.getClaimedOverdueConnectionCount()
+        + ", maximumActive=" + simpleDataSource.getPoolMaximumActiveConnections();
+  }
+}
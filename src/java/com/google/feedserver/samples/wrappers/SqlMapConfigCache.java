@@ -0,0 +1,206 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.feedserver.samples.wrappers;
+
+import com.google.feedserver.configstore.FeedConfigStoreListener;
+import com.google.feedserver.samples.configstore.SampleFileSystemFeedConfigStore;
+import com.google.feedserver.util.FeedServerUtil;
+import com.google.feedserver.util.FileSystemConfigStoreUtil;
+
+import com.ibatis.sqlmap.engine.builder.xml.SqlMapClasspathEntityResolver;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.xml.transform.TransformerException;
+
+/**
+ * Cache of sqlMapConfig documents composed by {@link IBatisAdapterWrapper}:
+ * the adapter's sqlMapConfig with the feed's sqlMap resource added. Each
+ * (adapter config, feed config) pair is composed once; the result is an
+ * immutable string shared by all requests.
+ * <p>
+ * Entries are keyed on the configuration text, so a changed configuration
+ * never sees a stale composition. Configuration change notifications only
+ * release the memory held by outdated entries.
+ * </p>
+ */
+public class SqlMapConfigCache implements FeedConfigStoreListener {
+
+  private static final Logger logger = Logger.getLogger(SqlMapConfigCache.class.getName());
+
+  public static final int DEFAULT_MAX_SIZE = 1000;
+
+  private static class Key {
+    final String adapterConfigData;
+    final String feedConfigData;
+
+    Key(String adapterConfigData, String feedConfigData) {
+      this.adapterConfigData = adapterConfigData;
+      this.feedConfigData = feedConfigData;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return adapterConfigData.equals(other.adapterConfigData)
+          && feedConfigData.equals(other.feedConfigData);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * adapterConfigData.hashCode() + feedConfigData.hashCode();
+    }
+  }
+
+  private final ConcurrentMap<Key, String> compiledConfigs =
+      new ConcurrentHashMap<Key, String>();
+  private final int maxSize;
+  private final AtomicLong compileCount = new AtomicLong();
+
+  public SqlMapConfigCache() {
+    this(DEFAULT_MAX_SIZE);
+  }
+
+  public SqlMapConfigCache(int maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Gets the sqlMapConfig with the feed's sqlMap resource added
+   *
+   * @param adapterConfigData The adapter's sqlMapConfig
+   * @param feedConfigData The feed config naming the sqlMap resource, either
+   *        a resource path or a file reference
+   * @return The composed sqlMapConfig
+   * @throws RuntimeException If the adapter config is not a sqlMapConfig
+   */
+  public String getSqlMapConfig(String adapterConfigData, String feedConfigData) {
+    Key key = new Key(adapterConfigData, feedConfigData);
+    String compiled = compiledConfigs.get(key);
+    if (compiled == null) {
+      compiled = compile(adapterConfigData, getSqlMapResource(feedConfigData));
+      compileCount.incrementAndGet();
+      if (compiledConfigs.size() >= maxSize) {
+        // configurations rarely change; starting over is cheaper than
+        // tracking usage
+        compiledConfigs.clear();
+      }
+      compiledConfigs.put(key, compiled);
+    }
+    return compiled;
+  }
+
+  public void clear() {
+    compiledConfigs.clear();
+  }
+
+  public int size() {
+    return compiledConfigs.size();
+  }
+
+  public long getCompileCount() {
+    return compileCount.get();
+  }
+
+  @Override
+  public void feedChanged(String namespace, String feedId, String userId) {
+    clear();
+  }
+
+  @Override
+  public void adapterConfigurationChanged(String namespace, String adapterName) {
+    clear();
+  }
+
+  @Override
+  public void namespaceChanged(String namespace) {
+    clear();
+  }
+
+  /**
+   * Appends a {@code <sqlMap resource="...">} element to the sqlMapConfig
+   */
+  static String compile(String sqlMapConfig, String sqlMapResource) {
+    Document adapterConfigDocument =
+        FeedServerUtil.parseDocument(sqlMapConfig, new SqlMapClasspathEntityResolver());
+    if (null == adapterConfigDocument) {
+      String message = "adapter config document is null";
+      RuntimeException e = new RuntimeException(message);
+      logger.log(Level.SEVERE, message, e);
+      throw e;
+    }
+    Element adapterParentNode = adapterConfigDocument.getDocumentElement();
+    if (!adapterParentNode.getNodeName().equals("sqlMapConfig")) {
+      String message = "adapter config document element not <sqlMapConfig>";
+      RuntimeException e = new RuntimeException(message);
+      logger.log(Level.SEVERE, message, e);
+      throw e;
+    }
+    Element node = adapterConfigDocument.createElement(IBatisAdapterWrapper.NODE_SQL_MAP_NAME);
+    node.setAttribute(IBatisAdapterWrapper.ATTRIBUTE_RESOURCE, sqlMapResource);
+    adapterParentNode.appendChild(node);
+    try {
+      return IBatisAdapterWrapper.SQLMAP_DOCTYPE_STRING
+          + FeedServerUtil.getDocumentAsXml(adapterConfigDocument);
+    } catch (TransformerException e) {
+      logger.log(Level.SEVERE, e.getMessage(), e);
+      throw new RuntimeException("invalid configuration: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Returns the feed config data to be set as sqlMap resource.
+   * <p>
+   * If it is the name of the file, then, it will set the correct base path
+   * which be used to locate it at runtime by IBatis
+   * </p>
+   * <p>
+   * In other cases the config value will be retruned as is
+   * </p>
+   *
+   * @return The feed config value to be set as sqlMap resource.
+   */
+  static String getSqlMapResource(String dbResourceValues) {
+    // Check if it is a filepath
+    if (FileSystemConfigStoreUtil.checkIfStringIsFilePath(dbResourceValues)) {
+      // Append the base path s.t it can be located by the runtime classloader
+      String basePath = SampleFileSystemFeedConfigStore.BASE_CONFIGURATION_PATH;
+      String fileName =
+          dbResourceValues.substring(dbResourceValues
+              .indexOf(FileSystemConfigStoreUtil.FILE_INDICATOR) + 1);
+
+      if (Thread.currentThread().getContextClassLoader().getResource(
+          basePath + "/" + fileName) == null) {
+        basePath = basePath.substring(basePath.indexOf("/") + 1);
+      }
+
+      dbResourceValues = new StringBuilder(basePath).append("/").append(fileName).toString();
+    }
+
+    return dbResourceValues.trim();
+  }
+}
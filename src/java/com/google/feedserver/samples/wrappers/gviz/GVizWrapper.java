@@ -18,6 +18,7 @@ package com.google.feedserver.samples.wrappers.gviz;
 import com.google.feedserver.adapters.AbstractManagedCollectionAdapter;
 import com.google.feedserver.adapters.FeedServerAdapterException;
 import com.google.feedserver.adapters.FeedServerAdapterException.Reason;
+import com.google.feedserver.adapters.PagingParameters;
 import com.google.feedserver.metadata.EntityInfo;
 import com.google.feedserver.metadata.FeedInfo;
 import com.google.feedserver.metadata.PropertyInfo;
@@ -85,6 +86,31 @@ public class GVizWrapper extends ManagedCollectionAdapterWrapper {
     super(abdera, config);
   }
 
+  /**
+   * Visualization output is computed from the complete feed and is never
+   * streamed.
+   */
+  @Override
+  public boolean isFeedStreamable(RequestContext request) {
+    if (request != null && "gviz".equalsIgnoreCase(request.getParameter(PARAMETER_OUTPUT))) {
+      return false;
+    }
+    return super.isFeedStreamable(request);
+  }
+
+  /**
+   * Visualization output is computed from the complete feed; the query
+   * language of the request does the limiting.
+   */
+  @Override
+  public Feed retrieveFeed(RequestContext request, PagingParameters paging)
+      throws FeedServerAdapterException {
+    if (request != null && "gviz".equalsIgnoreCase(request.getParameter(PARAMETER_OUTPUT))) {
+      return retrieveFeed(request);
+    }
+    return super.retrieveFeed(request, paging);
+  }
+
   @Override
   public Feed retrieveFeed(RequestContext request) throws FeedServerAdapterException {
     String tq = null;
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.feedserver.server;
+
+import org.apache.abdera.protocol.server.ResponseContext;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded executors that run adapter calls off the container threads, one per
+ * adapter type, so that a stalled backend only holds the threads of its own
+ * adapter type. Tasks that do not fit in the queue of their executor are
+ * rejected right away, and tasks still queued at their deadline are dropped
+ * without calling the adapter.
+ */
+public class AdapterExecutors {
+
+  /**
+   * Adapter type of requests not addressed to a feed, such as service
+   * documents
+   */
+  public static final String DEFAULT_TYPE = "default";
+
+  /**
+   * An adapter call with a deadline. The deadline only applies while the task
+   * is queued; once the call has started it runs to completion. The
+   * completion callback runs on the executor thread, while holding the
+   * monitor of the task, once the call has returned, failed or expired, so
+   * that a thread that checks {@link #isDone()} and starts waiting under the
+   * same monitor cannot miss it.
+   */
+  public static class Task implements Runnable {
+    private final Callable<ResponseContext> call;
+    private final long deadline;
+    private final Runnable onCompletion;
+
+    private ResponseContext response;
+    private Throwable error;
+    private boolean done;
+    private boolean expired;
+    private boolean started;
+    private boolean cancelled;
+
+    /**
+     * @param deadline Time in milliseconds after which the call is no longer
+     *        started
+     * @param onCompletion Run once the task is done; may be null
+     */
+    public Task(Callable<ResponseContext> call, long deadline, Runnable onCompletion) {
+      this.call = call;
+      this.deadline = deadline;
+      this.onCompletion = onCompletion;
+    }
+
+    @Override
+    public void run() {
+      ResponseContext result = null;
+      Throwable failure = null;
+      boolean late = false;
+      synchronized (this) {
+        if (cancelled) {
+          return;
+        }
+        started = true;
+        late = System.currentTimeMillis() >= deadline;
+      }
+      if (!late) {
+        try {
+          result = call.call();
+        } catch (Throwable t) {
+          failure = t;
+        }
+      }
+      synchronized (this) {
+        response = result;
+        error = failure;
+        expired = late;
+        done = true;
+        if (onCompletion != null) {
+          onCompletion.run();
+        }
+      }
+    }
+
+    /**
+     * Keeps the call from being started if it is still queued
+     *
+     * @return False if the call has already started, in which case it is
+     *         not cancelled
+     */
+    public synchronized boolean cancel() {
+      if (started) {
+        return false;
+      }
+      cancelled = true;
+      return true;
+    }
+
+    public long getDeadline() {
+      return deadline;
+    }
+
+    public synchronized boolean isDone() {
+      return done;
+    }
+
+    /**
+     * Whether the deadline passed while the task was queued, in which case
+     * the adapter was not called
+     */
+    public synchronized boolean isExpired() {
+      return expired;
+    }
+
+    public synchronized ResponseContext getResponse() {
+      return response;
+    }
+
+    public synchronized Throwable getError() {
+      return error;
+    }
+  }
+
+  private final int threadsPerType;
+  private final int queueCapacity;
+  private final ConcurrentMap<String, ThreadPoolExecutor> executors =
+      new ConcurrentHashMap<String, ThreadPoolExecutor>();
+  private final AtomicLong rejectedCount = new AtomicLong();
+
+  /**
+   * @param threadsPerType Number of threads running the calls of each
+   *        adapter type
+   * @param queueCapacity Number of calls of each adapter type that may wait
+   *        for a thread
+   */
+  public AdapterExecutors(int threadsPerType, int queueCapacity) {
+    if (threadsPerType < 1) {
+      throw new IllegalArgumentException("threadsPerType must be at least 1");
+    }
+    this.threadsPerType = threadsPerType;
+    this.queueCapacity = queueCapacity;
+  }
+
+  /**
+   * Queues a task on the executor of an adapter type
+   *
+   * @param adapterType The adapter type; null for {@link #DEFAULT_TYPE}
+   * @throws RejectedExecutionException If the queue of the adapter type is
+   *         full or the executors have been shut down
+   */
+  public void execute(String adapterType, Task task) throws RejectedExecutionException {
+    try {
+      getExecutor(adapterType == null ? DEFAULT_TYPE : adapterType).execute(task);
+    } catch (RejectedExecutionException e) {
+      rejectedCount.incrementAndGet();
+      throw e;
+    }
+  }
+
+  /**
+   * Gets the executor of an adapter type, creating it on first use
+   */
+  protected ThreadPoolExecutor getExecutor(String adapterType) {
+    ThreadPoolExecutor executor = executors.get(adapterType);
+    if (executor == null) {
+      ThreadPoolExecutor newExecutor = createExecutor(adapterType);
+      executor = executors.putIfAbsent(adapterType, newExecutor);
+      if (executor == null) {
+        executor = newExecutor;
+      } else {
+        newExecutor.shutdown();
+      }
+    }
+    return executor;
+  }
+
+  private ThreadPoolExecutor createExecutor(final String adapterType) {
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(threadsPerType, threadsPerType,
+        60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(Math.max(1, queueCapacity)),
+        new ThreadFactory() {
+          private final AtomicInteger threadCount = new AtomicInteger();
+
+          @Override
+          public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable,
+                "adapter-" + adapterType + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  /**
+   * Stops accepting tasks; queued tasks still run
+   */
+  public void shutdown() {
+    for (ThreadPoolExecutor executor : executors.values()) {
+      executor.shutdown();
+    }
+  }
+
+  public long getRejectedCount() {
+    return rejectedCount.get();
+  }
+
+  /**
+   * Gets the active, queued and completed task counts of each adapter type
+   */
+  public Map<String, String> getStats() {
+    Map<String, String> stats = new TreeMap<String, String>();
+    for (Map.Entry<String, ThreadPoolExecutor> entry : executors.entrySet()) {
+      ThreadPoolExecutor executor = entry.getValue();
+      stats.put(entry.getKey(), "active=" + executor.getActiveCount() + ", queued="
+          + executor.getQueue().size() + ", completed=" + executor.getCompletedTaskCount());
+    }
+    return stats;
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "[types=" + executors.size() + ", rejected="
+        + getRejectedCount() + "]";
+  }
+}
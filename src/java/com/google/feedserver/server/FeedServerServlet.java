@@ -27,8 +27,13 @@ import org.apache.abdera.protocol.server.impl.DefaultProvider;
 import org.apache.abdera.protocol.server.servlet.AbderaServlet;
 import org.apache.abdera.util.ServiceUtil;
 
+import java.io.IOException;
 import java.util.Map;
 
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
 /**
  * A wrapper over {@link AbderaServlet}. This exposes the {@link Provider} used
  * in {@link AbderaServlet}.
@@ -66,6 +71,16 @@ public class FeedServerServlet extends AbderaServlet {
     return provider;
   }
 
+  @Override
+  protected void service(HttpServletRequest request, HttpServletResponse response)
+      throws ServletException, IOException {
+    try {
+      super.service(request, response);
+    } finally {
+      FeedServerProvider.releaseStreamedResponse(request);
+    }
+  }
+
   public Provider getProvider() {
     return this.provider;
   }
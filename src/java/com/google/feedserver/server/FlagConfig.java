@@ -34,6 +34,24 @@ public class FlagConfig {
       "/accounts/ClientLogin that mimics Google's ClientLogin to get an authentication token " +
       "that FeedServer can then verify.  Defaults to " + enableAuth_FLAG;
 
+  public static String hmacAuthTokens_FLAG = "false";
+  public static final String hmacAuthTokens_HELP = "When true and enableAuth is true, auth " +
+      "tokens are HMAC signed and carry their expiry, so that any server with the same " +
+      "authTokenKey accepts them.  Defaults to " + hmacAuthTokens_FLAG;
+
+  public static String authTokenKey_FLAG = "";
+  public static final String authTokenKey_HELP = "Key signing the auth tokens when " +
+      "hmacAuthTokens is true.  Defaults to a random key per server";
+
+  public static String authTokenLifetimeSeconds_FLAG = "86400";
+  public static final String authTokenLifetimeSeconds_HELP = "How long HMAC signed auth " +
+      "tokens are valid.  Defaults to " + authTokenLifetimeSeconds_FLAG;
+
+  public static String authTokenMaxRevoked_FLAG = "10000";
+  public static final String authTokenMaxRevoked_HELP = "Maximum number of unexpired HMAC " +
+      "signed auth tokens that can be revoked.  0 disables revocation.  Defaults to " +
+      authTokenMaxRevoked_FLAG;
+
   public static String enableOAuthSignedFetch_FLAG = "false";
   public static final String enableOAuthSignedFetch_HELP = "When true, FeedServer expects requests " +
       "sent to it to be signed with OAuth signed fetch and verifies them to get viewer " +
@@ -41,7 +59,106 @@ public class FlagConfig {
       "name of the OAuth signed fetch filter to be used.  Value true is equivalent to " +
       OAUTH_SIGNED_FETCH_FILTER_CLASS_NAME + ".  Defaults to " + enableOAuthSignedFetch_FLAG;
 
+  public static String oauthConsumerCacheSeconds_FLAG = "600";
+  public static final String oauthConsumerCacheSeconds_HELP = "How long the OAuth " +
+      "consumers and their parsed public keys are cached for signed fetch verification.  0 " +
+      "turns off caching.  Defaults to " + oauthConsumerCacheSeconds_FLAG;
+
+  public static String oauthMaxNonces_FLAG = "100000";
+  public static final String oauthMaxNonces_HELP = "Maximum number of OAuth nonces kept per " +
+      "consumer key to refuse replayed signed fetches.  Requests of a consumer are refused " +
+      "while its nonces are at the maximum.  Defaults to " + oauthMaxNonces_FLAG;
+
   public static String enableAccessControl_FLAG = "false";
   public static final String enableAccessControl_HELP = "When true, access control is enabled; " +
       "disabled otherwise.  Defaults to " + enableAccessControl_FLAG;
+
+  public static String cacheFeedConfig_FLAG = "true";
+  public static final String cacheFeedConfig_HELP = "When true, parsed feed and adapter " +
+      "configurations are kept in memory and reloaded when files below the configuration " +
+      "directory change.  Defaults to " + cacheFeedConfig_FLAG;
+
+  public static String streamFeeds_FLAG = "false";
+  public static final String streamFeeds_HELP = "When true, adapters that support it write " +
+      "feeds to the response entry by entry instead of building the whole feed in memory.  " +
+      "Errors while streaming abort the response.  Defaults to " + streamFeeds_FLAG;
+
+  public static String maxBatchEntries_FLAG = "100";
+  public static final String maxBatchEntries_HELP = "Maximum number of entries of a batch " +
+      "request.  Larger batches are refused with 400.  Defaults to " + maxBatchEntries_FLAG;
+
+  public static String responseCacheMaxBytes_FLAG = "16777216";
+  public static final String responseCacheMaxBytes_HELP = "Approximate number of bytes of " +
+      "serialized feeds and entries kept by the response cache wrapper, shared by all feeds " +
+      "that use it.  Defaults to " + responseCacheMaxBytes_FLAG;
+
+  public static String coalesceFeedReadsMaxWaitMillis_FLAG = "0";
+  public static final String coalesceFeedReadsMaxWaitMillis_HELP = "When greater than 0, " +
+      "concurrent identical feed reads share one retrieval, and requests wait at most this " +
+      "many milliseconds for it before failing with 503.  0 disables coalescing.  Defaults " +
+      "to " + coalesceFeedReadsMaxWaitMillis_FLAG;
+
+  public static String asyncAdapterThreads_FLAG = "0";
+  public static final String asyncAdapterThreads_HELP = "When greater than 0, adapter calls " +
+      "run on bounded executors with this many threads per adapter type and requests are " +
+      "suspended while they wait, releasing the container thread.  0 calls adapters on the " +
+      "container thread.  Defaults to " + asyncAdapterThreads_FLAG;
+
+  public static String asyncQueueCapacity_FLAG = "50";
+  public static final String asyncQueueCapacity_HELP = "Number of adapter calls per adapter " +
+      "type that may wait for an executor thread in async mode.  Requests beyond it fail " +
+      "with 503.  Defaults to " + asyncQueueCapacity_FLAG;
+
+  public static String asyncRequestTimeoutMillis_FLAG = "30000";
+  public static final String asyncRequestTimeoutMillis_HELP = "Milliseconds a request may " +
+      "wait for its adapter call in async mode before failing with 503.  Defaults to " +
+      asyncRequestTimeoutMillis_FLAG;
+
+  public static String threadPerRequest_FLAG = "false";
+  public static final String threadPerRequest_HELP = "When true, each request runs on a " +
+      "thread of its own: a virtual thread on JVMs that have them, a new platform thread " +
+      "otherwise.  When false, requests share a pool of at most maxThreads threads.  " +
+      "Defaults to " + threadPerRequest_FLAG;
+
+  public static String maxThreads_FLAG = "250";
+  public static final String maxThreads_HELP = "Maximum number of threads serving requests " +
+      "when threadPerRequest is false.  Defaults to " + maxThreads_FLAG;
+
+  public static String maxConcurrentRequestsPerNamespace_FLAG = "0";
+  public static final String maxConcurrentRequestsPerNamespace_HELP = "When greater than 0, " +
+      "at most this many requests per namespace are processed at once and further ones wait " +
+      "for admission.  0 turns off the limit.  Defaults to " +
+      maxConcurrentRequestsPerNamespace_FLAG;
+
+  public static String maxQueuedRequestsPerNamespace_FLAG = "50";
+  public static final String maxQueuedRequestsPerNamespace_HELP = "Number of requests per " +
+      "namespace that may wait for admission.  Requests beyond it fail with 429.  Defaults " +
+      "to " + maxQueuedRequestsPerNamespace_FLAG;
+
+  public static String maxConcurrentRequestsPerFeed_FLAG = "0";
+  public static final String maxConcurrentRequestsPerFeed_HELP = "When greater than 0, at " +
+      "most this many requests per feed are processed at once and further ones wait for " +
+      "admission.  0 turns off the limit.  Defaults to " + maxConcurrentRequestsPerFeed_FLAG;
+
+  public static String maxQueuedRequestsPerFeed_FLAG = "20";
+  public static final String maxQueuedRequestsPerFeed_HELP = "Number of requests per feed " +
+      "that may wait for admission.  Requests beyond it fail with 429.  Defaults to " +
+      maxQueuedRequestsPerFeed_FLAG;
+
+  public static String admissionMaxWaitMillis_FLAG = "1000";
+  public static final String admissionMaxWaitMillis_HELP = "Milliseconds a request may wait " +
+      "for admission before failing with 503.  Defaults to " + admissionMaxWaitMillis_FLAG;
+
+  public static String warmUp_FLAG = "false";
+  public static final String warmUp_HELP = "When true, the feed and adapter configurations of " +
+      "every namespace are loaded and each feed's adapter chain is built at startup.  /ready " +
+      "answers 503 until this has finished.  Defaults to " + warmUp_FLAG;
+
+  public static String warmUpThreads_FLAG = "4";
+  public static final String warmUpThreads_HELP = "Number of namespaces and feeds loaded at " +
+      "once during warm-up.  Defaults to " + warmUpThreads_FLAG;
+
+  public static String warmUpRequests_FLAG = "";
+  public static final String warmUpRequests_HELP = "File listing request paths, one per " +
+      "line, sent to the server at the end of the warm-up.  Defaults to none";
 }
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.feedserver.server.jetty;
+
+import org.mortbay.component.AbstractLifeCycle;
+import org.mortbay.thread.BoundedThreadPool;
+import org.mortbay.thread.ThreadPool;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Jetty thread pool that hands each job to an {@link ExecutorService}.
+ * {@link #newThreadPerRequestPool()} runs each request on a thread of its own:
+ * a virtual thread on JVMs that have them, a new platform thread otherwise.
+ * Blocking adapter calls then no longer wait for a free pooled thread.
+ */
+public class ExecutorThreadPool extends AbstractLifeCycle implements ThreadPool {
+
+  private static final Logger logger = Logger.getLogger(ExecutorThreadPool.class.getName());
+
+  private final ExecutorService executor;
+  private final AtomicInteger activeCount = new AtomicInteger();
+
+  public ExecutorThreadPool(ExecutorService executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * Creates a pool that starts a new thread for each job, using virtual
+   * threads when the JVM supports them
+   */
+  public static ExecutorThreadPool newThreadPerRequestPool() {
+    ExecutorService executor = newVirtualThreadPerTaskExecutor();
+    if (executor == null) {
+      logger.info("Virtual threads are not available; running each request on a new thread");
+      executor = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "request-" + threadCount.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    } else {
+      logger.info("Running each request on a virtual thread");
+    }
+    return new ExecutorThreadPool(executor);
+  }
+
+  /**
+   * Creates Jetty's own pool of at most {@code maxThreads} threads
+   */
+  public static ThreadPool newBoundedPool(int maxThreads) {
+    BoundedThreadPool threadPool = new BoundedThreadPool();
+    threadPool.setMaxThreads(maxThreads);
+    return threadPool;
+  }
+
+  /**
+   * Gets {@code Executors.newVirtualThreadPerTaskExecutor()} on Java 21 and
+   * later. The method only exists from Java 21 on (as a preview API in 19 and
+   * 20), and the server is built with and supported on Java 17, so it is
+   * looked up through reflection rather than called directly.
+   *
+   * @return The executor; null if the JVM has no virtual threads
+   */
+  static ExecutorService newVirtualThreadPerTaskExecutor() {
+    if (Runtime.version().feature() < 21) {
+      return null;
+    }
+    try {
+      Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) factory.invoke(null);
+    } catch (NoSuchMethodException e) {
+      return null;
+    } catch (Exception e) {
+      logger.warning("Cannot create virtual threads: " + e);
+      return null;
+    }
+  }
+
+  @Override
+  public boolean dispatch(final Runnable job) {
+    try {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          activeCount.incrementAndGet();
+          try {
+            job.run();
+          } finally {
+            activeCount.decrementAndGet();
+          }
+        }
+      });
+      return true;
+    } catch (RejectedExecutionException e) {
+      return false;
+    }
+  }
+
+  @Override
+  public void join() throws InterruptedException {
+    while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+      // keep waiting until the pool is stopped
+    }
+  }
+
+  @Override
+  public int getThreads() {
+    return activeCount.get();
+  }
+
+  /**
+   * Threads are not kept around to wait for jobs, so there are never idle
+   * ones
+   */
+  @Override
+  public int getIdleThreads() {
+    return 0;
+  }
+
+  @Override
+  public boolean isLowOnThreads() {
+    return executor.isShutdown();
+  }
+
+  @Override
+  protected void doStop() throws Exception {
+    executor.shutdown();
+    super.doStop();
+  }
+}
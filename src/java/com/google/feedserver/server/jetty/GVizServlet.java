@@ -1,6 +1,8 @@
 package com.google.feedserver.server.jetty;
 
+import com.google.feedserver.manager.FeedServerProvider;
 import com.google.feedserver.samples.wrappers.gviz.GVizWrapper;
+import com.google.feedserver.server.AdapterExecutors;
 import com.google.feedserver.util.XmlUtil;
 
 import org.apache.abdera.protocol.error.Error;
@@ -12,12 +14,16 @@ import org.apache.abdera.protocol.server.servlet.ServletRequestContext;
 import org.apache.abdera.writer.StreamWriter;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.mortbay.util.ajax.Continuation;
+import org.mortbay.util.ajax.ContinuationSupport;
 import org.xml.sax.SAXException;
 
 import java.io.IOException;
 import java.io.StringWriter;
 import java.util.Date;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.activation.MimeType;
 import javax.servlet.http.HttpServletRequest;
@@ -28,9 +34,40 @@ public class GVizServlet extends AbderaServlet {
 
   private final static Log log = LogFactory.getLog(GVizServlet.class);
 
+  /**
+   * Request attribute holding the adapter call of a suspended request
+   */
+  static final String TASK_ATTRIBUTE = GVizServlet.class.getName() + ".task";
+
+  private final AdapterExecutors adapterExecutors;
+  private final long asyncTimeoutMillis;
+
+  public GVizServlet() {
+    this(null, 0);
+  }
+
+  /**
+   * Creates a servlet that runs adapter calls on {@code adapterExecutors}.
+   * The request is suspended with a Jetty continuation while the call runs,
+   * which releases the container thread on connectors that support it.
+   *
+   * @param adapterExecutors Executors for the adapter calls; null to call
+   *        adapters on the container thread
+   * @param asyncTimeoutMillis Time a request may wait for its adapter call
+   *        before failing with 503
+   */
+  public GVizServlet(AdapterExecutors adapterExecutors, long asyncTimeoutMillis) {
+    this.adapterExecutors = adapterExecutors;
+    this.asyncTimeoutMillis = asyncTimeoutMillis;
+  }
+
   @Override
   protected void service(HttpServletRequest request, HttpServletResponse response)
   throws IOException {
+    if (adapterExecutors != null) {
+      serviceAsync(request, response);
+      return;
+    }
     RequestContext reqcontext =
       new ServletRequestContext(provider, request, getServletContext());
     FilterChain chain = new FilterChain(provider,reqcontext);
@@ -39,10 +76,103 @@ public class GVizServlet extends AbderaServlet {
     } catch (Throwable t) {
       error("Error servicing request", t, response);
       return;
+    } finally {
+      FeedServerProvider.releaseStreamedResponse(request);
+    }
+    log.debug("Request complete");
+  }
+
+  /**
+   * Queues the adapter call of a request and suspends the request until the
+   * call completes. With a retrying continuation this method is entered again
+   * when the request is resumed or times out, and then writes the response.
+   * A call still queued at its deadline is cancelled and fails with 503; a
+   * call that has already started is waited for, since the adapter may
+   * already have applied it.
+   * <p>
+   * The task is the mutex of the continuation, and the task resumes the
+   * continuation while holding its own monitor. Checking the task and
+   * suspending under the same monitor keeps a resume from getting lost in
+   * between, which a retrying continuation would otherwise ignore since it is
+   * not pending yet.
+   * </p>
+   */
+  private void serviceAsync(HttpServletRequest request, HttpServletResponse response)
+  throws IOException {
+    AdapterExecutors.Task task = (AdapterExecutors.Task) request.getAttribute(TASK_ATTRIBUTE);
+    Continuation continuation;
+    if (task == null) {
+      final RequestContext reqcontext =
+        new ServletRequestContext(provider, request, getServletContext());
+      ContinuationResumer resumer = new ContinuationResumer();
+      task = new AdapterExecutors.Task(new Callable<ResponseContext>() {
+        @Override
+        public ResponseContext call() {
+          return new FilterChain(provider, reqcontext).next(reqcontext);
+        }
+      }, System.currentTimeMillis() + asyncTimeoutMillis, resumer);
+      continuation = ContinuationSupport.getContinuation(request, task);
+      resumer.continuation = continuation;
+      try {
+        adapterExecutors.execute(getAdapterType(reqcontext), task);
+      } catch (RejectedExecutionException e) {
+        error(503, "Too many requests waiting for the adapter", null, response);
+        return;
+      }
+      request.setAttribute(TASK_ATTRIBUTE, task);
+    } else {
+      continuation = ContinuationSupport.getContinuation(request, task);
+    }
+    boolean timedOut = false;
+    synchronized (task) {
+      while (!task.isDone()) {
+        long remaining = task.getDeadline() - System.currentTimeMillis();
+        if (remaining <= 0 && task.cancel()) {
+          timedOut = true;
+          break;
+        }
+        // throws a RetryRequest that releases this thread if the connector
+        // supports it; waits on the task otherwise
+        continuation.suspend(remaining > 0 ? remaining : asyncTimeoutMillis);
+      }
+    }
+    request.removeAttribute(TASK_ATTRIBUTE);
+    if (timedOut || task.isExpired()) {
+      error(503, "Timed out waiting for the adapter", null, response);
+      return;
+    }
+    if (task.getError() != null) {
+      error("Error servicing request", task.getError(), response);
+      return;
+    }
+    try {
+      output(request, response, task.getResponse());
+    } catch (Throwable t) {
+      error("Error servicing request", t, response);
+      return;
+    } finally {
+      FeedServerProvider.releaseStreamedResponse(request);
     }
     log.debug("Request complete");
   }
 
+  /**
+   * Resumes the continuation of a request once its adapter call is done
+   */
+  private static class ContinuationResumer implements Runnable {
+    private volatile Continuation continuation;
+
+    @Override
+    public void run() {
+      continuation.resume();
+    }
+  }
+
+  private String getAdapterType(RequestContext reqcontext) {
+    return provider instanceof FeedServerProvider ?
+        ((FeedServerProvider) provider).getAdapterType(reqcontext) : null;
+  }
+
   private void output(HttpServletRequest request, HttpServletResponse response,
       ResponseContext context)
   throws IOException {
@@ -107,6 +237,11 @@ public class GVizServlet extends AbderaServlet {
   }
 
   private void error(String message, Throwable t, HttpServletResponse response)
+  throws IOException {
+    error(500, message, t, response);
+  }
+
+  private void error(int status, String message, Throwable t, HttpServletResponse response)
   throws IOException {
     if (t != null) log.error(message, t);
     else log.error(message);
@@ -114,10 +249,10 @@ public class GVizServlet extends AbderaServlet {
     if (response.isCommitted()) {
       log.error("Could not write an error message as the headers & HTTP status were already committed!");
     } else {
-      response.setStatus(500);
+      response.setStatus(status);
       StreamWriter sw = getAbdera().newStreamWriter().setOutputStream(
           response.getOutputStream(), "UTF-8");
-      Error.create(sw, 500, message,t);
+      Error.create(sw, status, message,t);
       sw.close();
     }
   }
@@ -17,19 +17,27 @@
 package com.google.feedserver.server.jetty;
 
 import com.google.feedserver.config.FeedServerConfiguration;
+import com.google.feedserver.configstore.CachingFeedConfigStore;
+import com.google.feedserver.configstore.FeedConfigStore;
 import com.google.feedserver.filters.KeyManager;
 import com.google.feedserver.filters.SignedRequestFilter;
 import com.google.feedserver.filters.SimpleKeyMananger;
 import com.google.feedserver.manager.FeedServerProvider;
+import com.google.feedserver.manager.ServerWarmUp;
 import com.google.feedserver.samples.config.AllowAllAclValidator;
 import com.google.feedserver.samples.configstore.SampleFileSystemFeedConfigStore;
 import com.google.feedserver.samples.manager.XmlWrapperManager;
+import com.google.feedserver.samples.wrappers.IBatisAdapterWrapper;
+import com.google.feedserver.server.AdapterExecutors;
 import com.google.feedserver.server.FlagConfig;
 import com.google.feedserver.server.servlet.GetAuthTokenServlet;
 import com.google.feedserver.server.servlet.GuiceServletContextListener;
 import com.google.feedserver.server.servlet.MethodOverrideServletFilter;
+import com.google.feedserver.server.servlet.ReadinessServlet;
 import com.google.feedserver.util.CommonsCliHelper;
 import com.google.feedserver.util.SimpleCommandLineParser;
+import com.google.feedserver.wrappers.ResourceConnectionInfoWrapper;
+import com.google.feedserver.wrappers.ResponseCacheWrapper;
 import com.google.xdp.XdServletFilter;
 
 import org.apache.abdera.protocol.server.ServiceManager;
@@ -38,10 +46,13 @@ import org.mortbay.jetty.Server;
 import org.mortbay.jetty.servlet.Context;
 import org.mortbay.jetty.servlet.FilterHolder;
 import org.mortbay.jetty.servlet.ServletHolder;
+import org.mortbay.thread.ThreadPool;
 
+import java.io.File;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.EventListener;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.servlet.Filter;
@@ -66,29 +77,92 @@ public class Main {
     commandLine.register(FlagConfig.class);
     commandLine.parse(args);
 
-    SampleFileSystemFeedConfigStore feedConfigStore = new SampleFileSystemFeedConfigStore();
+    FeedConfigStore feedConfigStore = new SampleFileSystemFeedConfigStore();
     logger.info("Created a file system config store");
+    CachingFeedConfigStore cachingFeedConfigStore = null;
+    if (FlagConfig.cacheFeedConfig_FLAG.equalsIgnoreCase("true")) {
+      cachingFeedConfigStore = new CachingFeedConfigStore(feedConfigStore);
+      cachingFeedConfigStore.watch(
+          new File(SampleFileSystemFeedConfigStore.BASE_CONFIGURATION_PATH));
+      feedConfigStore = cachingFeedConfigStore;
+      logger.info("Caching feed and adapter configurations");
+    }
     FeedServerConfiguration config = FeedServerConfiguration.createIntance(feedConfigStore);
+    if (cachingFeedConfigStore != null) {
+      cachingFeedConfigStore.addListener(IBatisAdapterWrapper.getSqlMapConfigCache());
+      cachingFeedConfigStore.addListener(ResourceConnectionInfoWrapper.getAclCache());
+      cachingFeedConfigStore.addListener(ResponseCacheWrapper.getResponseCache());
+    }
     config.setAclValidator(new AllowAllAclValidator());
     config.initialize(new SimpleCommandLineParser(args));
     config.setWrapperManagerClassName(XmlWrapperManager.class.getName());
     // set up server
     Server server = new Server(config.getPort());
+    server.setThreadPool(createThreadPool());
 //    server.getConnectors()[0].setHost("localhost");  // listen on localhost:{port} only
     Context context = new Context(server, "/", Context.SESSIONS);
 
     // Add the Abdera servlet
-    ServletHolder servletHolder = new ServletHolder(new GVizServlet());
+    ServletHolder servletHolder = new ServletHolder(createServlet());
     servletHolder.setInitParameter(ServiceManager.PROVIDER, FeedServerProvider.class.getName());
     context.addServlet(servletHolder, "/*");
+    context.addServlet(new ServletHolder(new ReadinessServlet()), "/ready");
 
     addFilters(context);
 
+    boolean warmUp = FlagConfig.warmUp_FLAG.equalsIgnoreCase("true");
+    if (warmUp) {
+      ServerWarmUp.markWarmingUp();
+    }
     // start server
     server.start();
+    if (warmUp) {
+      warmUp(config);
+    }
     server.join();
   }
 
+  /**
+   * Builds the adapter chains of all namespaces and replays the request
+   * sample, then marks the server ready
+   */
+  protected void warmUp(FeedServerConfiguration config) {
+    try {
+      ServerWarmUp warmUp = new ServerWarmUp(config, ServiceManager.getAbdera(),
+          Integer.parseInt(FlagConfig.warmUpThreads_FLAG));
+      warmUp.warmUp(ServerWarmUp.findNamespaces(
+          new File(SampleFileSystemFeedConfigStore.BASE_CONFIGURATION_PATH)));
+      if (FlagConfig.warmUpRequests_FLAG.length() > 0) {
+        warmUp.replay("http://localhost:" + config.getPort(),
+            new File(FlagConfig.warmUpRequests_FLAG));
+      }
+    } catch (Exception e) {
+      logger.log(Level.WARNING, "Warm-up did not complete", e);
+    } finally {
+      ServerWarmUp.markReady();
+      logger.info("FeedServer is ready");
+    }
+  }
+
+  protected ThreadPool createThreadPool() {
+    if (FlagConfig.threadPerRequest_FLAG.equalsIgnoreCase("true")) {
+      return ExecutorThreadPool.newThreadPerRequestPool();
+    }
+    return ExecutorThreadPool.newBoundedPool(Integer.parseInt(FlagConfig.maxThreads_FLAG));
+  }
+
+  protected GVizServlet createServlet() {
+    int asyncThreads = Integer.parseInt(FlagConfig.asyncAdapterThreads_FLAG);
+    if (asyncThreads <= 0) {
+      return new GVizServlet();
+    }
+    logger.info("Calling adapters asynchronously with " + asyncThreads +
+        " threads per adapter type");
+    return new GVizServlet(new AdapterExecutors(asyncThreads,
+        Integer.parseInt(FlagConfig.asyncQueueCapacity_FLAG)),
+        Long.parseLong(FlagConfig.asyncRequestTimeoutMillis_FLAG));
+  }
+
   protected void addFilters(Context context) throws ClassNotFoundException, NoSuchMethodException,
       InstantiationException, IllegalAccessException, InvocationTargetException {
 
@@ -62,6 +62,7 @@ public class StartFeedServerWithJetty {
 
     boolean configureOAuthFilter = false;
     boolean signedRequest = false;
+    boolean threadPerRequest = false;
     String oauthFilterClassName = SimpleOAuthFilter.class.getName();
 
     // Check if the OAuth filter flag has been given as command line input
@@ -79,6 +80,8 @@ public class StartFeedServerWithJetty {
           }
         } else if (args[i].startsWith("oauthFilterClass")) {
           oauthFilterClassName = args[i].substring(args[i].indexOf("=") + 1);
+        } else if (args[i].startsWith("threadPerRequest")) {
+          threadPerRequest = args[i].substring(args[i].indexOf("=") + 1).equalsIgnoreCase("true");
         }
       }
     }
@@ -91,6 +94,9 @@ public class StartFeedServerWithJetty {
     config.setWrapperManagerClassName("com.google.feedserver.samples.manager.XmlWrapperManager");
     // set up server
     Server server = new Server(config.getPort());
+    if (threadPerRequest) {
+      server.setThreadPool(ExecutorThreadPool.newThreadPerRequestPool());
+    }
     Context context = new Context(server, "/", Context.SESSIONS);
 
     // Add the Abdera servlet
@@ -17,8 +17,15 @@ package com.google.feedserver.server.servlet;
 
 import com.google.feedserver.config.FeedServerConfiguration;
 import com.google.feedserver.configstore.FeedConfigStore;
+import com.google.feedserver.manager.ServerWarmUp;
 import com.google.feedserver.samples.config.AllowAllAclValidator;
+import com.google.feedserver.samples.configstore.SampleFileSystemFeedConfigStore;
 
+import org.apache.abdera.protocol.server.ServiceManager;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -35,6 +42,13 @@ import javax.servlet.http.HttpServlet;
  * <li>
  * FEED_CONFIG_STORE_CLASS : The fully qualified name of the
  * {@link FeedConfigStore} concrete class</li>
+ * <li>
+ * WARM_UP : Optional; when true, the adapter chains of all feeds are built
+ * before the servlet finishes initializing</li>
+ * <li>
+ * WARM_UP_NAMESPACES : Optional comma separated namespaces to warm up;
+ * defaults to the namespaces found below
+ * {@link SampleFileSystemFeedConfigStore#BASE_CONFIGURATION_PATH}</li>
  * </ul>
  * </p>
  * <p>
@@ -62,6 +76,9 @@ public class FeedServerInitializationServlet extends HttpServlet {
       feedConfig.setAclValidator(new AllowAllAclValidator());
       feedConfig.setWrapperManagerClassName(wrapperManagerClassName);
       logger.info(" Created feed config : " + feedConfig + " with feed store : " + feedConfigStore);
+      if ("true".equalsIgnoreCase(config.getInitParameter("WARM_UP"))) {
+        warmUp(feedConfig, config.getInitParameter("WARM_UP_NAMESPACES"));
+      }
     } catch (InstantiationException e) {
       logger.log(Level.SEVERE,
           "Problems encountered while creating an instance of  feed config store : "
@@ -78,6 +95,20 @@ public class FeedServerInitializationServlet extends HttpServlet {
     }
   }
 
-
-
+  private void warmUp(FeedServerConfiguration feedConfig, String namespaceList) {
+    ServerWarmUp.markWarmingUp();
+    try {
+      Collection<String> namespaces = namespaceList == null ?
+          ServerWarmUp.findNamespaces(
+              new File(SampleFileSystemFeedConfigStore.BASE_CONFIGURATION_PATH)) :
+          Arrays.asList(namespaceList.trim().split("\\s*,\\s*"));
+      new ServerWarmUp(feedConfig, ServiceManager.getAbdera(),
+          Runtime.getRuntime().availableProcessors()).warmUp(namespaces);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      logger.log(Level.WARNING, "Warm-up interrupted", e);
+    } finally {
+      ServerWarmUp.markReady();
+    }
+  }
 }
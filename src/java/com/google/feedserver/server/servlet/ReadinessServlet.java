@@ -0,0 +1,44 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.feedserver.server.servlet;
+
+import com.google.feedserver.manager.ServerWarmUp;
+
+import java.io.IOException;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Answers 200 once the server has warmed up and 503 before, for load
+ * balancer health checks
+ */
+public class ReadinessServlet extends HttpServlet {
+
+  private static final long serialVersionUID = 1L;
+
+  @Override
+  protected void doGet(HttpServletRequest request, HttpServletResponse response)
+      throws IOException {
+    boolean ready = ServerWarmUp.isReady();
+    response.setStatus(ready ? HttpServletResponse.SC_OK
+        : HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+    response.setContentType("text/plain");
+    response.getWriter().print(ready ? "ready" : "warming up");
+  }
+}
@@ -26,10 +26,12 @@ import org.apache.commons.beanutils.converters.IntegerConverter;
 import org.apache.commons.beanutils.converters.LongConverter;
 import org.apache.commons.beanutils.converters.ShortConverter;
 
-import java.beans.BeanInfo;
 import java.beans.IntrospectionException;
 import java.beans.Introspector;
 import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Array;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
@@ -39,15 +41,25 @@ import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * JavaBean utilities
+ * <p>
+ * The properties of each bean class are introspected once and kept with what
+ * converting their values needs, so that converting a bean only invokes its
+ * accessors. The accessors are invoked through method handles, which skip the
+ * access and argument checks {@link Method#invoke} repeats on every call.
+ * </p>
  */
 public class BeanUtil {
 
-  private static List<Class<?>> primitiveTypes;
+  private static Set<Class<?>> primitiveTypes;
 
   /*
    * Setup ConvertUtils to throw exceptions if conversions fail. This is needed
@@ -69,7 +81,7 @@ public class BeanUtil {
     ConvertUtils.register(new ShortConverter(), Short.class);
     ConvertUtils.register(new ShortConverter(), Short.TYPE);
 
-    primitiveTypes = new ArrayList<Class<?>>();
+    primitiveTypes = new HashSet<Class<?>>();
     primitiveTypes.add(Boolean.class);
     primitiveTypes.add(Byte.class);
     primitiveTypes.add(Character.class);
@@ -81,8 +93,131 @@ public class BeanUtil {
     primitiveTypes.add(String.class);
   }
 
+  protected static final String TIMESTAMP_PATTERN = "yyyy-MM-dd HH:mm:ss.SSSSSS";
+
+  /**
+   * @deprecated Not thread safe; use {@link #parseTimestamp(String)} instead
+   */
+  @Deprecated
   protected static final SimpleDateFormat TIMESTAMP_FORMAT =
-      new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSSSSS");
+      new SimpleDateFormat(TIMESTAMP_PATTERN);
+
+  /**
+   * {@link SimpleDateFormat} is not thread safe; each thread parses with its
+   * own
+   */
+  private static final ThreadLocal<SimpleDateFormat> timestampFormat =
+      new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+          return new SimpleDateFormat(TIMESTAMP_PATTERN);
+        }
+      };
+
+  /**
+   * A property of a bean class with its accessors and the kind of values it
+   * holds
+   */
+  private static class BeanProperty {
+    final String name;
+    final Method reader;
+    final Method writer;
+    final Class<?> type;
+    final boolean beanType;
+    final Class<?> componentType;
+    /**
+     * (Object)Object handle of the reader; null if the reader is not
+     * accessible, in which case {@link Method#invoke} reports why
+     */
+    final MethodHandle readerHandle;
+    /**
+     * (Object, Object)void handle of the writer; null if the writer is not
+     * accessible
+     */
+    final MethodHandle writerHandle;
+    /**
+     * Values of this class are passed to the writer handle; others go through
+     * {@link Method#invoke}, which also widens primitives
+     */
+    final Class<?> writerValueType;
+
+    BeanProperty(PropertyDescriptor descriptor, boolean beanType) {
+      name = descriptor.getName();
+      reader = descriptor.getReadMethod();
+      writer = descriptor.getWriteMethod();
+      type = writer == null ? null : writer.getParameterTypes()[0];
+      this.beanType = beanType;
+      componentType = type != null && type.isArray() ? type.getComponentType() : null;
+      readerHandle = getHandle(reader, MethodType.methodType(Object.class, Object.class));
+      writerHandle =
+          getHandle(writer, MethodType.methodType(void.class, Object.class, Object.class));
+      writerValueType = type == null ? null : MethodType.methodType(type).wrap().returnType();
+    }
+
+    Object read(Object bean) throws IllegalAccessException, InvocationTargetException {
+      if (readerHandle == null) {
+        return reader.invoke(bean);
+      }
+      try {
+        return (Object) readerHandle.invokeExact(bean);
+      } catch (Throwable t) {
+        throw new InvocationTargetException(t);
+      }
+    }
+
+    void write(Object bean, Object value) throws IllegalAccessException,
+        InvocationTargetException {
+      if (writerHandle == null || !writerValueType.isInstance(value)) {
+        writer.invoke(bean, value);
+        return;
+      }
+      try {
+        writerHandle.invokeExact(bean, value);
+      } catch (Throwable t) {
+        throw new InvocationTargetException(t);
+      }
+    }
+
+    private static MethodHandle getHandle(Method method, MethodType type) {
+      if (method == null) {
+        return null;
+      }
+      try {
+        return MethodHandles.lookup().unreflect(method).asType(type);
+      } catch (IllegalAccessException e) {
+        return null;
+      }
+    }
+  }
+
+  private static final ConcurrentMap<Class<?>, BeanProperty[]> propertyCache =
+      new ConcurrentHashMap<Class<?>, BeanProperty[]>();
+
+  /**
+   * Gets the properties of a bean class, introspecting it the first time
+   */
+  private BeanProperty[] getProperties(Class<?> beanClass) throws IntrospectionException {
+    BeanProperty[] properties = propertyCache.get(beanClass);
+    if (properties == null) {
+      PropertyDescriptor[] descriptors =
+          Introspector.getBeanInfo(beanClass, Object.class).getPropertyDescriptors();
+      properties = new BeanProperty[descriptors.length];
+      for (int i = 0; i < descriptors.length; i++) {
+        Method writer = descriptors[i].getWriteMethod();
+        properties[i] = new BeanProperty(descriptors[i],
+            writer != null && isBean(writer.getParameterTypes()[0]));
+      }
+      propertyCache.putIfAbsent(beanClass, properties);
+    }
+    return properties;
+  }
+
+  /**
+   * Parses a timestamp in the format of {@link Timestamp#toString()}
+   */
+  protected static Timestamp parseTimestamp(String value) throws ParseException {
+    return new Timestamp(timestampFormat.get().parse(value).getTime());
+  }
 
   /**
    * Converts a JavaBean to a collection of properties
@@ -93,12 +228,10 @@ public class BeanUtil {
   public Map<String, Object> convertBeanToProperties(Object bean) throws IntrospectionException,
       IllegalArgumentException, IllegalAccessException, InvocationTargetException {
     Map<String, Object> properties = new HashMap<String, Object>();
-    BeanInfo beanInfo = Introspector.getBeanInfo(bean.getClass(), Object.class);
-    for (PropertyDescriptor p : beanInfo.getPropertyDescriptors()) {
-      String name = p.getName();
-      Method reader = p.getReadMethod();
-      if (reader != null) {
-        Object value = reader.invoke(bean);
+    for (BeanProperty p : getProperties(bean.getClass())) {
+      String name = p.name;
+      if (p.reader != null) {
+        Object value = p.read(bean);
         if (null != value) {
           if (value instanceof Timestamp) {
             properties.put(name, value.toString());
@@ -146,19 +279,16 @@ public class BeanUtil {
   public void convertPropertiesToBean(Map<String, Object> properties, Object bean)
       throws IntrospectionException, IllegalArgumentException, IllegalAccessException,
       InvocationTargetException, ParseException {
-    BeanInfo beanInfo = Introspector.getBeanInfo(bean.getClass(), Object.class);
-    for (PropertyDescriptor p : beanInfo.getPropertyDescriptors()) {
-      String name = p.getName();
+    for (BeanProperty p : getProperties(bean.getClass())) {
+      String name = p.name;
       Object value = properties.get(name);
-      Method reader = p.getReadMethod();
-      Method writer = p.getWriteMethod();
       // we only care about "complete" properties
-      if (reader != null && writer != null && value != null) {
-        Class<?> propertyType = writer.getParameterTypes()[0];
-        if (isBean(propertyType)) {
+      if (p.reader != null && p.writer != null && value != null) {
+        Class<?> propertyType = p.type;
+        if (p.beanType) {
           // this is a bean
-          if (propertyType.isArray()) {
-            propertyType = propertyType.getComponentType();
+          if (p.componentType != null) {
+            propertyType = p.componentType;
             Object beanArray = Array.newInstance(propertyType, 1);
 
             if (value.getClass().isArray()) {
@@ -174,7 +304,7 @@ public class BeanUtil {
             }
             value = beanArray;
           } else if (propertyType == Timestamp.class) {
-            value = new Timestamp(TIMESTAMP_FORMAT.parse((String) value).getTime());
+            value = parseTimestamp((String) value);
           } else {
             Object beanObject = createBeanObject(propertyType, value);
             value = beanObject;
@@ -206,7 +336,7 @@ public class BeanUtil {
         }
         // We only write values that are present in the map. This allows
         // defaults or previously set values in the bean to be retained.
-        writer.invoke(bean, value);
+        p.write(bean, value);
       }
     }
   }
@@ -284,18 +414,17 @@ public class BeanUtil {
     } else if (bean2.getClass().isArray()) {
       return false;
     } else if (isBean(bean1.getClass())) {
-      BeanInfo bean1Info;
+      BeanProperty[] bean1Properties;
       try {
-        bean1Info = Introspector.getBeanInfo(bean1.getClass(), Object.class);
+        bean1Properties = getProperties(bean1.getClass());
       } catch (IntrospectionException e) {
         return false;
       }
-      for (PropertyDescriptor p : bean1Info.getPropertyDescriptors()) {
-        Method reader = p.getReadMethod();
-        if (reader != null) {
+      for (BeanProperty p : bean1Properties) {
+        if (p.reader != null) {
           try {
-            Object value1 = reader.invoke(bean1);
-            Object value2 = reader.invoke(bean2);
+            Object value1 = p.read(bean1);
+            Object value2 = p.read(bean2);
             if (!equals(value1, value2)) {
               return false;
             }
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.feedserver.util;
+
+import java.util.Map;
+
+/**
+ * Writes a map of properties as the entity XML used in the content section of
+ * entries:
+ *<pre>
+ * &lt;entity&gt;
+ *   &lt;name0&gt;value0&lt;/name0&gt;
+ *   &lt;name1 repeatable="true"&gt;value1&lt;/name1&gt;
+ *   &lt;name1&gt;value2&lt;/name1&gt;
+ *   &lt;name2&gt;&lt;nested&gt;value3&lt;/nested&gt;&lt;/name2&gt;
+ * &lt;/entity&gt;
+ *</pre>
+ * The XML is appended to a single buffer and text is escaped in place, so no
+ * DOM, parser or transformer is created per entity.
+ */
+public class EntityXmlWriter {
+
+  private EntityXmlWriter() {
+  }
+
+  /**
+   * Converts top level properties into entity XML. Properties with a
+   * {@code null} value are left out, each element of an array value becomes
+   * one element with the first one marked repeatable and {@link Map} values
+   * become nested elements.
+   *
+   * @param properties The properties to convert
+   * @return The entity XML
+   * @throws IllegalArgumentException If a property name is not a valid XML
+   *         element name
+   */
+  public static String toXml(Map<String, Object> properties) {
+    return toXml(properties, XmlHandler.ENTITY);
+  }
+
+  /**
+   * Converts top level properties into XML enclosed in the given element.
+   *
+   * @see #toXml(Map)
+   */
+  public static String toXml(Map<String, Object> properties, String topLevelElement) {
+    StringBuilder builder = new StringBuilder(64 + 32 * properties.size());
+    write(properties, topLevelElement, builder);
+    return builder.toString();
+  }
+
+  /**
+   * Appends the XML for the properties enclosed in the given element to
+   * {@code builder}.
+   *
+   * @see #toXml(Map)
+   */
+  public static void write(Map<String, Object> properties, String topLevelElement,
+      StringBuilder builder) {
+    checkName(topLevelElement);
+    builder.append('<').append(topLevelElement).append('>');
+    for (Map.Entry<String, Object> property : properties.entrySet()) {
+      if (property.getValue() != null) {
+        writeProperty(property.getKey(), property.getValue(), builder);
+      }
+    }
+    builder.append("</").append(topLevelElement).append('>');
+  }
+
+  private static void writeProperty(String name, Object value, StringBuilder builder) {
+    checkName(name);
+    if (value instanceof Object[]) {
+      Object[] values = (Object[]) value;
+      for (int i = 0; i < values.length; i++) {
+        writeElement(name, values[i], i == 0, builder);
+      }
+    } else {
+      writeElement(name, value, false, builder);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static void writeElement(String name, Object value, boolean repeatable,
+      StringBuilder builder) {
+    builder.append('<').append(name);
+    if (repeatable) {
+      builder.append(' ').append(XmlHandler.REPEATABLE).append("=\"true\"");
+    }
+    builder.append('>');
+    if (value instanceof Map) {
+      // Nested maps keep their null values as empty elements, like
+      // XmlUtil.convertPropertiesToXml
+      for (Map.Entry<String, Object> property : ((Map<String, Object>) value).entrySet()) {
+        writeProperty(property.getKey(), property.getValue() == null ? "" : property.getValue(),
+            builder);
+      }
+    } else if (value != null) {
+      escape(value instanceof String ? (String) value : value.toString(), builder);
+    }
+    builder.append("</").append(name).append('>');
+  }
+
+  /**
+   * Appends {@code text} escaped as XML character data. Runs of characters
+   * that need no escaping are copied without creating intermediate strings.
+   */
+  static void escape(String text, StringBuilder builder) {
+    int length = text.length();
+    int start = 0;
+    for (int i = 0; i < length; i++) {
+      char c = text.charAt(i);
+      String replacement;
+      switch (c) {
+        case '<':
+          replacement = "&lt;";
+          break;
+        case '>':
+          replacement = "&gt;";
+          break;
+        case '&':
+          replacement = "&amp;";
+          break;
+        case '"':
+          replacement = "&quot;";
+          break;
+        case '\r':
+          // a literal carriage return would be normalized away by the parser
+          replacement = "&#13;";
+          break;
+        default:
+          continue;
+      }
+      builder.append(text, start, i).append(replacement);
+      start = i + 1;
+    }
+    builder.append(text, start, length);
+  }
+
+  /**
+   * Rejects names that would make the document malformed, like the DOM
+   * {@code createElement} does.
+   */
+  private static void checkName(String name) {
+    int length = name == null ? 0 : name.length();
+    boolean valid = length > 0 && isNameStart(name.charAt(0));
+    for (int i = 1; valid && i < length; i++) {
+      char c = name.charAt(i);
+      valid = isNameStart(c) || Character.isDigit(c) || c == '-' || c == '.';
+    }
+    if (!valid) {
+      throw new IllegalArgumentException("Invalid element name: " + name);
+    }
+  }
+
+  private static boolean isNameStart(char c) {
+    return Character.isLetter(c) || c == '_' || c == ':';
+  }
+}
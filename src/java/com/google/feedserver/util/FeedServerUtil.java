@@ -17,7 +17,6 @@
 package com.google.feedserver.util;
 
 import org.w3c.dom.Document;
-import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.xml.sax.EntityResolver;
@@ -60,40 +59,11 @@ public class FeedServerUtil {
    * @return The XML description of the Configuration
    * @throws TransformerException
    * @throws ParserConfigurationException
+   * @see EntityXmlWriter#toXml(Map)
    */
   public static String getConfigurationAsXML(Map<String, Object> properties)
       throws TransformerException, ParserConfigurationException {
-    DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-    DocumentBuilder builder = factory.newDocumentBuilder();
-    Document doc = builder.newDocument();
-    Element entity = doc.createElement("entity");
-    doc.appendChild(entity);
-
-    for (Map.Entry<String, Object> element : properties.entrySet()) {
-      String key = element.getKey();
-      Object value = element.getValue();
-      if (null == value) {
-        continue;
-      }
-
-      if (value.getClass().isArray()) {
-        Object[] valueObjects = (Object[]) value;
-        for (int i = 0; i < valueObjects.length; i++) {
-          Element node = doc.createElement(key);
-          node.appendChild(doc.createTextNode(
-              valueObjects[i] == null ? "" : valueObjects[i].toString()));
-          if (0 == i) {
-            node.setAttribute("repeatable", "true");
-          }
-          entity.appendChild(node);
-        }
-      } else {
-        Element node = doc.createElement(key);
-        node.appendChild(doc.createTextNode(value.toString()));
-        entity.appendChild(node);
-      }
-    }
-    return getDocumentAsXml(doc);
+    return EntityXmlWriter.toXml(properties);
   }
 
   /**
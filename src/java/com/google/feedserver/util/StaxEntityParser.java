@@ -0,0 +1,248 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.feedserver.util;
+
+import com.ctc.wstx.stax.WstxInputFactory;
+
+import org.xml.sax.SAXException;
+
+import java.io.StringReader;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Parses the XML representation of an entity into properties using the
+ * Woodstox StAX parser. The result is the same as the one produced by
+ * {@link XmlHandler}, but the parser factory is shared, text is accumulated
+ * without intermediate strings and values of repeatable elements are collected
+ * in lists that are turned into arrays once the enclosing element is complete.
+ * <p>
+ * Instances are thread-safe.
+ * </p>
+ */
+public class StaxEntityParser {
+
+  private static final XMLInputFactory inputFactory = createInputFactory();
+
+  private static XMLInputFactory createInputFactory() {
+    XMLInputFactory factory = new WstxInputFactory();
+    // Element names are matched as qualified names, like the SAX parser
+    // created by XmlUtil does
+    factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.FALSE);
+    factory.setProperty(XMLInputFactory.IS_VALIDATING, Boolean.FALSE);
+    factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+    return factory;
+  }
+
+  /**
+   * Converts XML representation of an entity into properties.
+   *
+   * @param xmlText The XML text
+   * @param topLevelElement The name of the enclosing element
+   * @return The properties; null if the entity has no properties
+   * @throws SAXException If the XML is not well formed or an element is
+   *         repeated without the {@code repeatable} attribute being present
+   */
+  public Map<String, Object> parse(String xmlText, String topLevelElement)
+      throws SAXException {
+    XMLStreamReader reader = null;
+    try {
+      reader = inputFactory.createXMLStreamReader(new StringReader(xmlText));
+      ParseState state = new ParseState(topLevelElement);
+      while (reader.hasNext()) {
+        switch (reader.next()) {
+          case XMLStreamConstants.START_ELEMENT:
+            state.startElement(reader.getLocalName(), isRepeatable(reader));
+            break;
+          case XMLStreamConstants.END_ELEMENT:
+            state.endElement();
+            break;
+          case XMLStreamConstants.CHARACTERS:
+          case XMLStreamConstants.CDATA:
+          case XMLStreamConstants.SPACE:
+            state.characters(reader.getTextCharacters(), reader.getTextStart(), reader
+                .getTextLength());
+            break;
+          default:
+            break;
+        }
+      }
+      return state.getValueMap();
+    } catch (XMLStreamException e) {
+      throw new SAXException(e.getMessage(), e);
+    } finally {
+      if (reader != null) {
+        try {
+          reader.close();
+        } catch (XMLStreamException e) {
+          // nothing left to release
+        }
+      }
+    }
+  }
+
+  private static boolean isRepeatable(XMLStreamReader reader) {
+    for (int i = 0; i < reader.getAttributeCount(); i++) {
+      if (XmlHandler.REPEATABLE.equals(reader.getAttributeLocalName(i))) {
+        return "true".equals(reader.getAttributeValue(i));
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Values of a repeatable element collected so far
+   */
+  private static class RepeatedValues {
+    private final List<Object> values = new ArrayList<Object>();
+
+    /**
+     * Class of the most recently added value; determines the array type
+     */
+    private Class<?> valueClass;
+
+    void add(Object value) {
+      values.add(value);
+      valueClass = value.getClass();
+    }
+
+    Object[] toArray() {
+      return values.toArray((Object[]) Array.newInstance(valueClass, values.size()));
+    }
+  }
+
+  /**
+   * Mirrors the element bookkeeping of {@link XmlHandler} for one document
+   */
+  private static class ParseState {
+    private final String topLevelElement;
+    private final List<String> elementStack = new ArrayList<String>();
+    private final List<Boolean> repeatableStack = new ArrayList<Boolean>();
+    private final List<Map<String, Object>> valueMapStack = new ArrayList<Map<String, Object>>();
+    private Map<String, Object> valueMap;
+    private String lastElement;
+    private boolean isRepeatable;
+    private Object value;
+
+    ParseState(String topLevelElement) {
+      this.topLevelElement = topLevelElement;
+    }
+
+    Map<String, Object> getValueMap() {
+      if (valueMap != null) {
+        finishMap(valueMap);
+      }
+      return valueMap;
+    }
+
+    void startElement(String name, boolean repeatableAttribute) {
+      if (topLevelElement.equals(name) && elementStack.isEmpty()) {
+        return;
+      }
+      if (!name.equals(lastElement)) {
+        isRepeatable = repeatableAttribute;
+        lastElement = null;
+      }
+      elementStack.add(name);
+      repeatableStack.add(isRepeatable);
+      if (valueMapStack.size() != elementStack.size()) {
+        valueMap = new HashMap<String, Object>();
+        valueMapStack.add(valueMap);
+      }
+    }
+
+    void endElement() throws SAXException {
+      if (elementStack.isEmpty()) {
+        return;
+      }
+      lastElement = elementStack.remove(elementStack.size() - 1);
+      isRepeatable = repeatableStack.remove(repeatableStack.size() - 1);
+      if (valueMapStack.size() > elementStack.size() + 1) {
+        Map<String, Object> completed = valueMapStack.remove(valueMapStack.size() - 1);
+        finishMap(completed);
+        value = completed;
+        valueMap = valueMapStack.get(valueMapStack.size() - 1);
+      }
+      collectValue();
+      value = null;
+    }
+
+    void characters(char[] ch, int start, int length) throws SAXException {
+      if (elementStack.isEmpty()) {
+        return;
+      }
+      StringBuilder builder;
+      if (value == null) {
+        builder = new StringBuilder(length);
+        value = builder;
+      } else if (value instanceof StringBuilder) {
+        builder = (StringBuilder) value;
+      } else {
+        throw new SAXException("Unexpected text content");
+      }
+      builder.append(ch, start, length);
+    }
+
+    private void collectValue() throws SAXException {
+      if (value instanceof StringBuilder) {
+        String stringValue = value.toString().trim();
+        value = stringValue.length() == 0 ? null : stringValue;
+      }
+
+      if (isRepeatable) {
+        if (value == null) {
+          value = "";
+        }
+        Object existing = valueMap.get(lastElement);
+        RepeatedValues repeated;
+        if (existing == null) {
+          repeated = new RepeatedValues();
+          valueMap.put(lastElement, repeated);
+        } else if (existing instanceof RepeatedValues) {
+          repeated = (RepeatedValues) existing;
+        } else {
+          throw new SAXException("Repeatable element " + lastElement
+              + " follows a non repeatable element of the same name");
+        }
+        repeated.add(value);
+      } else if (valueMap.containsKey(lastElement)) {
+        throw new SAXException("Repeated element " + elementStack);
+      } else {
+        valueMap.put(lastElement, value);
+      }
+    }
+
+    /**
+     * Turns the collected values of repeatable elements into arrays
+     */
+    private static void finishMap(Map<String, Object> map) {
+      for (Map.Entry<String, Object> entry : map.entrySet()) {
+        if (entry.getValue() instanceof RepeatedValues) {
+          entry.setValue(((RepeatedValues) entry.getValue()).toArray());
+        }
+      }
+    }
+  }
+}
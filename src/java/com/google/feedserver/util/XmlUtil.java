@@ -34,13 +34,33 @@ import javax.xml.parsers.SAXParserFactory;
  */
 public class XmlUtil {
 
+  private static final StaxEntityParser staxParser = new StaxEntityParser();
+
   private SAXParserFactory parserFactory;
 
+  private final boolean useStaxParser;
+
   protected BeanUtil beanUtil = new BeanUtil();
 
+  /**
+   * Creates a new XmlUtil that parses XML with {@link StaxEntityParser}
+   */
   public XmlUtil() {
-    parserFactory = SAXParserFactory.newInstance();
-    parserFactory.setValidating(false);
+    this(true);
+  }
+
+  /**
+   * Creates a new XmlUtil
+   * 
+   * @param useStaxParser True to parse XML with {@link StaxEntityParser};
+   *        false to use a SAX parser with {@link XmlHandler}
+   */
+  public XmlUtil(boolean useStaxParser) {
+    this.useStaxParser = useStaxParser;
+    if (!useStaxParser) {
+      parserFactory = SAXParserFactory.newInstance();
+      parserFactory.setValidating(false);
+    }
   }
 
   /**
@@ -150,6 +170,9 @@ public class XmlUtil {
   public Map<String, Object> convertXmlToProperties(String xmlText,
       String topLevelELement)
       throws SAXException, IOException, ParserConfigurationException {
+    if (useStaxParser) {
+      return staxParser.parse(xmlText, topLevelELement);
+    }
     InputSource input = new InputSource(new StringReader(xmlText));
     XmlHandler xmlHandler = new XmlHandler(topLevelELement);
     getParser().parse(input, xmlHandler);
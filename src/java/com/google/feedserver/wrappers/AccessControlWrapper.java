@@ -30,6 +30,9 @@ import org.xml.sax.SAXException;
 
 import com.google.feedserver.adapters.AbstractManagedCollectionAdapter;
 import com.google.feedserver.adapters.FeedServerAdapterException;
+import com.google.feedserver.adapters.FeedStream;
+import com.google.feedserver.adapters.PagingParameters;
+import com.google.feedserver.adapters.ResourceVersion;
 import com.google.feedserver.resource.AuthorizedEntity;
 import com.google.feedserver.server.FlagConfig;
 
@@ -70,6 +73,26 @@ public abstract class AccessControlWrapper extends ManagedCollectionAdapterWrapp
   protected abstract void doCheckAccess(String operation, RequestContext request, Object entryId)
   throws FeedServerAdapterException;
 
+  /**
+   * Checks access before each operation. Subclasses that also change
+   * results must return null.
+   */
+  @Override
+  public AdapterInterceptor getInterceptor() {
+    return new AdapterInterceptor() {
+      @Override
+      public void before(String operation, RequestContext request, Object entryId)
+          throws FeedServerAdapterException {
+        checkAccess(operation, request, entryId);
+      }
+
+      @Override
+      public void after(String operation, RequestContext request, Object entryId,
+          boolean succeeded) {
+      }
+    };
+  }
+
   @Override
   public Entry createEntry(RequestContext request, Entry entry)
       throws FeedServerAdapterException {
@@ -98,6 +121,34 @@ public abstract class AccessControlWrapper extends ManagedCollectionAdapterWrapp
     return super.retrieveFeed(request);
   }
 
+  @Override
+  public Feed retrieveFeed(RequestContext request, PagingParameters paging)
+      throws FeedServerAdapterException {
+    checkAccess(AuthorizedEntity.OPERATION_RETRIEVE, request, null);
+    return super.retrieveFeed(request, paging);
+  }
+
+  @Override
+  public FeedStream openFeedStream(RequestContext request)
+      throws FeedServerAdapterException {
+    checkAccess(AuthorizedEntity.OPERATION_RETRIEVE, request, null);
+    return super.openFeedStream(request);
+  }
+
+  @Override
+  public ResourceVersion getFeedVersion(RequestContext request)
+      throws FeedServerAdapterException {
+    checkAccess(AuthorizedEntity.OPERATION_RETRIEVE, request, null);
+    return super.getFeedVersion(request);
+  }
+
+  @Override
+  public ResourceVersion getEntryVersion(RequestContext request, Object entryId)
+      throws FeedServerAdapterException {
+    checkAccess(AuthorizedEntity.OPERATION_RETRIEVE, request, entryId);
+    return super.getEntryVersion(request, entryId);
+  }
+
   @Override
   public Entry updateEntry(RequestContext request, Object entryId, Entry entry)
       throws FeedServerAdapterException {
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.feedserver.wrappers;
+
+import com.google.feedserver.adapters.FeedServerAdapterException;
+import com.google.feedserver.resource.AuthorizedEntity;
+
+import org.apache.abdera.protocol.server.RequestContext;
+
+/**
+ * Work done around each adapter operation without changing its result, such
+ * as access checks. Wrapper managers run the interceptors of a feed from one
+ * flat array instead of a chain of wrappers, see
+ * {@link ManagedCollectionAdapterWrapper#getInterceptor()}.
+ * <p>
+ * Operations are named by the {@code OPERATION_*} constants of
+ * {@link AuthorizedEntity}; reads of feeds, entries, feed streams and
+ * resource versions are all {@link AuthorizedEntity#OPERATION_RETRIEVE}.
+ * </p>
+ */
+public interface AdapterInterceptor {
+
+  /**
+   * Runs before the operation. Throwing stops the operation.
+   *
+   * @param entryId The entry operated on; null for feed operations and
+   *        entry creation
+   */
+  public void before(String operation, RequestContext request, Object entryId)
+      throws FeedServerAdapterException;
+
+  /**
+   * Runs after an operation that every interceptor let through, whether it
+   * succeeded or not
+   */
+  public void after(String operation, RequestContext request, Object entryId, boolean succeeded);
+}
@@ -18,6 +18,9 @@ package com.google.feedserver.wrappers;
 
 import com.google.feedserver.adapters.AbstractManagedCollectionAdapter;
 import com.google.feedserver.adapters.FeedServerAdapterException;
+import com.google.feedserver.adapters.FeedStream;
+import com.google.feedserver.adapters.PagingParameters;
+import com.google.feedserver.adapters.ResourceVersion;
 import com.google.feedserver.config.PerNamespaceServerConfiguration;
 import com.google.feedserver.configstore.FeedConfigStore;
 import com.google.feedserver.metadata.FeedInfo;
@@ -83,6 +86,16 @@ public class ManagedCollectionAdapterWrapper extends AbstractManagedCollectionAd
     this.wrapperConfig = wrapperConfig;
   }
 
+  /**
+   * Gets an interceptor that does all the work of this wrapper. Wrapper
+   * managers then run the interceptor and take this wrapper out of the
+   * chain. Wrappers that change configuration or results must stay in the
+   * chain and return null, as this one does.
+   */
+  public AdapterInterceptor getInterceptor() {
+    return null;
+  }
+
   public FeedConfigStore getConfigStore() {
     ServerConfiguration serverConfig =
         getConfiguration().getAdapterConfiguration().getServerConfiguration();
@@ -99,6 +112,49 @@ public class ManagedCollectionAdapterWrapper extends AbstractManagedCollectionAd
     return targetAdapter.retrieveFeed(request);
   }
 
+  /**
+   * Pages in the target adapter. Wrappers that change what
+   * {@link #retrieveFeed(RequestContext)} returns must also override this
+   * method.
+   */
+  @Override
+  public Feed retrieveFeed(RequestContext request, PagingParameters paging)
+      throws FeedServerAdapterException {
+    return targetAdapter.retrieveFeed(request, paging);
+  }
+
+  /**
+   * Streams whenever the target adapter does. Wrappers that change what
+   * {@link #retrieveFeed(RequestContext)} returns must also override
+   * {@link #openFeedStream(RequestContext)}, or return false here.
+   */
+  @Override
+  public boolean isFeedStreamable(RequestContext request) {
+    return targetAdapter.isFeedStreamable(request);
+  }
+
+  @Override
+  public FeedStream openFeedStream(RequestContext request) throws FeedServerAdapterException {
+    return targetAdapter.openFeedStream(request);
+  }
+
+  /**
+   * Probes the target adapter. The version is narrowed to the request's URI
+   * and user, so wrappers whose output only depends on those and on the
+   * target's data need not override this.
+   */
+  @Override
+  public ResourceVersion getFeedVersion(RequestContext request)
+      throws FeedServerAdapterException {
+    return targetAdapter.getFeedVersion(request);
+  }
+
+  @Override
+  public ResourceVersion getEntryVersion(RequestContext request, Object entryId)
+      throws FeedServerAdapterException {
+    return targetAdapter.getEntryVersion(request, entryId);
+  }
+
   @Override
   public Entry retrieveEntry(RequestContext request, Object entryId)
       throws FeedServerAdapterException {
@@ -121,6 +177,17 @@ public class ManagedCollectionAdapterWrapper extends AbstractManagedCollectionAd
     targetAdapter.deleteEntry(request, entryId);
   }
 
+  @Override
+  public boolean startBatch(RequestContext request) throws FeedServerAdapterException {
+    return targetAdapter.startBatch(request);
+  }
+
+  @Override
+  public void endBatch(RequestContext request, boolean completed)
+      throws FeedServerAdapterException {
+    targetAdapter.endBatch(request, completed);
+  }
+
   @Override
   public FeedInfo getFeedInfo(RequestContext request) throws FeedServerAdapterException {
     return targetAdapter.getFeedInfo(request);
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.google.feedserver.wrappers;
+
+import com.google.feedserver.resource.Acl;
+import com.google.feedserver.resource.AuthorizedEntity;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * ACL definitions of a {@link ResourceConnectionInfoWrapper} compiled into an
+ * immutable decision table: resource path -> operation -> {@link Rule}.
+ * Instances are shared by all requests.
+ */
+public class ResourceAcl {
+
+  /**
+   * The principals allowed one operation on one resource
+   */
+  public static class Rule {
+    private final Set<String> principals;
+    private final boolean anyone;
+    private final boolean domainUsers;
+
+    Rule(Set<String> principals) {
+      this.principals = Collections.unmodifiableSet(principals);
+      anyone = principals.contains(ResourceConnectionInfoWrapper.ANYONE);
+      domainUsers = principals.contains(ResourceConnectionInfoWrapper.DOMAIN_USERS);
+    }
+
+    /**
+     * Tells whether unauthenticated viewers are allowed
+     */
+    public boolean allowsAnonymous() {
+      return anyone;
+    }
+
+    /**
+     * Tells whether all users of the namespace are allowed
+     */
+    public boolean allowsDomainUsers() {
+      return domainUsers;
+    }
+
+    /**
+     * Tells whether an authenticated viewer is listed by email
+     */
+    public boolean allows(String userEmail) {
+      return principals.contains(userEmail);
+    }
+
+    public Set<String> getPrincipals() {
+      return principals;
+    }
+
+    @Override
+    public String toString() {
+      return principals.toString();
+    }
+  }
+
+  private static final String FEED_PATH = "/";
+
+  private final Map<String, Map<String, Rule>> rules;
+  private final Map<String, Rule> feedRules;
+
+  private ResourceAcl(Map<String, Map<String, Rule>> rules) {
+    this.rules = rules;
+    feedRules = rules.get(FEED_PATH);
+  }
+
+  /**
+   * Compiles ACL definitions. A later definition of a resource replaces an
+   * earlier one, as does a later definition of an operation.
+   */
+  public static ResourceAcl compile(Acl[] acls) {
+    Map<String, Map<String, Rule>> rules = new HashMap<String, Map<String, Rule>>();
+    if (acls != null) {
+      for (Acl acl : acls) {
+        Map<String, Rule> operationRules = new HashMap<String, Rule>();
+        for (AuthorizedEntity ae : acl.getAuthorizedEntities()) {
+          Set<String> principals = new HashSet<String>();
+          if (ae.getEntities() != null) {
+            for (String principal : ae.getEntities()) {
+              principals.add(principal);
+            }
+          }
+          operationRules.put(ae.getOperation(), new Rule(principals));
+        }
+        rules.put(acl.getResourceInfo().getResourceRule(),
+            Collections.unmodifiableMap(operationRules));
+      }
+    }
+    return new ResourceAcl(Collections.unmodifiableMap(rules));
+  }
+
+  /**
+   * Gets the resource path of a feed or entry: "/" for the feed, "/{entryId}"
+   * for an entry
+   */
+  public static String getResourcePath(Object entryId) {
+    return entryId == null ? FEED_PATH : FEED_PATH + entryId;
+  }
+
+  /**
+   * Gets the rules of a feed or entry by operation
+   *
+   * @param entryId The entry id; null for the feed
+   * @return The rules; null if the resource has no ACL
+   */
+  public Map<String, Rule> getRules(Object entryId) {
+    return entryId == null ? feedRules : rules.get(getResourcePath(entryId));
+  }
+
+  @Override
+  public String toString() {
+    return rules.toString();
+  }
+}
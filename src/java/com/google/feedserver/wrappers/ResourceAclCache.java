@@ -0,0 +1,154 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.google.feedserver.wrappers;
+
+import com.google.feedserver.configstore.FeedConfigStoreListener;
+
+import java.io.File;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of {@link ResourceAcl}s compiled by
+ * {@link ResourceConnectionInfoWrapper}, so that an ACL is parsed once and
+ * not for every adapter chain built.
+ * <p>
+ * ACLs given inline are keyed on the configuration text. ACLs read from a
+ * file are keyed on the file path and dropped when the file's modification
+ * time or length changes; the file is looked at no more than once per check
+ * interval. Configuration change notifications clear the cache.
+ * </p>
+ */
+public class ResourceAclCache implements FeedConfigStoreListener {
+
+  public static final int DEFAULT_MAX_SIZE = 1000;
+  public static final long DEFAULT_CHECK_INTERVAL_MILLIS = 1000;
+
+  private static class CachedAcl {
+    final ResourceAcl acl;
+    final long lastModified;
+    final long length;
+    volatile long checkedAt;
+
+    CachedAcl(ResourceAcl acl, long lastModified, long length, long checkedAt) {
+      this.acl = acl;
+      this.lastModified = lastModified;
+      this.length = length;
+      this.checkedAt = checkedAt;
+    }
+  }
+
+  private final ConcurrentMap<String, CachedAcl> acls = new ConcurrentHashMap<String, CachedAcl>();
+  private final int maxSize;
+  private final long checkIntervalMillis;
+  private final AtomicLong compileCount = new AtomicLong();
+
+  public ResourceAclCache() {
+    this(DEFAULT_MAX_SIZE, DEFAULT_CHECK_INTERVAL_MILLIS);
+  }
+
+  public ResourceAclCache(int maxSize, long checkIntervalMillis) {
+    this.maxSize = maxSize;
+    this.checkIntervalMillis = checkIntervalMillis;
+  }
+
+  /**
+   * Gets the ACL compiled from an inline configuration
+   *
+   * @return The ACL; null if not cached
+   */
+  public ResourceAcl get(String wrapperConfig) {
+    CachedAcl cached = acls.get(wrapperConfig);
+    return cached == null ? null : cached.acl;
+  }
+
+  /**
+   * Gets the ACL compiled from a file
+   *
+   * @return The ACL; null if not cached or if the file changed since
+   */
+  public ResourceAcl get(File file) {
+    String key = file.getPath();
+    CachedAcl cached = acls.get(key);
+    if (cached == null) {
+      return null;
+    }
+    long now = System.currentTimeMillis();
+    if (now - cached.checkedAt >= checkIntervalMillis) {
+      if (file.lastModified() != cached.lastModified || file.length() != cached.length) {
+        acls.remove(key, cached);
+        return null;
+      }
+      cached.checkedAt = now;
+    }
+    return cached.acl;
+  }
+
+  public void put(String wrapperConfig, ResourceAcl acl) {
+    put(wrapperConfig, new CachedAcl(acl, 0, 0, 0));
+  }
+
+  /**
+   * Caches the ACL compiled from a file. The file's modification time and
+   * length must be read before the file is, so that a change made while
+   * compiling is noticed.
+   */
+  public void put(File file, long lastModified, long length, ResourceAcl acl) {
+    put(file.getPath(),
+        new CachedAcl(acl, lastModified, length, System.currentTimeMillis()));
+  }
+
+  private void put(String key, CachedAcl cached) {
+    compileCount.incrementAndGet();
+    if (acls.size() >= maxSize) {
+      // ACLs rarely change; starting over is cheaper than tracking usage
+      acls.clear();
+    }
+    acls.put(key, cached);
+  }
+
+  public void clear() {
+    acls.clear();
+  }
+
+  public int size() {
+    return acls.size();
+  }
+
+  /**
+   * Gets the number of ACLs compiled and cached
+   */
+  public long getCompileCount() {
+    return compileCount.get();
+  }
+
+  @Override
+  public void feedChanged(String namespace, String feedId, String userId) {
+  }
+
+  @Override
+  public void adapterConfigurationChanged(String namespace, String adapterName) {
+    clear();
+  }
+
+  @Override
+  public void namespaceChanged(String namespace) {
+    clear();
+  }
+}
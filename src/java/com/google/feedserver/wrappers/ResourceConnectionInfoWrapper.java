@@ -16,13 +16,11 @@
 package com.google.feedserver.wrappers;
 
 import java.beans.IntrospectionException;
+import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.text.ParseException;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
-import java.util.Set;
 import java.util.logging.Logger;
 
 import javax.xml.parsers.ParserConfigurationException;
@@ -33,7 +31,6 @@ import org.xml.sax.SAXException;
 import com.google.feedserver.adapters.AbstractManagedCollectionAdapter;
 import com.google.feedserver.adapters.FeedServerAdapterException;
 import com.google.feedserver.resource.Acl;
-import com.google.feedserver.resource.AuthorizedEntity;
 import com.google.feedserver.util.FileSystemConfigStoreUtil;
 import com.google.feedserver.util.FileUtil;
 import com.google.feedserver.util.XmlUtil;
@@ -73,12 +70,21 @@ public class ResourceConnectionInfoWrapper extends AccessControlWrapper {
     }
   }
 
+  private static final ResourceAclCache aclCache = new ResourceAclCache();
+
   protected XmlUtil xmlUtil;
 
   /**
-   * resourcePath (/, /entryId) -> operation -> principals
+   * resourcePath (/, /entryId) -> operation -> principals, shared with the
+   * other wrappers built from the same ACL; only used for inline ACLs
+   */
+  protected ResourceAcl resourceAcl;
+
+  /**
+   * File holding the ACL; null if the ACL is given inline. The ACL is looked
+   * up for every check since the wrapper outlives edits of the file.
    */
-  protected Map<String, Map<String, Set<String>>> resourceAclMap;
+  protected File aclFile;
 
   public ResourceConnectionInfoWrapper(AbstractManagedCollectionAdapter target,
       String wrapperConfig) throws IllegalArgumentException, IntrospectionException,
@@ -87,82 +93,116 @@ public class ResourceConnectionInfoWrapper extends AccessControlWrapper {
     super(target, wrapperConfig);
 
     xmlUtil = new XmlUtil();
-    Config config = new Config();
     if (wrapperConfig.startsWith(FileSystemConfigStoreUtil.FILE_INDICATOR)) {
-      wrapperConfig = loadWrapperConfig(wrapperConfig.substring(1));
+      aclFile = getWrapperConfigFile(wrapperConfig.substring(1));
+      if (aclCache.get(aclFile) == null) {
+        compile(aclFile);
+      }
+    } else {
+      resourceAcl = aclCache.get(wrapperConfig);
+      if (resourceAcl == null) {
+        resourceAcl = compile(wrapperConfig);
+        aclCache.put(wrapperConfig, resourceAcl);
+      }
     }
-    xmlUtil.convertXmlToBean(wrapperConfig, config);
-    
-    resourceAclMap = new HashMap<String, Map<String, Set<String>>>();
-    for (Acl acl: config.getAcl()) {
-      Map<String, Set<String>> operationPrincipalsMap = new HashMap<String, Set<String>>();
-      for (AuthorizedEntity ae: acl.getAuthorizedEntities()) {
-        Set<String> principals = new HashSet<String>();
-        for (String principal: ae.getEntities()) {
-          principals.add(principal);
-        }
-        operationPrincipalsMap.put(ae.getOperation(), principals);
+  }
+
+  public static ResourceAclCache getAclCache() {
+    return aclCache;
+  }
+
+  /**
+   * Compiles the ACL file and caches the result
+   */
+  protected ResourceAcl compile(File file) throws IllegalArgumentException,
+      IntrospectionException, IllegalAccessException, InvocationTargetException, SAXException,
+      IOException, ParserConfigurationException, ParseException {
+    long lastModified = file.lastModified();
+    long length = file.length();
+    ResourceAcl acl = compile(new FileUtil().readFileContents(file));
+    aclCache.put(file, lastModified, length, acl);
+    return acl;
+  }
+
+  /**
+   * Gets the ACL to check against, recompiling the ACL file if it changed
+   */
+  protected ResourceAcl getResourceAcl() throws FeedServerAdapterException {
+    if (aclFile == null) {
+      return resourceAcl;
+    }
+    ResourceAcl acl = aclCache.get(aclFile);
+    if (acl == null) {
+      try {
+        acl = compile(aclFile);
+      } catch (Exception e) {
+        throw new FeedServerAdapterException(
+            FeedServerAdapterException.Reason.MIXIN_ERROR_PARSING_CONFIGURATION,
+            "Unable to load ACL " + aclFile + ": " + e.getMessage());
       }
-      String path = acl.getResourceInfo().getResourceRule();
-      resourceAclMap.put(path, operationPrincipalsMap);
     }
+    return acl;
+  }
 
-    logger.info("ResourceConnectionInfoWrapper config=" + resourceAclMap);
+  protected ResourceAcl compile(String wrapperConfig) throws IllegalArgumentException,
+      IntrospectionException, IllegalAccessException, InvocationTargetException, SAXException,
+      IOException, ParserConfigurationException, ParseException {
+    Config config = new Config();
+    xmlUtil.convertXmlToBean(wrapperConfig, config);
+    ResourceAcl acl = ResourceAcl.compile(config.getAcl());
+    logger.info("ResourceConnectionInfoWrapper config=" + acl);
+    return acl;
+  }
+
+  protected File getWrapperConfigFile(String fileName) {
+    return new File("conf/feedserver/" + this.getNameSpace() + "/AdapterConfig/acl/" + fileName);
   }
 
   protected String loadWrapperConfig(String fileName) throws IOException {
-	String filePath = "conf/feedserver/" + this.getNameSpace() + "/AdapterConfig/acl/" + fileName;
-    return new FileUtil().readFileContents(filePath);
+    return new FileUtil().readFileContents(getWrapperConfigFile(fileName));
   }
 
   @Override
   protected void doCheckAccess(String operation, RequestContext request, Object entryId)
       throws FeedServerAdapterException {
-    String resourcePath = entryId == null ? "/" : "/" + entryId;
-    Map<String, Set<String>> operationPrincipalsMap = resourceAclMap.get(resourcePath);
-    if (operationPrincipalsMap == null) {
+    Map<String, ResourceAcl.Rule> operationRules = getResourceAcl().getRules(entryId);
+    if (operationRules == null) {
       // if we checked entry level ACL, check feed level now
       try {
         checkAccess(operation, request, null);
         return;
       } catch(FeedServerAdapterException e) {
-        logger.info("checkAccess: access denied");
         throw new FeedServerAdapterException(
             FeedServerAdapterException.Reason.NOT_AUTHORIZED, "No ACL defined for '" +
-                operation + "," + resourcePath + "'; " + e.getMessage());
+                operation + "," + ResourceAcl.getResourcePath(entryId) + "'; " + e.getMessage());
       }
     }
 
-    Set<String> principals = operationPrincipalsMap.get(operation);
-    logger.info("checkAccess: principals=" + principals);
-    if (principals == null) {
-      logger.info("checkAccess: access denied");
+    ResourceAcl.Rule rule = operationRules.get(operation);
+    if (rule == null) {
       throw new FeedServerAdapterException(
           FeedServerAdapterException.Reason.NOT_AUTHORIZED, "No ACL defined for '" +
-              operation + "," + resourcePath + "'");
+              operation + "," + ResourceAcl.getResourcePath(entryId) + "'");
     }
 
     String userEmail = getUserEmailForRequest(request);
-    logger.info("checkAccess: userEmail=" + userEmail);
-
     if (userEmail == null) {
       // user unauthenticated
-      if (!principals.contains(ANYONE)) {
+      if (!rule.allowsAnonymous()) {
         throw new FeedServerAdapterException(
             FeedServerAdapterException.Reason.NOT_AUTHORIZED, "viewer unauthenticated and " +
-                ANYONE + " not allowed for '" + operation + "," + resourcePath + "'");
+                ANYONE + " not allowed for '" + operation + "," +
+                ResourceAcl.getResourcePath(entryId) + "'");
       }
     } else {
       // user authenticated
-      if (!principals.contains(userEmail) &&
-          !(principals.contains(DOMAIN_USERS) && userEmail.endsWith(getNameSpace()))) {
-        logger.info("checkAccess: access denied");
+      if (!rule.allows(userEmail)
+          && !(rule.allowsDomainUsers() && userEmail.endsWith(getNameSpace()))) {
         throw new FeedServerAdapterException(
             FeedServerAdapterException.Reason.NOT_AUTHORIZED, "viewer '" + userEmail +
-                "' not on list of principals for '" + operation + "," + resourcePath + "'");
+                "' not on list of principals for '" + operation + "," +
+                ResourceAcl.getResourcePath(entryId) + "'");
       }
     }
-
-    logger.info("checkAccess: access granted");
   }
 }
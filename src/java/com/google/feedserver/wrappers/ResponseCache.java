@@ -0,0 +1,284 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.feedserver.wrappers;
+
+import com.google.feedserver.configstore.FeedConfigStoreListener;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread-safe cache of serialized feeds and entries used by
+ * {@link ResponseCacheWrapper}. Responses expire after a time to live and are
+ * evicted least recently used first once their total size exceeds the byte
+ * bound.
+ * <p>
+ * Every response belongs to a feed. Invalidating the feed drops its responses
+ * and makes responses computed before the invalidation, but stored after it,
+ * be ignored, so a write racing with a read never leaves a stale response
+ * behind.
+ * </p>
+ */
+public class ResponseCache implements FeedConfigStoreListener {
+
+  private static class CachedResponse {
+    final String feedKey;
+    final String response;
+    final long expiresAt;
+    final long size;
+
+    CachedResponse(String feedKey, String response, long expiresAt) {
+      this.feedKey = feedKey;
+      this.response = response;
+      this.expiresAt = expiresAt;
+      // Java strings take two bytes per character
+      this.size = 2L * (feedKey.length() + response.length());
+    }
+  }
+
+  private final long maxBytes;
+
+  /**
+   * Responses in access order, guarded by itself
+   */
+  private final LinkedHashMap<String, CachedResponse> responses =
+      new LinkedHashMap<String, CachedResponse>(16, 0.75f, true);
+  private long bytes;
+
+  /**
+   * Invalidation counts per feed
+   */
+  private final ConcurrentMap<String, AtomicLong> generations =
+      new ConcurrentHashMap<String, AtomicLong>();
+
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+  private final AtomicLong evictionCount = new AtomicLong();
+
+  /**
+   * @param maxBytes Approximate bound of the memory taken by the cached
+   *        responses; 0 disables caching
+   */
+  public ResponseCache(long maxBytes) {
+    if (maxBytes < 0) {
+      throw new IllegalArgumentException("maxBytes must not be negative: " + maxBytes);
+    }
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Gets the key that identifies a feed
+   *
+   * @param namespace The namespace of the feed; may be null
+   * @param feedId The feed id
+   */
+  public static String getFeedKey(String namespace, String feedId) {
+    return (namespace == null ? "" : namespace) + "/" + feedId;
+  }
+
+  /**
+   * Gets the invalidation count of a feed, to be passed to
+   * {@link #put(String, String, long, String, long)} when the response
+   * retrieved afterwards is stored
+   */
+  public long getGeneration(String feedKey) {
+    return getGenerationCounter(feedKey).get();
+  }
+
+  /**
+   * Gets a response that has not expired
+   *
+   * @return The serialized response; null if there is none
+   */
+  public String get(String key) {
+    CachedResponse cached;
+    synchronized (responses) {
+      cached = responses.get(key);
+      if (cached != null && cached.expiresAt <= currentTimeMillis()) {
+        remove(key);
+        cached = null;
+      }
+    }
+    if (cached == null) {
+      missCount.incrementAndGet();
+      return null;
+    }
+    hitCount.incrementAndGet();
+    return cached.response;
+  }
+
+  /**
+   * Stores a response unless the feed has been invalidated since
+   * {@code generation} was read
+   *
+   * @param key The key of the response, which must tell apart everything the
+   *        response depends on
+   * @param feedKey The key of the feed the response belongs to
+   * @param generation The feed's invalidation count before the response was
+   *        retrieved
+   * @param response The serialized response
+   * @param ttlMillis How long the response may be served
+   */
+  public void put(String key, String feedKey, long generation, String response, long ttlMillis) {
+    CachedResponse cached =
+        new CachedResponse(feedKey, response, currentTimeMillis() + ttlMillis);
+    if (ttlMillis <= 0 || cached.size > maxBytes) {
+      return;
+    }
+    synchronized (responses) {
+      if (getGeneration(feedKey) != generation) {
+        return;
+      }
+      remove(key);
+      responses.put(key, cached);
+      bytes += cached.size;
+      Iterator<CachedResponse> eldest = responses.values().iterator();
+      while (bytes > maxBytes && eldest.hasNext()) {
+        bytes -= eldest.next().size;
+        eldest.remove();
+        evictionCount.incrementAndGet();
+      }
+    }
+  }
+
+  /**
+   * Drops all responses of a feed, for all users
+   */
+  public void invalidate(String feedKey) {
+    synchronized (responses) {
+      getGenerationCounter(feedKey).incrementAndGet();
+      for (Iterator<CachedResponse> i = responses.values().iterator(); i.hasNext();) {
+        CachedResponse cached = i.next();
+        if (cached.feedKey.equals(feedKey)) {
+          bytes -= cached.size;
+          i.remove();
+        }
+      }
+    }
+  }
+
+  /**
+   * Drops the responses of all feeds of a namespace
+   */
+  public void invalidateNamespace(String namespace) {
+    String prefix = getFeedKey(namespace, "");
+    synchronized (responses) {
+      for (Map.Entry<String, AtomicLong> generation : generations.entrySet()) {
+        if (generation.getKey().startsWith(prefix)) {
+          generation.getValue().incrementAndGet();
+        }
+      }
+      for (Iterator<CachedResponse> i = responses.values().iterator(); i.hasNext();) {
+        CachedResponse cached = i.next();
+        if (cached.feedKey.startsWith(prefix)) {
+          bytes -= cached.size;
+          i.remove();
+        }
+      }
+    }
+  }
+
+  public void clear() {
+    synchronized (responses) {
+      for (AtomicLong generation : generations.values()) {
+        generation.incrementAndGet();
+      }
+      responses.clear();
+      bytes = 0;
+    }
+  }
+
+  public int size() {
+    synchronized (responses) {
+      return responses.size();
+    }
+  }
+
+  /**
+   * Gets the approximate memory taken by the cached responses
+   */
+  public long getBytes() {
+    synchronized (responses) {
+      return bytes;
+    }
+  }
+
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  public long getEvictionCount() {
+    return evictionCount.get();
+  }
+
+  @Override
+  public void feedChanged(String namespace, String feedId, String userId) {
+    invalidate(getFeedKey(namespace, feedId));
+  }
+
+  @Override
+  public void adapterConfigurationChanged(String namespace, String adapterName) {
+    invalidateNamespace(namespace);
+  }
+
+  @Override
+  public void namespaceChanged(String namespace) {
+    invalidateNamespace(namespace);
+  }
+
+  protected long currentTimeMillis() {
+    return System.currentTimeMillis();
+  }
+
+  private void remove(String key) {
+    CachedResponse removed = responses.remove(key);
+    if (removed != null) {
+      bytes -= removed.size;
+    }
+  }
+
+  private AtomicLong getGenerationCounter(String feedKey) {
+    AtomicLong generation = generations.get(feedKey);
+    if (generation == null) {
+      AtomicLong newGeneration = new AtomicLong();
+      generation = generations.putIfAbsent(feedKey, newGeneration);
+      if (generation == null) {
+        generation = newGeneration;
+      }
+    }
+    return generation;
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "[size=" + size() + ", bytes=" + getBytes()
+        + ", hits=" + getHitCount() + ", misses=" + getMissCount()
+        + ", evictions=" + getEvictionCount() + "]";
+  }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.feedserver.wrappers;
+
+import com.google.feedserver.adapters.AbstractManagedCollectionAdapter;
+import com.google.feedserver.adapters.FeedServerAdapterException;
+import com.google.feedserver.adapters.PagingParameters;
+import com.google.feedserver.server.FlagConfig;
+import com.google.feedserver.util.XmlUtil;
+
+import org.apache.abdera.Abdera;
+import org.apache.abdera.model.Element;
+import org.apache.abdera.model.Entry;
+import org.apache.abdera.model.Feed;
+import org.apache.abdera.protocol.server.RequestContext;
+import org.apache.abdera.protocol.server.provider.managed.FeedConfiguration;
+import org.xml.sax.SAXException;
+
+import java.beans.IntrospectionException;
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.reflect.InvocationTargetException;
+import java.text.ParseException;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+/**
+ * Wrapper that caches the feeds and entries retrieved through it, for
+ * read-heavy feeds that rarely change. Responses are cached serialized per
+ * namespace, feed, user and request URI, so the response of one viewer is
+ * never served to another. Creating, updating or deleting an entry through the
+ * wrapper drops all cached responses of the feed.
+ * <p>
+ * Wrapper config:
+ * <pre>
+ * &lt;entity&gt;
+ *   &lt;ttlSeconds&gt;60&lt;/ttlSeconds&gt;
+ * &lt;/entity&gt;
+ * </pre>
+ * Writes that bypass the wrapper show after at most the time to live. Cached
+ * feeds are not streamed.
+ * </p>
+ */
+public class ResponseCacheWrapper extends ManagedCollectionAdapterWrapper {
+
+  public static final long DEFAULT_TTL_SECONDS = 60;
+
+  public static class Config {
+    protected long ttlSeconds = DEFAULT_TTL_SECONDS;
+
+    public long getTtlSeconds() {
+      return ttlSeconds;
+    }
+
+    public void setTtlSeconds(long ttlSeconds) {
+      this.ttlSeconds = ttlSeconds;
+    }
+  }
+
+  private static class ResponseCacheHolder {
+    static final ResponseCache responseCache =
+        new ResponseCache(Long.parseLong(FlagConfig.responseCacheMaxBytes_FLAG));
+  }
+
+  /**
+   * Gets the cache shared by all instances of this wrapper
+   */
+  public static ResponseCache getResponseCache() {
+    return ResponseCacheHolder.responseCache;
+  }
+
+  private long ttlMillis = DEFAULT_TTL_SECONDS * 1000;
+
+  public ResponseCacheWrapper(AbstractManagedCollectionAdapter target, String wrapperConfig)
+      throws IllegalArgumentException, IntrospectionException, IllegalAccessException,
+      InvocationTargetException, SAXException, IOException, ParserConfigurationException,
+      ParseException {
+    super(target, wrapperConfig);
+    if (wrapperConfig != null && wrapperConfig.trim().length() > 0) {
+      Config config = new Config();
+      new XmlUtil().convertXmlToBean(wrapperConfig, config);
+      ttlMillis = config.getTtlSeconds() * 1000;
+    }
+  }
+
+  public ResponseCacheWrapper(Abdera abdera, FeedConfiguration config) {
+    super(abdera, config);
+  }
+
+  @Override
+  public Feed retrieveFeed(RequestContext request) throws FeedServerAdapterException {
+    String key = getResponseKey(request, "feed");
+    Feed feed = this.<Feed>getCachedResponse(key);
+    if (feed == null) {
+      long generation = getResponseCache().getGeneration(getFeedKey());
+      feed = super.retrieveFeed(request);
+      putResponse(key, generation, feed);
+    }
+    return feed;
+  }
+
+  @Override
+  public Feed retrieveFeed(RequestContext request, PagingParameters paging)
+      throws FeedServerAdapterException {
+    String key = getResponseKey(request, "page");
+    Feed feed = this.<Feed>getCachedResponse(key);
+    if (feed == null) {
+      long generation = getResponseCache().getGeneration(getFeedKey());
+      feed = super.retrieveFeed(request, paging);
+      putResponse(key, generation, feed);
+    }
+    return feed;
+  }
+
+  /**
+   * Cached feeds are always retrieved whole so that they can be cached
+   */
+  @Override
+  public boolean isFeedStreamable(RequestContext request) {
+    return false;
+  }
+
+  @Override
+  public Entry retrieveEntry(RequestContext request, Object entryId)
+      throws FeedServerAdapterException {
+    String key = getResponseKey(request, "entry/" + entryId);
+    Entry entry = this.<Entry>getCachedResponse(key);
+    if (entry == null) {
+      long generation = getResponseCache().getGeneration(getFeedKey());
+      entry = super.retrieveEntry(request, entryId);
+      putResponse(key, generation, entry);
+    }
+    return entry;
+  }
+
+  @Override
+  public Entry createEntry(RequestContext request, Entry entry) throws FeedServerAdapterException {
+    try {
+      return super.createEntry(request, entry);
+    } finally {
+      getResponseCache().invalidate(getFeedKey());
+    }
+  }
+
+  @Override
+  public Entry updateEntry(RequestContext request, Object entryId, Entry entry)
+      throws FeedServerAdapterException {
+    try {
+      return super.updateEntry(request, entryId, entry);
+    } finally {
+      getResponseCache().invalidate(getFeedKey());
+    }
+  }
+
+  @Override
+  public void deleteEntry(RequestContext request, Object entryId)
+      throws FeedServerAdapterException {
+    try {
+      super.deleteEntry(request, entryId);
+    } finally {
+      getResponseCache().invalidate(getFeedKey());
+    }
+  }
+
+  /**
+   * Invalidates again once the batch is committed, so that responses cached
+   * from reads that ran during the batch are not served
+   */
+  @Override
+  public void endBatch(RequestContext request, boolean completed)
+      throws FeedServerAdapterException {
+    try {
+      super.endBatch(request, completed);
+    } finally {
+      getResponseCache().invalidate(getFeedKey());
+    }
+  }
+
+  public long getTtlMillis() {
+    return ttlMillis;
+  }
+
+  protected String getFeedKey() {
+    return ResponseCache.getFeedKey(getNameSpace(), getConfiguration().getFeedId());
+  }
+
+  /**
+   * Gets the key of a response, which tells apart the viewer and the query
+   */
+  protected String getResponseKey(RequestContext request, String kind) {
+    String user = getUserEmailForRequest(request);
+    return getFeedKey() + "\n" + (user == null ? "" : user) + "\n" + kind + "\n"
+        + request.getUri();
+  }
+
+  private <T extends Element> T getCachedResponse(String key) {
+    String response = getResponseCache().get(key);
+    if (response == null) {
+      return null;
+    }
+    // every request gets its own copy, which it may modify
+    return getAbdera().getParser().<T>parse(new StringReader(response)).getRoot();
+  }
+
+  private void putResponse(String key, long generation, Element response) {
+    if (response != null) {
+      getResponseCache().put(key, getFeedKey(), generation, response.toString(), ttlMillis);
+    }
+  }
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.google.feedserver.adapters;
+
+import com.google.feedserver.server.FlagConfig;
+import com.google.feedserver.testing.TestUtil;
+import com.google.feedserver.wrappers.ManagedCollectionAdapterWrapper;
+
+import junit.framework.TestCase;
+
+import org.apache.abdera.Abdera;
+import org.apache.abdera.model.Document;
+import org.apache.abdera.model.Entry;
+import org.apache.abdera.model.Feed;
+import org.apache.abdera.parser.Parser;
+import org.apache.abdera.protocol.server.RequestContext;
+import org.apache.abdera.protocol.server.ResponseContext;
+import org.apache.abdera.protocol.server.Target;
+import org.apache.abdera.protocol.server.TargetType;
+import org.easymock.EasyMock;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Unit tests for batch requests to
+ * {@link AbstractManagedCollectionAdapter#extensionRequest(RequestContext)}
+ */
+public class BatchRequestTest extends TestCase {
+
+  private TestUtil testUtil;
+  private Abdera abdera;
+  private List<String> calls;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    testUtil = new TestUtil();
+    testUtil.setup();
+    abdera = new Abdera();
+    calls = new ArrayList<String>();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    testUtil.tearDown();
+    super.tearDown();
+  }
+
+  /**
+   * Keeps entries in memory and records the batch calls
+   */
+  private class MemoryWrapper extends ManagedCollectionAdapterWrapper {
+    private final Map<String, String> titles = new HashMap<String, String>();
+    private int nextId = 1;
+    private boolean atomic;
+
+    MemoryWrapper() throws FeedServerAdapterException {
+      super(testUtil.getBasicAdapterWithFeedConfigWithNoWrappers(), "");
+      titles.put("existing", "existing entry");
+    }
+
+    @Override
+    public Entry createEntry(RequestContext request, Entry entry) {
+      String id = Integer.toString(nextId++);
+      titles.put(id, entry.getTitle());
+      return retrieveEntry(request, id);
+    }
+
+    @Override
+    public Entry updateEntry(RequestContext request, Object entryId, Entry entry) {
+      if (!titles.containsKey(entryId)) {
+        return null;
+      }
+      titles.put((String) entryId, entry.getTitle());
+      return retrieveEntry(request, entryId);
+    }
+
+    @Override
+    public void deleteEntry(RequestContext request, Object entryId)
+        throws FeedServerAdapterException {
+      if ("protected".equals(entryId)) {
+        throw new FeedServerAdapterException(FeedServerAdapterException.Reason.NOT_AUTHORIZED,
+            "Access Denied");
+      }
+      titles.remove(entryId);
+    }
+
+    @Override
+    public Entry retrieveEntry(RequestContext request, Object entryId) {
+      String title = titles.get(entryId);
+      if (title == null) {
+        return null;
+      }
+      Entry entry = abdera.newEntry();
+      entry.setId(createEntryIdUri((String) entryId));
+      entry.setTitle(title);
+      return entry;
+    }
+
+    @Override
+    public boolean startBatch(RequestContext request) {
+      calls.add("start");
+      return atomic;
+    }
+
+    @Override
+    public void endBatch(RequestContext request, boolean completed) {
+      calls.add("end " + completed);
+    }
+  }
+
+  private Entry addEntry(Feed feed, String batchId, String operation, String entryId,
+      String title) {
+    Entry entry = feed.addEntry();
+    entry.addSimpleExtension(AtomBatch.ID, batchId);
+    if (operation != null) {
+      entry.addExtension(AtomBatch.OPERATION).setAttributeValue(AtomBatch.ATTRIBUTE_TYPE,
+          operation);
+    }
+    if (entryId != null) {
+      entry.addLink("http://localhost/feeds/contact/" + entryId, "edit");
+    }
+    entry.setTitle(title);
+    return entry;
+  }
+
+  @SuppressWarnings("unchecked")
+  private RequestContext createRequest(String method, String entryId, Feed input) {
+    Target target = EasyMock.createNiceMock(Target.class);
+    EasyMock.expect(target.getType()).andReturn(TargetType.TYPE_ENTRY).anyTimes();
+    EasyMock.expect(target.getParameter(AbstractManagedCollectionAdapter.PARAM_ENTRY))
+        .andReturn(entryId).anyTimes();
+    EasyMock.replay(target);
+    RequestContext request = EasyMock.createNiceMock(RequestContext.class);
+    EasyMock.expect(request.getMethod()).andReturn(method).anyTimes();
+    EasyMock.expect(request.getTarget()).andReturn(target).anyTimes();
+    EasyMock.expect(request.getAbdera()).andReturn(abdera).anyTimes();
+    try {
+      EasyMock.expect(request.getDocument(EasyMock.isA(Parser.class)))
+          .andReturn((Document) input.getDocument()).anyTimes();
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+    EasyMock.replay(request);
+    return request;
+  }
+
+  private Feed getResponseFeed(ResponseContext response) throws Exception {
+    StringWriter writer = new StringWriter();
+    response.writeTo(writer);
+    Document<Feed> document = abdera.getParser().parse(new StringReader(writer.toString()));
+    return document.getRoot();
+  }
+
+  public void testOperationsReportTheirStatus() throws Exception {
+    MemoryWrapper adapter = new MemoryWrapper();
+    Feed input = abdera.newFeed();
+    addEntry(input, "a", null, null, "inserted");
+    addEntry(input, "b", AtomBatch.UPDATE, "existing", "updated");
+    addEntry(input, "c", AtomBatch.UPDATE, "missing", "updated");
+    addEntry(input, "d", AtomBatch.DELETE, "protected", null);
+    addEntry(input, "e", AtomBatch.QUERY, "1", null);
+    addEntry(input, "f", "upsert", "existing", null);
+
+    ResponseContext response = adapter.extensionRequest(createRequest("POST", "batch", input));
+    assertEquals(200, response.getStatus());
+    List<Entry> results = getResponseFeed(response).getEntries();
+    assertEquals(6, results.size());
+
+    int[] codes = {201, 200, 404, 403, 200, 400};
+    for (int i = 0; i < codes.length; i++) {
+      assertEquals(String.valueOf((char) ('a' + i)), AtomBatch.getId(results.get(i)));
+      assertEquals(codes[i], AtomBatch.getStatusCode(results.get(i)));
+    }
+    assertEquals("inserted", results.get(0).getTitle());
+    assertEquals("updated", results.get(1).getTitle());
+    assertEquals("inserted", results.get(4).getTitle());
+    assertEquals("existing", adapter.getEntryId(results.get(1)));
+    assertEquals("[start, end true]", calls.toString());
+  }
+
+  public void testFailureRollsBackAtomicBatch() throws Exception {
+    MemoryWrapper adapter = new MemoryWrapper();
+    adapter.atomic = true;
+    Feed input = abdera.newFeed();
+    addEntry(input, "a", AtomBatch.INSERT, null, "inserted");
+    addEntry(input, "b", AtomBatch.DELETE, "protected", null);
+    addEntry(input, "c", AtomBatch.UPDATE, "existing", "updated");
+
+    ResponseContext response = adapter.extensionRequest(createRequest("POST", "batch", input));
+    assertEquals(200, response.getStatus());
+    List<Entry> results = getResponseFeed(response).getEntries();
+    assertEquals(3, results.size());
+    assertEquals(409, AtomBatch.getStatusCode(results.get(0)));
+    assertEquals(403, AtomBatch.getStatusCode(results.get(1)));
+    assertEquals(409, AtomBatch.getStatusCode(results.get(2)));
+    assertEquals("c", AtomBatch.getId(results.get(2)));
+    // the operations after the failure did not run
+    assertEquals("existing entry", adapter.titles.get("existing"));
+    assertEquals("[start, end false]", calls.toString());
+  }
+
+  public void testOperationsRunThroughWrappers() throws Exception {
+    final List<String> operations = new ArrayList<String>();
+    ManagedCollectionAdapterWrapper wrapper =
+        new ManagedCollectionAdapterWrapper(new MemoryWrapper(), "") {
+          @Override
+          public Entry createEntry(RequestContext request, Entry entry)
+              throws FeedServerAdapterException {
+            operations.add("create");
+            return super.createEntry(request, entry);
+          }
+
+          @Override
+          public void deleteEntry(RequestContext request, Object entryId)
+              throws FeedServerAdapterException {
+            operations.add("delete " + entryId);
+            super.deleteEntry(request, entryId);
+          }
+        };
+    Feed input = abdera.newFeed();
+    addEntry(input, "1", AtomBatch.INSERT, null, "inserted");
+    addEntry(input, "2", AtomBatch.DELETE, "existing", null);
+
+    ResponseContext response = wrapper.extensionRequest(createRequest("POST", "batch", input));
+    assertEquals(200, response.getStatus());
+    assertEquals("[create, delete existing]", operations.toString());
+    // the batch hooks reach the wrapped adapter
+    assertEquals("[start, end true]", calls.toString());
+  }
+
+  public void testTooManyEntries() throws Exception {
+    Feed input = abdera.newFeed();
+    int maxEntries = Integer.parseInt(FlagConfig.maxBatchEntries_FLAG);
+    for (int i = 0; i <= maxEntries; i++) {
+      addEntry(input, Integer.toString(i), null, null, "entry " + i);
+    }
+    ResponseContext response =
+        new MemoryWrapper().extensionRequest(createRequest("POST", "batch", input));
+    assertEquals(400, response.getStatus());
+    assertTrue(calls.isEmpty());
+  }
+
+  public void testOtherExtensionRequestsAreNotAllowed() throws Exception {
+    Feed input = abdera.newFeed();
+    MemoryWrapper adapter = new MemoryWrapper();
+    assertEquals(405,
+        adapter.extensionRequest(createRequest("POST", "existing", input)).getStatus());
+    assertEquals(405,
+        adapter.extensionRequest(createRequest("PATCH", "batch", input)).getStatus());
+  }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.feedserver.adapters;
+
+import junit.framework.TestCase;
+
+import org.apache.abdera.Abdera;
+import org.apache.abdera.model.Feed;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unit tests for {@link FeedReadCoalescer}
+ */
+public class FeedReadCoalescerTest extends TestCase {
+
+  private static final String KEY = "http://localhost/feeds/contact\nuser@example.com\n/contact";
+  private static final int FOLLOWERS = 5;
+
+  private Abdera abdera;
+  private FeedReadCoalescer coalescer;
+  private AtomicInteger retrievals;
+  private CountDownLatch release;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    abdera = new Abdera();
+    coalescer = new FeedReadCoalescer();
+    retrievals = new AtomicInteger();
+    release = new CountDownLatch(1);
+  }
+
+  /**
+   * Retrieves a feed with a single entry once {@link #release} is counted down
+   */
+  private class BlockingRetrieval implements FeedReadCoalescer.FeedRetrieval {
+    @Override
+    public Feed retrieveFeed() throws FeedServerAdapterException {
+      retrievals.incrementAndGet();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+      Feed feed = abdera.newFeed();
+      feed.setId("http://localhost/feeds/contact");
+      feed.addEntry().setId("http://localhost/feeds/contact/1");
+      return feed;
+    }
+  }
+
+  private class Reader extends Thread {
+    final long maxWaitMillis;
+    Feed feed;
+    Exception error;
+
+    Reader(long maxWaitMillis) {
+      this.maxWaitMillis = maxWaitMillis;
+    }
+
+    @Override
+    public void run() {
+      try {
+        feed = coalescer.retrieveFeed(KEY, maxWaitMillis, abdera.getParser(),
+            new BlockingRetrieval());
+      } catch (Exception e) {
+        error = e;
+      }
+    }
+  }
+
+  public void testConcurrentReadsShareOneRetrieval() throws Exception {
+    List<Reader> readers = startReaders(10000);
+    release.countDown();
+    for (Reader reader : readers) {
+      reader.join();
+      assertNull(reader.error);
+      assertEquals(1, reader.feed.getEntries().size());
+    }
+    assertEquals(1, retrievals.get());
+    assertEquals(FOLLOWERS, coalescer.getFollowerCount());
+    // every reader has its own copy
+    for (int i = 1; i < readers.size(); i++) {
+      assertNotSame(readers.get(0).feed, readers.get(i).feed);
+    }
+    assertEquals(0, coalescer.size());
+  }
+
+  public void testFollowersTimeOut() throws Exception {
+    List<Reader> readers = startReaders(50);
+    for (Reader reader : readers.subList(1, readers.size())) {
+      reader.join();
+      assertEquals(FeedServerAdapterException.Reason.SERVICE_UNAVAILABLE,
+          ((FeedServerAdapterException) reader.error).getReason());
+    }
+    release.countDown();
+    readers.get(0).join();
+    assertNotNull(readers.get(0).feed);
+    assertEquals(FOLLOWERS, coalescer.getTimeoutCount());
+  }
+
+  public void testErrorIsShared() throws Exception {
+    final FeedServerAdapterException error = new FeedServerAdapterException(
+        FeedServerAdapterException.Reason.ERROR_EXECUTING_ADAPTER_REQUEST, "failed");
+    release.countDown();
+    try {
+      coalescer.retrieveFeed(KEY, 1000, abdera.getParser(), new FeedReadCoalescer.FeedRetrieval() {
+        @Override
+        public Feed retrieveFeed() throws FeedServerAdapterException {
+          throw error;
+        }
+      });
+      fail();
+    } catch (FeedServerAdapterException e) {
+      assertSame(error, e);
+    }
+    // the failed read is not remembered
+    assertNotNull(coalescer.retrieveFeed(KEY, 1000, abdera.getParser(), new BlockingRetrieval()));
+  }
+
+  /**
+   * Starts a leading reader and {@link #FOLLOWERS} readers that join it
+   */
+  private List<Reader> startReaders(long maxWaitMillis) throws InterruptedException {
+    List<Reader> readers = new ArrayList<Reader>();
+    Reader leader = new Reader(maxWaitMillis);
+    leader.start();
+    readers.add(leader);
+    while (retrievals.get() == 0) {
+      Thread.sleep(1);
+    }
+    for (int i = 0; i < FOLLOWERS; i++) {
+      Reader follower = new Reader(maxWaitMillis);
+      follower.start();
+      readers.add(follower);
+    }
+    while (coalescer.getFollowerCount() < FOLLOWERS) {
+      Thread.sleep(1);
+    }
+    return readers;
+  }
+}
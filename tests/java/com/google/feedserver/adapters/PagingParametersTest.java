@@ -0,0 +1,106 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.feedserver.adapters;
+
+import junit.framework.TestCase;
+
+import org.apache.abdera.protocol.server.RequestContext;
+import org.easymock.classextension.EasyMock;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Unit tests for {@link PagingParameters}
+ */
+public class PagingParametersTest extends TestCase {
+
+  private static final List<String> ENTRIES = Arrays.asList("a", "b", "c", "d", "e");
+
+  public void testSlice() {
+    assertEquals(Arrays.asList("a", "b"), new PagingParameters(1, 2).slice(ENTRIES));
+    assertEquals(Arrays.asList("d", "e"), new PagingParameters(4, 10).slice(ENTRIES));
+    assertTrue(new PagingParameters(6, 2).slice(ENTRIES).isEmpty());
+    assertTrue(new PagingParameters(1, 0).slice(ENTRIES).isEmpty());
+    assertEquals(ENTRIES, new PagingParameters(1, Integer.MAX_VALUE).slice(ENTRIES));
+  }
+
+  public void testNextAndPrevious() {
+    PagingParameters first = new PagingParameters(1, 2);
+    assertNull(first.previous());
+    PagingParameters second = first.next();
+    assertEquals(3, second.getStartIndex());
+    assertEquals(2, second.getSkip());
+    assertEquals(1, second.previous().getStartIndex());
+    assertEquals(1, new PagingParameters(2, 5).previous().getStartIndex());
+  }
+
+  public void testLargeValuesDoNotOverflow() {
+    PagingParameters paging = new PagingParameters(Integer.MAX_VALUE, Integer.MAX_VALUE);
+    assertTrue(paging.slice(ENTRIES).isEmpty());
+    assertEquals(Integer.MAX_VALUE, paging.next().getStartIndex());
+  }
+
+  public void testInvalidParameters() {
+    try {
+      new PagingParameters(0, 10);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    try {
+      new PagingParameters(1, -1);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  public void testFromRequest() throws Exception {
+    assertNull(PagingParameters.fromRequest(mockRequest(null, null)));
+
+    PagingParameters paging = PagingParameters.fromRequest(mockRequest("11", null));
+    assertEquals(11, paging.getStartIndex());
+    assertEquals(PagingParameters.DEFAULT_MAX_RESULTS, paging.getMaxResults());
+
+    paging = PagingParameters.fromRequest(mockRequest(null, "5"));
+    assertEquals(1, paging.getStartIndex());
+    assertEquals(5, paging.getMaxResults());
+    assertEquals("start-index=1&max-results=5", paging.toString());
+  }
+
+  public void testFromRequestRejectsBadValues() throws Exception {
+    for (String[] values : new String[][] {{"x", "5"}, {"0", "5"}, {"1", "-2"}}) {
+      try {
+        PagingParameters.fromRequest(mockRequest(values[0], values[1]));
+        fail();
+      } catch (FeedServerAdapterException e) {
+        assertEquals(FeedServerAdapterException.Reason.INVALID_INPUT, e.getReason());
+      }
+    }
+  }
+
+  private RequestContext mockRequest(String startIndex, String maxResults) {
+    RequestContext request = EasyMock.createMock(RequestContext.class);
+    EasyMock.expect(request.getParameter(PagingParameters.PARAM_START_INDEX))
+        .andReturn(startIndex).anyTimes();
+    EasyMock.expect(request.getParameter(PagingParameters.PARAM_MAX_RESULTS))
+        .andReturn(maxResults).anyTimes();
+    EasyMock.replay(request);
+    return request;
+  }
+}
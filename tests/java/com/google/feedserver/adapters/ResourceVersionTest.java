@@ -0,0 +1,141 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.feedserver.adapters;
+
+import junit.framework.TestCase;
+
+import org.apache.abdera.Abdera;
+import org.apache.abdera.i18n.iri.IRI;
+import org.apache.abdera.model.Entry;
+import org.apache.abdera.model.Feed;
+import org.apache.abdera.protocol.server.RequestContext;
+import org.apache.abdera.protocol.server.ResponseContext;
+import org.apache.abdera.util.EntityTag;
+import org.easymock.classextension.EasyMock;
+
+import java.util.Date;
+
+/**
+ * Unit tests for {@link ResourceVersion}
+ */
+public class ResourceVersionTest extends TestCase {
+
+  private Abdera abdera;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    abdera = new Abdera();
+  }
+
+  public void testEntityTagMatch() {
+    ResourceVersion version = ResourceVersion.weak(null, "v1");
+    String tag = version.getEntityTag().toString();
+    assertTrue(version.isNotModified(mockRequest(tag, null)));
+    assertTrue(version.isNotModified(mockRequest("\"other\", " + tag, null)));
+    assertTrue(version.isNotModified(mockRequest("*", null)));
+    assertFalse(version.isNotModified(mockRequest("\"other\"", null)));
+    assertFalse(version.isNotModified(mockRequest(null, null)));
+    assertFalse(ResourceVersion.weak(null, "v2").isNotModified(mockRequest(tag, null)));
+  }
+
+  public void testIfModifiedSince() {
+    Date lastModified = new Date(1220000000000L);
+    ResourceVersion version = new ResourceVersion(null, new Date(lastModified.getTime() + 500));
+    assertTrue(version.isNotModified(mockRequest(null, lastModified)));
+    assertFalse(version.isNotModified(mockRequest(null, new Date(lastModified.getTime() - 1000))));
+  }
+
+  public void testIfNoneMatchTakesPrecedence() {
+    Date lastModified = new Date(1220000000000L);
+    ResourceVersion version = ResourceVersion.weak(lastModified, "v1");
+    assertFalse(version.isNotModified(mockRequest("\"other\"", lastModified)));
+  }
+
+  public void testEntryVersionIgnoresUpdated() {
+    Entry entry = newEntry("1", "name");
+    EntityTag tag = ResourceVersion.of(entry).getEntityTag();
+    assertTrue(tag.isWeak());
+    entry.setUpdated(new Date(entry.getUpdated().getTime() + 60000));
+    assertEquals(tag, ResourceVersion.of(entry).getEntityTag());
+    assertFalse(tag.equals(ResourceVersion.of(newEntry("1", "other name")).getEntityTag()));
+  }
+
+  public void testFeedVersionChangesWithEntries() {
+    Feed feed = abdera.newFeed();
+    feed.addEntry(newEntry("1", "a"));
+    feed.addEntry(newEntry("2", "b"));
+    EntityTag tag = ResourceVersion.of(feed).getEntityTag();
+    assertNull(ResourceVersion.of(feed).getLastModified());
+
+    feed.getEntries().get(1).discard();
+    assertFalse(tag.equals(ResourceVersion.of(feed).getEntityTag()));
+  }
+
+  public void testFeedVersionChangesWithUpdated() {
+    Feed feed = abdera.newFeed();
+    feed.setUpdated(new Date(1220000000000L));
+    feed.addEntry(newEntry("1", "a"));
+    EntityTag tag = ResourceVersion.of(feed).getEntityTag();
+    assertEquals(tag, ResourceVersion.of(feed).getEntityTag());
+
+    Entry entry = feed.getEntries().get(0);
+    entry.setUpdated(new Date(entry.getUpdated().getTime() + 60000));
+    EntityTag entryUpdatedTag = ResourceVersion.of(feed).getEntityTag();
+    assertFalse(tag.equals(entryUpdatedTag));
+
+    feed.setUpdated(new Date(1220000060000L));
+    assertFalse(entryUpdatedTag.equals(ResourceVersion.of(feed).getEntityTag()));
+  }
+
+  public void testForRequest() {
+    ResourceVersion version = ResourceVersion.weak(null, "v1");
+    RequestContext request = mockRequest(null, null);
+    EntityTag tag = version.forRequest(request, "user1@example.com").getEntityTag();
+    assertEquals(tag, version.forRequest(request, "user1@example.com").getEntityTag());
+    assertFalse(tag.equals(version.forRequest(request, "user2@example.com").getEntityTag()));
+  }
+
+  public void testNotModifiedResponse() {
+    Date lastModified = new Date(1220000000000L);
+    ResourceVersion version = ResourceVersion.weak(lastModified, "v1");
+    ResponseContext response = version.notModified();
+    assertEquals(304, response.getStatus());
+    assertFalse(response.hasEntity());
+    assertEquals(version.getEntityTag(), response.getEntityTag());
+    assertEquals(lastModified, response.getLastModified());
+  }
+
+  private Entry newEntry(String id, String name) {
+    Entry entry = abdera.newEntry();
+    entry.setId("http://localhost/feeds/contact/" + id);
+    entry.setTitle(name);
+    entry.setUpdated(new Date());
+    entry.setContent("<entity><name>" + name + "</name></entity>", "application/xml");
+    return entry;
+  }
+
+  private RequestContext mockRequest(String ifNoneMatch, Date ifModifiedSince) {
+    RequestContext request = EasyMock.createMock(RequestContext.class);
+    EasyMock.expect(request.getHeader(ResourceVersion.HEADER_IF_NONE_MATCH))
+        .andReturn(ifNoneMatch).anyTimes();
+    EasyMock.expect(request.getIfModifiedSince()).andReturn(ifModifiedSince).anyTimes();
+    EasyMock.expect(request.getUri()).andReturn(new IRI("/feeds/contact?alt=atom")).anyTimes();
+    EasyMock.replay(request);
+    return request;
+  }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.feedserver.adapters;
+
+import junit.framework.TestCase;
+
+import org.apache.abdera.Abdera;
+import org.apache.abdera.model.Content;
+import org.apache.abdera.model.Document;
+import org.apache.abdera.model.Entry;
+import org.apache.abdera.model.Feed;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import javax.xml.namespace.QName;
+
+/**
+ * Unit tests for {@link StreamingFeedResponseContext}
+ */
+public class StreamingFeedResponseContextTest extends TestCase {
+
+  private static final String FEED_ID = "http://localhost/feeds/contact";
+  private static final int ENTRY_COUNT = 5;
+
+  private Abdera abdera;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    abdera = new Abdera();
+  }
+
+  /**
+   * Produces a feed with entries 0 to {@link #ENTRY_COUNT} - 1, created one at
+   * a time
+   */
+  private class TestFeedStream implements FeedStream {
+    @Override
+    public void writeTo(EntrySink sink) throws FeedServerAdapterException {
+      Feed feed = abdera.newFeed();
+      feed.setId(FEED_ID);
+      feed.setTitle("contact");
+      feed.setUpdated(new Date());
+      feed.addAuthor("feedserver");
+      sink.startFeed(feed);
+      for (int i = 0; i < ENTRY_COUNT; i++) {
+        Entry entry = abdera.newEntry();
+        entry.setId(FEED_ID + "/" + i);
+        entry.setTitle("entry " + i);
+        entry.setUpdated(new Date());
+        entry.setContent("<entity><name>name &amp; " + i + "</name></entity>", Content.Type.XML);
+        sink.addEntry(entry);
+      }
+      sink.endFeed();
+    }
+  }
+
+  public void testStreamedFeedParses() throws Exception {
+    Feed feed = write(new TestFeedStream());
+    assertEquals(FEED_ID, feed.getId().toString());
+    assertEquals("contact", feed.getTitle());
+    assertEquals("feedserver", feed.getAuthor().getName());
+    assertEquals(ENTRY_COUNT, feed.getEntries().size());
+    for (int i = 0; i < ENTRY_COUNT; i++) {
+      Entry entry = feed.getEntries().get(i);
+      assertEquals(FEED_ID + "/" + i, entry.getId().toString());
+      assertTrue(entry.getContent().contains("name &amp; " + i));
+    }
+  }
+
+  public void testFeedNamespacesAndExtensionsAreKept() throws Exception {
+    final QName extension = new QName("http://example.com/ns", "total", "ex");
+    Feed feed = write(new FeedStream() {
+      @Override
+      public void writeTo(EntrySink sink) throws FeedServerAdapterException {
+        Feed header = abdera.newFeed();
+        header.setId(FEED_ID);
+        header.declareNS(extension.getNamespaceURI(), extension.getPrefix());
+        header.addSimpleExtension(extension, "1");
+        sink.startFeed(header);
+        Entry entry = abdera.newEntry();
+        entry.setId(FEED_ID + "/0");
+        sink.addEntry(entry);
+        sink.endFeed();
+      }
+    });
+    assertEquals(extension.getNamespaceURI(), feed.getNamespaces().get(extension.getPrefix()));
+    assertEquals("1", feed.getSimpleExtension(extension));
+    assertEquals(1, feed.getEntries().size());
+  }
+
+  public void testCallbacksRunAfterWriting() throws Exception {
+    final List<String> events = new ArrayList<String>();
+    StreamingFeedResponseContext context =
+        new StreamingFeedResponseContext(abdera, new FeedStream() {
+          @Override
+          public void writeTo(EntrySink sink) throws FeedServerAdapterException {
+            events.add("write");
+            throw new FeedServerAdapterException(
+                FeedServerAdapterException.Reason.ERROR_EXECUTING_ADAPTER_REQUEST, "failed");
+          }
+        });
+    context.runAfterWriting(new Runnable() {
+      @Override
+      public void run() {
+        events.add("release");
+      }
+    });
+    assertTrue(events.isEmpty());
+    try {
+      context.writeTo(new StringWriter());
+      fail();
+    } catch (IOException e) {
+      // expected
+    }
+    assertEquals("[write, release]", events.toString());
+  }
+
+  public void testCallbacksRunOnceWithoutWriting() throws Exception {
+    final List<String> events = new ArrayList<String>();
+    StreamingFeedResponseContext context =
+        new StreamingFeedResponseContext(abdera, new TestFeedStream());
+    context.runAfterWriting(new Runnable() {
+      @Override
+      public void run() {
+        events.add("release");
+      }
+    });
+    context.release();
+    context.release();
+    assertEquals("[release]", events.toString());
+    context.writeTo(new StringWriter());
+    assertEquals("[release]", events.toString());
+  }
+
+  public void testForwardingSinkFiltersEntries() throws Exception {
+    final FeedStream target = new TestFeedStream();
+    Feed feed = write(new FeedStream() {
+      @Override
+      public void writeTo(EntrySink sink) throws FeedServerAdapterException {
+        target.writeTo(new ForwardingEntrySink(sink) {
+          @Override
+          public void addEntry(Entry entry) throws FeedServerAdapterException {
+            if (!entry.getId().toString().endsWith("/2")) {
+              super.addEntry(entry);
+            }
+          }
+        });
+      }
+    });
+    assertEquals(ENTRY_COUNT - 1, feed.getEntries().size());
+    for (Entry entry : feed.getEntries()) {
+      assertFalse(entry.getId().toString().endsWith("/2"));
+    }
+  }
+
+  public void testAdapterErrorAbortsResponse() throws Exception {
+    StreamingFeedResponseContext context =
+        new StreamingFeedResponseContext(abdera, new FeedStream() {
+          @Override
+          public void writeTo(EntrySink sink) throws FeedServerAdapterException {
+            throw new FeedServerAdapterException(
+                FeedServerAdapterException.Reason.ERROR_EXECUTING_ADAPTER_REQUEST, "failed");
+          }
+        });
+    try {
+      context.writeTo(new StringWriter());
+      fail();
+    } catch (IOException e) {
+      assertTrue(e.getCause() instanceof FeedServerAdapterException);
+    }
+  }
+
+  private Feed write(FeedStream feedStream) throws IOException {
+    StreamingFeedResponseContext context = new StreamingFeedResponseContext(abdera, feedStream);
+    assertEquals(200, context.getStatus());
+    assertTrue(context.hasEntity());
+    StringWriter writer = new StringWriter();
+    context.writeTo(writer);
+    Document<Feed> document = abdera.getParser().parse(new StringReader(writer.toString()));
+    return document.getRoot();
+  }
+}
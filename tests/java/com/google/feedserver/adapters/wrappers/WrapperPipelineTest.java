@@ -0,0 +1,167 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.google.feedserver.adapters.wrappers;
+
+import com.google.feedserver.adapters.AbstractManagedCollectionAdapter;
+import com.google.feedserver.adapters.FeedServerAdapterException;
+import com.google.feedserver.resource.AuthorizedEntity;
+import com.google.feedserver.samples.config.AllowAllAclValidator;
+import com.google.feedserver.samples.manager.XmlWrapperManager;
+import com.google.feedserver.testing.TestUtil;
+import com.google.feedserver.wrappers.AdapterInterceptor;
+import com.google.feedserver.wrappers.ManagedCollectionAdapterWrapper;
+
+import junit.framework.TestCase;
+
+import org.apache.abdera.model.Feed;
+import org.apache.abdera.protocol.server.RequestContext;
+import org.easymock.EasyMock;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit tests for the interceptors run by
+ * {@link com.google.feedserver.manager.AbstractWrapperManager}
+ */
+public class WrapperPipelineTest extends TestCase {
+
+  private TestUtil testUtil;
+  private List<String> calls;
+  private RequestContext request;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    testUtil = new TestUtil();
+    testUtil.setup();
+    testUtil.getGlobalServerConfig().setAclValidator(new AllowAllAclValidator());
+    calls = new ArrayList<String>();
+    request = EasyMock.createNiceMock(RequestContext.class);
+    EasyMock.replay(request);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    testUtil.tearDown();
+    super.tearDown();
+  }
+
+  /**
+   * Records its calls; the interceptor, if any, records its own
+   */
+  private class RecordingWrapper extends ManagedCollectionAdapterWrapper {
+    private final String name;
+    private final boolean intercepting;
+    private final boolean denying;
+
+    RecordingWrapper(AbstractManagedCollectionAdapter target, String name, boolean intercepting,
+        boolean denying) throws FeedServerAdapterException {
+      super(target, "");
+      this.name = name;
+      this.intercepting = intercepting;
+      this.denying = denying;
+    }
+
+    @Override
+    public Feed retrieveFeed(RequestContext request) throws FeedServerAdapterException {
+      calls.add(name);
+      return null;
+    }
+
+    @Override
+    public AdapterInterceptor getInterceptor() {
+      if (!intercepting) {
+        return null;
+      }
+      return new AdapterInterceptor() {
+        @Override
+        public void before(String operation, RequestContext request, Object entryId)
+            throws FeedServerAdapterException {
+          calls.add("before " + name + " " + operation);
+          if (denying) {
+            throw new FeedServerAdapterException(
+                FeedServerAdapterException.Reason.NOT_AUTHORIZED, "Access Denied");
+          }
+        }
+
+        @Override
+        public void after(String operation, RequestContext request, Object entryId,
+            boolean succeeded) {
+          calls.add("after " + name + " " + succeeded);
+        }
+      };
+    }
+  }
+
+  private XmlWrapperManager createManager(boolean denying) throws FeedServerAdapterException {
+    AbstractManagedCollectionAdapter adapter =
+        testUtil.getBasicAdapterWithFeedConfigWithNoWrappers();
+    XmlWrapperManager manager = new XmlWrapperManager(adapter);
+    RecordingWrapper target = new RecordingWrapper(adapter, "target", false, false);
+    RecordingWrapper inner = new RecordingWrapper(target, "inner", true, false);
+    RecordingWrapper middle = new RecordingWrapper(inner, "middle", false, false);
+    RecordingWrapper outer = new RecordingWrapper(middle, "outer", true, denying);
+    manager.setTargetAdapter(outer);
+    return manager;
+  }
+
+  public void testInterceptingWrappersLeaveTheChain() throws Exception {
+    XmlWrapperManager manager = createManager(false);
+    AbstractManagedCollectionAdapter middle =
+        ((ManagedCollectionAdapterWrapper) manager.getTargetAdapter()).getTargetAdapter();
+    manager.compileInterceptors();
+
+    // the ACL check, then outer and inner
+    assertEquals(3, manager.getInterceptors().length);
+    assertSame(middle, manager.getTargetAdapter());
+    AbstractManagedCollectionAdapter target =
+        ((ManagedCollectionAdapterWrapper) middle).getTargetAdapter();
+    assertEquals(RecordingWrapper.class, target.getClass());
+    assertEquals(TestUtil.SAMPLE_ADAPTER_CLASS,
+        ((ManagedCollectionAdapterWrapper) target).getTargetAdapter().getClass().getName());
+  }
+
+  public void testInterceptorsRunAroundOperation() throws Exception {
+    XmlWrapperManager manager = createManager(false);
+    manager.compileInterceptors();
+    manager.retrieveFeed(request);
+
+    String retrieve = AuthorizedEntity.OPERATION_RETRIEVE;
+    List<String> expected = new ArrayList<String>();
+    expected.add("before outer " + retrieve);
+    expected.add("before inner " + retrieve);
+    expected.add("middle");
+    expected.add("after inner true");
+    expected.add("after outer true");
+    assertEquals(expected, calls);
+  }
+
+  public void testFailingInterceptorStopsOperation() throws Exception {
+    XmlWrapperManager manager = createManager(true);
+    manager.compileInterceptors();
+    try {
+      manager.retrieveFeed(request);
+      fail();
+    } catch (FeedServerAdapterException e) {
+      assertEquals(FeedServerAdapterException.Reason.NOT_AUTHORIZED, e.getReason());
+    }
+    assertEquals(1, calls.size());
+    assertEquals("before outer " + AuthorizedEntity.OPERATION_RETRIEVE, calls.get(0));
+  }
+}
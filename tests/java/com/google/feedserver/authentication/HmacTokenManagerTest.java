@@ -0,0 +1,112 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.google.feedserver.authentication;
+
+import junit.framework.TestCase;
+
+/**
+ * Test cases for {@link HmacTokenManager}
+ */
+public class HmacTokenManagerTest extends TestCase {
+
+  private static final byte[] KEY = "shared test key".getBytes();
+  private static final long LIFETIME_MILLIS = 60000;
+
+  private HmacTokenManager tokenManager;
+
+  @Override
+  protected void setUp() throws Exception {
+    tokenManager = new HmacTokenManager(KEY, LIFETIME_MILLIS, 2);
+  }
+
+  private String generateToken() throws TokenManagerException {
+    FakeHttpServletRequest request = new FakeHttpServletRequest();
+    request.addRequestParameter("Email", "testuser@example.com");
+    request.addRequestParameter("service", "testservice");
+    return tokenManager.generateAuthzToken(request);
+  }
+
+  private boolean validate(HmacTokenManager manager, String token) throws TokenManagerException {
+    FakeHttpServletRequest request = new FakeHttpServletRequest();
+    request.setHeader("Authorization", "GoogleLogin auth=" + token);
+    return manager.validateAuthzToken(request);
+  }
+
+  public void testGenerateAndValidateToken() throws Exception {
+    String token = generateToken();
+    assertTrue(validate(tokenManager, token));
+    assertFalse(validate(tokenManager, ""));
+    assertFalse(tokenManager.validateAuthzToken(new FakeHttpServletRequest()));
+  }
+
+  public void testTokenIsAcceptedByServerWithSameKey() throws Exception {
+    String token = generateToken();
+    assertTrue(validate(new HmacTokenManager(KEY, LIFETIME_MILLIS, 0), token));
+    assertFalse(validate(new HmacTokenManager("other key".getBytes(), LIFETIME_MILLIS, 0),
+        token));
+  }
+
+  public void testTamperedTokenIsRejected() throws Exception {
+    String token = tokenManager.generateAuthzToken("a@example.com", "s",
+        System.currentTimeMillis() + LIFETIME_MILLIS);
+    String other = tokenManager.generateAuthzToken("b@example.com", "s",
+        System.currentTimeMillis() + LIFETIME_MILLIS);
+    String payload = token.substring(0, token.indexOf('.'));
+    String signature = other.substring(other.indexOf('.') + 1);
+    assertFalse(tokenManager.validateAuthzToken(payload + "." + signature));
+    assertFalse(tokenManager.validateAuthzToken(payload + ".zz"));
+  }
+
+  public void testExpiredTokenIsRejected() throws Exception {
+    String token = tokenManager.generateAuthzToken("a@example.com", "s",
+        System.currentTimeMillis() - 1);
+    assertFalse(tokenManager.validateAuthzToken(token));
+  }
+
+  public void testRevokedTokenIsRejected() throws Exception {
+    long expiresAt = System.currentTimeMillis() + LIFETIME_MILLIS;
+    String token1 = tokenManager.generateAuthzToken("a@example.com", "s", expiresAt);
+    String token2 = tokenManager.generateAuthzToken("b@example.com", "s", expiresAt);
+    String token3 = tokenManager.generateAuthzToken("c@example.com", "s", expiresAt);
+    assertTrue(tokenManager.revoke(token1));
+    assertFalse(tokenManager.validateAuthzToken(token1));
+    assertTrue(tokenManager.validateAuthzToken(token2));
+
+    // the revocation set is bounded
+    assertTrue(tokenManager.revoke(token2));
+    assertFalse(tokenManager.revoke(token3));
+    assertEquals(2, tokenManager.getRevokedCount());
+    assertTrue(tokenManager.validateAuthzToken(token3));
+  }
+
+  public void testRevokedTokenIsRejectedInAnyHexCase() throws Exception {
+    String token = tokenManager.generateAuthzToken("a@example.com", "s",
+        System.currentTimeMillis() + LIFETIME_MILLIS);
+    int separator = token.lastIndexOf('.');
+    String upperCased = token.substring(0, separator + 1)
+        + token.substring(separator + 1).toUpperCase();
+    assertTrue(tokenManager.validateAuthzToken(upperCased));
+    assertTrue(tokenManager.revoke(token));
+    assertFalse(tokenManager.validateAuthzToken(upperCased));
+
+    String other = tokenManager.generateAuthzToken("b@example.com", "s",
+        System.currentTimeMillis() + LIFETIME_MILLIS);
+    assertTrue(tokenManager.revoke(other.toUpperCase()));
+    assertFalse(tokenManager.validateAuthzToken(other));
+  }
+}
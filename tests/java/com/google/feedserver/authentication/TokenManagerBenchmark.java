@@ -0,0 +1,104 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.google.feedserver.authentication;
+
+import com.google.feedserver.filters.SignedRequestFilter;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+/**
+ * Measures the throughput of {@link SignedRequestFilter} validating auth
+ * tokens with {@link SampleTokenManager} and with {@link HmacTokenManager}.
+ * <p>
+ * Usage: {@code TokenManagerBenchmark [threads] [requestsPerThread]}
+ * </p>
+ */
+public class TokenManagerBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    int threads = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+    int requests = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+
+    for (int round = 0; round < 2; round++) {
+      // the first round warms up the JIT
+      run("SampleTokenManager", new SampleTokenManager(), threads, requests);
+      run("HmacTokenManager", new HmacTokenManager("benchmark key".getBytes(), 3600000, 1000),
+          threads, requests);
+    }
+  }
+
+  private static void run(String name, TokenManager tokenManager, int threads,
+      final int requests) throws Exception {
+    FakeHttpServletRequest loginRequest = new FakeHttpServletRequest();
+    loginRequest.addRequestParameter("Email", "user@example.com");
+    loginRequest.addRequestParameter("service", "feedserver");
+    String token = tokenManager.generateAuthzToken(loginRequest);
+
+    final SignedRequestFilter filter = new SignedRequestFilter();
+    filter.setTokenManager(tokenManager);
+    final FakeHttpServletRequest request = new FakeHttpServletRequest();
+    request.setRequestURI("/feeds/contact");
+    request.setHeader("Authorization", "GoogleLogin auth=" + token);
+    final FakeHttpServletResponse response = new FakeHttpServletResponse();
+    final AtomicLong accepted = new AtomicLong();
+    final FilterChain chain = new FilterChain() {
+      @Override
+      public void doFilter(ServletRequest request, ServletResponse response) {
+        accepted.incrementAndGet();
+      }
+    };
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    long start = System.nanoTime();
+    Future<?>[] futures = new Future<?>[threads];
+    for (int i = 0; i < threads; i++) {
+      futures[i] = executor.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws IOException, ServletException {
+          for (int j = 0; j < requests; j++) {
+            filter.doFilter(request, response, chain);
+          }
+          return null;
+        }
+      });
+    }
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    long elapsedNanos = System.nanoTime() - start;
+    executor.shutdown();
+
+    long total = (long) threads * requests;
+    if (accepted.get() != total) {
+      throw new IllegalStateException(name + " rejected " + (total - accepted.get()) +
+          " requests");
+    }
+    System.out.println(String.format("%-20s %d threads: %,.0f requests/s", name, threads,
+        total * 1e9 / elapsedNanos));
+  }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.google.feedserver.client;
+
+import com.google.feedserver.testing.FeedServerClientTestUtil;
+import com.google.feedserver.util.FeedServerClientException;
+import com.google.gdata.client.GoogleService;
+import com.google.gdata.util.ServiceUnavailableException;
+
+import junit.framework.TestCase;
+
+import org.easymock.classextension.EasyMock;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for the {@link BulkExecutor} class and the bulk operations of the
+ * clients.
+ */
+public class BulkExecutorTest extends TestCase {
+
+  private BulkOptions options;
+  private List<Integer> items;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    options = new BulkOptions();
+    options.setInitialBackoffMillis(1);
+    options.setMaxBackoffMillis(5);
+    items = new ArrayList<Integer>();
+    for (int i = 0; i < 50; i++) {
+      items.add(i);
+    }
+  }
+
+  public void testResultsKeepItemOrderAndParallelismIsBounded() {
+    options.setParallelism(3);
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger maxRunning = new AtomicInteger();
+    BulkResult<Integer, Integer> result = new BulkExecutor(options).execute(items,
+        new BulkExecutor.Operation<Integer, Integer>() {
+          @Override
+          public Integer execute(Integer item) throws FeedServerClientException {
+            int now = running.incrementAndGet();
+            synchronized (maxRunning) {
+              maxRunning.set(Math.max(maxRunning.get(), now));
+            }
+            try {
+              Thread.sleep(2);
+            } catch (InterruptedException e) {
+              throw new FeedServerClientException(e);
+            } finally {
+              running.decrementAndGet();
+            }
+            return item * 2;
+          }
+        }, true);
+    assertTrue(result.isSuccessful());
+    assertTrue(maxRunning.get() <= 3);
+    for (int i = 0; i < items.size(); i++) {
+      assertEquals(i * 2, result.getResults().get(i).intValue());
+    }
+  }
+
+  public void testFailuresDoNotStopOtherItems() {
+    options.setMaxAttempts(1);
+    BulkResult<Integer, Integer> result = new BulkExecutor(options).execute(items,
+        new BulkExecutor.Operation<Integer, Integer>() {
+          @Override
+          public Integer execute(Integer item) throws FeedServerClientException {
+            if (item % 10 == 0) {
+              throw new FeedServerClientException("failed " + item);
+            }
+            return item;
+          }
+        }, true);
+    assertEquals(5, result.getFailureCount());
+    assertEquals(45, result.getResults().size());
+    for (BulkResult.ItemResult<Integer, Integer> failure : result.getFailures()) {
+      assertEquals("failed " + failure.getItem(), failure.getError().getMessage());
+    }
+  }
+
+  public void testUnavailableServerIsRetried() {
+    options.setMaxAttempts(3);
+    final ConcurrentMap<Integer, AtomicInteger> attempts =
+        new ConcurrentHashMap<Integer, AtomicInteger>();
+    BulkResult<Integer, Integer> result = new BulkExecutor(options).execute(items,
+        new BulkExecutor.Operation<Integer, Integer>() {
+          @Override
+          public Integer execute(Integer item) throws FeedServerClientException {
+            attempts.putIfAbsent(item, new AtomicInteger());
+            int attempt = attempts.get(item).incrementAndGet();
+            // even items succeed on the third attempt, odd ones never
+            if (item % 2 == 1 || attempt < 3) {
+              throw new FeedServerClientException(new ServiceUnavailableException("busy"));
+            }
+            return item;
+          }
+        }, false);
+    assertEquals(25, result.getFailureCount());
+    for (BulkResult.ItemResult<Integer, Integer> itemResult : result.getItemResults()) {
+      assertEquals(3, itemResult.getAttempts());
+    }
+  }
+
+  public void testIoErrorIsRetriedOnlyWhenIdempotent() {
+    BulkExecutor.Operation<Integer, Integer> failing =
+        new BulkExecutor.Operation<Integer, Integer>() {
+          @Override
+          public Integer execute(Integer item) throws FeedServerClientException {
+            throw new FeedServerClientException(new IOException("read timed out"));
+          }
+        };
+    BulkResult<Integer, Integer> result =
+        new BulkExecutor(options).execute(items.subList(0, 1), failing, false);
+    assertEquals(1, result.getItemResults().get(0).getAttempts());
+    result = new BulkExecutor(options).execute(items.subList(0, 1), failing, true);
+    assertEquals(BulkOptions.DEFAULT_MAX_ATTEMPTS, result.getItemResults().get(0).getAttempts());
+  }
+
+  public void testRateLimit() {
+    options.setParallelism(4);
+    options.setMaxRequestsPerSecond(200);
+    long start = System.currentTimeMillis();
+    BulkResult<Integer, Integer> result = new BulkExecutor(options).execute(items,
+        new BulkExecutor.Operation<Integer, Integer>() {
+          @Override
+          public Integer execute(Integer item) {
+            return item;
+          }
+        }, true);
+    assertTrue(result.isSuccessful());
+    // 50 requests spaced 5ms apart
+    assertTrue(System.currentTimeMillis() - start >= 49 * 5 - 10);
+  }
+
+  public void testTypelessClientInsertEntries() throws Exception {
+    FeedServerClientTestUtil testUtil = new FeedServerClientTestUtil();
+    GoogleService mockService = EasyMock.createMock(GoogleService.class);
+    URL feedUrl = new URL("http://sample.com/feed");
+    mockService.insert(EasyMock.eq(feedUrl),
+        FeedServerClientTestUtil.eqEntry(testUtil.getVehicleEntry()));
+    EasyMock.expectLastCall().andReturn(testUtil.getVehicleEntry());
+    mockService.insert(EasyMock.eq(feedUrl),
+        FeedServerClientTestUtil.eqEntry(testUtil.getVehicleEntry()));
+    EasyMock.expectLastCall().andThrow(new IOException("read timed out"));
+    EasyMock.replay(mockService);
+
+    List<Map<String, Object>> entries = new ArrayList<Map<String, Object>>();
+    entries.add(testUtil.getSampleVehicleMap());
+    entries.add(testUtil.getSampleVehicleMap());
+    options.setParallelism(1);
+    BulkResult<Map<String, Object>, Map<String, Object>> result =
+        new TypelessFeedServerClient(mockService).insertEntries(feedUrl, entries, options);
+
+    assertEquals(1, result.getResults().size());
+    assertEquals(1, result.getFailureCount());
+    assertTrue(result.getFailures().get(0).getError().getCause() instanceof IOException);
+    EasyMock.verify(mockService);
+  }
+}
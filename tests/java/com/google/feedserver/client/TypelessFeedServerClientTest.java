@@ -19,13 +19,20 @@ package com.google.feedserver.client;
 import com.google.feedserver.testing.FeedServerClientTestUtil;
 import com.google.feedserver.util.FeedServerClientException;
 import com.google.gdata.client.GoogleService;
+import com.google.gdata.data.batch.BatchOperationType;
+import com.google.gdata.data.batch.BatchStatus;
+import com.google.gdata.data.batch.BatchUtils;
 
 import junit.framework.TestCase;
 
+import org.easymock.IAnswer;
 import org.easymock.classextension.EasyMock;
 
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -134,6 +141,57 @@ public class TypelessFeedServerClientTest extends TestCase {
     EasyMock.verify(mockService);
   }
 
+  public void testBatch() throws Exception {
+    // Setup
+    EasyMock.expect(mockService.batch(EasyMock.eq(new URL(TEST_FEED_URL + "/batch")),
+        EasyMock.isA(FeedServerFeed.class))).andAnswer(new IAnswer<FeedServerFeed>() {
+      @Override
+      public FeedServerFeed answer() {
+        FeedServerFeed request = (FeedServerFeed) EasyMock.getCurrentArguments()[1];
+        assertEquals(2, request.getEntries().size());
+        FeedServerEntry first = request.getEntries().get(0);
+        assertEquals(BatchOperationType.UPDATE, BatchUtils.getBatchOperationType(first));
+        assertEquals(TEST_ENTRY_URL, first.getEditLink().getHref());
+
+        // answered out of order
+        FeedServerFeed response = new FeedServerFeed();
+        FeedServerEntry failed = new FeedServerEntry();
+        BatchUtils.setBatchId(failed, "1");
+        BatchStatus notFound = new BatchStatus();
+        notFound.setCode(404);
+        notFound.setReason("Not Found");
+        failed.addExtension(notFound);
+        response.getEntries().add(failed);
+        FeedServerEntry updated = testUtil.getVehicleEntry();
+        BatchUtils.setBatchId(updated, "0");
+        updated.addExtension(BatchStatus.createSuccessStatus());
+        response.getEntries().add(updated);
+        return response;
+      }
+    });
+    EasyMock.replay(mockService);
+
+    // Perform Test
+    Map<String, Object> entry = new HashMap<String, Object>(testUtil.getSampleVehicleMap());
+    entry.put("id", TEST_ENTRY_URL);
+    Map<String, Object> missing = new HashMap<String, Object>(testUtil.getSampleVehicleMap());
+    missing.put("id", TEST_FEED_URL + "/missing");
+    List<Map<String, Object>> entries = new ArrayList<Map<String, Object>>();
+    entries.add(entry);
+    entries.add(missing);
+    BulkResult<Map<String, Object>, Map<String, Object>> result =
+        feedServerClient.batch(new URL(TEST_FEED_URL), entries, BatchOperationType.UPDATE);
+
+    // Verify
+    EasyMock.verify(mockService);
+    assertTrue(result.getItemResults().get(0).isSuccessful());
+    assertEquals(FeedServerClientTestUtil.NAME,
+        result.getItemResults().get(0).getResult().get("name"));
+    assertEquals(1, result.getFailureCount());
+    assertSame(missing, result.getFailures().get(0).getItem());
+    assertTrue(result.getFailures().get(0).getError().getMessage().contains("404"));
+  }
+
   public void testFillMapFromXml() throws Exception {
     Map<String, Object> map = feedServerClient.getMapFromXml(FeedServerClientTestUtil.ENTRY_XML);
     assertTrue(testUtil.isEqual(testUtil.getSampleVehicleMap(), map));
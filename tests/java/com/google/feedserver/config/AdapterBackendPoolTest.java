@@ -0,0 +1,164 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.feedserver.config;
+
+import com.google.feedserver.adapters.FeedServerAdapterException;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unit tests for {@link AdapterBackendPool}
+ */
+public class AdapterBackendPoolTest extends TestCase {
+
+  private RecordingPool pool;
+  private CountingFactory factory;
+
+  private static class RecordingPool extends AdapterBackendPool<String> {
+    List<String> closed = Collections.synchronizedList(new ArrayList<String>());
+
+    @Override
+    protected void closeClient(String id, String client) {
+      closed.add(client);
+    }
+
+    @Override
+    protected String getClientStats(String client) {
+      return "stats of " + client;
+    }
+  }
+
+  private static class CountingFactory implements AdapterBackendPool.ClientFactory<String> {
+    final AtomicInteger created = new AtomicInteger();
+
+    @Override
+    public String createClient(String id) {
+      return id + "#" + created.incrementAndGet();
+    }
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    pool = new RecordingPool();
+    factory = new CountingFactory();
+  }
+
+  public void testClientIsBuiltOnce() throws Exception {
+    assertEquals("a#1", pool.getClient("a", "config", factory));
+    assertEquals("a#1", pool.getClient("a", "config", factory));
+    assertEquals("a#1", pool.getClient("a"));
+    assertEquals(1, factory.created.get());
+    assertEquals(1, pool.getHitCount());
+    assertEquals(1, pool.getCreateCount());
+  }
+
+  public void testChangedConfigurationReplacesAndClosesClient() throws Exception {
+    pool.getClient("a", "config", factory);
+    assertEquals("a#2", pool.getClient("a", "changed config", factory));
+    assertEquals(Collections.singletonList("a#1"), pool.closed);
+    assertEquals(1, pool.size());
+  }
+
+  public void testReplacedClientIsClosedAfterLastLease() throws Exception {
+    AdapterBackendPool.Lease<String> first = pool.acquireClient("a", "config", factory);
+    AdapterBackendPool.Lease<String> shared = first.share();
+    AdapterBackendPool.Lease<String> second = pool.acquireClient("a", "changed config", factory);
+    assertEquals("a#1", first.getClient());
+    assertEquals("a#2", second.getClient());
+    assertTrue(pool.closed.isEmpty());
+
+    first.release();
+    first.release();
+    assertTrue(pool.closed.isEmpty());
+    shared.release();
+    assertEquals(Collections.singletonList("a#1"), pool.closed);
+
+    second.release();
+    pool.removeClient("a");
+    assertEquals(2, pool.closed.size());
+  }
+
+  public void testRemovedClientInUseIsClosedOnRelease() throws Exception {
+    AdapterBackendPool.Lease<String> lease = pool.acquireClient("a", "config", factory);
+    pool.close();
+    assertTrue(pool.closed.isEmpty());
+    assertEquals("a#2", pool.getClient("a", "config", factory));
+    lease.release();
+    assertEquals(Collections.singletonList("a#1"), pool.closed);
+  }
+
+  public void testRemoveAndClose() throws Exception {
+    pool.getClient("a", "config", factory);
+    pool.getClient("b", "config", factory);
+    assertEquals("stats of a#1", pool.getClientStats().get("a"));
+    pool.removeClient("a");
+    assertNull(pool.getClient("a"));
+    pool.close();
+    assertEquals(0, pool.size());
+    assertEquals(2, pool.closed.size());
+    assertEquals(2, pool.getCloseCount());
+  }
+
+  public void testConcurrentRequestsShareOneClient() throws Exception {
+    final CountDownLatch start = new CountDownLatch(1);
+    final List<String> clients = Collections.synchronizedList(new ArrayList<String>());
+    final AdapterBackendPool.ClientFactory<String> slowFactory =
+        new AdapterBackendPool.ClientFactory<String>() {
+          @Override
+          public String createClient(String id) {
+            try {
+              Thread.sleep(20);
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+            return factory.createClient(id);
+          }
+        };
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int i = 0; i < 8; i++) {
+      Thread thread = new Thread() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+            clients.add(pool.getClient("a", "config", slowFactory));
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          } catch (FeedServerAdapterException e) {
+            throw new RuntimeException(e);
+          }
+        }
+      };
+      thread.start();
+      threads.add(thread);
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(8, clients.size());
+    assertEquals(1, factory.created.get());
+    assertTrue(pool.closed.isEmpty());
+  }
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.feedserver.configstore;
+
+import com.google.feedserver.config.NamespacedAdapterConfiguration;
+import com.google.feedserver.config.NamespacedFeedConfiguration;
+import com.google.feedserver.samples.configstore.SampleFileSystemFeedConfigStore;
+import com.google.feedserver.testing.TestUtil;
+
+import org.apache.abdera.protocol.server.provider.managed.CollectionAdapterConfiguration;
+import org.apache.abdera.protocol.server.provider.managed.FeedConfiguration;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit tests for {@link CachingFeedConfigStore}
+ */
+public class CachingFeedConfigStoreTest extends TestCase {
+
+  private static final String NAMESPACE = TestUtil.DOMAIN_NAME;
+
+  private TestUtil testUtil;
+  private CountingFeedConfigStore countingStore;
+  private CachingFeedConfigStore cachingStore;
+  private RecordingListener listener;
+  private NamespacedFeedConfiguration feedConfiguration;
+
+  /**
+   * Counts the reads that reach the file system store
+   */
+  private static class CountingFeedConfigStore extends SampleFileSystemFeedConfigStore {
+    int feedReads;
+    int adapterReads;
+
+    @Override
+    public FeedConfiguration getFeedConfiguration(String namespace, String feedId, String userId)
+        throws FeedConfigStoreException {
+      feedReads++;
+      return super.getFeedConfiguration(namespace, feedId, userId);
+    }
+
+    @Override
+    public CollectionAdapterConfiguration getAdapterConfiguration(String namespace,
+        String adapterName) throws FeedConfigStoreException {
+      adapterReads++;
+      return super.getAdapterConfiguration(namespace, adapterName);
+    }
+  }
+
+  private static class RecordingListener implements FeedConfigStoreListener {
+    List<String> events = new ArrayList<String>();
+
+    @Override
+    public void feedChanged(String namespace, String feedId, String userId) {
+      events.add("feed:" + feedId);
+    }
+
+    @Override
+    public void adapterConfigurationChanged(String namespace, String adapterName) {
+      events.add("adapter:" + adapterName);
+    }
+
+    @Override
+    public void namespaceChanged(String namespace) {
+      events.add("namespace:" + namespace);
+    }
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    testUtil = new TestUtil();
+    testUtil.setup(false);
+    countingStore = new CountingFeedConfigStore();
+    cachingStore = new CachingFeedConfigStore(countingStore);
+    listener = new RecordingListener();
+    cachingStore.addListener(listener);
+    feedConfiguration = testUtil.getFeedWithAdaptersWithNoWrappers();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    if (countingStore.hasFeed(NAMESPACE, feedConfiguration.getFeedId(), null)) {
+      countingStore.deleteFeed(NAMESPACE, feedConfiguration.getFeedId(), null);
+    }
+    cachingStore.close();
+    testUtil.tearDown();
+    super.tearDown();
+  }
+
+  public void testFeedConfigurationIsCachedAndCopied() throws Exception {
+    cachingStore.addFeed(NAMESPACE, feedConfiguration);
+
+    NamespacedFeedConfiguration first =
+        (NamespacedFeedConfiguration) cachingStore.getFeedConfiguration(NAMESPACE,
+            feedConfiguration.getFeedId(), null);
+    NamespacedFeedConfiguration second =
+        (NamespacedFeedConfiguration) cachingStore.getFeedConfiguration(NAMESPACE,
+            feedConfiguration.getFeedId(), null);
+    assertEquals(1, countingStore.feedReads);
+    assertNotSame(first, second);
+    assertNotSame(first.getAdapterConfiguration(), second.getAdapterConfiguration());
+
+    String configData = second.getAdapterConfiguration().getConfigData();
+    first.getAdapterConfiguration().setConfigData("modified");
+    NamespacedFeedConfiguration third =
+        (NamespacedFeedConfiguration) cachingStore.getFeedConfiguration(NAMESPACE,
+            feedConfiguration.getFeedId(), null);
+    assertEquals(configData, third.getAdapterConfiguration().getConfigData());
+    assertEquals(1, countingStore.feedReads);
+  }
+
+  public void testAdapterConfigurationIsCachedAndCopied() throws Exception {
+    NamespacedAdapterConfiguration first =
+        (NamespacedAdapterConfiguration) cachingStore.getAdapterConfiguration(NAMESPACE,
+            TestUtil.SAMPLE_ADAPTER_WITH_IMPLICIT_MIXINS);
+    first.removeImplicitMixins();
+    NamespacedAdapterConfiguration second =
+        (NamespacedAdapterConfiguration) cachingStore.getAdapterConfiguration(NAMESPACE,
+            TestUtil.SAMPLE_ADAPTER_WITH_IMPLICIT_MIXINS);
+    assertEquals(1, countingStore.adapterReads);
+    assertEquals(3, second.getImplicitMixins().length);
+  }
+
+  public void testWriteThroughInvalidation() throws Exception {
+    cachingStore.addFeed(NAMESPACE, feedConfiguration);
+    cachingStore.getFeedConfiguration(NAMESPACE, feedConfiguration.getFeedId(), null);
+    cachingStore.deleteFeed(NAMESPACE, feedConfiguration.getFeedId(), null);
+
+    assertEquals(2, listener.events.size());
+    assertEquals("feed:" + feedConfiguration.getFeedId(), listener.events.get(1));
+    assertFalse(cachingStore.hasFeed(NAMESPACE, feedConfiguration.getFeedId(), null));
+    try {
+      cachingStore.getFeedConfiguration(NAMESPACE, feedConfiguration.getFeedId(), null);
+      fail();
+    } catch (FeedConfigStoreException e) {
+      assertEquals(FeedConfigStoreException.Reason.FEED_DOES_NOT_EXIST, e.getReason());
+    }
+  }
+
+  public void testMissingFeedIsRemembered() throws Exception {
+    assertMissingFeed(cachingStore, FeedConfigStoreException.Reason.FEED_DOES_NOT_EXIST);
+    assertMissingFeed(cachingStore, FeedConfigStoreException.Reason.FEED_DOES_NOT_EXIST);
+    assertEquals(1, countingStore.feedReads);
+    assertEquals(1, cachingStore.getNegativeHitCount());
+
+    cachingStore.addFeed(NAMESPACE, feedConfiguration);
+    assertNotNull(cachingStore.getFeedConfiguration(NAMESPACE, feedConfiguration.getFeedId(),
+        null));
+    assertEquals(2, countingStore.feedReads);
+  }
+
+  public void testMissingAdapterConfigurationIsRemembered() throws Exception {
+    for (int i = 0; i < 3; i++) {
+      try {
+        cachingStore.getAdapterConfiguration(NAMESPACE, "noSuchAdapter");
+        fail();
+      } catch (FeedConfigStoreException e) {
+        assertEquals(FeedConfigStoreException.Reason.ADAPTER_CONFIG_DOES_NOT_EXIST,
+            e.getReason());
+      }
+    }
+    assertEquals(1, countingStore.adapterReads);
+  }
+
+  public void testMissingFeedExpires() throws Exception {
+    CachingFeedConfigStore store = new CachingFeedConfigStore(countingStore, 1, 10);
+    assertMissingFeed(store, FeedConfigStoreException.Reason.FEED_DOES_NOT_EXIST);
+    Thread.sleep(10);
+    assertMissingFeed(store, FeedConfigStoreException.Reason.FEED_DOES_NOT_EXIST);
+    assertEquals(2, countingStore.feedReads);
+  }
+
+  public void testNegativeCacheIsBounded() throws Exception {
+    CachingFeedConfigStore store = new CachingFeedConfigStore(countingStore, 60000, 1);
+    assertMissingFeed(store, FeedConfigStoreException.Reason.FEED_DOES_NOT_EXIST);
+    try {
+      store.getFeedConfiguration(NAMESPACE, "otherMissingFeed", null);
+      fail();
+    } catch (FeedConfigStoreException e) {
+      // expected
+    }
+    try {
+      store.getFeedConfiguration(NAMESPACE, "otherMissingFeed", null);
+      fail();
+    } catch (FeedConfigStoreException e) {
+      // expected
+    }
+    assertMissingFeed(store, FeedConfigStoreException.Reason.FEED_DOES_NOT_EXIST);
+    assertEquals(3, countingStore.feedReads);
+  }
+
+  public void testPositiveCacheIsBounded() throws Exception {
+    CachingFeedConfigStore store = new CachingFeedConfigStore(countingStore, 1, 60000, 10);
+    store.getAdapterConfiguration(NAMESPACE, TestUtil.SAMPLE_ADAPTER_WITH_IMPLICIT_MIXINS);
+    store.getAdapterConfiguration(NAMESPACE, TestUtil.TEST_ADAPTER_WITH_WRAPPER);
+    store.getAdapterConfiguration(NAMESPACE, TestUtil.TEST_ADAPTER_WITH_WRAPPER);
+    assertEquals(1, store.size());
+    assertEquals(3, countingStore.adapterReads);
+
+    store.getAdapterConfiguration(NAMESPACE, TestUtil.SAMPLE_ADAPTER_WITH_IMPLICIT_MIXINS);
+    assertEquals(3, countingStore.adapterReads);
+  }
+
+  private void assertMissingFeed(FeedConfigStore store, FeedConfigStoreException.Reason reason) {
+    try {
+      store.getFeedConfiguration(NAMESPACE, feedConfiguration.getFeedId(), null);
+      fail();
+    } catch (FeedConfigStoreException e) {
+      assertEquals(reason, e.getReason());
+    }
+  }
+
+  public void testInvalidateNamespace() throws Exception {
+    cachingStore.getAdapterConfiguration(NAMESPACE, TestUtil.TEST_ADAPTER_WITH_WRAPPER);
+    cachingStore.invalidateNamespace(NAMESPACE);
+    cachingStore.getAdapterConfiguration(NAMESPACE, TestUtil.TEST_ADAPTER_WITH_WRAPPER);
+    assertEquals(2, countingStore.adapterReads);
+    assertEquals("namespace:" + NAMESPACE, listener.events.get(0));
+  }
+
+  public void testNamespaceDirectoryCreatedLaterIsWatched() throws Exception {
+    File baseDirectory = File.createTempFile("feedconfig", "");
+    assertTrue(baseDirectory.delete());
+    assertTrue(baseDirectory.mkdir());
+    String namespace = "late.example.com";
+    File namespaceDirectory = new File(baseDirectory, namespace);
+    File configFile = new File(namespaceDirectory, "feed.xml");
+    try {
+      cachingStore.watch(baseDirectory);
+      readAdapterConfiguration(namespace);
+
+      assertTrue(namespaceDirectory.mkdir());
+      readAdapterConfiguration(namespace);
+      new FileOutputStream(configFile).close();
+      long deadline = System.currentTimeMillis() + 10000;
+      while (!listener.events.contains("namespace:" + namespace)
+          && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      assertTrue(listener.events.toString(),
+          listener.events.contains("namespace:" + namespace));
+    } finally {
+      configFile.delete();
+      namespaceDirectory.delete();
+      baseDirectory.delete();
+    }
+  }
+
+  private void readAdapterConfiguration(String namespace) {
+    try {
+      cachingStore.getAdapterConfiguration(namespace, TestUtil.TEST_ADAPTER_WITH_WRAPPER);
+    } catch (FeedConfigStoreException e) {
+      // the namespace is not known to the file system store
+    }
+  }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.google.feedserver.filters;
+
+import junit.framework.TestCase;
+
+import net.oauth.OAuth;
+import net.oauth.OAuthAccessor;
+import net.oauth.OAuthConsumer;
+import net.oauth.OAuthMessage;
+import net.oauth.OAuthProblemException;
+import net.oauth.OAuthServiceProvider;
+import net.oauth.signature.OAuthSignatureMethod;
+import net.oauth.signature.RSA_SHA1;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Unit tests for {@link ReplayProtectingOAuthValidator},
+ * {@link OAuthNonceStore} and {@link OAuthConsumerCache}
+ */
+public class ReplayProtectingOAuthValidatorTest extends TestCase {
+
+  private static final String CONSUMER_KEY = "gadgets.example.com";
+  private static final String URL = "http://localhost:8080/feeds/contact";
+
+  private KeyPair keyPair;
+  private OAuthServiceProvider provider;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+    generator.initialize(1024);
+    keyPair = generator.generateKeyPair();
+    provider = new OAuthServiceProvider(null, null, null);
+  }
+
+  /**
+   * Serves the public key of {@link #keyPair} as text and counts lookups
+   */
+  private class TestKeyManager extends SimpleKeyMananger {
+    int lookups;
+
+    @Override
+    public OAuthConsumer getOAuthConsumer(OAuthServiceProvider provider, String consumerId,
+        String oAuthSignatureMethod) {
+      lookups++;
+      OAuthConsumer consumer = new OAuthConsumer(null, consumerId, null, provider);
+      consumer.setProperty(RSA_SHA1.PUBLIC_KEY,
+          OAuthSignatureMethod.base64Encode(keyPair.getPublic().getEncoded()));
+      return consumer;
+    }
+  }
+
+  private OAuthMessage sign(String nonce) throws Exception {
+    OAuthConsumer signer = new OAuthConsumer(null, CONSUMER_KEY, null, provider);
+    signer.setProperty(RSA_SHA1.PRIVATE_KEY, keyPair.getPrivate());
+    Collection<Map.Entry<String, String>> parameters =
+        new ArrayList<Map.Entry<String, String>>();
+    parameters.add(new OAuth.Parameter(OAuth.OAUTH_SIGNATURE_METHOD, OAuth.RSA_SHA1));
+    parameters.add(new OAuth.Parameter(OAuth.OAUTH_NONCE, nonce));
+    parameters.add(new OAuth.Parameter("opensocial_viewer_email", "user@example.com"));
+    OAuthMessage message = new OAuthMessage(OAuthMessage.GET, URL, parameters);
+    message.addRequiredParameters(new OAuthAccessor(signer));
+    return message;
+  }
+
+  public void testConsumerKeysAreParsedOnce() throws Exception {
+    TestKeyManager keyManager = new TestKeyManager();
+    OAuthConsumerCache cache = new OAuthConsumerCache(60000);
+    OAuthConsumer consumer =
+        cache.getOAuthConsumer(keyManager, provider, CONSUMER_KEY, OAuth.RSA_SHA1);
+    assertTrue(consumer.getProperty(RSA_SHA1.PUBLIC_KEY) instanceof PublicKey);
+    assertSame(consumer,
+        cache.getOAuthConsumer(keyManager, provider, CONSUMER_KEY, OAuth.RSA_SHA1));
+    assertEquals(1, keyManager.lookups);
+
+    // the parsed key verifies signatures
+    sign("1").validateMessage(new OAuthAccessor(consumer), new ReplayProtectingOAuthValidator(10));
+  }
+
+  public void testCertificateIsParsed() {
+    OAuthConsumerCache cache = new OAuthConsumerCache(60000);
+    OAuthConsumer consumer =
+        cache.getOAuthConsumer(new SimpleKeyMananger(), provider, CONSUMER_KEY, OAuth.RSA_SHA1);
+    assertTrue(consumer.getProperty(RSA_SHA1.X509_CERTIFICATE)
+        instanceof java.security.cert.X509Certificate);
+  }
+
+  public void testReplayedMessageIsRefused() throws Exception {
+    OAuthConsumer consumer = new OAuthConsumerCache(60000).getOAuthConsumer(
+        new TestKeyManager(), provider, CONSUMER_KEY, OAuth.RSA_SHA1);
+    ReplayProtectingOAuthValidator validator = new ReplayProtectingOAuthValidator(10);
+    OAuthMessage message = sign("1");
+    message.validateMessage(new OAuthAccessor(consumer), validator);
+    try {
+      message.validateMessage(new OAuthAccessor(consumer), validator);
+      fail();
+    } catch (OAuthProblemException e) {
+      assertEquals(ReplayProtectingOAuthValidator.PROBLEM_NONCE_USED, e.getProblem());
+    }
+    sign("2").validateMessage(new OAuthAccessor(consumer), validator);
+    assertEquals(2, validator.getNonceStore().size());
+  }
+
+  public void testForgedMessageDoesNotUseNonce() throws Exception {
+    OAuthConsumer consumer = new OAuthConsumerCache(60000).getOAuthConsumer(
+        new TestKeyManager(), provider, CONSUMER_KEY, OAuth.RSA_SHA1);
+    ReplayProtectingOAuthValidator validator = new ReplayProtectingOAuthValidator(10);
+    OAuthMessage message = sign("1");
+    OAuthMessage forged = new OAuthMessage(OAuthMessage.GET, URL + "?x=1",
+        message.getParameters());
+    try {
+      forged.validateMessage(new OAuthAccessor(consumer), validator);
+      fail();
+    } catch (OAuthProblemException e) {
+      // expected
+    }
+    assertEquals(0, validator.getNonceStore().size());
+    message.validateMessage(new OAuthAccessor(consumer), validator);
+  }
+
+  public void testNonceStoreDropsExpiredBuckets() {
+    final long[] now = new long[] {1000000};
+    OAuthNonceStore store = new OAuthNonceStore(5000, 1000, 2) {
+      @Override
+      protected long currentTimeMillis() {
+        return now[0];
+      }
+    };
+    assertTrue(store.add(CONSUMER_KEY, now[0], "a"));
+    assertFalse(store.add(CONSUMER_KEY, now[0], "a"));
+    assertTrue(store.add("other", now[0], "a"));
+    assertTrue(store.add(CONSUMER_KEY, now[0], "b"));
+    // quota used up
+    assertFalse(store.add(CONSUMER_KEY, now[0], "c"));
+    assertTrue(store.isFull(CONSUMER_KEY));
+
+    now[0] += 7000;
+    assertTrue(store.add(CONSUMER_KEY, now[0], "c"));
+    assertEquals(1, store.size());
+  }
+
+  public void testFullConsumerDoesNotLockOutOthers() {
+    OAuthNonceStore store = new OAuthNonceStore(5000, 1000, 2);
+    long now = System.currentTimeMillis();
+    assertTrue(store.add(CONSUMER_KEY, now, "a"));
+    assertTrue(store.add(CONSUMER_KEY, now, "b"));
+    assertFalse(store.add(CONSUMER_KEY, now, "c"));
+    assertTrue(store.isFull(CONSUMER_KEY));
+
+    assertFalse(store.isFull("other"));
+    assertTrue(store.add("other", now, "c"));
+    assertEquals(3, store.size());
+  }
+
+  public void testConcurrentPurgesKeepCountsExact() throws Exception {
+    final OAuthNonceStore store = new OAuthNonceStore(20, 5, 1000000);
+    final long end = System.currentTimeMillis() + 300;
+    Thread[] threads = new Thread[8];
+    for (int t = 0; t < threads.length; t++) {
+      final String consumerKey = "consumer" + (t % 2);
+      final int thread = t;
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          for (int i = 0; System.currentTimeMillis() < end; i++) {
+            store.add(consumerKey, System.currentTimeMillis(), thread + "-" + i);
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    Thread.sleep(50);
+    assertTrue(store.add("consumer0", System.currentTimeMillis(), "last"));
+    assertEquals(1, store.size());
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.feedserver.manager;
+
+import com.google.feedserver.adapters.AbstractManagedCollectionAdapter;
+import com.google.feedserver.testing.TestUtil;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link AdapterChainCache}
+ */
+public class AdapterChainCacheTest extends TestCase {
+
+  private static final String FEED = "feed";
+  private static final String USER = "john.doe@example.com";
+
+  private TestUtil testUtil;
+  private AbstractManagedCollectionAdapter adapter;
+  private AbstractManagedCollectionAdapter otherAdapter;
+
+  @Override
+  protected void setUp() throws Exception {
+    testUtil = new TestUtil();
+    testUtil.setup();
+    adapter = testUtil.getBasicAdapterWithFeedConfigWithNoWrappers();
+    otherAdapter = testUtil.getBasicAdapterWithFeedConfigWithWrappers();
+    super.setUp();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    testUtil.tearDown();
+    super.tearDown();
+  }
+
+  public void testHitAndMiss() {
+    AdapterChainCache cache = new AdapterChainCache();
+    assertNull(cache.get(TestUtil.DOMAIN_NAME, FEED, null));
+    assertSame(adapter,
+        cache.put(TestUtil.DOMAIN_NAME, FEED, null, adapter, cache.getGeneration()));
+    assertSame(adapter, cache.get(TestUtil.DOMAIN_NAME, FEED, null));
+    assertNull(cache.get(TestUtil.DOMAIN_NAME, FEED, USER));
+    assertEquals(1, cache.getHitCount());
+    assertEquals(2, cache.getMissCount());
+  }
+
+  public void testFirstPutWins() {
+    AdapterChainCache cache = new AdapterChainCache();
+    cache.put(TestUtil.DOMAIN_NAME, FEED, USER, adapter, cache.getGeneration());
+    assertSame(adapter,
+        cache.put(TestUtil.DOMAIN_NAME, FEED, USER, otherAdapter, cache.getGeneration()));
+    assertSame(adapter, cache.get(TestUtil.DOMAIN_NAME, FEED, USER));
+  }
+
+  public void testEviction() {
+    AdapterChainCache cache = new AdapterChainCache(2);
+    cache.put(TestUtil.DOMAIN_NAME, "feed1", null, adapter, cache.getGeneration());
+    cache.put(TestUtil.DOMAIN_NAME, "feed2", null, adapter, cache.getGeneration());
+    cache.put(TestUtil.DOMAIN_NAME, "feed3", null, adapter, cache.getGeneration());
+    assertEquals(2, cache.size());
+    assertEquals(1, cache.getEvictionCount());
+    assertNull(cache.get(TestUtil.DOMAIN_NAME, "feed1", null));
+    assertNotNull(cache.get(TestUtil.DOMAIN_NAME, "feed3", null));
+  }
+
+  public void testZeroSizeDisablesCaching() {
+    AdapterChainCache cache = new AdapterChainCache(0);
+    assertSame(adapter,
+        cache.put(TestUtil.DOMAIN_NAME, FEED, null, adapter, cache.getGeneration()));
+    assertEquals(0, cache.size());
+  }
+
+  public void testInvalidate() {
+    AdapterChainCache cache = new AdapterChainCache();
+    cache.put(TestUtil.DOMAIN_NAME, FEED, null, adapter, cache.getGeneration());
+    cache.put(TestUtil.DOMAIN_NAME, FEED, USER, adapter, cache.getGeneration());
+    cache.put(TestUtil.DOMAIN_NAME, "other", null, adapter, cache.getGeneration());
+    cache.put("otherdomain.com", FEED, null, adapter, cache.getGeneration());
+
+    cache.invalidate(TestUtil.DOMAIN_NAME, FEED, USER);
+    assertNull(cache.get(TestUtil.DOMAIN_NAME, FEED, USER));
+    assertNotNull(cache.get(TestUtil.DOMAIN_NAME, FEED, null));
+
+    cache.put(TestUtil.DOMAIN_NAME, FEED, USER, adapter, cache.getGeneration());
+    cache.invalidate(TestUtil.DOMAIN_NAME, FEED);
+    assertNull(cache.get(TestUtil.DOMAIN_NAME, FEED, null));
+    assertNull(cache.get(TestUtil.DOMAIN_NAME, FEED, USER));
+    assertNotNull(cache.get(TestUtil.DOMAIN_NAME, "other", null));
+
+    cache.invalidateNamespace(TestUtil.DOMAIN_NAME);
+    assertNull(cache.get(TestUtil.DOMAIN_NAME, "other", null));
+    assertNotNull(cache.get("otherdomain.com", FEED, null));
+
+    cache.invalidateAll();
+    assertEquals(0, cache.size());
+  }
+
+  public void testChainBuiltBeforeInvalidationIsNotCached() {
+    AdapterChainCache cache = new AdapterChainCache();
+    long generation = cache.getGeneration();
+    cache.feedChanged(TestUtil.DOMAIN_NAME, FEED, null);
+    assertSame(adapter, cache.put(TestUtil.DOMAIN_NAME, FEED, null, adapter, generation));
+    assertNull(cache.get(TestUtil.DOMAIN_NAME, FEED, null));
+    assertEquals(0, cache.size());
+  }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.feedserver.manager;
+
+import com.google.feedserver.adapters.AbstractManagedCollectionAdapter;
+import com.google.feedserver.testing.TestUtil;
+
+import org.apache.abdera.protocol.server.CollectionAdapter;
+
+import java.lang.reflect.Constructor;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Contention benchmark comparing wrapper creation through
+ * {@link FeedServerAdapterManager#createWrapper} (constructor registry) with
+ * the previous synchronized, per-call reflective lookup. Run with:
+ * <pre>
+ * java com.google.feedserver.manager.AdapterFactoryBenchmark [iterationsPerThread]
+ * </pre>
+ */
+public class AdapterFactoryBenchmark {
+
+  private static final int[] THREAD_COUNTS = {1, 8, 64};
+
+  private static final Class<?>[] WRAPPER_PARAMS =
+      new Class[] {AbstractManagedCollectionAdapter.class, String.class};
+
+  private final AbstractManagedCollectionAdapter target;
+
+  public AdapterFactoryBenchmark() throws Exception {
+    TestUtil testUtil = new TestUtil();
+    testUtil.setup();
+    target = testUtil.getBasicAdapterWithFeedConfigWithNoWrappers();
+  }
+
+  public static void main(String[] args) throws Exception {
+    int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+    AdapterFactoryBenchmark benchmark = new AdapterFactoryBenchmark();
+    // warm up both paths
+    benchmark.run(false, 4, iterations / 10);
+    benchmark.run(true, 4, iterations / 10);
+    for (int threads : THREAD_COUNTS) {
+      long legacy = benchmark.run(false, threads, iterations);
+      long registry = benchmark.run(true, threads, iterations);
+      System.out.println(String.format(
+          "threads=%-3d synchronized=%,12d ops/s   registry=%,12d ops/s", threads,
+          opsPerSecond(threads, iterations, legacy), opsPerSecond(threads, iterations, registry)));
+    }
+  }
+
+  private static long opsPerSecond(int threads, int iterations, long nanos) {
+    return (long) (threads * (double) iterations * 1000000000L / nanos);
+  }
+
+  /**
+   * Creates wrappers from {@code threads} threads concurrently
+   *
+   * @return elapsed time in nanoseconds
+   */
+  long run(final boolean useRegistry, int threads, final int iterations) throws Exception {
+    final CountDownLatch start = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(threads);
+    for (int t = 0; t < threads; t++) {
+      new Thread() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+            for (int i = 0; i < iterations; i++) {
+              if (useRegistry) {
+                FeedServerAdapterManager.createWrapper(TestUtil.WRAPPER_CLASS, target,
+                    TestUtil.TEST_WRAPPER1_CONFIG);
+              } else {
+                createAdapterSynchronized(TestUtil.WRAPPER_CLASS, WRAPPER_PARAMS, target,
+                    TestUtil.TEST_WRAPPER1_CONFIG);
+              }
+            }
+          } catch (Exception e) {
+            throw new RuntimeException(e);
+          } finally {
+            done.countDown();
+          }
+        }
+      }.start();
+    }
+    long begin = System.nanoTime();
+    start.countDown();
+    done.await();
+    return System.nanoTime() - begin;
+  }
+
+  /**
+   * The adapter creation path used before the constructor registry was added
+   */
+  private static synchronized CollectionAdapter createAdapterSynchronized(String adapterType,
+      Class<?>[] paramClasses, Object... objects) throws Exception {
+    ClassLoader cl = Thread.currentThread().getContextClassLoader();
+    Class<?> adapterClass = cl.loadClass(adapterType);
+    adapterClass.getConstructors();
+    Constructor<?> c = adapterClass.getConstructor(paramClasses);
+    c.setAccessible(true);
+    return (CollectionAdapter) c.newInstance(objects);
+  }
+}
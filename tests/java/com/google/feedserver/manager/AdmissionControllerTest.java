@@ -0,0 +1,170 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.feedserver.manager;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Unit tests for {@link AdmissionController}
+ */
+public class AdmissionControllerTest extends TestCase {
+
+  public void testDisabledControllerAdmitsEverything() throws Exception {
+    AdmissionController controller = new AdmissionController(0, 0, 0, 0, 0);
+    assertFalse(controller.isEnabled());
+    for (int i = 0; i < 10; i++) {
+      controller.admit("example.com", "contact");
+    }
+    assertTrue(controller.getStats().isEmpty());
+  }
+
+  public void testFullQueueIsRejectedWith429() throws Exception {
+    final AdmissionController controller = new AdmissionController(1, 1, 0, 0, 10000);
+    AdmissionController.Admission first = controller.admit("example.com", "contact");
+    final CountDownLatch admitted = new CountDownLatch(1);
+    final AtomicReference<AdmissionController.Admission> queued =
+        new AtomicReference<AdmissionController.Admission>();
+    Thread waiter = new Thread() {
+      @Override
+      public void run() {
+        try {
+          queued.set(controller.admit("example.com", "contact"));
+          admitted.countDown();
+        } catch (AdmissionController.RejectedException e) {
+          // leaves the latch up
+        }
+      }
+    };
+    waiter.start();
+    while (!controller.getStats().get("example.com").contains("queued=1")) {
+      Thread.sleep(5);
+    }
+    try {
+      controller.admit("example.com", "other");
+      fail();
+    } catch (AdmissionController.RejectedException e) {
+      assertEquals(AdmissionController.STATUS_TOO_MANY_REQUESTS, e.getStatus());
+      assertTrue(e.getRetryAfterSeconds() >= 1);
+    }
+    // other namespaces are not affected
+    controller.admit("testdomain.com", "contact").release();
+    first.release();
+    assertTrue(admitted.await(10, TimeUnit.SECONDS));
+    queued.get().release();
+    assertTrue(controller.getStats().get("example.com").contains("rejected=1"));
+    assertTrue(controller.getStats().get("example.com").contains("inFlight=0"));
+  }
+
+  public void testLongWaitIsRejectedWith503() throws Exception {
+    AdmissionController controller = new AdmissionController(0, 0, 1, 5, 20);
+    AdmissionController.Admission first = controller.admit("example.com", "contact");
+    try {
+      controller.admit("example.com", "contact");
+      fail();
+    } catch (AdmissionController.RejectedException e) {
+      assertEquals(AdmissionController.STATUS_SERVICE_UNAVAILABLE, e.getStatus());
+    }
+    // the feed limit does not hold back other feeds of the namespace
+    controller.admit("example.com", "other").release();
+    first.release();
+    first.release();
+    controller.admit("example.com", "contact").release();
+    String stats = controller.getStats().get("example.com/contact");
+    assertTrue(stats, stats.contains("admitted=2"));
+    assertTrue(stats, stats.contains("timedOut=1"));
+    assertTrue(stats, stats.contains("inFlight=0"));
+  }
+
+  public void testFeedRejectionReleasesNamespacePermit() throws Exception {
+    AdmissionController controller = new AdmissionController(2, 0, 1, 0, 0);
+    AdmissionController.Admission first = controller.admit("example.com", "contact");
+    try {
+      controller.admit("example.com", "contact");
+      fail();
+    } catch (AdmissionController.RejectedException e) {
+      assertEquals(AdmissionController.STATUS_TOO_MANY_REQUESTS, e.getStatus());
+    }
+    assertTrue(controller.getStats().get("example.com").contains("inFlight=1"));
+    first.release();
+  }
+
+  public void testTrackedNamespacesAreBounded() throws Exception {
+    AdmissionController controller = new AdmissionController(1, 0, 0, 0, 0, 2);
+    for (int i = 0; i < 10; i++) {
+      controller.admit("namespace" + i, null).release();
+    }
+    assertTrue(controller.getStats().size() <= 2);
+
+    AdmissionController.Admission first = controller.admit("a.com", null);
+    AdmissionController.Admission second = controller.admit("b.com", null);
+    try {
+      controller.admit("c.com", null);
+      fail();
+    } catch (AdmissionController.RejectedException e) {
+      assertEquals(AdmissionController.STATUS_SERVICE_UNAVAILABLE, e.getStatus());
+    }
+    first.release();
+    controller.admit("c.com", null).release();
+    second.release();
+  }
+
+  public void testDroppedLimitersAreNotShared() throws Exception {
+    // more namespaces than tracked ones keep dropping and recreating limiters
+    final AdmissionController controller = new AdmissionController(1, 0, 0, 0, 0, 2);
+    final String[] namespaces = {"a.com", "b.com", "c.com"};
+    final AtomicInteger[] inFlight = new AtomicInteger[namespaces.length];
+    for (int i = 0; i < namespaces.length; i++) {
+      inFlight[i] = new AtomicInteger();
+    }
+    final AtomicBoolean overLimit = new AtomicBoolean();
+    Thread[] threads = new Thread[8];
+    for (int t = 0; t < threads.length; t++) {
+      final int offset = t;
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          for (int i = 0; i < 20000; i++) {
+            int n = (i + offset) % namespaces.length;
+            AdmissionController.Admission admission;
+            try {
+              admission = controller.admit(namespaces[n], null);
+            } catch (AdmissionController.RejectedException e) {
+              continue;
+            }
+            if (inFlight[n].incrementAndGet() > 1) {
+              overLimit.set(true);
+            }
+            Thread.yield();
+            inFlight[n].decrementAndGet();
+            admission.release();
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertFalse(overLimit.get());
+  }
+}
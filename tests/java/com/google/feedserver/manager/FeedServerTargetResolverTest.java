@@ -0,0 +1,123 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.feedserver.manager;
+
+import com.google.feedserver.adapters.AbstractManagedCollectionAdapter;
+
+import junit.framework.TestCase;
+
+import org.apache.abdera.protocol.server.RequestContext;
+import org.apache.abdera.protocol.server.Target;
+import org.apache.abdera.protocol.server.TargetType;
+import org.apache.abdera.protocol.server.impl.RegexTargetResolver;
+import org.easymock.classextension.EasyMock;
+
+import java.util.Arrays;
+
+/**
+ * Unit tests for {@link FeedServerTargetResolver}
+ */
+public class FeedServerTargetResolverTest extends TestCase {
+
+  static final String[] PATHS = {
+      "/example.com/", "/example.com/?alt=json", "/example.com",
+      "/example.com/contact", "/example.com/contact?alt=json&start-index=2",
+      "/example.com/contact;categories", "/example.com/a;b;categories",
+      "/example.com/;categories", "/example.com/contact;categories?x=1",
+      "/example.com/contact;x", "/example.com/contact/", "/example.com//1",
+      "/example.com/contact/1", "/example.com/contact/1?alt=json", "/example.com/con;tact/1;v",
+      "/example.com/contact/1/", "/example.com/user/john", "/example.com/user/john/",
+      "/example.com/user/john/contact", "/example.com/user/john/contact?q=a/b",
+      "/example.com/user/john/con;tact", "/example.com/other/john/contact",
+      "/example.com/user/john/contact/1", "/example.com/user/john/contact/1?alt=json",
+      "/example.com/user/john/contact/1/2", "/example.com/other/john/contact/1",
+      "/example.com/contact#top", "/example.com/contact?a#b", "", "/", "//", "contact",
+      "/example.com/contact?", "/example.com/contact/1?a=/b/c/d/e"};
+
+  /**
+   * Creates the regular expression resolver that {@link FeedServerProvider}
+   * used before {@link FeedServerTargetResolver}
+   */
+  static RegexTargetResolver createRegexTargetResolver() {
+    RegexTargetResolver targetResolver = new RegexTargetResolver();
+    targetResolver.setPattern("/([^/#?]+)/(\\?[^#]*)?", TargetType.TYPE_SERVICE,
+        AbstractManagedCollectionAdapter.PARAM_NAMESPACE);
+    targetResolver.setPattern("/([^/#?]+)/([^/#?]+);categories", TargetType.TYPE_CATEGORIES,
+        AbstractManagedCollectionAdapter.PARAM_NAMESPACE,
+        AbstractManagedCollectionAdapter.CATEGORY_PARAMETER);
+    targetResolver.setPattern("/([^/#?]+)/([^/#?;]+)(\\?[^#]*)?",
+        TargetType.TYPE_COLLECTION, AbstractManagedCollectionAdapter.PARAM_NAMESPACE,
+        AbstractManagedCollectionAdapter.PARAM_FEED);
+    targetResolver.setPattern("/([^/#?]+)/([^/#?]+)/([^/#?]+)(\\?[^#]*)?", TargetType.TYPE_ENTRY,
+        AbstractManagedCollectionAdapter.PARAM_NAMESPACE,
+        AbstractManagedCollectionAdapter.PARAM_FEED, AbstractManagedCollectionAdapter.PARAM_ENTRY);
+    targetResolver.setPattern("/([^/#?]+)/user/([^/#?]+)/([^/#?;]+)(\\?[^#]*)?",
+        TargetType.TYPE_COLLECTION, AbstractManagedCollectionAdapter.PARAM_NAMESPACE,
+        AbstractManagedCollectionAdapter.PARAM_USER, AbstractManagedCollectionAdapter.PARAM_FEED);
+    targetResolver.setPattern("/([^/#?]+)/user/([^/#?]+)/([^/#?]+)/([^/#?]+)(\\?[^#]*)?",
+        TargetType.TYPE_ENTRY, AbstractManagedCollectionAdapter.PARAM_NAMESPACE,
+        AbstractManagedCollectionAdapter.PARAM_USER, AbstractManagedCollectionAdapter.PARAM_FEED,
+        AbstractManagedCollectionAdapter.PARAM_ENTRY);
+    return targetResolver;
+  }
+
+  static RequestContext mockRequest(String path) {
+    RequestContext request = EasyMock.createNiceMock(RequestContext.class);
+    EasyMock.expect(request.getTargetPath()).andReturn(path).anyTimes();
+    EasyMock.expect(request.getParameterNames()).andReturn(new String[] {"alt"}).anyTimes();
+    EasyMock.expect(request.getParameter("alt")).andReturn("json").anyTimes();
+    EasyMock.replay(request);
+    return request;
+  }
+
+  public void testResolvesLikeRegexResolver() {
+    RegexTargetResolver regexResolver = createRegexTargetResolver();
+    FeedServerTargetResolver resolver = new FeedServerTargetResolver();
+    String[] names = {AbstractManagedCollectionAdapter.PARAM_NAMESPACE,
+        AbstractManagedCollectionAdapter.PARAM_USER, AbstractManagedCollectionAdapter.PARAM_FEED,
+        AbstractManagedCollectionAdapter.PARAM_ENTRY,
+        AbstractManagedCollectionAdapter.CATEGORY_PARAMETER, "alt"};
+    for (String path : PATHS) {
+      RequestContext request = mockRequest(path);
+      Target expected = regexResolver.resolve(request);
+      Target actual = resolver.resolve(request);
+      if (expected == null) {
+        assertNull(path, actual);
+        continue;
+      }
+      assertNotNull(path, actual);
+      assertEquals(path, expected.getType(), actual.getType());
+      for (String name : names) {
+        assertEquals(path + " " + name, expected.getParameter(name), actual.getParameter(name));
+      }
+      assertEquals(path, Arrays.asList(expected.getParameterNames()),
+          Arrays.asList(actual.getParameterNames()));
+    }
+  }
+
+  public void testUserEntry() {
+    Target target =
+        new FeedServerTargetResolver().resolve(mockRequest("/example.com/user/john/contact/1"));
+    assertEquals(TargetType.TYPE_ENTRY, target.getType());
+    assertEquals("example.com",
+        target.getParameter(AbstractManagedCollectionAdapter.PARAM_NAMESPACE));
+    assertEquals("john", target.getParameter(AbstractManagedCollectionAdapter.PARAM_USER));
+    assertEquals("contact", target.getParameter(AbstractManagedCollectionAdapter.PARAM_FEED));
+    assertEquals("1", target.getParameter(AbstractManagedCollectionAdapter.PARAM_ENTRY));
+    assertEquals("json", target.getParameter("alt"));
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.feedserver.manager;
+
+import com.google.feedserver.config.FeedServerConfiguration;
+import com.google.feedserver.samples.configstore.SampleFileSystemFeedConfigStore;
+import com.google.feedserver.samples.manager.XmlWrapperManager;
+
+import junit.framework.TestCase;
+
+import org.apache.abdera.Abdera;
+
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * Unit tests for {@link ServerWarmUp}
+ */
+public class ServerWarmUpTest extends TestCase {
+
+  private File baseDirectory;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    baseDirectory = File.createTempFile("warmup", "");
+    baseDirectory.delete();
+    new File(baseDirectory, "example.com/" + ServerWarmUp.FEED_CONFIG_DIRECTORY).mkdirs();
+    new File(baseDirectory, "testdomain.com/" + ServerWarmUp.FEED_CONFIG_DIRECTORY).mkdirs();
+    new File(baseDirectory, "sqlmap").mkdirs();
+    new File(baseDirectory, "sqlmap.xml").createNewFile();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    delete(baseDirectory);
+    ServerWarmUp.markReady();
+    super.tearDown();
+  }
+
+  private static void delete(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+
+  public void testFindNamespaces() {
+    assertEquals(Arrays.asList("example.com", "testdomain.com"),
+        ServerWarmUp.findNamespaces(baseDirectory));
+    assertTrue(ServerWarmUp.findNamespaces(new File(baseDirectory, "missing")).isEmpty());
+  }
+
+  public void testReadiness() {
+    assertTrue(ServerWarmUp.isReady());
+    ServerWarmUp.markWarmingUp();
+    assertFalse(ServerWarmUp.isReady());
+    ServerWarmUp.markReady();
+    assertTrue(ServerWarmUp.isReady());
+  }
+
+  public void testWarmUpFillsAdapterChainCache() throws Exception {
+    FeedServerConfiguration configuration =
+        FeedServerConfiguration.createIntance(new SampleFileSystemFeedConfigStore());
+    configuration.setWrapperManagerClassName(XmlWrapperManager.class.getName());
+    AdapterChainCache cache = new AdapterChainCache();
+    configuration.setAdapterChainCache(cache);
+    ServerWarmUp warmUp = new ServerWarmUp(configuration, new Abdera(), 2);
+    int built = warmUp.warmUp(Arrays.asList("example.com"));
+    assertTrue(built > 0);
+    assertEquals(built, cache.size());
+    assertEquals(0, warmUp.getFailureCount());
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.feedserver.manager;
+
+import org.apache.abdera.protocol.Resolver;
+import org.apache.abdera.protocol.server.RequestContext;
+import org.apache.abdera.protocol.server.Target;
+
+/**
+ * Throughput benchmark comparing {@link FeedServerTargetResolver} with the
+ * regular expression resolver it replaced, over a mix of feed, entry, user
+ * and unmatched paths. Run with:
+ * <pre>
+ * java com.google.feedserver.manager.TargetResolverBenchmark [iterations]
+ * </pre>
+ */
+public class TargetResolverBenchmark {
+
+  private static final String[] PATHS = {
+      "/example.com/", "/example.com/contact", "/example.com/contact?alt=json&max-results=20",
+      "/example.com/contact/42", "/example.com/user/john/contact",
+      "/example.com/user/john/contact/42", "/example.com/contact;categories",
+      "/example.com/a/b/c/d/e/f"};
+
+  private final RequestContext[] requests = new RequestContext[PATHS.length];
+
+  public TargetResolverBenchmark() {
+    for (int i = 0; i < PATHS.length; i++) {
+      requests[i] = FeedServerTargetResolverTest.mockRequest(PATHS[i]);
+    }
+  }
+
+  public static void main(String[] args) {
+    int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+    TargetResolverBenchmark benchmark = new TargetResolverBenchmark();
+    Resolver<Target> regex = FeedServerTargetResolverTest.createRegexTargetResolver();
+    Resolver<Target> segments = new FeedServerTargetResolver();
+    // warm up both paths
+    benchmark.run(regex, iterations / 10);
+    benchmark.run(segments, iterations / 10);
+    for (int round = 0; round < 3; round++) {
+      long regexNanos = benchmark.run(regex, iterations);
+      long segmentNanos = benchmark.run(segments, iterations);
+      System.out.println(String.format("regex=%,12d ops/s   segments=%,12d ops/s",
+          opsPerSecond(iterations, regexNanos), opsPerSecond(iterations, segmentNanos)));
+    }
+  }
+
+  private static long opsPerSecond(int iterations, long nanos) {
+    return (long) ((double) iterations * 1000000000L / nanos);
+  }
+
+  /**
+   * Resolves {@code iterations} paths, cycling through {@link #PATHS}
+   *
+   * @return elapsed time in nanoseconds
+   */
+  long run(Resolver<Target> resolver, int iterations) {
+    int resolved = 0;
+    long begin = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      if (resolver.resolve(requests[i % requests.length]) != null) {
+        resolved++;
+      }
+    }
+    long elapsed = System.nanoTime() - begin;
+    if (resolved == 0) {
+      throw new IllegalStateException("nothing resolved");
+    }
+    return elapsed;
+  }
+}
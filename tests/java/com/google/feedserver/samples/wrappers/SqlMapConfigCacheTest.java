@@ -0,0 +1,80 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.feedserver.samples.wrappers;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link SqlMapConfigCache}
+ */
+public class SqlMapConfigCacheTest extends TestCase {
+
+  private static final String SQL_MAP_CONFIG =
+      "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+          + "<!DOCTYPE sqlMapConfig PUBLIC \"-//ibatis.apache.org//DTD SQL Map Config 2.0//EN\" "
+          + "\"http://ibatis.apache.org/dtd/sql-map-config-2.dtd\">\n"
+          + "<sqlMapConfig><settings useStatementNamespaces=\"false\"/></sqlMapConfig>";
+
+  private SqlMapConfigCache cache;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    cache = new SqlMapConfigCache(2);
+  }
+
+  public void testSqlMapResourceIsAdded() {
+    String compiled = cache.getSqlMapConfig(SQL_MAP_CONFIG, " sqlmap/contact.xml\n");
+    assertTrue(compiled, compiled.startsWith(IBatisAdapterWrapper.SQLMAP_DOCTYPE_STRING));
+    assertTrue(compiled, compiled.contains("<sqlMap resource=\"sqlmap/contact.xml\"/>"));
+    assertTrue(compiled, compiled.contains("<settings useStatementNamespaces=\"false\"/>"));
+  }
+
+  public void testCompiledOncePerConfigurationPair() {
+    String first = cache.getSqlMapConfig(SQL_MAP_CONFIG, "sqlmap/contact.xml");
+    assertSame(first, cache.getSqlMapConfig(SQL_MAP_CONFIG, "sqlmap/contact.xml"));
+    assertEquals(1, cache.getCompileCount());
+
+    String other = cache.getSqlMapConfig(SQL_MAP_CONFIG, "sqlmap/other.xml");
+    assertTrue(other.contains("sqlmap/other.xml"));
+    assertEquals(2, cache.getCompileCount());
+  }
+
+  public void testInvalidation() {
+    cache.getSqlMapConfig(SQL_MAP_CONFIG, "sqlmap/contact.xml");
+    cache.adapterConfigurationChanged("example.com", "ibatis");
+    assertEquals(0, cache.size());
+    cache.getSqlMapConfig(SQL_MAP_CONFIG, "sqlmap/contact.xml");
+    assertEquals(2, cache.getCompileCount());
+  }
+
+  public void testCacheIsBounded() {
+    cache.getSqlMapConfig(SQL_MAP_CONFIG, "sqlmap/a.xml");
+    cache.getSqlMapConfig(SQL_MAP_CONFIG, "sqlmap/b.xml");
+    cache.getSqlMapConfig(SQL_MAP_CONFIG, "sqlmap/c.xml");
+    assertTrue(cache.size() <= 2);
+  }
+
+  public void testNotASqlMapConfig() {
+    try {
+      cache.getSqlMapConfig("<config/>", "sqlmap/contact.xml");
+      fail();
+    } catch (RuntimeException e) {
+      // expected
+    }
+  }
+}
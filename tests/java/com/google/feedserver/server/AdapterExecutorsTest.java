@@ -0,0 +1,164 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.feedserver.server;
+
+import junit.framework.TestCase;
+
+import org.apache.abdera.protocol.server.ResponseContext;
+import org.apache.abdera.protocol.server.context.EmptyResponseContext;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unit tests for {@link AdapterExecutors}
+ */
+public class AdapterExecutorsTest extends TestCase {
+
+  private AdapterExecutors executors;
+  private AtomicInteger callCount;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    executors = new AdapterExecutors(1, 1);
+    callCount = new AtomicInteger();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    executors.shutdown();
+    super.tearDown();
+  }
+
+  private Callable<ResponseContext> respond(final int status, final CountDownLatch release) {
+    return new Callable<ResponseContext>() {
+      @Override
+      public ResponseContext call() throws Exception {
+        callCount.incrementAndGet();
+        if (release != null) {
+          release.await();
+        }
+        return new EmptyResponseContext(status);
+      }
+    };
+  }
+
+  private static Runnable countDown(final CountDownLatch latch) {
+    return new Runnable() {
+      @Override
+      public void run() {
+        latch.countDown();
+      }
+    };
+  }
+
+  private static long inOneMinute() {
+    return System.currentTimeMillis() + 60000;
+  }
+
+  public void testTaskCompletes() throws Exception {
+    CountDownLatch completed = new CountDownLatch(1);
+    AdapterExecutors.Task task =
+        new AdapterExecutors.Task(respond(200, null), inOneMinute(), countDown(completed));
+    executors.execute("ibatis", task);
+    assertTrue(completed.await(10, TimeUnit.SECONDS));
+    assertTrue(task.isDone());
+    assertFalse(task.isExpired());
+    assertNull(task.getError());
+    assertEquals(200, task.getResponse().getStatus());
+  }
+
+  public void testFullQueueRejectsOnlyItsAdapterType() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch completed = new CountDownLatch(3);
+    executors.execute("ibatis",
+        new AdapterExecutors.Task(respond(200, release), inOneMinute(), countDown(completed)));
+    executors.execute("ibatis",
+        new AdapterExecutors.Task(respond(200, null), inOneMinute(), countDown(completed)));
+    // one task running and one queued; the next one does not fit
+    try {
+      executors.execute("ibatis",
+          new AdapterExecutors.Task(respond(200, null), inOneMinute(), null));
+      fail();
+    } catch (RejectedExecutionException e) {
+      // expected
+    }
+    assertEquals(1, executors.getRejectedCount());
+    executors.execute("file",
+        new AdapterExecutors.Task(respond(200, null), inOneMinute(), countDown(completed)));
+    release.countDown();
+    assertTrue(completed.await(10, TimeUnit.SECONDS));
+    assertEquals(3, callCount.get());
+    assertEquals(2, executors.getStats().size());
+  }
+
+  public void testExpiredTaskDoesNotCallAdapter() {
+    CountDownLatch completed = new CountDownLatch(1);
+    AdapterExecutors.Task task = new AdapterExecutors.Task(respond(200, null),
+        System.currentTimeMillis() - 1, countDown(completed));
+    task.run();
+    assertTrue(task.isDone());
+    assertTrue(task.isExpired());
+    assertNull(task.getResponse());
+    assertEquals(0, callCount.get());
+    assertEquals(0, completed.getCount());
+  }
+
+  public void testCancelledTaskIsSkipped() {
+    CountDownLatch completed = new CountDownLatch(1);
+    AdapterExecutors.Task task =
+        new AdapterExecutors.Task(respond(200, null), inOneMinute(), countDown(completed));
+    assertTrue(task.cancel());
+    task.run();
+    assertFalse(task.isDone());
+    assertEquals(0, callCount.get());
+    assertEquals(1, completed.getCount());
+  }
+
+  public void testStartedTaskIsNotCancelled() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch completed = new CountDownLatch(1);
+    AdapterExecutors.Task task =
+        new AdapterExecutors.Task(respond(200, release), inOneMinute(), countDown(completed));
+    executors.execute("ibatis", task);
+    while (callCount.get() == 0) {
+      Thread.sleep(10);
+    }
+    assertFalse(task.cancel());
+    release.countDown();
+    assertTrue(completed.await(10, TimeUnit.SECONDS));
+    assertTrue(task.isDone());
+    assertEquals(200, task.getResponse().getStatus());
+  }
+
+  public void testErrorIsKept() {
+    final RuntimeException failure = new RuntimeException("backend down");
+    AdapterExecutors.Task task = new AdapterExecutors.Task(new Callable<ResponseContext>() {
+      @Override
+      public ResponseContext call() {
+        throw failure;
+      }
+    }, inOneMinute(), null);
+    task.run();
+    assertTrue(task.isDone());
+    assertSame(failure, task.getError());
+  }
+}
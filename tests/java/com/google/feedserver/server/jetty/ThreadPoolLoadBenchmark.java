@@ -0,0 +1,148 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.feedserver.server.jetty;
+
+import org.mortbay.jetty.Server;
+import org.mortbay.jetty.nio.SelectChannelConnector;
+import org.mortbay.jetty.servlet.Context;
+import org.mortbay.jetty.servlet.ServletHolder;
+import org.mortbay.thread.ThreadPool;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Load test comparing Jetty's bounded thread pool with
+ * {@link ExecutorThreadPool#newThreadPerRequestPool()} under many concurrent
+ * requests that each block, as adapter calls waiting on JDBC do. Run with:
+ * <pre>
+ * java com.google.feedserver.server.jetty.ThreadPoolLoadBenchmark
+ *     [concurrentRequests] [blockMillis] [maxThreads]
+ * </pre>
+ */
+public class ThreadPoolLoadBenchmark {
+
+  /**
+   * Blocks for a fixed time and answers with a short body
+   */
+  private static class SlowServlet extends HttpServlet {
+    private final long blockMillis;
+
+    SlowServlet(long blockMillis) {
+      this.blockMillis = blockMillis;
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+        throws IOException {
+      try {
+        Thread.sleep(blockMillis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      response.setContentType("text/plain");
+      response.getWriter().print("ok");
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    int requests = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+    long blockMillis = args.length > 1 ? Long.parseLong(args[1]) : 200;
+    int maxThreads = args.length > 2 ? Integer.parseInt(args[2]) : 250;
+    // warm up both pools
+    run(ExecutorThreadPool.newBoundedPool(maxThreads), requests / 10, blockMillis);
+    run(ExecutorThreadPool.newThreadPerRequestPool(), requests / 10, blockMillis);
+    long bounded = run(ExecutorThreadPool.newBoundedPool(maxThreads), requests, blockMillis);
+    long perRequest = run(ExecutorThreadPool.newThreadPerRequestPool(), requests, blockMillis);
+    System.out.println(String.format(
+        "requests=%d block=%dms   bounded(%d)=%,8d req/s   threadPerRequest=%,8d req/s",
+        requests, blockMillis, maxThreads, requestsPerSecond(requests, bounded),
+        requestsPerSecond(requests, perRequest)));
+  }
+
+  private static long requestsPerSecond(int requests, long nanos) {
+    return (long) ((double) requests * 1000000000L / nanos);
+  }
+
+  /**
+   * Starts a server with the given thread pool and sends {@code requests}
+   * requests to it at once
+   *
+   * @return elapsed time in nanoseconds until all responses were read
+   */
+  static long run(ThreadPool threadPool, int requests, long blockMillis) throws Exception {
+    Server server = new Server();
+    SelectChannelConnector connector = new SelectChannelConnector();
+    connector.setPort(0);
+    connector.setAcceptQueueSize(requests);
+    server.addConnector(connector);
+    server.setThreadPool(threadPool);
+    Context context = new Context(server, "/", Context.NO_SESSIONS);
+    context.addServlet(new ServletHolder(new SlowServlet(blockMillis)), "/*");
+    server.start();
+    try {
+      final URL url = new URL("http://localhost:" + connector.getLocalPort() + "/feed");
+      final CountDownLatch start = new CountDownLatch(1);
+      final CountDownLatch done = new CountDownLatch(requests);
+      final AtomicInteger failures = new AtomicInteger();
+      for (int i = 0; i < requests; i++) {
+        Thread client = new Thread() {
+          @Override
+          public void run() {
+            try {
+              start.await();
+              HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+              connection.setReadTimeout(120000);
+              InputStream in = connection.getInputStream();
+              while (in.read() != -1) {
+                // drain the response
+              }
+              in.close();
+              if (connection.getResponseCode() != 200) {
+                failures.incrementAndGet();
+              }
+            } catch (Exception e) {
+              failures.incrementAndGet();
+            } finally {
+              done.countDown();
+            }
+          }
+        };
+        client.setDaemon(true);
+        client.start();
+      }
+      long begin = System.nanoTime();
+      start.countDown();
+      done.await();
+      long elapsed = System.nanoTime() - begin;
+      if (failures.get() > 0) {
+        System.out.println(failures.get() + " of " + requests + " requests failed");
+      }
+      return elapsed;
+    } finally {
+      server.stop();
+    }
+  }
+}
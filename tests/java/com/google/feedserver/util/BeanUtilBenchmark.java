@@ -0,0 +1,74 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.google.feedserver.util;
+
+import com.google.feedserver.resource.Acl;
+import com.google.feedserver.resource.AuthorizedEntity;
+import com.google.feedserver.resource.ResourceInfo;
+import com.google.feedserver.testing.FeedServerClientTestUtil;
+
+import java.util.Map;
+
+/**
+ * Measures {@link BeanUtil#convertBeanToProperties(Object)} and
+ * {@link BeanUtil#convertPropertiesToBean(Map, Object)} on the flat
+ * {@code VehicleBean} of the client tests and on an {@link Acl}, which nests
+ * a bean and an array of beans. Run with:
+ * <pre>
+ * java com.google.feedserver.util.BeanUtilBenchmark
+ * </pre>
+ */
+public class BeanUtilBenchmark {
+
+  private static final int ITERATIONS = 200000;
+
+  public static void main(String[] args) throws Exception {
+    BeanUtil beanUtil = new BeanUtil();
+    Object vehicle = new FeedServerClientTestUtil().getSampleVehicleBean();
+    Acl acl = new Acl("contacts", new ResourceInfo("/contacts", ResourceInfo.RESOURCE_TYPE_FEED),
+        new AuthorizedEntity[] {
+            new AuthorizedEntity(AuthorizedEntity.OPERATION_CREATE,
+                new String[] {"admin@example.com"}),
+            new AuthorizedEntity(AuthorizedEntity.OPERATION_RETRIEVE,
+                new String[] {"DOMAIN_USERS", "ANONYMOUS"}),
+            new AuthorizedEntity(AuthorizedEntity.OPERATION_UPDATE,
+                new String[] {"admin@example.com", "editor@example.com"})});
+    for (Object bean : new Object[] {vehicle, acl}) {
+      // warm up
+      time(beanUtil, bean, ITERATIONS);
+      long[] nanos = time(beanUtil, bean, ITERATIONS);
+      System.out.println(String.format("%-12s toProperties=%,8d ns/op   toBean=%,8d ns/op",
+          bean.getClass().getSimpleName(), nanos[0] / ITERATIONS, nanos[1] / ITERATIONS));
+    }
+  }
+
+  private static long[] time(BeanUtil beanUtil, Object bean, int iterations) throws Exception {
+    Map<String, Object> properties = null;
+    long start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      properties = beanUtil.convertBeanToProperties(bean);
+    }
+    long toProperties = System.nanoTime() - start;
+    start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      beanUtil.convertPropertiesToBean(properties, bean.getClass().newInstance());
+    }
+    long toBean = System.nanoTime() - start;
+    return new long[] {toProperties, toBean};
+  }
+}
@@ -18,7 +18,11 @@ package com.google.feedserver.util;
 
 import junit.framework.TestCase;
 
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -127,6 +131,48 @@ public class BeanUtilTest extends TestCase {
     }
   }
 
+  public static class TimestampBean {
+    protected Timestamp timestamp;
+
+    public Timestamp getTimestamp() {
+      return timestamp;
+    }
+
+    public void setTimestamp(Timestamp timestamp) {
+      this.timestamp = timestamp;
+    }
+  }
+
+  public void testConcurrentTimestampConversion() throws Exception {
+    final long base = Timestamp.valueOf("2008-05-01 12:00:00").getTime();
+    final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+    Thread[] threads = new Thread[8];
+    for (int t = 0; t < threads.length; t++) {
+      final int offset = t;
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            for (int i = 0; i < 500; i++) {
+              TimestampBean bean = new TimestampBean();
+              bean.setTimestamp(new Timestamp(base + (offset * 1000 + i) * 1000L));
+              TimestampBean copy = new TimestampBean();
+              beanUtil.convertPropertiesToBean(beanUtil.convertBeanToProperties(bean), copy);
+              assertEquals(bean.getTimestamp(), copy.getTimestamp());
+            }
+          } catch (Throwable e) {
+            failures.add(e);
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertTrue(failures.toString(), failures.isEmpty());
+  }
+
   public void testInvalidIntegerThrowsException() throws Exception {
     Bean bean = new Bean();
     bean.setString("test");
@@ -316,6 +362,22 @@ public class BeanUtilTest extends TestCase {
     assertEquals(400L, longs[1]);
   }
 
+  public void testConvertPropertiesToBeanWidensAndChecksValueTypes() throws Exception {
+    Map<String, Object> properties = new HashMap<String, Object>();
+    properties.put("long", 1234);
+    Bean bean = new Bean();
+    beanUtil.convertPropertiesToBean(properties, bean);
+    assertEquals(1234L, bean.getLong());
+
+    properties.put("long", Boolean.TRUE);
+    try {
+      beanUtil.convertPropertiesToBean(properties, bean);
+      fail("did not get illegal argument exception");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
 
   public void testIsBean() {
     assertTrue(beanUtil.isBean(Bean.class));
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.feedserver.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compares {@link XmlUtil#convertXmlToProperties(String)} backed by the SAX
+ * parser and {@link XmlHandler} with the {@link StaxEntityParser} engine on
+ * entity documents of about 1 KB, 10 KB and 1 MB. Run with:
+ * <pre>
+ * java com.google.feedserver.util.EntityParserBenchmark
+ * </pre>
+ */
+public class EntityParserBenchmark {
+
+  private static final int[] DOCUMENT_SIZES = {1024, 10 * 1024, 1024 * 1024};
+
+  public static void main(String[] args) throws Exception {
+    XmlUtil sax = new XmlUtil(false);
+    XmlUtil stax = new XmlUtil(true);
+    for (int size : DOCUMENT_SIZES) {
+      String document = createDocument(size);
+      int iterations = Math.max(5, 20 * 1024 * 1024 / document.length());
+      // warm up
+      time(sax, document, iterations);
+      time(stax, document, iterations);
+      long saxNanos = time(sax, document, iterations);
+      long staxNanos = time(stax, document, iterations);
+      System.out.println(String.format("%8d bytes: SAX=%,12d ns/op   StAX=%,12d ns/op",
+          document.length(), saxNanos / iterations, staxNanos / iterations));
+    }
+  }
+
+  private static long time(XmlUtil xmlUtil, String document, int iterations) throws Exception {
+    long start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      xmlUtil.convertXmlToProperties(document);
+    }
+    return System.nanoTime() - start;
+  }
+
+  /**
+   * Creates an entity with plain, repeatable and nested properties whose XML
+   * representation is roughly {@code size} characters long
+   */
+  static String createDocument(int size) {
+    XmlUtil xmlUtil = new XmlUtil();
+    Map<String, Object> properties = new HashMap<String, Object>();
+    properties.put("id", "12345");
+    properties.put("title", "Benchmark entity with <escaped> & quoted \"text\"");
+    Map<String, Object> address = new HashMap<String, Object>();
+    address.put("street", "1600 Amphitheatre Parkway");
+    address.put("city", "Mountain View");
+    properties.put("address", address);
+
+    int repeated = 1;
+    String xml;
+    do {
+      String[] tags = new String[repeated];
+      for (int i = 0; i < repeated; i++) {
+        tags[i] = "tag value number " + i;
+      }
+      properties.put("tags", tags);
+      xml = xmlUtil.convertPropertiesToXml(properties);
+      repeated = (int) Math.max(repeated + 1, (long) repeated * size / xml.length());
+    } while (xml.length() < size);
+    return xml;
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.feedserver.util;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Unit tests for {@link EntityXmlWriter}
+ */
+public class EntityXmlWriterTest extends TestCase {
+
+  private XmlUtil xmlUtil;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    xmlUtil = new XmlUtil();
+  }
+
+  public void testSimpleProperties() {
+    Map<String, Object> properties = new LinkedHashMap<String, Object>();
+    properties.put("a", "first");
+    properties.put("b", 2);
+    properties.put("c", null);
+    properties.put("d", new String[] {"x", null, "z"});
+    properties.put("e", new String[0]);
+    assertEquals("<entity><a>first</a><b>2</b><d repeatable=\"true\">x</d><d></d><d>z</d>"
+        + "</entity>", EntityXmlWriter.toXml(properties));
+  }
+
+  public void testEscaping() throws Exception {
+    Map<String, Object> properties = new LinkedHashMap<String, Object>();
+    properties.put("a", "<tag attr=\"v\"> & ]]> \u00e9\r\n");
+    String xml = EntityXmlWriter.toXml(properties);
+    assertEquals("<entity><a>&lt;tag attr=&quot;v&quot;&gt; &amp; ]]&gt; \u00e9&#13;\n</a>"
+        + "</entity>", xml);
+    assertEquals("<tag attr=\"v\"> & ]]> \u00e9", xmlUtil.convertXmlToProperties(xml).get("a"));
+  }
+
+  @SuppressWarnings("unchecked")
+  public void testNestedMapsRoundTrip() throws Exception {
+    Map<String, Object> address = new LinkedHashMap<String, Object>();
+    address.put("street", "1600 Amphitheatre Parkway");
+    address.put("zip", null);
+    address.put("phone", new String[] {"1", "2"});
+    Map<String, Object> properties = new LinkedHashMap<String, Object>();
+    properties.put("name", "Google");
+    properties.put("address", address);
+    properties.put("tags", new String[] {"a", "b"});
+
+    String xml = EntityXmlWriter.toXml(properties);
+    Map<String, Object> parsed = xmlUtil.convertXmlToProperties(xml);
+    assertEquals("Google", parsed.get("name"));
+    assertEquals(Arrays.asList("a", "b"), Arrays.asList((Object[]) parsed.get("tags")));
+    Map<String, Object> parsedAddress = (Map<String, Object>) parsed.get("address");
+    assertEquals("1600 Amphitheatre Parkway", parsedAddress.get("street"));
+    assertTrue(parsedAddress.containsKey("zip"));
+    assertNull(parsedAddress.get("zip"));
+    assertEquals(Arrays.asList("1", "2"), Arrays.asList((Object[]) parsedAddress.get("phone")));
+  }
+
+  public void testSameXmlAsXmlUtilWithoutNulls() {
+    Map<String, Object> properties = new LinkedHashMap<String, Object>();
+    properties.put("id", "12345");
+    properties.put("tags", new String[] {"one", "two"});
+    Map<String, Object> nested = new LinkedHashMap<String, Object>();
+    nested.put("city", "Mountain View");
+    properties.put("address", nested);
+    assertEquals(xmlUtil.convertPropertiesToXml(properties), EntityXmlWriter.toXml(properties));
+  }
+
+  public void testInvalidElementName() {
+    Map<String, Object> properties = new LinkedHashMap<String, Object>();
+    properties.put("not valid", "x");
+    try {
+      EntityXmlWriter.toXml(properties);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+}
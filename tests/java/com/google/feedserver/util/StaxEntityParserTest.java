@@ -0,0 +1,117 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.feedserver.util;
+
+import junit.framework.TestCase;
+
+import org.xml.sax.SAXException;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Checks that {@link StaxEntityParser} produces the same properties as
+ * {@link XmlHandler}
+ */
+public class StaxEntityParserTest extends TestCase {
+
+  private static final String[] DOCUMENTS = {
+      "<entity><a>first</a><b>second</b><c>third</c><z></z></entity>",
+      "<entity><a>first</a><b repeatable=\"true\">second0</b><b>second1</b><b>second2</b>"
+          + "<c>third</c></entity>",
+      "<entity><a>first</a><b>second</b><d><c>third</c><e>forth</e><z></z></d><z></z></entity>",
+      "<entity><d repeatable=\"true\"><b>third</b><e repeatable=\"true\">forth0</e>"
+          + "<e>forth1</e><z></z></d><d><b>x</b></d><z></z></entity>",
+      "<entity><d repeatable=\"true\"><d>third</d></d></entity>",
+      "<entity><b repeatable=\"true\"></b><b repeatable=\"true\"/></entity>",
+      "<entity><b repeatable=\"true\">1</b><c>x</c><b repeatable=\"true\">2</b></entity>",
+      "<entity>\n  <a>  padded\n</a>\n  <d>\n    <c>1</c>\n    <e>2</e>\n  </d>\n</entity>",
+      "<entity><d>text<c>1</c></d></entity>",
+      "<entity><a>&lt;tag&gt; &amp; &#65;</a><b><![CDATA[<x>y</x>]]></b></entity>",
+      "<?xml version=\"1.0\" encoding=\"UTF-8\"?><entity><a>1</a></entity>",
+      "<entity></entity>",
+      "<other><a>1</a></other>",
+      "<entity><entity>nested</entity><a>1</a></entity>",
+      "<entity><x:a>1</x:a></entity>",
+      "<entity><a repeatable=\"false\">1</a></entity>"};
+
+  private static final String[] INVALID_DOCUMENTS = {
+      "<entity><a>1</a><a>2</a></entity>",
+      "<entity><b repeatable=\"true\">1</b><c>x</c><b>2</b></entity>",
+      "<entity><a>1</a>"};
+
+  private XmlUtil saxXmlUtil;
+  private XmlUtil staxXmlUtil;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    saxXmlUtil = new XmlUtil(false);
+    staxXmlUtil = new XmlUtil(true);
+  }
+
+  public void testSameResultAsXmlHandler() throws Exception {
+    for (String document : DOCUMENTS) {
+      Map<String, Object> expected = saxXmlUtil.convertXmlToProperties(document);
+      Map<String, Object> actual = staxXmlUtil.convertXmlToProperties(document);
+      assertSameValue(document, expected, actual);
+    }
+  }
+
+  public void testCustomTopLevelElement() throws Exception {
+    String document = "<config><a>1</a><b repeatable=\"true\">2</b></config>";
+    assertSameValue(document, saxXmlUtil.convertXmlToProperties(document, "config"),
+        staxXmlUtil.convertXmlToProperties(document, "config"));
+  }
+
+  public void testInvalidDocuments() throws Exception {
+    for (String document : INVALID_DOCUMENTS) {
+      try {
+        staxXmlUtil.convertXmlToProperties(document);
+        fail(document);
+      } catch (SAXException e) {
+        // expected
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static void assertSameValue(String document, Object expected, Object actual) {
+    if (expected == null || actual == null) {
+      assertEquals(document, expected, actual);
+    } else if (expected instanceof Map) {
+      assertTrue(document, actual instanceof Map);
+      Map<String, Object> expectedMap = (Map<String, Object>) expected;
+      Map<String, Object> actualMap = (Map<String, Object>) actual;
+      assertEquals(document, expectedMap.keySet(), actualMap.keySet());
+      for (String key : expectedMap.keySet()) {
+        assertSameValue(document, expectedMap.get(key), actualMap.get(key));
+      }
+    } else if (expected instanceof Object[]) {
+      assertEquals(document, expected.getClass(), actual.getClass());
+      Object[] expectedArray = (Object[]) expected;
+      Object[] actualArray = (Object[]) actual;
+      assertEquals(document + Arrays.asList(actualArray), expectedArray.length,
+          actualArray.length);
+      for (int i = 0; i < expectedArray.length; i++) {
+        assertSameValue(document, expectedArray[i], actualArray[i]);
+      }
+    } else {
+      assertEquals(document, expected, actual);
+    }
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.google.feedserver.wrappers;
+
+import com.google.feedserver.resource.Acl;
+import com.google.feedserver.resource.AuthorizedEntity;
+import com.google.feedserver.resource.ResourceInfo;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.util.Map;
+
+/**
+ * Unit tests for {@link ResourceAcl} and {@link ResourceAclCache}
+ */
+public class ResourceAclCacheTest extends TestCase {
+
+  private static final String USER_EMAIL = "user1@example.com";
+
+  private File file;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    file = File.createTempFile("acl", ".xml");
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    file.delete();
+    super.tearDown();
+  }
+
+  private ResourceAcl compile(String resourceRule, String operation, String... principals) {
+    ResourceInfo resourceInfo = new ResourceInfo();
+    resourceInfo.setResourceRule(resourceRule);
+    AuthorizedEntity entity = new AuthorizedEntity();
+    entity.setOperation(operation);
+    entity.setEntities(principals);
+    return ResourceAcl.compile(
+        new Acl[] {new Acl("acl", resourceInfo, new AuthorizedEntity[] {entity})});
+  }
+
+  public void testCompiledRules() {
+    ResourceAcl acl = compile("/", AuthorizedEntity.OPERATION_RETRIEVE, USER_EMAIL,
+        ResourceConnectionInfoWrapper.DOMAIN_USERS);
+    assertNull(acl.getRules("123"));
+    Map<String, ResourceAcl.Rule> rules = acl.getRules(null);
+    assertNull(rules.get(AuthorizedEntity.OPERATION_DELETE));
+    ResourceAcl.Rule rule = rules.get(AuthorizedEntity.OPERATION_RETRIEVE);
+    assertTrue(rule.allows(USER_EMAIL));
+    assertFalse(rule.allows("user2@example.com"));
+    assertTrue(rule.allowsDomainUsers());
+    assertFalse(rule.allowsAnonymous());
+
+    acl = compile("/123", AuthorizedEntity.OPERATION_RETRIEVE,
+        ResourceConnectionInfoWrapper.ANYONE);
+    assertNull(acl.getRules(null));
+    rule = acl.getRules("123").get(AuthorizedEntity.OPERATION_RETRIEVE);
+    assertTrue(rule.allowsAnonymous());
+    assertFalse(rule.allowsDomainUsers());
+  }
+
+  public void testInlineAclIsShared() {
+    ResourceAclCache cache = new ResourceAclCache();
+    String config = "<entity/>";
+    assertNull(cache.get(config));
+    ResourceAcl acl = compile("/", AuthorizedEntity.OPERATION_RETRIEVE, USER_EMAIL);
+    cache.put(config, acl);
+    assertSame(acl, cache.get(config));
+    assertEquals(1, cache.getCompileCount());
+
+    cache.adapterConfigurationChanged("ns", "adapter");
+    assertNull(cache.get(config));
+  }
+
+  public void testChangedFileIsDropped() throws Exception {
+    ResourceAclCache cache = new ResourceAclCache(ResourceAclCache.DEFAULT_MAX_SIZE, 0);
+    ResourceAcl acl = compile("/", AuthorizedEntity.OPERATION_RETRIEVE, USER_EMAIL);
+    cache.put(file, file.lastModified(), file.length(), acl);
+    assertSame(acl, cache.get(file));
+
+    file.setLastModified(file.lastModified() + 2000);
+    assertNull(cache.get(file));
+    assertEquals(0, cache.size());
+  }
+
+  public void testFileIsCheckedOncePerInterval() throws Exception {
+    ResourceAclCache cache = new ResourceAclCache(ResourceAclCache.DEFAULT_MAX_SIZE, 60000);
+    ResourceAcl acl = compile("/", AuthorizedEntity.OPERATION_RETRIEVE, USER_EMAIL);
+    cache.put(file, file.lastModified(), file.length(), acl);
+    file.setLastModified(file.lastModified() + 2000);
+    assertSame(acl, cache.get(file));
+  }
+}
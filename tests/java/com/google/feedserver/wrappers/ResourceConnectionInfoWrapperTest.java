@@ -17,6 +17,10 @@ package com.google.feedserver.wrappers;
 
 import static org.easymock.classextension.EasyMock.isA;
 
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
 import org.apache.abdera.model.Entry;
 import org.apache.abdera.protocol.server.RequestContext;
 import org.easymock.classextension.EasyMock;
@@ -26,6 +30,7 @@ import com.google.feedserver.adapters.FeedServerAdapterException;
 import com.google.feedserver.config.UserInfo;
 import com.google.feedserver.resource.AuthorizedEntity;
 import com.google.feedserver.server.FlagConfig;
+import com.google.feedserver.util.FileSystemConfigStoreUtil;
 
 import junit.framework.TestCase;
 
@@ -330,4 +335,56 @@ public class ResourceConnectionInfoWrapperTest extends TestCase {
       finish();
     }
   }
+
+  public void testEditedAclFileTakesEffect() throws Exception {
+    final File aclFile = File.createTempFile("acl", ".xml");
+    try {
+      writeFile(aclFile, getWrapperConfig(AuthorizedEntity.OPERATION_RETRIEVE,
+          new String[] {USER1_EMAIL, USER2_EMAIL}));
+      AbstractManagedCollectionAdapter target =
+          EasyMock.createNiceMock(AbstractManagedCollectionAdapter.class);
+      RequestContext request = EasyMock.createNiceMock(RequestContext.class);
+      UserInfo userInfo = EasyMock.createNiceMock(UserInfo.class);
+      EasyMock.expect(request.getAttribute(
+          RequestContext.Scope.REQUEST, AbstractManagedCollectionAdapter.USER_INFO))
+          .andReturn(userInfo).anyTimes();
+      EasyMock.expect(userInfo.getEmail()).andReturn(USER1_EMAIL).anyTimes();
+      EasyMock.replay(target);
+      EasyMock.replay(request);
+      EasyMock.replay(userInfo);
+
+      ResourceConnectionInfoWrapper aclWrapper = new ResourceConnectionInfoWrapper(target,
+          FileSystemConfigStoreUtil.FILE_INDICATOR + aclFile.getPath()) {
+        @Override
+        protected File getWrapperConfigFile(String fileName) {
+          // called from the constructor, before fields of this class are set
+          return new File(fileName);
+        }
+      };
+      aclWrapper.retrieveFeed(request);
+
+      // remove user1 from the ACL; the wrapper is reused as in a cached chain
+      writeFile(aclFile, getWrapperConfig(AuthorizedEntity.OPERATION_RETRIEVE,
+          new String[] {USER2_EMAIL}));
+      aclFile.setLastModified(aclFile.lastModified() + 2000);
+      Thread.sleep(ResourceAclCache.DEFAULT_CHECK_INTERVAL_MILLIS + 100);
+      try {
+        aclWrapper.retrieveFeed(request);
+        fail("access should have been denied");
+      } catch (FeedServerAdapterException e) {
+        // expected
+      }
+    } finally {
+      aclFile.delete();
+    }
+  }
+
+  private static void writeFile(File file, String content) throws IOException {
+    FileWriter writer = new FileWriter(file);
+    try {
+      writer.write(content);
+    } finally {
+      writer.close();
+    }
+  }
 }
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.feedserver.wrappers;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link ResponseCache}
+ */
+public class ResponseCacheTest extends TestCase {
+
+  private static final String FEED = ResponseCache.getFeedKey("example.com", "contact");
+  private static final String OTHER_FEED = ResponseCache.getFeedKey("example.com", "config");
+  private static final long TTL = 60000;
+
+  private long now;
+  private ResponseCache cache;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    now = 1000000;
+    cache = new TestResponseCache(10000);
+  }
+
+  private class TestResponseCache extends ResponseCache {
+    TestResponseCache(long maxBytes) {
+      super(maxBytes);
+    }
+
+    @Override
+    protected long currentTimeMillis() {
+      return now;
+    }
+  }
+
+  public void testGetAndExpire() {
+    assertNull(cache.get("user1"));
+    cache.put("user1", FEED, cache.getGeneration(FEED), "<feed/>", TTL);
+    assertEquals("<feed/>", cache.get("user1"));
+    assertNull(cache.get("user2"));
+    assertEquals(1, cache.getHitCount());
+    assertEquals(2, cache.getMissCount());
+
+    now += TTL;
+    assertNull(cache.get("user1"));
+    assertEquals(0, cache.size());
+    assertEquals(0, cache.getBytes());
+  }
+
+  public void testEvictsLeastRecentlyUsed() {
+    String response = new String(new char[1000]);
+    long size = 2 * (FEED.length() + response.length());
+    cache = new TestResponseCache(3 * size);
+    cache.put("a", FEED, 0, response, TTL);
+    cache.put("b", FEED, 0, response, TTL);
+    cache.put("c", FEED, 0, response, TTL);
+    assertNotNull(cache.get("a"));
+    cache.put("d", FEED, 0, response, TTL);
+
+    assertEquals(3, cache.size());
+    assertEquals(3 * size, cache.getBytes());
+    assertEquals(1, cache.getEvictionCount());
+    assertNull(cache.get("b"));
+    assertNotNull(cache.get("a"));
+    assertNotNull(cache.get("d"));
+  }
+
+  public void testResponseLargerThanCacheIsNotStored() {
+    cache.put("a", FEED, 0, new String(new char[10000]), TTL);
+    assertEquals(0, cache.size());
+  }
+
+  public void testInvalidate() {
+    cache.put("a", FEED, 0, "<feed/>", TTL);
+    cache.put("b", OTHER_FEED, 0, "<feed/>", TTL);
+    cache.invalidate(FEED);
+    assertNull(cache.get("a"));
+    assertNotNull(cache.get("b"));
+
+    cache.namespaceChanged("example.com");
+    assertNull(cache.get("b"));
+    assertEquals(0, cache.getBytes());
+  }
+
+  public void testResponseRetrievedBeforeInvalidationIsIgnored() {
+    long generation = cache.getGeneration(FEED);
+    // a write completes while the response is being retrieved
+    cache.invalidate(FEED);
+    cache.put("a", FEED, generation, "<feed/>", TTL);
+    assertNull(cache.get("a"));
+
+    cache.put("a", FEED, cache.getGeneration(FEED), "<feed/>", TTL);
+    assertNotNull(cache.get("a"));
+  }
+}